@@ -16,6 +16,9 @@ import java.util.List;
 import org.geoserver.ows.Response;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.w3ds.service.TileCache;
+import org.geoserver.w3ds.service.TileCache.TileKey;
+import org.geoserver.w3ds.service.TileCache.TileOutputStream;
 import org.geoserver.w3ds.types.GetSceneRequest;
 import org.geoserver.w3ds.types.GetTileRequest;
 import org.geoserver.w3ds.types.Scene;
@@ -34,8 +37,11 @@ import org.opengis.geometry.BoundingBox;
 import com.vividsolutions.jts.geom.Geometry;
 
 public class HTMLX3DResponse extends Response {
-	public HTMLX3DResponse() {
+	private final TileCache tileCache;
+
+	public HTMLX3DResponse(TileCache tileCache) {
 		super(Scene.class);
+		this.tileCache = tileCache;
 	}
 
 	public boolean canHandle(Operation operation) {
@@ -76,17 +82,19 @@ public class HTMLX3DResponse extends Response {
 		X3DBuilder x3d = new X3DBuilder(output);
 		double[] origin = { gs.getOffset().x, gs.getOffset().y,
 				gs.getOffset().z };
+		x3d.startHTML(getTitle(scene));
 		x3d.createGeoOrigin(gs.getCrs(), origin);
 		for (W3DSLayer layer : scene.getLayers()) {
 			x3d.addW3DSLayer(layer);
 		}
-		x3d.writeHTML();
+		x3d.endHTML();
 		x3d.close();
 	}
 
 	private static void writeGetTile(Scene scene, OutputStream output,
 			GetTileRequest gt) throws IOException {
 		X3DBuilder x3d = new X3DBuilder(output);
+		x3d.startHTML(getTitle(scene));
 		for (W3DSLayer layer : scene.getLayers()) {
 			BoundingBox bbox = null;
 			try {
@@ -98,16 +106,46 @@ public class HTMLX3DResponse extends Response {
 			x3d.createGeoOrigin(gt.getCrs(), bbox);
 			x3d.addW3DSLayer(layer);
 		}
-		x3d.writeHTML();
+		x3d.endHTML();
 		x3d.close();
 	}
 
+	private static String getTitle(Scene scene) {
+		StringBuilder title = new StringBuilder();
+		for (W3DSLayer layer : scene.getLayers()) {
+			title.append(layer.getLayerInfo().getRequestName());
+		}
+		return title.toString();
+	}
+
+	private void writeCachedGetTile(Scene scene, OutputStream output,
+			GetTileRequest gt) throws IOException {
+		if (!tileCache.isEnabled()) {
+			writeGetTile(scene, output, gt);
+			return;
+		}
+		TileKey key = new TileKey(gt);
+		byte[] tile = tileCache.get(key);
+		if (tile != null) {
+			output.write(tile);
+			return;
+		}
+		long version = tileCache.getVersion();
+		TileOutputStream tileOutput = new TileOutputStream(output,
+				tileCache.getMaxTileSize());
+		writeGetTile(scene, tileOutput, gt);
+		tile = tileOutput.getTile();
+		if (tile != null) {
+			tileCache.put(key, tile, version);
+		}
+	}
+
 	public void write(Object o, OutputStream output, Operation operation)
 			throws IOException {
 		Object request = operation.getParameters()[0];
 		if (request instanceof GetTileRequest) {
 			GetTileRequest gt = (GetTileRequest) request;
-			writeGetTile((Scene) o, output, gt);
+			writeCachedGetTile((Scene) o, output, gt);
 		} else if (request instanceof GetSceneRequest) {
 			GetSceneRequest gs = (GetSceneRequest) request;
 			writeGetScene((Scene) o, output, gs);
@@ -0,0 +1,326 @@
+/* This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+
+package org.geoserver.w3ds.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.w3ds.types.GetTileRequest;
+import org.geotools.referencing.CRS;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * In memory LRU cache of the encoded GetTile responses, as 3D tile clients
+ * keep on requesting the same tiles while navigating the scene.
+ * <p>
+ * The tiles of a layer are dropped when its configuration changes in the
+ * catalog, or when its data is modified by a WFS transaction (see
+ * {@link TileCacheTransactionListener}). Changes made to the data outside of
+ * GeoServer are not detected.
+ * </p>
+ * <p>
+ * Tiles are also keyed by the roles of the current user, since the data
+ * security rules can hide the layer, or some of its features, to some of
+ * them.
+ * </p>
+ */
+public class TileCache implements CatalogListener {
+
+	protected static Logger LOGGER = org.geotools.util.logging.Logging
+			.getLogger("org.geoserver.w3ds");
+
+	/**
+	 * Max memory used by the cache, in MB, 0 disables it
+	 */
+	public static final String TILE_CACHE_SIZE = "W3DS_TILE_CACHE_SIZE";
+
+	static final long DEFAULT_SIZE = 32;
+
+	private final long maxMemory;
+
+	private final Map<TileKey, byte[]> tiles;
+
+	private long memory;
+
+	/**
+	 * Bumped at each invalidation, so that tiles encoded from data that
+	 * changed meanwhile are not stored
+	 */
+	private long version;
+
+	public TileCache(Catalog catalog) {
+		this(getMaxMemory());
+		catalog.addListener(this);
+	}
+
+	TileCache(long maxMemory) {
+		this.maxMemory = maxMemory;
+		this.tiles = new LinkedHashMap<TileKey, byte[]>(16, 0.75f, true);
+	}
+
+	static long getMaxMemory() {
+		String size = GeoServerExtensions.getProperty(TILE_CACHE_SIZE);
+		if (size != null) {
+			try {
+				return Long.parseLong(size) * 1024 * 1024;
+			} catch (NumberFormatException e) {
+				LOGGER.warning("Invalid " + TILE_CACHE_SIZE + " value " + size
+						+ ", using the default " + DEFAULT_SIZE);
+			}
+		}
+		return DEFAULT_SIZE * 1024 * 1024;
+	}
+
+	public boolean isEnabled() {
+		return maxMemory > 0;
+	}
+
+	/**
+	 * Tiles bigger than this are not cached, not to flush the whole cache
+	 * for a single one
+	 */
+	public long getMaxTileSize() {
+		return maxMemory / 4;
+	}
+
+	/**
+	 * Returns the encoded tile, or null if not in the cache
+	 */
+	public synchronized byte[] get(TileKey key) {
+		return tiles.get(key);
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Stores the encoded tile, unless the cache got invalidated since the
+	 * specified version was read
+	 */
+	public synchronized void put(TileKey key, byte[] tile, long version) {
+		if (version != this.version || tile.length > getMaxTileSize()) {
+			return;
+		}
+		byte[] old = tiles.put(key, tile);
+		if (old != null) {
+			memory -= old.length;
+		}
+		memory += tile.length;
+		for (Iterator<byte[]> it = tiles.values().iterator(); memory > maxMemory
+				&& it.hasNext();) {
+			memory -= it.next().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Drops the tiles of the specified resource
+	 */
+	public synchronized void clear(String resourceId) {
+		version++;
+		for (Iterator<Map.Entry<TileKey, byte[]>> it = tiles.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<TileKey, byte[]> entry = it.next();
+			if (entry.getKey().resourceId.equals(resourceId)) {
+				memory -= entry.getValue().length;
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		version++;
+		tiles.clear();
+		memory = 0;
+	}
+
+	// ---------------------------------------------------------------------------------------
+	// Catalog listener
+	// ---------------------------------------------------------------------------------------
+
+	public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+		// nothing to do
+	}
+
+	public void handleRemoveEvent(CatalogRemoveEvent event)
+			throws CatalogException {
+		invalidate(event.getSource());
+	}
+
+	public void handleModifyEvent(CatalogModifyEvent event)
+			throws CatalogException {
+		// nothing to do, wait for the changes to be applied
+	}
+
+	public void handlePostModifyEvent(CatalogPostModifyEvent event)
+			throws CatalogException {
+		invalidate(event.getSource());
+	}
+
+	public void reloaded() {
+		clear();
+	}
+
+	private void invalidate(Object source) {
+		if (source instanceof ResourceInfo) {
+			clear(((ResourceInfo) source).getId());
+		} else if (source instanceof LayerInfo) {
+			clear(((LayerInfo) source).getResource().getId());
+		} else {
+			// styles, stores and namespaces can affect any layer
+			clear();
+		}
+	}
+
+	/**
+	 * Identifies a tile by layer, LOD, position, CRS, output format and roles
+	 * of the user
+	 */
+	public static class TileKey {
+		final String resourceId;
+
+		final int level;
+
+		final int row;
+
+		final int col;
+
+		final String crs;
+
+		final String format;
+
+		final List<String> roles;
+
+		public TileKey(GetTileRequest request) {
+			this(request.getLayer().getLayerInfo().getResource().getId(),
+					request.getTileLevel(), request.getTileRow(), request
+							.getTileCol(), request.getCrs() == null ? null
+							: CRS.toSRS(request.getCrs()), request.getFormat()
+							.getMimeType(), getRoles());
+		}
+
+		TileKey(String resourceId, int level, int row, int col, String crs,
+				String format, List<String> roles) {
+			this.resourceId = resourceId;
+			this.level = level;
+			this.row = row;
+			this.col = col;
+			this.crs = crs;
+			this.format = format;
+			this.roles = roles;
+		}
+
+		/**
+		 * Returns the sorted roles of the current user
+		 */
+		static List<String> getRoles() {
+			List<String> roles = new ArrayList<String>();
+			Authentication auth = SecurityContextHolder.getContext()
+					.getAuthentication();
+			if (auth != null && auth.getAuthorities() != null) {
+				for (GrantedAuthority authority : auth.getAuthorities()) {
+					roles.add(authority.getAuthority());
+				}
+				Collections.sort(roles);
+			}
+			return roles;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = resourceId.hashCode();
+			result = 31 * result + level;
+			result = 31 * result + row;
+			result = 31 * result + col;
+			result = 31 * result + (crs == null ? 0 : crs.hashCode());
+			result = 31 * result + format.hashCode();
+			result = 31 * result + roles.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return level == other.level && row == other.row
+					&& col == other.col && resourceId.equals(other.resourceId)
+					&& (crs == null ? other.crs == null : crs.equals(other.crs))
+					&& format.equals(other.format)
+					&& roles.equals(other.roles);
+		}
+	}
+
+	/**
+	 * Passes the bytes through to the response, keeping a copy of them as
+	 * long as they do not exceed the max tile size
+	 */
+	public static class TileOutputStream extends FilterOutputStream {
+
+		private final long maxSize;
+
+		private ByteArrayOutputStream tile = new ByteArrayOutputStream();
+
+		public TileOutputStream(OutputStream out, long maxSize) {
+			super(out);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (tile != null) {
+				tile.write(b);
+				checkSize();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if (tile != null) {
+				tile.write(b, off, len);
+				checkSize();
+			}
+		}
+
+		private void checkSize() {
+			if (tile.size() > maxSize) {
+				tile = null;
+			}
+		}
+
+		/**
+		 * Returns the bytes written, or null if they exceeded the max tile
+		 * size
+		 */
+		public byte[] getTile() {
+			return tile == null ? null : tile.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/* This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+
+package org.geoserver.w3ds.service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geoserver.wfs.TransactionPlugin;
+import org.geoserver.wfs.WFSException;
+import org.geotools.feature.NameImpl;
+
+/**
+ * Drops the cached W3DS tiles of the layers modified by a WFS transaction,
+ * once it's committed
+ */
+public class TileCacheTransactionListener implements TransactionPlugin {
+
+	protected static Logger LOGGER = org.geotools.util.logging.Logging
+			.getLogger("org.geoserver.w3ds");
+
+	static final String W3DS_TILE_CHANGES = "W3DS_TILE_CHANGES";
+
+	private final Catalog catalog;
+
+	private final TileCache cache;
+
+	public TileCacheTransactionListener(Catalog catalog, TileCache cache) {
+		this.catalog = catalog;
+		this.cache = cache;
+	}
+
+	public TransactionType beforeTransaction(TransactionType request)
+			throws WFSException {
+		// nothing to do
+		return request;
+	}
+
+	public void beforeCommit(TransactionType request) throws WFSException {
+		// nothing to do
+	}
+
+	public void afterTransaction(TransactionType request,
+			TransactionResponseType result, boolean committed) {
+		Set<String> changed = getChanged(request, false);
+		if (!committed || changed == null) {
+			return;
+		}
+		for (String resourceId : changed) {
+			cache.clear(resourceId);
+		}
+	}
+
+	public int getPriority() {
+		return 0;
+	}
+
+	public void dataStoreChange(TransactionEvent event) throws WFSException {
+		TransactionEventType type = event.getType();
+		if (!TransactionEventType.PRE_INSERT.equals(type)
+				&& !TransactionEventType.PRE_UPDATE.equals(type)
+				&& !TransactionEventType.PRE_DELETE.equals(type)) {
+			return;
+		}
+
+		try {
+			QName name = event.getLayerName();
+			FeatureTypeInfo typeInfo = catalog
+					.getFeatureTypeByName(new NameImpl(name.getNamespaceURI(),
+							name.getLocalPart()));
+			if (typeInfo != null) {
+				getChanged(event.getRequest(), true).add(typeInfo.getId());
+			}
+		} catch (RuntimeException e) {
+			// never make the transaction fail because of the tile cache
+			LOGGER.log(Level.WARNING,
+					"Error tracking the layers modified by the transaction", e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> getChanged(TransactionType transaction, boolean create) {
+		Map<Object, Object> extendedProperties = transaction
+				.getExtendedProperties();
+		Set<String> changed = (Set<String>) extendedProperties
+				.get(W3DS_TILE_CHANGES);
+		if (changed == null && create) {
+			changed = new HashSet<String>();
+			extendedProperties.put(W3DS_TILE_CHANGES, changed);
+		}
+		return changed;
+	}
+}
@@ -7,6 +7,9 @@
 
 package org.geoserver.w3ds.x3d;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class X3DAttribute {
 
 	private String attribute;
@@ -55,10 +58,28 @@ public class X3DAttribute {
 		if (!this.valid) {
 			return "";
 		}
-		return attribute + "='" + value + "'";
+		return attribute + "='" + getValue() + "'";
 		//return attribute + "=\"" + value + "\"";
 	}
 	
+	/**
+	 * Writes the attribute straight to the writer, subclasses can override
+	 * {@link #writeValue(Writer)} to stream large values
+	 */
+	public void write(Writer writer) throws IOException {
+		if (!this.valid) {
+			return;
+		}
+		writer.write(attribute);
+		writer.write("='");
+		writeValue(writer);
+		writer.write("'");
+	}
+
+	protected void writeValue(Writer writer) throws IOException {
+		writer.write(value);
+	}
+
 	public X3DAttribute clone() {
 		return new X3DAttribute(this);
 	}
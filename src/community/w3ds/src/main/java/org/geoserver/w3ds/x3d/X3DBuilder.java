@@ -53,11 +53,20 @@ import org.opengis.geometry.Envelope;
 
 import org.geoserver.w3ds.x3d.X3DBuilder;
 
+/**
+ * Streams a X3D scene to the output: the document is opened with
+ * {@link #startX3D()} or {@link #startHTML(String)}, then each object is
+ * written as soon as its feature has been read, with the geometry buffers
+ * being reused for the next one, and the document is closed with
+ * {@link #endX3D()} or {@link #endHTML()}.
+ */
 public class X3DBuilder {
 
 	private BufferedWriter writer;
 
 	private X3DNode scene;
+	private String sceneTabs;
+	private boolean activeLayerStarted;
 	private X3DStyles styles;
 	private X3DAttribute geoSystem;
 
@@ -69,8 +78,6 @@ public class X3DBuilder {
 
 	private BoundingBox activeLayerBounds;
 	private int coordinatesType;
-	
-	private StringBuilder title; 
 
 	public X3DBuilder(OutputStream output) {
 		writer = new BufferedWriter(new OutputStreamWriter(output));
@@ -92,10 +99,10 @@ public class X3DBuilder {
 
 		coordinatesType = X3DDefinitions.GEOGRAPHIC_METRIC.getCode();
 		this.styles = new X3DStyles();
-		this.title = new StringBuilder();
 	}
 
-	public void createGeoOrigin(CoordinateReferenceSystem crs, double[] origin) {
+	public void createGeoOrigin(CoordinateReferenceSystem crs, double[] origin)
+			throws IOException {
 		String type = "";
 		Unit<?> unit_str = CRSUtilities.getUnit(crs.getCoordinateSystem());
 		if (unit_str.getStandardUnit().isCompatible(SI.METER)) {
@@ -116,11 +123,11 @@ public class X3DBuilder {
 				X3DDefinitions.GEO_ORIGIN.getDefinition());
 		X3DNode geoOriginGroup = new X3DNode("Group");
 		geoOriginGroup.addX3DNode(geoOrigin);
-		scene.addX3DNode(geoOriginGroup);
+		geoOriginGroup.write(getWriter(), sceneTabs + "\t");
 	}
 
 	public void createGeoOrigin(CoordinateReferenceSystem crs,
-			BoundingBox bounds) {
+			BoundingBox bounds) throws IOException {
 		double[] offset = new double[3];
 		ReferencedEnvelope bbox;
 		if (bounds != null) {
@@ -141,17 +148,27 @@ public class X3DBuilder {
 	}
 
 	public void cleanGeometries() {
-		activePoints = new X3DPoints(X3DGeometryType.POINTS, geoSystem,
-				coordinatesType);
-		activeLines = new X3DLines(X3DGeometryType.LINES, geoSystem,
-				coordinatesType);
-		activePolygons = new X3DPolygons(X3DGeometryType.POLYGONS, geoSystem,
-				coordinatesType);
+		if (activePolygons == null) {
+			activePoints = new X3DPoints(X3DGeometryType.POINTS, geoSystem,
+					coordinatesType);
+			activeLines = new X3DLines(X3DGeometryType.LINES, geoSystem,
+					coordinatesType);
+			activePolygons = new X3DPolygons(X3DGeometryType.POLYGONS,
+					geoSystem, coordinatesType);
+		} else {
+			// reuse the buffers grown by the previous objects
+			for (X3DGeometry geometry : new X3DGeometry[] { activePoints,
+					activeLines, activePolygons }) {
+				geometry.reset();
+				geometry.setGeoSystem(geoSystem);
+				geometry.setCoordinatesType(coordinatesType);
+			}
+		}
 	}
 
-	public void newObject() {
+	public void newObject() throws IOException {
+		startLayer();
 		activeObject = new X3DNode("Group");
-		activeLayer.addX3DNode(activeObject);
 		cleanGeometries();
 	}
 
@@ -171,15 +188,35 @@ public class X3DBuilder {
 		return setObjectAttribute("class", clazz);
 	}
 
-	public void newObject(String id, String clazz) {
+	public void newObject(String id, String clazz) throws IOException {
 		newObject();
 		setObjectID(id);
 		setObjectClass(clazz);
 	}
 
-	public void newLayer() {
+	public void newLayer() throws IOException {
+		endLayer();
 		activeLayer = new X3DNode("Group");
-		scene.addX3DNode(activeLayer);
+		activeLayerStarted = false;
+	}
+
+	/**
+	 * Writes the opening tag of the active layer, if not done already, once
+	 * its attributes are all set
+	 */
+	private void startLayer() throws IOException {
+		if (activeLayer != null && !activeLayerStarted) {
+			activeLayer.writeStart(getWriter(), sceneTabs + "\t");
+			activeLayerStarted = true;
+		}
+	}
+
+	private void endLayer() throws IOException {
+		if (activeLayer != null) {
+			startLayer();
+			activeLayer.writeEnd(getWriter(), sceneTabs + "\t");
+			activeLayer = null;
+		}
 	}
 
 	public boolean setLayerAttribute(String name, String value) {
@@ -190,7 +227,8 @@ public class X3DBuilder {
 		return false;
 	}
 
-	public void newLayer(W3DSLayerInfo layerInfo, List<Style> styles) {
+	public void newLayer(W3DSLayerInfo layerInfo, List<Style> styles)
+			throws IOException {
 		newLayer();
 		this.styles = new X3DStyles();
 		this.styles.addStyles(styles);
@@ -223,12 +261,12 @@ public class X3DBuilder {
 		return strb.toString();
 	}
 
-	public void addW3DSLayer(W3DSLayer layer) {
+	public void addW3DSLayer(W3DSLayer layer) throws IOException {
 		newLayer(layer.getLayerInfo(), layer.getStyles());
 		FeatureCollection<?, ?> collection = layer.getFeatures();
-		title.append(layer.getLayerInfo().getRequestName());
+		FeatureIterator<?> iterator = null;
 		try {
-			FeatureIterator<?> iterator = collection.features();
+			iterator = collection.features();
 			SimpleFeature feature;
 			SimpleFeatureType fType;
 			List<AttributeDescriptor> types;
@@ -255,13 +293,17 @@ public class X3DBuilder {
 					}
 				}
 			}
-			iterator.close();
 		} catch (Exception exception) {
 			ServiceException serviceException = new ServiceException("Error: "
 					+ exception.getMessage());
 			serviceException.initCause(exception);
 			throw serviceException;
+		} finally {
+			if (iterator != null) {
+				iterator.close();
+			}
 		}
+		endLayer();
 	}
 
 	private void setPolygonStyle(Feature feature) {
@@ -289,6 +331,9 @@ public class X3DBuilder {
 			X3DNode lines = activeLines.getX3D();
 			activeObject.addX3DNode(lines);
 		}
+		// the shapes read the geometry buffers, write them before the next
+		// object resets them
+		activeObject.write(getWriter(), sceneTabs + "\t\t");
 	}
 
 	private static int getGeometryType(Geometry geometry) {
@@ -340,24 +385,37 @@ public class X3DBuilder {
 		}
 	}
 
-	public void writeX3D() throws IOException {
-		X3DNode x3d = new X3DNode("X3D");
-		x3d.addX3DNode(scene);
-		writer.write(x3d.toStringSpaces(""));
+	private BufferedWriter getWriter() {
+		if (sceneTabs == null) {
+			throw new IllegalStateException(
+					"The X3D document has not been started");
+		}
+		return writer;
 	}
 
-	public void writeHTML() throws IOException {
+	public void startX3D() throws IOException {
+		new X3DNode("X3D").writeStart(writer, "");
+		sceneTabs = "\t";
+		scene.writeStart(writer, sceneTabs);
+	}
+
+	public void endX3D() throws IOException {
+		endLayer();
+		scene.writeEnd(getWriter(), sceneTabs);
+		new X3DNode("X3D").writeEnd(writer, "");
+	}
+
+	public void startHTML(String titleText) throws IOException {
 		X3DNode html = new X3DNode("html");
 		X3DNode doc = new X3DNode();
 		// doc.setText("<!DOCTYPE html>");
-		html.addX3DNode(doc);
 		X3DNode head = new X3DNode("head");
 		X3DNode meta = new X3DNode("meta");
 		meta.addX3DAttribute(new X3DAttribute("http-equiv", "Content-Type"));
 		meta.addX3DAttribute(new X3DAttribute("content",
 				"text/html; charset=utf-8"));
 		X3DNode title = new X3DNode("title");
-		title.setText(this.title.toString());
+		title.setText(titleText);
 		X3DNode link = new X3DNode("link");
 		link.addX3DAttribute(new X3DAttribute("rel", "stylesheet"));
 		link.addX3DAttribute(new X3DAttribute("href",
@@ -376,7 +434,6 @@ public class X3DBuilder {
 		head.addX3DNode(title);
 		head.addX3DNode(link);
 		head.addX3DNode(script);
-		html.addX3DNode(head);
 		X3DNode body = new X3DNode("body");
 		body.addX3DAttribute(new X3DAttribute("onload", "init()"));
 		X3DNode p = new X3DNode("p");
@@ -398,19 +455,31 @@ public class X3DBuilder {
 		p.addX3DNode(l1);
 		p.addX3DNode(l2);
 		p.addX3DNode(l3);
-		body.addX3DNode(p);
 		X3DNode x3d = new X3DNode("x3d");
 		x3d.addX3DAttribute(new X3DAttribute("id", "element"));
 		//x3d.addX3DAttribute(new X3DAttribute("width", "1200px"));
 		//x3d.addX3DAttribute(new X3DAttribute("height", "900px"));
 		//x3d.addX3DAttribute("showLog", "true");
-		x3d.addX3DNode(scene);
-		body.addX3DNode(x3d);
+
+		html.writeStart(writer, "");
+		doc.write(writer, "\t");
+		head.write(writer, "\t");
+		body.writeStart(writer, "\t");
+		p.write(writer, "\t\t");
+		x3d.writeStart(writer, "\t\t");
+		sceneTabs = "\t\t\t";
+		scene.writeStart(writer, sceneTabs);
+	}
+
+	public void endHTML() throws IOException {
+		endLayer();
+		scene.writeEnd(getWriter(), sceneTabs);
+		new X3DNode("x3d").writeEnd(writer, "\t\t");
 		X3DNode init = new X3DNode();
 		init.setText("<script type=\"text/javascript\">function init() {$element = document.getElementById('element');}</script>");
-		body.addX3DNode(init);
-		html.addX3DNode(body);
-		writer.write(html.toStringSpaces(""));
+		init.write(writer, "\t\t");
+		new X3DNode("body").writeEnd(writer, "\t");
+		new X3DNode("html").writeEnd(writer, "");
 	}
 
 	public void close() throws IOException {
@@ -6,20 +6,30 @@
  */
 package org.geoserver.w3ds.x3d;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import com.vividsolutions.jts.geom.Coordinate;
 
+/**
+ * Collects the coordinates and indexes of the geometries of an object into
+ * primitive buffers, which are reused across objects (see {@link #reset()})
+ * and streamed straight to the output by the attributes returned by
+ * {@link #getPointsAttribute(String)} and friends. Those attributes read the
+ * buffers lazily, so the nodes using them must be written before the geometry
+ * is reset.
+ */
 public abstract class X3DGeometry {
 
 	private X3DGeometryType type;
-	private StringBuilder points;
-	private StringBuilder indexis;
+	/** x, y and z of each distinct point, in insertion order */
+	private double[] ordinates;
+	private int ordinatesCount;
+	private int[] indexis;
+	private int indexisCount;
 	private Map<Integer, Integer> pointsIndexis;
 	private int index;
 
@@ -27,46 +37,36 @@ public abstract class X3DGeometry {
 	protected int coordinatesType;
 	protected X3DAttribute geoSystem;
 
-	protected List<Coordinate> coordinates;
-
 	public X3DGeometry(X3DGeometryType type) {
-		this.type = type;
-		this.points = new StringBuilder();
-		this.indexis = new StringBuilder();
-		this.pointsIndexis = new HashMap<Integer, Integer>();
-		this.index = -1;
-		this.coordinatesType = X3DDefinitions.GEOGRAPHIC_METRIC.getCode();
-		this.geoSystem = null;
-		this.appearance = new X3DNode();
-		this.appearance.setValid(false);
-		this.coordinates = new ArrayList<Coordinate>();
+		this(type, null, X3DDefinitions.GEOGRAPHIC_METRIC.getCode());
 	}
 
 	public X3DGeometry(X3DGeometryType type, X3DAttribute geoSystem) {
-		this.type = type;
-		this.points = new StringBuilder();
-		this.indexis = new StringBuilder();
-		this.pointsIndexis = new HashMap<Integer, Integer>();
-		this.index = -1;
-		this.coordinatesType = X3DDefinitions.GEOGRAPHIC_DEGREES.getCode();
-		this.geoSystem = geoSystem;
-		this.appearance = new X3DNode();
-		this.appearance.setValid(false);
-		this.coordinates = new ArrayList<Coordinate>();
+		this(type, geoSystem, X3DDefinitions.GEOGRAPHIC_DEGREES.getCode());
 	}
 
 	public X3DGeometry(X3DGeometryType type, X3DAttribute geoSystem,
 			int coordinatesType) {
 		this.type = type;
-		this.points = new StringBuilder();
-		this.indexis = new StringBuilder();
+		this.ordinates = new double[3 * 64];
+		this.indexis = new int[128];
 		this.pointsIndexis = new HashMap<Integer, Integer>();
-		this.index = -1;
 		this.coordinatesType = coordinatesType;
 		this.geoSystem = geoSystem;
+		reset();
+	}
+
+	/**
+	 * Drops the geometries collected so far and the appearance, keeping the
+	 * buffers around for the next object
+	 */
+	public void reset() {
+		this.ordinatesCount = 0;
+		this.indexisCount = 0;
+		this.pointsIndexis.clear();
+		this.index = -1;
 		this.appearance = new X3DNode();
 		this.appearance.setValid(false);
-		this.coordinates = new ArrayList<Coordinate>();
 	}
 
 	public int getCoordinatesType() {
@@ -77,92 +77,122 @@ public abstract class X3DGeometry {
 		this.coordinatesType = coordinatesType;
 	}
 
-	private static Coordinate[] removeDuplicate(Coordinate[] coordinates) {
-		/*Set<Coordinate> set = new HashSet<Coordinate>();
-		ArrayList<Coordinate> no_duplicates = new ArrayList<Coordinate>();
-		for (int i = 0; i < coordinates.length; i++) {
-			if (set.add(coordinates[i])) {
-				no_duplicates.add(coordinates[i]);
-			}
-		}
-		return no_duplicates.toArray(new Coordinate[no_duplicates.size()]);*/
-		
-		ArrayList<Coordinate> no_duplicates = new ArrayList<Coordinate>();
-		for (int i = 0; i < coordinates.length - 2; i++) {
-			no_duplicates.add(coordinates[i]);
-		}
-		return no_duplicates.toArray(new Coordinate[no_duplicates.size()]);
+	public void setGeoSystem(X3DAttribute geoSystem) {
+		this.geoSystem = geoSystem;
 	}
 
 	public void add(Coordinate[] coordinates) {
-		//coordinates = removeDuplicate(coordinates); 
 		for (Coordinate coordinate : coordinates) {
-			if (coordinate.z == Double.NaN) {
-				coordinate.z = 0;
-			}
-			if (this.pointsIndexis.containsKey(this.getHashCode(coordinate))) {
-				this.indexis.append(pointsIndexis.get(this
-						.getHashCode(coordinate)) + " ");
-				// this.index++;
+			int hashCode = this.getHashCode(coordinate);
+			Integer pointIndex = this.pointsIndexis.get(hashCode);
+			if (pointIndex != null) {
+				addIndex(pointIndex.intValue());
 			} else {
-				this.coordinates.add(coordinate);
-				String x = String.valueOf(coordinate.x);
-				String y = String.valueOf(coordinate.y);
-				String z = "0.0";
-				Double zValue = new Double(coordinate.z);
-				if(!(zValue.equals(Double.NaN))) {
-					z = String.valueOf(coordinate.z);
-				}
-				if (coordinatesType == X3DDefinitions.GEOGRAPHIC_DEGREES
-						.getCode()) {
-					//this.points.append(String.valueOf(coordinate.x) + " ");
-					//this.points.append(String.valueOf(coordinate.y) + " ");
-					//this.points.append(String.valueOf(coordinate.z) + " ");
-					this.points.append(x + " ");
-					this.points.append(y + " ");
-					this.points.append(z + " ");
-				} else {
-					this.points.append(y + " ");
-					this.points.append(z + " ");
-					this.points.append(x + " ");
-				}
+				addPoint(coordinate);
 				this.index++;
-				this.pointsIndexis
-						.put(this.getHashCode(coordinate), this.index);
-				this.indexis.append(this.index + " ");
+				this.pointsIndexis.put(hashCode, this.index);
+				addIndex(this.index);
 			}
 		}
-		this.indexis.append("-1 ");
+		addIndex(-1);
 	}
 
-	public void addG(Coordinate[] coordinates) {
-		for (Coordinate coordinate : coordinates) {
-			if (coordinate.z == Double.NaN) {
-				coordinate.z = 0;
-			}
-			if (this.pointsIndexis.containsKey(coordinate)) {
-				this.indexis.append(pointsIndexis.get(coordinate) + " ");
-				this.index++;
-			} else {
-				this.coordinates.add(coordinate);
-				this.points.append(String.valueOf(coordinate.x) + " ");
-				this.points.append(String.valueOf(coordinate.y) + " ");
-				this.points.append(String.valueOf(coordinate.z) + " ");
-				this.index++;
-				this.pointsIndexis
-						.put(this.getHashCode(coordinate), this.index);
-				this.indexis.append(this.index + " ");
-			}
+	private void addPoint(Coordinate coordinate) {
+		if (ordinatesCount + 3 > ordinates.length) {
+			double[] grown = new double[ordinates.length * 2];
+			System.arraycopy(ordinates, 0, grown, 0, ordinatesCount);
+			ordinates = grown;
 		}
-		this.indexis.append("-1 ");
+		ordinates[ordinatesCount++] = coordinate.x;
+		ordinates[ordinatesCount++] = coordinate.y;
+		ordinates[ordinatesCount++] = Double.isNaN(coordinate.z) ? 0 : coordinate.z;
+	}
+
+	private void addIndex(int pointIndex) {
+		if (indexisCount == indexis.length) {
+			int[] grown = new int[indexis.length * 2];
+			System.arraycopy(indexis, 0, grown, 0, indexisCount);
+			indexis = grown;
+		}
+		indexis[indexisCount++] = pointIndex;
 	}
 
 	public String getPoints() {
-		return this.points.toString();
+		return getPointsAttribute("point").getValue();
 	}
 
 	public String getIndexis() {
-		return this.indexis.toString();
+		return getIndexisAttribute("coordIndex").getValue();
+	}
+
+	/**
+	 * Attribute streaming the points, in the axis order of the coordinates
+	 * type
+	 */
+	protected X3DAttribute getPointsAttribute(String name) {
+		return new BufferAttribute(name) {
+			@Override
+			protected void writeValue(Writer writer) throws IOException {
+				boolean degrees = coordinatesType == X3DDefinitions.GEOGRAPHIC_DEGREES
+						.getCode();
+				for (int i = 0; i < ordinatesCount; i += 3) {
+					if (degrees) {
+						writeOrdinates(writer, ordinates[i], ordinates[i + 1],
+								ordinates[i + 2]);
+					} else {
+						writeOrdinates(writer, ordinates[i + 1],
+								ordinates[i + 2], ordinates[i]);
+					}
+				}
+			}
+		};
+	}
+
+	protected X3DAttribute getIndexisAttribute(String name) {
+		return new BufferAttribute(name) {
+			@Override
+			protected void writeValue(Writer writer) throws IOException {
+				for (int i = 0; i < indexisCount; i++) {
+					writer.write(String.valueOf(indexis[i]));
+					writer.write(' ');
+				}
+			}
+		};
+	}
+
+	/**
+	 * Attribute streaming texture coordinates stretching the texture over the
+	 * bounding box of the points
+	 */
+	protected X3DAttribute getTextureCoordinatesAttribute(String name) {
+		return new BufferAttribute(name) {
+			@Override
+			protected void writeValue(Writer writer) throws IOException {
+				double bbox[] = calculateBbox();
+				double lx = bbox[2] - bbox[0];
+				double ly = bbox[3] - bbox[1];
+				for (int i = 0; i < ordinatesCount; i += 3) {
+					double x = ordinates[i];
+					double y = ordinates[i + 1];
+					double s = x == bbox[0] ? 0 : (x - bbox[0]) / lx;
+					double t = y == bbox[1] ? 0 : (y - bbox[1]) / ly;
+					writer.write(String.valueOf(s));
+					writer.write(' ');
+					writer.write(String.valueOf(t));
+					writer.write(' ');
+				}
+			}
+		};
+	}
+
+	private static void writeOrdinates(Writer writer, double first,
+			double second, double third) throws IOException {
+		writer.write(String.valueOf(first));
+		writer.write(' ');
+		writer.write(String.valueOf(second));
+		writer.write(' ');
+		writer.write(String.valueOf(third));
+		writer.write(' ');
 	}
 
 	public boolean haveGeometries() {
@@ -174,7 +204,6 @@ public abstract class X3DGeometry {
 		result = 37 * result + hashCode(coordinate.x);
 		result = 37 * result + hashCode(coordinate.y);
 		result = 37 * result + hashCode(coordinate.z);
-		// System.out.println(coordinate + " " + result);
 		return result;
 	}
 
@@ -197,23 +226,50 @@ public abstract class X3DGeometry {
 
 	public abstract X3DNode getX3D();
 
-	protected static double[] calculateBbox(List<Coordinate> coordinates) {
+	protected double[] calculateBbox() {
 		double bbox[] = new double[4];
 		bbox[0] = Double.MAX_VALUE;
 		bbox[1] = Double.MAX_VALUE;
 		bbox[2] = -1 * Double.MAX_VALUE;
 		bbox[3] = -1 * Double.MAX_VALUE;
-		for (Coordinate c : coordinates) {
-			if (c.x < bbox[0])
-				bbox[0] = c.x;
-			if (c.x > bbox[2])
-				bbox[2] = c.x;
-			if (c.y < bbox[1])
-				bbox[1] = c.y;
-			if (c.y > bbox[3])
-				bbox[3] = c.y;
+		for (int i = 0; i < ordinatesCount; i += 3) {
+			double x = ordinates[i];
+			double y = ordinates[i + 1];
+			if (x < bbox[0])
+				bbox[0] = x;
+			if (x > bbox[2])
+				bbox[2] = x;
+			if (y < bbox[1])
+				bbox[1] = y;
+			if (y > bbox[3])
+				bbox[3] = y;
 		}
 		return bbox;
 	}
 
+	/**
+	 * Attribute whose value is written from the geometry buffers
+	 */
+	abstract static class BufferAttribute extends X3DAttribute {
+
+		BufferAttribute(String name) {
+			super(name, null);
+		}
+
+		@Override
+		public String getValue() {
+			StringWriter writer = new StringWriter();
+			try {
+				writeValue(writer);
+			} catch (IOException e) {
+				// cannot happen with a string writer
+				throw new RuntimeException(e);
+			}
+			return writer.toString();
+		}
+
+		@Override
+		protected abstract void writeValue(Writer writer) throws IOException;
+	}
+
 }
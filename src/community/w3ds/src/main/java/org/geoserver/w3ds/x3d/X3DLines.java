@@ -8,7 +8,6 @@ package org.geoserver.w3ds.x3d;
 
 import java.io.IOException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 
 public class X3DLines extends X3DGeometry {
@@ -41,11 +40,11 @@ public class X3DLines extends X3DGeometry {
 		geoOrigin.addX3DAttribute("USE", X3DDefinitions.GEO_ORIGIN.getDefinition());
 		geoOrigin.setExpand(true);
 		X3DNode coordinate = new X3DNode("GeoCoordinate");
-		coordinate.addX3DAttribute("point", this.getPoints());
+		coordinate.addX3DAttribute(getPointsAttribute("point"));
 		coordinate.addX3DAttribute(this.geoSystem);
 		coordinate.addX3DNode(geoOrigin);
 		indexedLineSet.addX3DNode(coordinate);
-		indexedLineSet.addX3DAttribute(new X3DAttribute("coordIndex", this.getIndexis()));
+		indexedLineSet.addX3DAttribute(getIndexisAttribute("coordIndex"));
 		
 		shape.addX3DNode(indexedLineSet);
 		return shape;
@@ -63,16 +62,14 @@ public class X3DLines extends X3DGeometry {
 		}
 		X3DNode indexedLineSet = new X3DNode("IndexedLineSet");
 		X3DNode coordinate = new X3DNode("Coordinate");
-		coordinate.addX3DAttribute("point", this.getPoints());
+		coordinate.addX3DAttribute(getPointsAttribute("point"));
 		indexedLineSet.addX3DNode(coordinate);
-		indexedLineSet.addX3DAttribute(new X3DAttribute("coordIndex", this
-				.getIndexis()));
+		indexedLineSet.addX3DAttribute(getIndexisAttribute("coordIndex"));
 		shape.addX3DNode(indexedLineSet);
 		return shape;
 	}
 
 	public void addLineString(LineString geometry) throws IOException {
-		Coordinate[] c = geometry.getCoordinates();
 		add(geometry.getCoordinates());
 	}
 
@@ -7,6 +7,9 @@
 
 package org.geoserver.w3ds.x3d;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 
 public class X3DNode {
@@ -151,30 +154,71 @@ public class X3DNode {
 	}
 
 	public String toStringSpaces(String tabs) {
+		StringWriter writer = new StringWriter();
+		try {
+			write(writer, tabs);
+		} catch (IOException e) {
+			// cannot happen with a string writer
+			throw new RuntimeException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Writes the node and its children, indented, straight to the writer
+	 * instead of building the whole string in memory
+	 */
+	public void write(Writer writer, String tabs) throws IOException {
 		if (!this.valid) {
-			return "";
+			return;
 		}
 		if (this.textX3DNode) {
-			return this.text;
-		}
-		StringBuilder strb = new StringBuilder();
-		strb.append(tabs + "<" + tag);
-		for (X3DAttribute a : attributes) {
-			strb.append(" " + a.toString());
+			writer.write(this.text);
+			return;
 		}
 		if (nodes.isEmpty() && text.isEmpty() && !expand) {
-			strb.append("/>\n");
+			writeTag(writer, tabs);
+			writer.write("/>\n");
 		} else {
-			strb.append(">\n");
-			if (!text.isEmpty()) {
-				strb.append(text);
-			}
+			writeStart(writer, tabs);
 			for (X3DNode n : nodes) {
-				strb.append(n.toStringSpaces(tabs + "\t"));
+				n.write(writer, tabs + "\t");
 			}
-			strb.append(tabs + "</" + tag + ">\n");
+			writeEnd(writer, tabs);
+		}
+	}
+
+	/**
+	 * Writes the opening tag of the node, along with its text, leaving it
+	 * open so that children can be streamed after it
+	 */
+	public void writeStart(Writer writer, String tabs) throws IOException {
+		writeTag(writer, tabs);
+		writer.write(">\n");
+		if (!text.isEmpty()) {
+			writer.write(text);
+		}
+	}
+
+	/**
+	 * Writes the closing tag of a node opened with
+	 * {@link #writeStart(Writer, String)}
+	 */
+	public void writeEnd(Writer writer, String tabs) throws IOException {
+		writer.write(tabs);
+		writer.write("</");
+		writer.write(tag);
+		writer.write(">\n");
+	}
+
+	private void writeTag(Writer writer, String tabs) throws IOException {
+		writer.write(tabs);
+		writer.write("<");
+		writer.write(tag);
+		for (X3DAttribute a : attributes) {
+			writer.write(" ");
+			a.write(writer);
 		}
-		return strb.toString();
 	}
 
 	public void addX3DAttribute(String name, String value) {
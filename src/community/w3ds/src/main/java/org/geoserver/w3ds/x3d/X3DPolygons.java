@@ -9,7 +9,6 @@ package org.geoserver.w3ds.x3d;
 
 import java.io.IOException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Polygon;
 
@@ -50,11 +49,11 @@ public class X3DPolygons extends X3DGeometry {
 		//geoOrigin.addX3DAttribute("geoCoords", "-8.6079026220914 41.533268476858 5.0");
 		geoOrigin.setExpand(true);
 		X3DNode coordinate = new X3DNode("GeoCoordinate");
-		coordinate.addX3DAttribute("point", this.getPoints());
+		coordinate.addX3DAttribute(getPointsAttribute("point"));
 		coordinate.addX3DAttribute(this.geoSystem);
 		coordinate.addX3DNode(geoOrigin);
 		indexedFaceSet.addX3DNode(coordinate);
-		indexedFaceSet.addX3DAttribute(new X3DAttribute("coordIndex", this.getIndexis()));
+		indexedFaceSet.addX3DAttribute(getIndexisAttribute("coordIndex"));
 		indexedFaceSet.addX3DAttribute(new X3DAttribute("solid", "false"));
 		indexedFaceSet.addX3DAttribute(new X3DAttribute("convex", "false"));
 		//indexedFaceSet.addX3DAttribute("creaseAngle", "1");
@@ -62,7 +61,7 @@ public class X3DPolygons extends X3DGeometry {
 		if(this.appearance.isValid()) {
 			if(this.appearance.haveChild("ImageTexture")) {
 				indexedFaceSet.addX3DNode(calculateTextureCoordinates());
-				indexedFaceSet.addX3DAttribute("texCoordIndex", this.getIndexis());
+				indexedFaceSet.addX3DAttribute(getIndexisAttribute("texCoordIndex"));
 			}
 		}
 		
@@ -83,9 +82,9 @@ public class X3DPolygons extends X3DGeometry {
 		// DEBUG
 		X3DNode indexedFaceSet = new X3DNode("IndexedFaceSet");
 		X3DNode coordinate = new X3DNode("Coordinate");
-		coordinate.addX3DAttribute("point", this.getPoints());
+		coordinate.addX3DAttribute(getPointsAttribute("point"));
 		indexedFaceSet.addX3DNode(coordinate);
-		indexedFaceSet.addX3DAttribute(new X3DAttribute("coordIndex", this.getIndexis()));
+		indexedFaceSet.addX3DAttribute(getIndexisAttribute("coordIndex"));
 		indexedFaceSet.addX3DAttribute(new X3DAttribute("solid", "false"));
 		indexedFaceSet.addX3DAttribute(new X3DAttribute("convex", "false"));
 		indexedFaceSet.addX3DAttribute("creaseAngle", "0.3");
@@ -93,7 +92,7 @@ public class X3DPolygons extends X3DGeometry {
 		if(this.appearance.isValid()) {
 			if(this.appearance.haveChild("ImageTexture")) {
 				indexedFaceSet.addX3DNode(calculateTextureCoordinates());
-				indexedFaceSet.addX3DAttribute("texCoordIndex", this.getIndexis());
+				indexedFaceSet.addX3DAttribute(getIndexisAttribute("texCoordIndex"));
 			}
 		}
 		
@@ -105,35 +104,12 @@ public class X3DPolygons extends X3DGeometry {
 	
 	// Very stupid method to calculate the textures coodinates
 	private X3DNode calculateTextureCoordinates() {
-		double bbox[] = new double[4];
-		bbox = calculateBbox(this.coordinates);
-		double lx = bbox[2] - bbox[0];
-		double ly = bbox[3] - bbox[1];
-		StringBuilder strb = new StringBuilder();
-		for(Coordinate c : this.coordinates) {
-			double s; 
-			if(c.x == bbox[0]) {
-				s = 0;
-			}
-			else {
-				s = (c.x - bbox[0]) / lx;
-			}
-			double t; 
-			if(c.y == bbox[1]) {
-				t = 0;
-			}
-			else {
-				t = (c.y - bbox[1]) / ly;
-			}
-			strb.append(s + " " + t + " ");
-		}
 		X3DNode textureCoordinate = new X3DNode("TextureCoordinate");
-		textureCoordinate.addX3DAttribute("point", strb.toString());
+		textureCoordinate.addX3DAttribute(getTextureCoordinatesAttribute("point"));
 		return textureCoordinate;
 	}
 
 	public void addPolygon(Polygon geometry) throws IOException {
-		Coordinate[] c = geometry.getCoordinates();
 		add(geometry.getCoordinates());
 	}
 }
@@ -0,0 +1,107 @@
+/* This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+
+package org.geoserver.w3ds.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geoserver.security.impl.GeoServerRole;
+import org.geoserver.w3ds.service.TileCache.TileKey;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class TileCacheTest {
+
+	static final List<String> NO_ROLES = Collections.emptyList();
+
+	@After
+	public void clearAuthentication() {
+		SecurityContextHolder.getContext().setAuthentication(null);
+	}
+
+	TileKey key(String resourceId, int col, List<String> roles) {
+		return new TileKey(resourceId, 1, 2, col, "EPSG:4326", "model/x3d+xml",
+				roles);
+	}
+
+	@Test
+	public void testKeyRoles() {
+		List<String> admin = Arrays.asList("ROLE_ADMINISTRATOR");
+		assertEquals(key("r1", 3, admin), key("r1", 3, admin));
+		assertEquals(key("r1", 3, admin).hashCode(),
+				key("r1", 3, admin).hashCode());
+		assertFalse(key("r1", 3, admin).equals(key("r1", 3, NO_ROLES)));
+
+		TileCache cache = new TileCache(1024);
+		cache.put(key("r1", 3, admin), new byte[] { 1 }, cache.getVersion());
+		assertArrayEquals(new byte[] { 1 }, cache.get(key("r1", 3, admin)));
+		assertNull(cache.get(key("r1", 3, NO_ROLES)));
+	}
+
+	@Test
+	public void testRolesSorted() {
+		assertEquals(NO_ROLES, TileKey.getRoles());
+
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken("user", null, Arrays
+						.asList(new GeoServerRole("ROLE_B"),
+								new GeoServerRole("ROLE_A"))));
+		assertEquals(Arrays.asList("ROLE_A", "ROLE_B"), TileKey.getRoles());
+	}
+
+	@Test
+	public void testClearResource() {
+		TileCache cache = new TileCache(1024);
+		long version = cache.getVersion();
+		cache.put(key("r1", 1, NO_ROLES), new byte[] { 1 }, version);
+		cache.put(key("r2", 1, NO_ROLES), new byte[] { 2 }, version);
+
+		cache.clear("r1");
+		assertNull(cache.get(key("r1", 1, NO_ROLES)));
+		assertArrayEquals(new byte[] { 2 }, cache.get(key("r2", 1, NO_ROLES)));
+
+		cache.clear();
+		assertNull(cache.get(key("r2", 1, NO_ROLES)));
+	}
+
+	@Test
+	public void testStaleTileNotStored() {
+		TileCache cache = new TileCache(1024);
+		long version = cache.getVersion();
+		// the layer changes while the tile is being encoded
+		cache.clear("r1");
+		cache.put(key("r1", 1, NO_ROLES), new byte[] { 1 }, version);
+		assertNull(cache.get(key("r1", 1, NO_ROLES)));
+	}
+
+	@Test
+	public void testEviction() {
+		TileCache cache = new TileCache(400);
+		long version = cache.getVersion();
+		cache.put(key("r1", 1, NO_ROLES), new byte[100], version);
+		cache.put(key("r1", 2, NO_ROLES), new byte[100], version);
+		cache.put(key("r1", 3, NO_ROLES), new byte[100], version);
+		// touch the first one so that the second is the least recently used
+		cache.get(key("r1", 1, NO_ROLES));
+		cache.put(key("r1", 4, NO_ROLES), new byte[100], version);
+		cache.put(key("r1", 5, NO_ROLES), new byte[100], version);
+
+		assertNull(cache.get(key("r1", 2, NO_ROLES)));
+		assertEquals(100, cache.get(key("r1", 1, NO_ROLES)).length);
+		assertEquals(100, cache.get(key("r1", 5, NO_ROLES)).length);
+
+		// bigger than a quarter of the cache
+		cache.put(key("r1", 6, NO_ROLES), new byte[101], version);
+		assertNull(cache.get(key("r1", 6, NO_ROLES)));
+	}
+}
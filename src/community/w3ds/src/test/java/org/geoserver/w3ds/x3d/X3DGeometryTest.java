@@ -0,0 +1,119 @@
+/* This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+
+package org.geoserver.w3ds.x3d;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Checks the streamed X3D output against the one of the former string
+ * concatenation based rendering
+ */
+public class X3DGeometryTest {
+
+	static final int METRIC = X3DDefinitions.GEOGRAPHIC_METRIC.getCode();
+
+	static final int DEGREES = X3DDefinitions.GEOGRAPHIC_DEGREES.getCode();
+
+	static final Coordinate[] SQUARE = new Coordinate[] { new Coordinate(0, 0),
+			new Coordinate(1, 0), new Coordinate(1, 1), new Coordinate(0, 1),
+			new Coordinate(0, 0) };
+
+	static final Coordinate[] LINE = new Coordinate[] {
+			new Coordinate(1, 1, 5), new Coordinate(2, 3, 6) };
+
+	@Test
+	public void testMetricPolygon() {
+		X3DPolygons polygons = new X3DPolygons(X3DGeometryType.POLYGONS, null,
+				METRIC);
+		polygons.add(SQUARE);
+
+		String expected = "<Shape>\n"
+				+ "\t<IndexedFaceSet coordIndex='0 1 2 3 0 -1 ' solid='false' convex='false' creaseAngle='0.3'>\n"
+				+ "\t\t<Coordinate point='0.0 0.0 0.0 0.0 0.0 1.0 1.0 0.0 1.0 1.0 0.0 0.0 '/>\n"
+				+ "\t</IndexedFaceSet>\n" + "</Shape>\n";
+		assertEquals(expected, polygons.getX3D().toStringSpaces(""));
+	}
+
+	@Test
+	public void testDegreesLines() {
+		X3DAttribute geoSystem = new X3DAttribute("geoSystem",
+				"\"GD\" \"WE\" \"longitude_first\"");
+		X3DLines lines = new X3DLines(X3DGeometryType.LINES, geoSystem,
+				DEGREES);
+		lines.add(LINE);
+		lines.add(SQUARE);
+
+		X3DNode shape = lines.getX3D();
+		assertEquals(render(shape, "\t"), shape.toStringSpaces("\t"));
+		assertEquals("1.0 1.0 5.0 2.0 3.0 6.0 0.0 0.0 0.0 1.0 0.0 0.0 "
+				+ "1.0 1.0 0.0 0.0 1.0 0.0 ", lines.getPoints());
+		assertEquals("0 1 -1 2 3 4 5 2 -1 ", lines.getIndexis());
+	}
+
+	@Test
+	public void testAppearance() {
+		X3DPolygons polygons = new X3DPolygons(X3DGeometryType.POLYGONS, null,
+				METRIC);
+		polygons.setAppearance(new X3DStyles().getDefaultStyle());
+		polygons.add(SQUARE);
+
+		X3DNode shape = polygons.getX3D();
+		assertEquals(render(shape, ""), shape.toStringSpaces(""));
+	}
+
+	@Test
+	public void testBuffersReused() {
+		X3DPolygons polygons = new X3DPolygons(X3DGeometryType.POLYGONS, null,
+				METRIC);
+		// enough points to grow the buffers
+		for (int i = 0; i < 100; i++) {
+			polygons.add(new Coordinate[] { new Coordinate(i, 0),
+					new Coordinate(i, 1), new Coordinate(i, 0) });
+		}
+		polygons.reset();
+		polygons.add(LINE);
+
+		X3DPolygons fresh = new X3DPolygons(X3DGeometryType.POLYGONS, null,
+				METRIC);
+		fresh.add(LINE);
+		assertEquals(fresh.getX3D().toStringSpaces(""), polygons.getX3D()
+				.toStringSpaces(""));
+	}
+
+	/**
+	 * The rendering used before the output got streamed
+	 */
+	static String render(X3DNode node, String tabs) {
+		if (!node.isValid()) {
+			return "";
+		}
+		if (node.isTextX3DNode()) {
+			return node.getText();
+		}
+		StringBuilder strb = new StringBuilder();
+		strb.append(tabs + "<" + node.getTag());
+		for (X3DAttribute a : node.getAttributes()) {
+			strb.append(" " + a.toString());
+		}
+		if (node.getNodes().isEmpty() && node.getText().isEmpty()
+				&& !node.isExpand()) {
+			strb.append("/>\n");
+		} else {
+			strb.append(">\n");
+			if (!node.getText().isEmpty()) {
+				strb.append(node.getText());
+			}
+			for (X3DNode n : node.getNodes()) {
+				strb.append(render(n, tabs + "\t"));
+			}
+			strb.append(tabs + "</" + node.getTag() + ">\n");
+		}
+		return strb.toString();
+	}
+}
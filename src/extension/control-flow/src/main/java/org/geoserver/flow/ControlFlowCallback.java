@@ -60,6 +60,13 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
         return runningRequests.get();
     }
 
+    /**
+     * Returns the flow controllers currently in use, sorted by priority
+     */
+    public List<FlowController> getControllers() {
+        return Collections.unmodifiableList(controllers);
+    }
+
     public void finished(Request request) {
         if(SENTINEL.isOutermostRequest()) {
             runningRequests.decrementAndGet();
@@ -103,11 +110,15 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
                 List<FlowController> controllers = this.controllers;
                 if (controllers.size() > 0) {
                     REQUEST_CONTROLLERS.set(controllers);
-                    long maxTime = timeout > 0 ? System.currentTimeMillis() + timeout : -1;
+                    long maxTime = timeout > 0 ? getStartTime(request) + timeout : -1;
                     for (FlowController flowController : controllers) {
                         if(timeout > 0) {
                             long maxWait = maxTime - System.currentTimeMillis();
-                            if(!flowController.requestIncoming(request, maxWait)) 
+                            // don't let requests whose deadline already expired occupy a slot
+                            // (a non positive timeout would also make the controllers wait forever)
+                            if(maxWait <= 0)
+                                throw new HttpErrorCodeException(503, "Request deadline expired before it could be executed");
+                            if(!flowController.requestIncoming(request, maxWait))
                                 throw new HttpErrorCodeException(503, "Requested timeout out while waiting to be executed");
                          } else {
                             flowController.requestIncoming(request, -1);
@@ -122,6 +133,17 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
         return operation;
     }
 
+    /**
+     * The time the request hit the server, the timeout also accounts for the time spent
+     * parsing it
+     */
+    long getStartTime(Request request) {
+        if (request != null && request.getTimestamp() != null) {
+            return request.getTimestamp().getTime();
+        }
+        return System.currentTimeMillis();
+    }
+
     private void checkConfiguration() {
         // check if we need to rebuild the flow controller list
         if (configurator.isStale()){
@@ -13,9 +13,13 @@ import java.util.logging.Logger;
 
 import org.geoserver.flow.ControlFlowConfigurator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
+import org.geoserver.flow.controller.IpPermitFlowController;
+import org.geoserver.flow.controller.PriorityClassFlowController;
+import org.geoserver.flow.controller.PriorityClassFlowController.PriorityClass;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.UserFlowController;
 import org.geoserver.security.PropertyFileWatcher;
@@ -54,6 +58,8 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
 
         Properties p = configFile.getProperties();
         List<FlowController> newControllers = new ArrayList<FlowController>();
+        int priorityPermits = 0;
+        List<PriorityClass> priorityClasses = new ArrayList<PriorityClass>();
         for (Object okey : p.keySet()) {
             String key = ((String) okey).trim();
             String value = (String) p.get(okey);
@@ -80,7 +86,34 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
                 timeout = queueSize * 1000;
                 continue;
             }
-            if ("ows.global".equalsIgnoreCase(key)) {
+            if ("priority".equalsIgnoreCase(key)) {
+                priorityPermits = queueSize;
+                continue;
+            } else if ("priority".equals(keys[0])) {
+                // priority.<class>=<weight>,<service>[.<method>[.<outputFormat>]]
+                PriorityClass pc = parsePriorityClass(key.substring("priority.".length()),
+                        queueSize, value);
+                if (pc != null) {
+                    priorityClasses.add(pc);
+                }
+                // invalid classes have been reported already
+                continue;
+            } else if ("adaptive".equalsIgnoreCase(key)) {
+                // adaptive=<maxLimit>[,<minLimit>]
+                String[] limits = value.split("\\s*,\\s*");
+                try {
+                    if (limits.length > 1) {
+                        controller = new AdaptiveFlowController(Integer.parseInt(limits[1]),
+                                queueSize);
+                    } else {
+                        controller = new AdaptiveFlowController(queueSize);
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOGGER.severe("Invalid adaptive limits " + value + ": " + e.getMessage());
+                }
+            } else if ("ip.permits".equalsIgnoreCase(key)) {
+                controller = new IpPermitFlowController(queueSize);
+            } else if ("ows.global".equalsIgnoreCase(key)) {
                 controller = new GlobalFlowController(queueSize);
             } else if ("ows".equals(keys[0])) {
                 // todo: check, if possible, if the service, method and output format actually exist
@@ -108,9 +141,40 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
             }
         }
 
+        if (priorityClasses.size() > 0) {
+            if (priorityPermits > 0) {
+                try {
+                    newControllers.add(new PriorityClassFlowController(priorityPermits,
+                            priorityClasses));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.severe("Invalid priority classes: " + e.getMessage());
+                }
+            } else {
+                LOGGER.severe("Priority classes have been configured, but the 'priority' rule "
+                        + "setting the number of permits they share is missing");
+            }
+        }
+
         return newControllers;
     }
 
+    PriorityClass parsePriorityClass(String name, int weight, String value) {
+        String[] tokens = value.split("\\s*,\\s*");
+        if (tokens.length < 2) {
+            LOGGER.severe("Priority class " + name + " should specify the requests it matches, "
+                    + "e.g., priority." + name + "=" + weight + ",wms.GetMap");
+            return null;
+        }
+        String[] matcher = tokens[1].trim().split("\\s*\\.\\s*");
+        try {
+            return new PriorityClass(name, weight, matcher[0], matcher.length > 1 ? matcher[1]
+                    : null, matcher.length > 2 ? matcher[2] : null);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe(e.getMessage());
+            return null;
+        }
+    }
+
     public boolean isStale() {
         return configFile.isStale();
     }
@@ -0,0 +1,153 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A flow controller keeping a separate {@link AdaptiveLimit} for each OWS service and
+ * operation, e.g. <code>wms.getmap</code> or <code>wfs.getfeature</code>. Each limit starts at
+ * the configured minimum and is raised or lowered automatically based on the latency of the
+ * requests, without going past the configured maximum.
+ */
+public class AdaptiveFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    int minLimit;
+
+    int maxLimit;
+
+    ConcurrentHashMap<String, AdaptiveLimit> limits = new ConcurrentHashMap<String, AdaptiveLimit>();
+
+    /**
+     * The limit the current request got into, and the time it did
+     */
+    ThreadLocal<Object[]> acquired = new ThreadLocal<Object[]>();
+
+    /**
+     * Builds an adaptive controller whose minimum limit is the number of available processors
+     *
+     * @param maxLimit the maximum number of concurrent requests per service and operation
+     */
+    public AdaptiveFlowController(int maxLimit) {
+        this(Math.min(maxLimit, Runtime.getRuntime().availableProcessors()), maxLimit);
+    }
+
+    /**
+     * Builds a new {@link AdaptiveFlowController}
+     *
+     * @param minLimit the minimum number of concurrent requests per service and operation
+     * @param maxLimit the maximum number of concurrent requests per service and operation
+     */
+    public AdaptiveFlowController(int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid adaptive limits: " + minLimit + ","
+                    + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    public boolean requestIncoming(Request request, long timeout) {
+        AdaptiveLimit limit = getLimit(getCategory(request));
+        try {
+            if (!limit.acquire(timeout)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Unexpected interruption while waiting for execution");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        acquired.set(new Object[] { limit, System.nanoTime() });
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this + " " + limit.toMap());
+        }
+        return true;
+    }
+
+    public void requestComplete(Request request) {
+        Object[] state = acquired.get();
+        acquired.remove();
+        if (state != null) {
+            AdaptiveLimit limit = (AdaptiveLimit) state[0];
+            long start = (Long) state[1];
+            limit.release((System.nanoTime() - start) / 1000000d);
+        }
+    }
+
+    String getCategory(Request request) {
+        String service = request.getService() == null ? "" : request.getService();
+        String method = request.getRequest() == null ? "" : request.getRequest();
+        return (service + "." + method).toLowerCase();
+    }
+
+    AdaptiveLimit getLimit(String category) {
+        AdaptiveLimit limit = limits.get(category);
+        if (limit == null) {
+            AdaptiveLimit created = new AdaptiveLimit(category, minLimit, maxLimit);
+            limit = limits.putIfAbsent(category, created);
+            if (limit == null) {
+                limit = created;
+                limit.register();
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the current limits, one per service and operation seen so far
+     */
+    public List<AdaptiveLimit> getLimits() {
+        List<AdaptiveLimit> result = new ArrayList<AdaptiveLimit>(limits.values());
+        Collections.sort(result, new Comparator<AdaptiveLimit>() {
+            public int compare(AdaptiveLimit l1, AdaptiveLimit l2) {
+                return l1.getCategory().compareTo(l2.getCategory());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of the current limits and queue statistics, for reporting purposes
+     */
+    public List<Map<String, Object>> getStatistics() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (AdaptiveLimit limit : getLimits()) {
+            result.add(limit.toMap());
+        }
+        return result;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getPriority() {
+        return maxLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveFlowController(" + minLimit + "," + maxLimit + ")";
+    }
+}
@@ -0,0 +1,238 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A concurrency limit adjusting itself to the observed request latency, using a gradient
+ * approach: as long as the average latency stays close to the minimum one observed the limit
+ * grows, as soon as requests start to slow down because of contention the limit is reduced
+ * proportionally.
+ * <p>
+ * The minimum latency is periodically reset to the average one, so that the limit can follow
+ * changes in the data or in the hardware. The limit never goes outside of the configured
+ * minimum and maximum.
+ * </p>
+ * <p>
+ * Instances are registered in the platform MBean server under
+ * <tt>org.geoserver:type=AdaptiveFlowControl,name=&lt;category></tt>.
+ * </p>
+ */
+public class AdaptiveLimit implements AdaptiveLimitMBean {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * How much the average latency can exceed the minimum one before the limit starts to shrink
+     */
+    static final double TOLERANCE = 2.0;
+
+    /**
+     * Weight of the last sample in the average latency
+     */
+    static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * Weight of the newly computed limit, keeps the limit from oscillating too much
+     */
+    static final double LIMIT_SMOOTHING = 0.2;
+
+    /**
+     * Number of samples after which the minimum latency is probed again
+     */
+    static final int PROBE_INTERVAL = 1000;
+
+    final String category;
+
+    final int minLimit;
+
+    final int maxLimit;
+
+    double limit;
+
+    int running;
+
+    int waiting;
+
+    long completed;
+
+    long rejected;
+
+    double minLatency;
+
+    double averageLatency;
+
+    int samples;
+
+    public AdaptiveLimit(String category, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits for " + category + ": "
+                    + minLimit + "," + maxLimit);
+        }
+        this.category = category;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = minLimit;
+    }
+
+    /**
+     * Waits until the number of running requests is below the current limit
+     *
+     * @param timeout max wait in milliseconds, no timeout if not positive
+     * @return true if the request can run, false if the timeout expired
+     */
+    public synchronized boolean acquire(long timeout) throws InterruptedException {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : -1;
+        waiting++;
+        try {
+            while (running >= getLimit()) {
+                if (timeout > 0) {
+                    long maxWait = deadline - System.currentTimeMillis();
+                    if (maxWait <= 0) {
+                        rejected++;
+                        return false;
+                    }
+                    wait(maxWait);
+                } else {
+                    wait();
+                }
+            }
+            running++;
+            return true;
+        } finally {
+            waiting--;
+        }
+    }
+
+    /**
+     * Marks a request as complete, and adjusts the limit based on its latency
+     *
+     * @param latency the request latency, in milliseconds
+     */
+    public synchronized void release(double latency) {
+        running--;
+        completed++;
+        update(latency);
+        notifyAll();
+    }
+
+    void update(double latency) {
+        // track minimum and average latency
+        if (samples == 0) {
+            minLatency = latency;
+            averageLatency = latency;
+        } else {
+            minLatency = Math.min(minLatency, latency);
+            averageLatency = averageLatency * (1 - LATENCY_SMOOTHING) + latency
+                    * LATENCY_SMOOTHING;
+        }
+        if (++samples % PROBE_INTERVAL == 0) {
+            minLatency = averageLatency;
+        }
+
+        // gradient: 1 when requests run as fast as they can, down to 0.5 when they slow down
+        double gradient = averageLatency > 0 ? TOLERANCE * minLatency / averageLatency : 1;
+        gradient = Math.max(0.5, Math.min(1.0, gradient));
+        double newLimit = limit * gradient;
+        // grow only if there is no contention and the limit is actually being used, otherwise
+        // it would drift up forever when the load is low
+        if (gradient >= 1 && running + waiting + 1 >= limit / 2) {
+            newLimit += Math.sqrt(limit);
+        }
+        newLimit = limit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized double getMinLatency() {
+        return minLatency;
+    }
+
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Returns a snapshot of the limit state, for reporting purposes
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("category", category);
+        map.put("limit", getLimit());
+        map.put("minLimit", minLimit);
+        map.put("maxLimit", maxLimit);
+        map.put("running", running);
+        map.put("waiting", waiting);
+        map.put("completed", completed);
+        map.put("rejected", rejected);
+        map.put("minLatency", minLatency);
+        map.put("averageLatency", averageLatency);
+        return map;
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not register the adaptive limit for " + category, e);
+        }
+    }
+
+    ObjectName objectName() throws Exception {
+        return new ObjectName("org.geoserver:type=AdaptiveFlowControl,name="
+                + ObjectName.quote(category));
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveLimit(" + category + "," + getLimit() + ")";
+    }
+}
@@ -0,0 +1,31 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+/**
+ * JMX view of an {@link AdaptiveLimit}
+ */
+public interface AdaptiveLimitMBean {
+
+    String getCategory();
+
+    int getLimit();
+
+    int getMinLimit();
+
+    int getMaxLimit();
+
+    int getRunning();
+
+    int getWaiting();
+
+    long getCompleted();
+
+    long getRejected();
+
+    double getMinLatency();
+
+    double getAverageLatency();
+}
@@ -0,0 +1,41 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import org.geoserver.ows.Request;
+
+/**
+ * A permit based flow controller that throttles concurrent requests made from the same ip (any
+ * ip), a lock free alternative to {@link IpFlowController}
+ */
+public class IpPermitFlowController extends PermitFlowController {
+
+    int permits;
+
+    public IpPermitFlowController(int permits) {
+        this.permits = permits;
+    }
+
+    @Override
+    String getCategory(Request request) {
+        String ip = IpFlowController.getRemoteAddr(request.getHttpRequest());
+        // pool clients without an ip in the "empty ip" category
+        return ip == null ? "" : ip;
+    }
+
+    @Override
+    int getPermits(String category) {
+        return permits;
+    }
+
+    public int getPriority() {
+        return permits;
+    }
+
+    @Override
+    public String toString() {
+        return "IpPermitFlowController(" + permits + ")";
+    }
+}
@@ -0,0 +1,188 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Base class for flow controllers granting each request category (client ip, priority class,
+ * ...) a limited number of permits.
+ * <p>
+ * Unlike the {@link QueueController} subclasses the per category semaphores are created without
+ * any global lock, relying on a striped {@link ConcurrentHashMap}, and requests are never put in
+ * a queue, they just wait for a permit to become available, or for the timeout to expire.
+ * Semaphores that have not been used for a while are purged once too many of them accumulate.
+ * </p>
+ */
+public abstract class PermitFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * Number of stripes of the semaphore map
+     */
+    static final int STRIPES = 64;
+
+    /**
+     * The per category semaphores
+     */
+    ConcurrentHashMap<String, TimedSemaphore> semaphores = new ConcurrentHashMap<String, TimedSemaphore>(
+            16, 0.75f, STRIPES);
+
+    /**
+     * The semaphore the current request got a permit from. It's an instance variable as the same
+     * request will go through all the configured controllers
+     */
+    ThreadLocal<TimedSemaphore> acquired = new ThreadLocal<TimedSemaphore>();
+
+    /**
+     * Number of semaphores at which we start looking for purging stale ones
+     */
+    int maxSemaphores = 100;
+
+    /**
+     * Time it takes for an unused semaphore to be considered stale
+     */
+    int maxAge = 10000;
+
+    /**
+     * Returns the category of the request, or <code>null</code> if the request is not controlled
+     * by this flow controller
+     *
+     * @param request
+     * @return
+     */
+    abstract String getCategory(Request request);
+
+    /**
+     * Returns the number of permits available to the specified category
+     *
+     * @param category
+     * @return
+     */
+    abstract int getPermits(String category);
+
+    public boolean requestIncoming(Request request, long timeout) {
+        String category = getCategory(request);
+        if (category == null) {
+            return true;
+        }
+
+        try {
+            while (true) {
+                TimedSemaphore semaphore = getSemaphore(category);
+                if (timeout > 0) {
+                    if (!semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                        return false;
+                    }
+                } else {
+                    semaphore.acquire();
+                }
+                // the semaphore might have been purged while we were waiting on it, in that case
+                // give back the permit and grab one from the current semaphore
+                if (semaphores.get(category) == semaphore) {
+                    semaphore.touch();
+                    acquired.set(semaphore);
+                    break;
+                }
+                semaphore.release();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Unexpected interruption while waiting for a permit");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this + " permits available for " + category + ": "
+                    + getAvailablePermits(category));
+        }
+        return true;
+    }
+
+    public void requestComplete(Request request) {
+        TimedSemaphore semaphore = acquired.get();
+        acquired.remove();
+        if (semaphore != null) {
+            semaphore.touch();
+            semaphore.release();
+        }
+    }
+
+    TimedSemaphore getSemaphore(String category) {
+        TimedSemaphore semaphore = semaphores.get(category);
+        if (semaphore == null) {
+            purgeStaleSemaphores();
+            TimedSemaphore created = new TimedSemaphore(getPermits(category));
+            semaphore = semaphores.putIfAbsent(category, created);
+            if (semaphore == null) {
+                semaphore = created;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * Removes the semaphores that have all their permits available and have not been used in the
+     * last <code>maxAge</code> milliseconds. Works entry by entry, so it's safe to run it
+     * concurrently with other requests
+     */
+    void purgeStaleSemaphores() {
+        if (semaphores.size() <= maxSemaphores) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, TimedSemaphore>> it = semaphores.entrySet().iterator(); it
+                .hasNext();) {
+            Map.Entry<String, TimedSemaphore> entry = it.next();
+            TimedSemaphore semaphore = entry.getValue();
+            if (semaphore.isIdle() && now - semaphore.lastModified > maxAge) {
+                semaphores.remove(entry.getKey(), semaphore);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of permits currently available for the specified category
+     *
+     * @param category
+     * @return
+     */
+    public int getAvailablePermits(String category) {
+        TimedSemaphore semaphore = semaphores.get(category);
+        return semaphore == null ? getPermits(category) : semaphore.availablePermits();
+    }
+
+    @SuppressWarnings("serial")
+    static class TimedSemaphore extends Semaphore {
+        final int permits;
+
+        volatile long lastModified = System.currentTimeMillis();
+
+        TimedSemaphore(int permits) {
+            super(permits, true);
+            this.permits = permits;
+        }
+
+        void touch() {
+            lastModified = System.currentTimeMillis();
+        }
+
+        boolean isIdle() {
+            return availablePermits() == permits;
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geoserver.ows.Request;
+
+/**
+ * A permit based flow controller sharing a fixed number of concurrent requests among a set of
+ * weighted priority classes, e.g., GWC tile misses, ad-hoc WMS requests and WFS exports. Each
+ * class gets one permit, and a share of the others proportional to its weight, so that a flood
+ * of requests in one class cannot starve the others. The shares add up to the total permits.
+ * <p>
+ * Requests are assigned to the most specific class matching their service, method and output
+ * format, requests not matching any class are not controlled. Tile requests served by the
+ * integrated GeoWebCache, including the metatile rendering they trigger on a cache miss, have
+ * <code>gwc</code> as their service.
+ * </p>
+ */
+public class PriorityClassFlowController extends PermitFlowController {
+
+    int permits;
+
+    List<PriorityClass> classes;
+
+    Map<String, Integer> shares = new LinkedHashMap<String, Integer>();
+
+    public PriorityClassFlowController(int permits, List<PriorityClass> classes) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive");
+        }
+        this.permits = permits;
+        this.classes = new ArrayList<PriorityClass>(classes);
+        // most specific matchers first, so that "wms.GetMap" wins over "wms"
+        Collections.sort(this.classes, new Comparator<PriorityClass>() {
+            public int compare(PriorityClass c1, PriorityClass c2) {
+                return c2.getSpecificity() - c1.getSpecificity();
+            }
+        });
+
+        if (permits < classes.size()) {
+            throw new IllegalArgumentException("The " + permits + " permits are not enough "
+                    + "for " + classes.size() + " priority classes, each needs at least one");
+        }
+        allocate(classes);
+        // classes never go stale, do not bother scanning them
+        maxSemaphores = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gives each class one permit, and shares the others proportionally to the class weights
+     * with the largest remainder method, so that the shares add up exactly to the permits
+     */
+    void allocate(List<PriorityClass> classes) {
+        final int n = classes.size();
+        long totalWeight = 0;
+        for (PriorityClass pc : classes) {
+            totalWeight += pc.weight;
+        }
+
+        final long spare = permits - n;
+        int[] allocated = new int[n];
+        final long[] remainders = new long[n];
+        long left = spare;
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            long quota = spare * classes.get(i).weight;
+            allocated[i] = 1 + (int) (quota / totalWeight);
+            remainders[i] = quota % totalWeight;
+            left -= quota / totalWeight;
+            order.add(i);
+        }
+        // the permits left go to the classes with the largest remainders, in order
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                if (remainders[i1] != remainders[i2]) {
+                    return remainders[i1] > remainders[i2] ? -1 : 1;
+                }
+                return i1 - i2;
+            }
+        });
+        for (int i = 0; i < left; i++) {
+            allocated[order.get(i)]++;
+        }
+
+        for (int i = 0; i < n; i++) {
+            shares.put(classes.get(i).name, allocated[i]);
+        }
+    }
+
+    @Override
+    String getCategory(Request request) {
+        for (PriorityClass pc : classes) {
+            if (pc.matches(request)) {
+                return pc.name;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    int getPermits(String category) {
+        Integer share = shares.get(category);
+        return share == null ? permits : share;
+    }
+
+    /**
+     * Returns the configured classes
+     *
+     * @return
+     */
+    public List<PriorityClass> getClasses() {
+        return Collections.unmodifiableList(classes);
+    }
+
+    public int getPriority() {
+        return permits;
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityClassFlowController(" + permits + "," + shares + ")";
+    }
+
+    /**
+     * A priority class, matching requests by service, method and output format
+     */
+    public static class PriorityClass {
+        String name;
+
+        int weight;
+
+        String service;
+
+        String method;
+
+        String outputFormat;
+
+        public PriorityClass(String name, int weight, String service, String method,
+                String outputFormat) {
+            if (name == null)
+                throw new IllegalArgumentException("Invalid priority class, name cannot be null");
+            if (weight <= 0)
+                throw new IllegalArgumentException("Invalid priority class " + name
+                        + ", weight must be positive");
+            if (service == null)
+                throw new IllegalArgumentException("Invalid priority class " + name
+                        + ", service cannot be null");
+            else if (method == null && outputFormat != null)
+                throw new IllegalArgumentException("Invalid priority class " + name
+                        + ", output format cannot be provided without a method");
+            this.name = name;
+            this.weight = weight;
+            this.service = service;
+            this.method = method;
+            this.outputFormat = outputFormat;
+        }
+
+        boolean matches(Request request) {
+            if (!service.equalsIgnoreCase(request.getService()))
+                return false;
+            if (method != null && !method.equalsIgnoreCase(request.getRequest()))
+                return false;
+            if (outputFormat != null && !outputFormat.equalsIgnoreCase(request.getOutputFormat()))
+                return false;
+            return true;
+        }
+
+        int getSpecificity() {
+            return outputFormat != null ? 2 : (method != null ? 1 : 0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getOutputFormat() {
+            return outputFormat;
+        }
+
+        @Override
+        public String toString() {
+            return "PriorityClass(" + name + "," + weight + "," + service + "," + method + ","
+                    + outputFormat + ")";
+        }
+    }
+}
@@ -8,6 +8,7 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.geoserver.ows.HttpErrorCodeException;
@@ -57,6 +58,29 @@ public class ControlFlowCallbackTest {
         callback.finished(null);
     }
 
+    @Test
+    public void testExpiredDeadline() {
+        ControlFlowCallback callback = new ControlFlowCallback();
+        TestingConfigurator tc = new TestingConfigurator();
+        tc.timeout = 300;
+        CountingController controller = new CountingController(1, 0);
+        tc.controllers.add(controller);
+        callback.configurator = tc;
+
+        // the request has been around longer than the timeout already
+        Request request = new Request();
+        request.setTimestamp(new Date(System.currentTimeMillis() - 1000));
+        try {
+            callback.operationDispatched(request, null);
+            fail("A HTTP 503 should have been raised!");
+        } catch(HttpErrorCodeException e) {
+            assertEquals(503, e.getErrorCode());
+        }
+        // the request did not even get to the controller
+        assertEquals(0, controller.requestIncomingCalls);
+        callback.finished(request);
+    }
+
     /**
      * A wide open configurator to be used for testing
      */
@@ -13,9 +13,13 @@ import java.util.Properties;
 
 import org.geoserver.flow.ControllerPriorityComparator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveFlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
+import org.geoserver.flow.controller.IpPermitFlowController;
+import org.geoserver.flow.controller.PriorityClassFlowController;
+import org.geoserver.flow.controller.PriorityClassFlowController.PriorityClass;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.UserFlowController;
 import org.geoserver.security.PropertyFileWatcher;
@@ -67,6 +71,69 @@ public class DefaultControlFlowConfigurationTest {
         assertEquals(14, ipSc.getPriority());
     }
 
+    @Test
+    public void testParsingPermits() throws Exception {
+        Properties p = new Properties();
+        p.put("ip.permits", "4");
+        p.put("priority", "10");
+        p.put("priority.tiles", "3,gwc");
+        p.put("priority.maps", "2, wms.GetMap");
+        p.put("priority.exports", "1,wfs.GetFeature.shape-zip");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+
+        assertEquals(2, controllers.size());
+        assertTrue(controllers.get(0) instanceof IpPermitFlowController);
+        assertEquals(4, controllers.get(0).getPriority());
+        PriorityClassFlowController pc = (PriorityClassFlowController) controllers.get(1);
+        assertEquals(10, pc.getPriority());
+        assertEquals(3, pc.getClasses().size());
+        // most specific class first
+        PriorityClass exports = pc.getClasses().get(0);
+        assertEquals("exports", exports.getName());
+        assertEquals(1, exports.getWeight());
+        assertEquals("wfs", exports.getService());
+        assertEquals("GetFeature", exports.getMethod());
+        assertEquals("shape-zip", exports.getOutputFormat());
+        assertEquals("maps", pc.getClasses().get(1).getName());
+        assertEquals("GetMap", pc.getClasses().get(1).getMethod());
+        assertEquals("tiles", pc.getClasses().get(2).getName());
+        assertEquals(3, pc.getClasses().get(2).getWeight());
+    }
+
+    @Test
+    public void testParsingAdaptive() throws Exception {
+        Properties p = new Properties();
+        p.put("adaptive", "32, 4");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        assertEquals(1, controllers.size());
+        AdaptiveFlowController ac = (AdaptiveFlowController) controllers.get(0);
+        assertEquals(4, ac.getMinLimit());
+        assertEquals(32, ac.getMaxLimit());
+        assertEquals(32, ac.getPriority());
+
+        p.put("adaptive", "2");
+        ac = (AdaptiveFlowController) configurator.buildFlowControllers().get(0);
+        assertTrue(ac.getMinLimit() <= 2);
+        assertEquals(2, ac.getMaxLimit());
+    }
+
+    @Test
+    public void testPriorityClassesWithoutPermits() throws Exception {
+        Properties p = new Properties();
+        p.put("priority.tiles", "3,gwc");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        assertEquals(0, configurator.buildFlowControllers().size());
+    }
+
     static class FixedWatcher extends PropertyFileWatcher {
         boolean stale = true;
 
@@ -0,0 +1,146 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+
+public class AdaptiveFlowControllerTest extends AbstractFlowControllerTest {
+
+    private static final long MAX_WAIT = 10000;
+
+    @Test
+    public void testLimitGrowsWhenSaturated() {
+        AdaptiveLimit limit = new AdaptiveLimit("wms.getmap", 2, 20);
+        assertEquals(2, limit.getLimit());
+        // constant latency with the limit fully used, the limit should grow up to the max
+        limit.running = 20;
+        for (int i = 0; i < 200; i++) {
+            limit.update(100);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void testLimitStableWhenIdle() {
+        AdaptiveLimit limit = new AdaptiveLimit("wms.getmap", 2, 20);
+        limit.limit = 10;
+        // a single request at a time, no point in growing
+        for (int i = 0; i < 200; i++) {
+            limit.update(100);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void testLimitShrinksOnContention() {
+        AdaptiveLimit limit = new AdaptiveLimit("wms.getmap", 2, 20);
+        limit.limit = 20;
+        limit.running = 20;
+        limit.update(100);
+        // latency grows well past the tolerance, the limit should go down to the minimum
+        for (int i = 0; i < 200; i++) {
+            limit.update(1000);
+        }
+        assertEquals(2, limit.getLimit());
+        assertEquals(100, limit.getMinLatency(), 0);
+        assertTrue(limit.getAverageLatency() > 900);
+    }
+
+    @Test
+    public void testMinLatencyProbe() {
+        AdaptiveLimit limit = new AdaptiveLimit("wms.getmap", 2, 20);
+        limit.update(10);
+        for (int i = 1; i < AdaptiveLimit.PROBE_INTERVAL; i++) {
+            limit.update(100);
+        }
+        // the minimum has been reset to the average latency
+        assertEquals(limit.getAverageLatency(), limit.getMinLatency(), 0);
+    }
+
+    @Test
+    public void testBlocking() {
+        AdaptiveFlowController controller = new AdaptiveFlowController(1, 1);
+        assertEquals(1, controller.getPriority());
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildRequest("WMS",
+                "GetMap"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildRequest("WMS",
+                "GetMap"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildRequest("WFS",
+                "GetFeature"), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            // each service/operation has its own limit
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(ThreadState.PROCESSING, t3.state);
+
+            List<AdaptiveLimit> limits = controller.getLimits();
+            assertEquals(2, limits.size());
+            assertEquals("wfs.getfeature", limits.get(0).getCategory());
+            assertEquals("wms.getmap", limits.get(1).getCategory());
+            assertEquals(1, limits.get(1).getRunning());
+            assertEquals(1, limits.get(1).getWaiting());
+
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitBlocked(t2, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t2.state);
+            assertEquals(1, limits.get(1).getCompleted());
+
+            t2.interrupt();
+            t3.interrupt();
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        AdaptiveFlowController controller = new AdaptiveFlowController(1, 1);
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildRequest("WMS",
+                "GetMap"), 100, 400, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildRequest("WMS",
+                "GetMap"), 100, 400, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+
+            waitTerminated(t1, MAX_WAIT);
+            waitTerminated(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.COMPLETE, t1.state);
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+            AdaptiveLimit limit = controller.getLimits().get(0);
+            assertEquals(1, limit.getRejected());
+            assertEquals(0, limit.getRunning());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    Request buildRequest(String service, String method) {
+        Request request = new Request();
+        request.setService(service);
+        request.setRequest(method);
+        return request;
+    }
+}
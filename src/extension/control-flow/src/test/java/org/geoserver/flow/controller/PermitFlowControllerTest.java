@@ -0,0 +1,201 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.flow.controller.PriorityClassFlowController.PriorityClass;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+
+public class PermitFlowControllerTest extends AbstractFlowControllerTest {
+
+    private static final long MAX_WAIT = 10000;
+
+    @Test
+    public void testIpPermits() {
+        IpPermitFlowController controller = new IpPermitFlowController(1);
+        assertEquals(1, controller.getPriority());
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildRequest(
+                "192.168.1.1", null, null), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildRequest(
+                "192.168.1.1", null, null), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildRequest(
+                "192.168.1.2", null, null), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            // same ip waits, the other ip goes through
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(ThreadState.PROCESSING, t3.state);
+
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitBlocked(t2, MAX_WAIT);
+            assertEquals(ThreadState.COMPLETE, t1.state);
+            assertEquals(ThreadState.PROCESSING, t2.state);
+
+            t2.interrupt();
+            t3.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            waitTerminated(t3, MAX_WAIT);
+            assertEquals(1, controller.getAvailablePermits("192.168.1.1"));
+            assertEquals(1, controller.getAvailablePermits("192.168.1.2"));
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        IpPermitFlowController controller = new IpPermitFlowController(1);
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildRequest(
+                "192.168.1.1", null, null), 100, 400, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildRequest(
+                "192.168.1.1", null, null), 100, 400, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+
+            waitTerminated(t1, MAX_WAIT);
+            waitTerminated(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.COMPLETE, t1.state);
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+            // the timed out request did not steal a permit on completion
+            assertEquals(1, controller.getAvailablePermits("192.168.1.1"));
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testPurgeStale() throws Exception {
+        IpPermitFlowController controller = new IpPermitFlowController(1);
+        controller.maxSemaphores = 1;
+        controller.maxAge = 0;
+
+        Request r1 = buildRequest("192.168.1.1", null, null);
+        assertTrue(controller.requestIncoming(r1, 0));
+        controller.requestComplete(r1);
+        Request r2 = buildRequest("192.168.1.2", null, null);
+        assertTrue(controller.requestIncoming(r2, 0));
+        controller.requestComplete(r2);
+        assertEquals(2, controller.semaphores.size());
+
+        // a busy semaphore is not purged
+        controller.semaphores.get("192.168.1.1").acquire();
+        Thread.sleep(10);
+        Request r3 = buildRequest("192.168.1.3", null, null);
+        assertTrue(controller.requestIncoming(r3, 0));
+        assertTrue(controller.semaphores.containsKey("192.168.1.1"));
+        assertFalse(controller.semaphores.containsKey("192.168.1.2"));
+        assertTrue(controller.semaphores.containsKey("192.168.1.3"));
+        controller.requestComplete(r3);
+        controller.semaphores.get("192.168.1.1").release();
+    }
+
+    @Test
+    public void testPriorityClasses() {
+        PriorityClass tiles = new PriorityClass("tiles", 2, "gwc", null, null);
+        PriorityClass wms = new PriorityClass("wms", 1, "wms", null, null);
+        PriorityClass exports = new PriorityClass("exports", 1, "wfs", "GetFeature",
+                "shape-zip");
+        PriorityClassFlowController controller = new PriorityClassFlowController(4,
+                Arrays.asList(tiles, wms, exports));
+        assertEquals(4, controller.getPriority());
+        assertEquals(2, controller.getPermits("tiles"));
+        assertEquals(1, controller.getPermits("wms"));
+        assertEquals(1, controller.getPermits("exports"));
+
+        assertEquals("tiles", controller.getCategory(buildRequest(null, "gwc", "dispatch")));
+        assertEquals("wms", controller.getCategory(buildRequest(null, "WMS", "GetMap")));
+        Request export = buildRequest(null, "WFS", "GetFeature");
+        export.setOutputFormat("SHAPE-ZIP");
+        assertEquals("exports", controller.getCategory(export));
+        assertNull(controller.getCategory(buildRequest(null, "WFS", "GetFeature")));
+
+        // a busy class does not block the others
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildRequest(null,
+                "wms", "GetMap"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildRequest(null,
+                "wms", "GetMap"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildRequest(null,
+                "gwc", "dispatch"), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(ThreadState.PROCESSING, t3.state);
+            assertEquals(1, controller.getAvailablePermits("tiles"));
+
+            t1.interrupt();
+            t2.interrupt();
+            t3.interrupt();
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testPriorityClassShares() {
+        // rounding each share on its own would hand out 3 + 3 permits
+        PriorityClassFlowController controller = new PriorityClassFlowController(5,
+                Arrays.asList(new PriorityClass("wms", 1, "wms", null, null), new PriorityClass(
+                        "wfs", 1, "wfs", null, null)));
+        assertEquals(3, controller.getPermits("wms"));
+        assertEquals(2, controller.getPermits("wfs"));
+
+        // everyone gets at least one, the rest goes by weight
+        controller = new PriorityClassFlowController(10, Arrays.asList(new PriorityClass("tiles",
+                20, "gwc", null, null), new PriorityClass("wms", 1, "wms", null, null),
+                new PriorityClass("wfs", 1, "wfs", null, null)));
+        assertEquals(8, controller.getPermits("tiles"));
+        assertEquals(1, controller.getPermits("wms"));
+        assertEquals(1, controller.getPermits("wfs"));
+
+        try {
+            new PriorityClassFlowController(1, Arrays.asList(new PriorityClass("wms", 1, "wms",
+                    null, null), new PriorityClass("wfs", 1, "wfs", null, null)));
+            fail("Not enough permits for the classes");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+    }
+
+    Request buildRequest(String ipAddress, String service, String method) {
+        Request request = new Request();
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setRemoteAddr(ipAddress == null ? "127.0.0.1" : ipAddress);
+        request.setHttpRequest(httpRequest);
+        request.setService(service);
+        request.setRequest(method);
+        return request;
+    }
+}
@@ -0,0 +1,19 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.List;
+
+/**
+ * A {@link MonitorDAO} keeping running per layer, service and operation aggregates of the
+ * requests it stores, so that they can be reported without scanning the request history.
+ */
+public interface AggregatingMonitorDAO extends MonitorDAO {
+
+    /**
+     * Returns the current aggregates of the specified type, sorted by name
+     */
+    List<RequestAggregate> getAggregates(RequestAggregate.Type type);
+}
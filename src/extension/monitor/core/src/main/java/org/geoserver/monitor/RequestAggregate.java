@@ -0,0 +1,258 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.geoserver.monitor.RequestData.Status;
+
+/**
+ * Running statistics about a group of requests, e.g., all the requests hitting a layer, a service
+ * or an operation: request count, failures, response bytes and a latency histogram used to
+ * estimate percentiles.
+ * <p>
+ * Updates are lock free, the histogram uses buckets growing by 20% so percentiles are estimated
+ * with an error below 20%.
+ * </p>
+ */
+public class RequestAggregate {
+
+    public static enum Type {
+        LAYER, SERVICE, OPERATION;
+    }
+
+    static final int BUCKETS = 100;
+
+    /**
+     * Upper bounds of the latency histogram buckets, in milliseconds
+     */
+    static final long[] BOUNDS = new long[BUCKETS];
+    static {
+        BOUNDS[0] = 0;
+        for (int i = 1; i < BUCKETS; i++) {
+            BOUNDS[i] = Math.max(BOUNDS[i - 1] + 1, (long) Math.ceil(BOUNDS[i - 1] * 1.2));
+        }
+    }
+
+    final Type type;
+
+    final String name;
+
+    final AtomicLong count = new AtomicLong();
+
+    final AtomicLong failed = new AtomicLong();
+
+    final AtomicLong bytes = new AtomicLong();
+
+    final AtomicLong totalTime = new AtomicLong();
+
+    final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    public RequestAggregate(Type type, String name) {
+        this.type = type;
+        this.name = name;
+    }
+
+    /**
+     * Adds a request to the aggregate
+     */
+    public void add(long time, long responseLength, boolean error) {
+        update(time, responseLength, error, 1);
+    }
+
+    /**
+     * Removes a request previously added to the aggregate
+     */
+    public void remove(long time, long responseLength, boolean error) {
+        update(time, responseLength, error, -1);
+    }
+
+    void update(long time, long responseLength, boolean error, int delta) {
+        count.addAndGet(delta);
+        if (error) {
+            failed.addAndGet(delta);
+        }
+        bytes.addAndGet(delta * Math.max(0, responseLength));
+        totalTime.addAndGet(delta * Math.max(0, time));
+        histogram.addAndGet(bucket(time), delta);
+    }
+
+    /**
+     * Returns the names of the aggregates of the specified type the request contributes to
+     */
+    public static List<String> names(Type type, RequestData data) {
+        switch (type) {
+        case LAYER:
+            return new ArrayList<String>(data.getResources());
+        case SERVICE:
+            if (data.getService() != null) {
+                return Collections.singletonList(data.getService());
+            }
+            break;
+        case OPERATION:
+            if (data.getService() != null && data.getOperation() != null) {
+                return Collections.singletonList(data.getService() + "." + data.getOperation());
+            }
+            break;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Whether the request counts as a failed one
+     */
+    public static boolean isFailed(RequestData data) {
+        return data.getStatus() == Status.FAILED || data.getError() != null;
+    }
+
+    static int bucket(long time) {
+        int idx = Arrays.binarySearch(BOUNDS, Math.max(0, time));
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        return Math.min(idx, BUCKETS - 1);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getTotalTime() {
+        return totalTime.get();
+    }
+
+    public double getAverageTime() {
+        long count = this.count.get();
+        return count > 0 ? (double) totalTime.get() / count : 0;
+    }
+
+    /**
+     * Estimates the specified latency percentile, in milliseconds
+     *
+     * @param percentile a value between 0 and 1
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total <= 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return BOUNDS[BUCKETS - 1];
+    }
+
+    /**
+     * Returns a point in time copy of the aggregate, suitable for encoding
+     */
+    public Summary summarize() {
+        Summary s = new Summary();
+        s.type = type;
+        s.name = name;
+        s.count = getCount();
+        s.failed = getFailed();
+        s.bytes = getBytes();
+        s.averageTime = getAverageTime();
+        s.p50 = getPercentile(0.5);
+        s.p95 = getPercentile(0.95);
+        s.p99 = getPercentile(0.99);
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestAggregate(" + type + "," + name + "," + count + ")";
+    }
+
+    /**
+     * Plain copy of the aggregate values
+     */
+    public static class Summary {
+        Type type;
+
+        String name;
+
+        long count;
+
+        long failed;
+
+        long bytes;
+
+        double averageTime;
+
+        long p50;
+
+        long p95;
+
+        long p99;
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getAverageTime() {
+            return averageTime;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import org.geoserver.monitor.Query.SortOrder;
+import org.geoserver.monitor.RequestAggregate.Type;
+import org.geotools.util.logging.Logging;
+
+/**
+ * In memory monitor storage keeping the last <tt>ring.capacity</tt> requests (10000 by
+ * default) in a fixed size, lock free ring buffer.
+ * <p>
+ * Per layer, service and operation aggregates of the requests in the buffer are updated as
+ * requests are saved and evicted, so they can be reported without scanning the history.
+ * </p>
+ */
+public class RingBufferMonitorDAO extends MemoryMonitorDAO implements AggregatingMonitorDAO {
+
+    static final Logger LOGGER = Logging.getLogger(RingBufferMonitorDAO.class);
+
+    public static final String NAME = "ring";
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    Map<Long, RequestData> running = new ConcurrentHashMap<Long, RequestData>();
+
+    volatile Ring ring = new Ring(DEFAULT_CAPACITY);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(MonitorConfig config) {
+        Integer capacity = null;
+        try {
+            capacity = config.getProperty(NAME, "capacity", Integer.class);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Invalid ring buffer capacity, using the default: " + e.getMessage());
+        }
+        if (capacity == null || capacity <= 0) {
+            capacity = DEFAULT_CAPACITY;
+        }
+        if (capacity != ring.capacity) {
+            ring = new Ring(capacity);
+        }
+    }
+
+    @Override
+    public void add(RequestData data) {
+        running.put(data.getId(), data);
+    }
+
+    @Override
+    public void save(RequestData data) {
+        running.remove(data.getId());
+        ring.add(data);
+    }
+
+    @Override
+    public RequestData getRequest(long id) {
+        RequestData data = running.get(id);
+        if (data != null) {
+            return data;
+        }
+        return ring.get(id);
+    }
+
+    @Override
+    public List<RequestData> getRequests() {
+        List<RequestData> requests = new ArrayList<RequestData>(running.values());
+        ring.collect(requests);
+        return requests;
+    }
+
+    /**
+     * Filters and pages the requests into a new list, instead of removing the non matching ones
+     * from a copy of the whole history
+     */
+    @Override
+    public List<RequestData> getRequests(Query q) {
+        final List<RequestData> requests = new ArrayList<RequestData>();
+        visit(q, new RequestDataVisitor() {
+            public void visit(RequestData data, Object... aggregates) {
+                requests.add(data);
+            }
+        });
+
+        if (q.getSortBy() != null) {
+            Collections.sort(requests, new Sorter(q.getSortBy(), q.getSortOrder()));
+        } else if (q.getFromDate() != null || q.getToDate() != null) {
+            Collections.sort(requests, new Sorter("startTime", SortOrder.DESC));
+        }
+        return requests;
+    }
+
+    @Override
+    public void getRequests(Query q, RequestDataVisitor visitor) {
+        if (q.getSortBy() != null || q.getFromDate() != null || q.getToDate() != null) {
+            // sorted, the page has to be collected first
+            for (RequestData r : getRequests(q)) {
+                visitor.visit(r);
+            }
+        } else {
+            visit(q, visitor);
+        }
+    }
+
+    /**
+     * Visits the requests matching the query filter and date range, in buffer order, skipping
+     * the first <tt>offset</tt> ones and stopping after <tt>count</tt> ones. The running requests
+     * and the buffer are walked in place, without copying them
+     */
+    void visit(Query q, RequestDataVisitor visitor) {
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        if (q.getFilter() != null) {
+            Filter f = q.getFilter();
+            predicates.add(new PropertyCompare(f.getLeft(), f.getType(), f.getRight()));
+        }
+        if (q.getFromDate() != null || q.getToDate() != null) {
+            predicates.add(new DateRange(q.getFromDate(), q.getToDate()));
+        }
+
+        long offset = q.getOffset() != null ? q.getOffset() : 0;
+        long count = q.getCount() != null ? q.getCount() : Long.MAX_VALUE;
+        long matched = 0, visited = 0;
+        List<Iterable<RequestData>> sources = new ArrayList<Iterable<RequestData>>();
+        sources.add(running.values());
+        sources.add(ring);
+        for (Iterable<RequestData> source : sources) {
+            O: for (RequestData r : source) {
+                if (visited >= count) {
+                    return;
+                }
+                for (Predicate p : predicates) {
+                    if (!p.matches(r)) {
+                        continue O;
+                    }
+                }
+                if (matched++ < offset) {
+                    continue;
+                }
+                visitor.visit(r);
+                visited++;
+            }
+        }
+    }
+
+    public List<RequestAggregate> getAggregates(Type type) {
+        List<RequestAggregate> result = new ArrayList<RequestAggregate>();
+        for (RequestAggregate aggregate : ring.aggregates.get(type).values()) {
+            if (aggregate.getCount() > 0) {
+                result.add(aggregate);
+            }
+        }
+        Collections.sort(result, new Comparator<RequestAggregate>() {
+            public int compare(RequestAggregate a1, RequestAggregate a2) {
+                return a1.getName().compareTo(a2.getName());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Number of requests the buffer can hold
+     */
+    public int getCapacity() {
+        return ring.capacity;
+    }
+
+    @Override
+    public void clear() {
+        running.clear();
+        ring = new Ring(ring.capacity);
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+        super.dispose();
+    }
+
+    /**
+     * The values a request contributed to the aggregates, kept aside so that they can be
+     * removed when the request is evicted even if the request has been modified in the meantime
+     */
+    static class Entry {
+        final RequestData data;
+
+        final Map<Type, List<String>> names = new EnumMap<Type, List<String>>(Type.class);
+
+        final long time;
+
+        final long bytes;
+
+        final boolean error;
+
+        Entry(RequestData data) {
+            this.data = data;
+            for (Type type : Type.values()) {
+                names.put(type, RequestAggregate.names(type, data));
+            }
+            this.time = data.getTotalTime();
+            this.bytes = data.getResponseLength();
+            this.error = RequestAggregate.isFailed(data);
+        }
+    }
+
+    /**
+     * The ring buffer and the aggregates of its content
+     */
+    static class Ring implements Iterable<RequestData> {
+        final int capacity;
+
+        final AtomicReferenceArray<Entry> slots;
+
+        final AtomicLong next = new AtomicLong();
+
+        final Map<Type, ConcurrentHashMap<String, RequestAggregate>> aggregates;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<Entry>(capacity);
+            this.aggregates = new EnumMap<Type, ConcurrentHashMap<String, RequestAggregate>>(
+                    Type.class);
+            for (Type type : Type.values()) {
+                aggregates.put(type, new ConcurrentHashMap<String, RequestAggregate>());
+            }
+        }
+
+        void add(RequestData data) {
+            Entry entry = new Entry(data);
+            aggregate(entry, true);
+
+            long seq = next.getAndIncrement();
+            Entry evicted = slots.getAndSet((int) (seq % capacity), entry);
+            if (evicted != null) {
+                aggregate(evicted, false);
+            }
+        }
+
+        void aggregate(Entry entry, boolean add) {
+            for (Map.Entry<Type, List<String>> names : entry.names.entrySet()) {
+                for (String name : names.getValue()) {
+                    update(names.getKey(), name, entry, add);
+                }
+            }
+        }
+
+        void update(Type type, String name, Entry entry, boolean add) {
+            ConcurrentHashMap<String, RequestAggregate> map = aggregates.get(type);
+            RequestAggregate aggregate = map.get(name);
+            if (aggregate == null) {
+                RequestAggregate created = new RequestAggregate(type, name);
+                aggregate = map.putIfAbsent(name, created);
+                if (aggregate == null) {
+                    aggregate = created;
+                }
+            }
+            if (add) {
+                aggregate.add(entry.time, entry.bytes, entry.error);
+            } else {
+                aggregate.remove(entry.time, entry.bytes, entry.error);
+            }
+        }
+
+        /**
+         * Adds the buffer contents to the list, oldest first
+         */
+        void collect(List<RequestData> requests) {
+            for (RequestData data : this) {
+                requests.add(data);
+            }
+        }
+
+        /**
+         * Walks the buffer contents in place, oldest first. Requests added while iterating may
+         * or may not be returned
+         */
+        public Iterator<RequestData> iterator() {
+            final long last = next.get();
+            return new Iterator<RequestData>() {
+                long seq = Math.max(0, last - capacity);
+
+                RequestData data = advance();
+
+                RequestData advance() {
+                    while (seq < last) {
+                        Entry entry = slots.get((int) (seq++ % capacity));
+                        if (entry != null) {
+                            return entry.data;
+                        }
+                    }
+                    return null;
+                }
+
+                public boolean hasNext() {
+                    return data != null;
+                }
+
+                public RequestData next() {
+                    if (data == null) {
+                        throw new NoSuchElementException();
+                    }
+                    RequestData result = data;
+                    data = advance();
+                    return result;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        /**
+         * Looks up a request by id, newest first
+         */
+        RequestData get(long id) {
+            long last = next.get();
+            long first = Math.max(0, last - capacity);
+            for (long seq = last - 1; seq >= first; seq--) {
+                Entry entry = slots.get((int) (seq % capacity));
+                if (entry != null && entry.data.getId() == id) {
+                    return entry.data;
+                }
+            }
+            return null;
+        }
+    }
+}
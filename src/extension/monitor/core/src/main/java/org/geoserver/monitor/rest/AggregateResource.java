@@ -0,0 +1,99 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geoserver.monitor.AggregatingMonitorDAO;
+import org.geoserver.monitor.Monitor;
+import org.geoserver.monitor.MonitorDAO;
+import org.geoserver.monitor.Query;
+import org.geoserver.monitor.RequestAggregate;
+import org.geoserver.monitor.RequestAggregate.Summary;
+import org.geoserver.monitor.RequestAggregate.Type;
+import org.geoserver.monitor.RequestData;
+import org.geoserver.monitor.RequestDataVisitor;
+import org.geoserver.rest.ReflectiveResource;
+import org.geoserver.rest.RestletException;
+import org.restlet.data.Status;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Reports per layer, service or operation request aggregates: count, failures, bytes and
+ * latency percentiles.
+ * <p>
+ * Aggregates are taken from the monitor storage when it maintains them (see
+ * {@link AggregatingMonitorDAO}), otherwise they are computed scanning the stored requests.
+ * </p>
+ */
+public class AggregateResource extends ReflectiveResource {
+
+    Monitor monitor;
+
+    public AggregateResource(Monitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    protected Object handleObjectGet() throws Exception {
+        String type = getAttribute("type");
+        Type aggregateType;
+        try {
+            aggregateType = Type.valueOf(type.toUpperCase());
+        } catch (Exception e) {
+            throw new RestletException("Unknown aggregate type " + type
+                    + ", should be one of layer, service, operation",
+                    Status.CLIENT_ERROR_NOT_FOUND);
+        }
+
+        List<Summary> summaries = new ArrayList<Summary>();
+        for (RequestAggregate aggregate : getAggregates(aggregateType)) {
+            summaries.add(aggregate.summarize());
+        }
+        return summaries;
+    }
+
+    List<RequestAggregate> getAggregates(final Type type) {
+        MonitorDAO dao = monitor.getDAO();
+        if (dao instanceof AggregatingMonitorDAO) {
+            return ((AggregatingMonitorDAO) dao).getAggregates(type);
+        }
+
+        // scan the history
+        final Map<String, RequestAggregate> aggregates = new LinkedHashMap<String, RequestAggregate>();
+        dao.getRequests(new Query(), new RequestDataVisitor() {
+            public void visit(RequestData data, Object... aggregated) {
+                for (String name : RequestAggregate.names(type, data)) {
+                    RequestAggregate aggregate = aggregates.get(name);
+                    if (aggregate == null) {
+                        aggregate = new RequestAggregate(type, name);
+                        aggregates.put(name, aggregate);
+                    }
+                    aggregate.add(data.getTotalTime(), data.getResponseLength(),
+                            RequestAggregate.isFailed(data));
+                }
+            }
+        });
+        List<RequestAggregate> result = new ArrayList<RequestAggregate>(aggregates.values());
+        Collections.sort(result, new Comparator<RequestAggregate>() {
+            public int compare(RequestAggregate a1, RequestAggregate a2) {
+                return a1.getName().compareTo(a2.getName());
+            }
+        });
+        return result;
+    }
+
+    @Override
+    protected void configureXStream(XStream xstream) {
+        xstream.alias("aggregates", ArrayList.class);
+        xstream.alias("aggregate", Summary.class);
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.RequestAggregate.Type;
+import org.geoserver.monitor.RequestData.Status;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RingBufferMonitorDAOTest extends MonitorDAOTestSupport {
+
+    @BeforeClass
+    public static void createDAO() throws Exception {
+        dao = new RingBufferMonitorDAO();
+        setUpData();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        RingBufferMonitorDAO ring = new RingBufferMonitorDAO();
+        ring.ring = new RingBufferMonitorDAO.Ring(3);
+        for (int i = 0; i < 5; i++) {
+            ring.save(ring.init(request("wms", "GetMap", 10, "topp:states")));
+        }
+
+        List<RequestData> requests = ring.getRequests();
+        assertEquals(3, requests.size());
+        // oldest first
+        assertEquals(3, requests.get(0).getId());
+        assertEquals(5, requests.get(2).getId());
+        assertNull(ring.getRequest(1));
+        assertEquals(4, ring.getRequest(4).getId());
+
+        // aggregates only account for the requests still in the buffer
+        List<RequestAggregate> layers = ring.getAggregates(Type.LAYER);
+        assertEquals(1, layers.size());
+        assertEquals(3, layers.get(0).getCount());
+
+        // paged and filtered queries walk the running requests, then the wrapped buffer
+        RequestData running = ring.init(request("wfs", "GetFeature", 10, "sf:roads"));
+        ring.add(running);
+        List<RequestData> page = ring.getRequests(new Query().page(2l, 2l));
+        assertEquals(2, page.size());
+        assertEquals(4, page.get(0).getId());
+        assertEquals(5, page.get(1).getId());
+        page = ring.getRequests(new Query().filter("service", "wfs", Comparison.EQ));
+        assertEquals(1, page.size());
+        assertSame(running, page.get(0));
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        RingBufferMonitorDAO ring = new RingBufferMonitorDAO();
+        for (int i = 1; i <= 100; i++) {
+            RequestData data = request("wms", "GetMap", i, "topp:states", "sf:roads");
+            data.setResponseLength(1000);
+            ring.save(ring.init(data));
+        }
+        RequestData failed = request("wfs", "GetFeature", 5000, "sf:roads");
+        failed.setStatus(Status.FAILED);
+        ring.save(ring.init(failed));
+
+        List<RequestAggregate> layers = ring.getAggregates(Type.LAYER);
+        assertEquals(2, layers.size());
+        RequestAggregate roads = layers.get(0);
+        assertEquals("sf:roads", roads.getName());
+        assertEquals(101, roads.getCount());
+        assertEquals(1, roads.getFailed());
+        RequestAggregate states = layers.get(1);
+        assertEquals("topp:states", states.getName());
+        assertEquals(100, states.getCount());
+        assertEquals(100000, states.getBytes());
+        assertEquals(50.5, states.getAverageTime(), 0.001);
+        // percentiles are approximated within 20%
+        assertClose(50, states.getPercentile(0.5));
+        assertClose(95, states.getPercentile(0.95));
+        assertClose(99, states.getPercentile(0.99));
+        assertClose(5000, roads.getPercentile(1));
+
+        List<RequestAggregate> services = ring.getAggregates(Type.SERVICE);
+        assertEquals(2, services.size());
+        assertEquals("wfs", services.get(0).getName());
+        assertEquals(1, services.get(0).getCount());
+        assertEquals("wms", services.get(1).getName());
+        assertEquals(100, services.get(1).getCount());
+
+        List<RequestAggregate> operations = ring.getAggregates(Type.OPERATION);
+        assertEquals("wfs.GetFeature", operations.get(0).getName());
+        assertEquals("wms.GetMap", operations.get(1).getName());
+
+        ring.clear();
+        assertEquals(0, ring.getRequests().size());
+        assertEquals(0, ring.getAggregates(Type.LAYER).size());
+    }
+
+    void assertClose(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but got " + actual,
+                actual >= expected && actual <= expected * 1.2 + 1);
+    }
+
+    RequestData request(String service, String operation, long time, String... layers) {
+        RequestData data = new RequestData();
+        data.setService(service);
+        data.setOperation(operation);
+        data.setTotalTime(time);
+        data.setStatus(Status.FINISHED);
+        for (String layer : layers) {
+            data.getResources().add(layer);
+        }
+        return data;
+    }
+}
@@ -7,7 +7,9 @@ package org.geoserver.wfs.response;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -44,35 +46,12 @@ public class OGRWrapper {
      */
     public File convert(File inputData, File outputDirectory, String typeName,
             OgrFormat format, CoordinateReferenceSystem crs) throws IOException, InterruptedException {
-        // build the command line
-        List<String> cmd = new ArrayList<String>();
-        cmd.add(ogrExecutable);
-        cmd.add("-f");
-        cmd.add(format.ogrFormat);
-        File crsFile = null;
-        if (crs != null) {
-            // we don't use an EPSG code since there is no guarantee we'll be able to reverse
-            // engineer one. Using WKT also ensures the EPSG params such as the TOWGS84 ones are
-            // not lost in the conversion
-            // We also write to a file because some operating systems cannot take arguments with
-            // quotes and spaces inside (and/or ProcessBuilder is not good enough to escape them)
-            crsFile = File.createTempFile("gdal_srs", "wkt", inputData.getParentFile());
-            cmd.add("-a_srs");
-            String s = crs.toWKT();
-            s = s.replaceAll("\n\r", "").replaceAll("  ", "");
-            FileUtils.writeStringToFile(crsFile, s);
-            cmd.add(crsFile.getAbsolutePath());
-        }
-        if (format.options != null) {
-            for (String option : format.options) {
-                cmd.add(option);
-            }
-        }
         String outFileName = typeName;
         if (format.fileExtension != null)
             outFileName += format.fileExtension;
-        cmd.add(new File(outputDirectory, outFileName).getAbsolutePath());
-        cmd.add(inputData.getAbsolutePath());
+        File crsFile = writeCrsFile(inputData, crs);
+        List<String> cmd = buildCommand(inputData, new File(outputDirectory, outFileName)
+                .getAbsolutePath(), format, crsFile);
 
         StringBuilder sb = new StringBuilder();
         int exitCode = run(cmd, sb);
@@ -91,6 +70,94 @@ public class OGRWrapper {
         }
         return output;
     }
+    
+    /**
+     * Performs the conversion making ogr2ogr write to its standard output, which is copied to
+     * the specified stream as the conversion proceeds. Only works with single file formats whose
+     * driver supports writing to /vsistdout/
+     */
+    public void convert(File inputData, OutputStream output, OgrFormat format,
+            CoordinateReferenceSystem crs) throws IOException, InterruptedException {
+        File crsFile = writeCrsFile(inputData, crs);
+        List<String> cmd = buildCommand(inputData, "/vsistdout/", format, crsFile);
+
+        try {
+            ProcessBuilder builder = new ProcessBuilder(cmd);
+            if(gdalData != null)
+                builder.environment().put("GDAL_DATA", gdalData);
+            Process p = builder.start();
+            p.getOutputStream().close();
+
+            // the error stream has to be drained in parallel, or the process might block
+            StreamGobbler errors = new StreamGobbler(p.getErrorStream());
+            errors.start();
+            InputStream in = p.getInputStream();
+            boolean copied = false;
+            try {
+                IOUtils.copy(in, output);
+                copied = true;
+            } finally {
+                in.close();
+                if (!copied) {
+                    // the client went away or the output failed, don't leave ogr2ogr around
+                    p.destroy();
+                }
+            }
+            int exitCode = p.waitFor();
+            errors.join();
+
+            if (exitCode != 0)
+                throw new IOException("ogr2ogr did not terminate successfully, exit code "
+                        + exitCode + ". Was trying to run: " + cmd + "\nResulted in:\n" 
+                        + errors.sb);
+        } finally {
+            if(crsFile != null) {
+                crsFile.delete();
+            }
+        }
+    }
+    
+    /**
+     * Writes the CRS definition in a file next to the input data, returns null if the crs is null
+     */
+    private File writeCrsFile(File inputData, CoordinateReferenceSystem crs) throws IOException {
+        if (crs == null) {
+            return null;
+        }
+        // we don't use an EPSG code since there is no guarantee we'll be able to reverse
+        // engineer one. Using WKT also ensures the EPSG params such as the TOWGS84 ones are
+        // not lost in the conversion
+        // We also write to a file because some operating systems cannot take arguments with
+        // quotes and spaces inside (and/or ProcessBuilder is not good enough to escape them)
+        File crsFile = File.createTempFile("gdal_srs", "wkt", inputData.getParentFile());
+        String s = crs.toWKT();
+        s = s.replaceAll("\n\r", "").replaceAll("  ", "");
+        FileUtils.writeStringToFile(crsFile, s);
+        return crsFile;
+    }
+
+    /**
+     * Builds the ogr2ogr command line
+     */
+    private List<String> buildCommand(File inputData, String output, OgrFormat format,
+            File crsFile) {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(ogrExecutable);
+        cmd.add("-f");
+        cmd.add(format.ogrFormat);
+        if (crsFile != null) {
+            cmd.add("-a_srs");
+            cmd.add(crsFile.getAbsolutePath());
+        }
+        if (format.options != null) {
+            for (String option : format.options) {
+                cmd.add(option);
+            }
+        }
+        cmd.add(output);
+        cmd.add(inputData.getAbsolutePath());
+        return cmd;
+    }
 
     /**
      * Returns a list of the ogr2ogr supported formats
@@ -182,4 +249,34 @@ public class OGRWrapper {
         }
         return p.waitFor();
     }
+    
+    /**
+     * Reads a process stream in a separate thread, collecting its contents
+     */
+    static class StreamGobbler extends Thread {
+        InputStream in;
+        
+        StringBuilder sb = new StringBuilder();
+        
+        StreamGobbler(InputStream in) {
+            this.in = in;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+            try {
+                String line = null;
+                while ((line = reader.readLine()) != null) {
+                    sb.append("\n");
+                    sb.append(line);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read the ogr2ogr error stream", e);
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+    }
 }
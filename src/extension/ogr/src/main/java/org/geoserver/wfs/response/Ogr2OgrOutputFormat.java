@@ -219,14 +219,20 @@ public class Ogr2OgrOutputFormat extends WFSGetFeatureOutputFormat {
         if (format == null)
             throw new WFSException("Unknown output format " + gft.getOutputFormat());
 
+        // build the ogr wrapper used to run the ogr2ogr commands
+        OGRWrapper wrapper = new OGRWrapper(ogrExecutable, gdalData);
+        
+        // single file formats supporting it are streamed straight back from ogr2ogr
+        if (format.singleFile && format.streaming && featureCollection.getFeature().size() == 1) {
+            writeStreaming(featureCollection, output, format, wrapper);
+            return;
+        }
+
         // create the first temp directory, used for dumping gs generated
         // content
         File tempGS = org.geoserver.data.util.IOUtils.createTempDirectory("ogrtmpin");
         File tempOGR = org.geoserver.data.util.IOUtils.createTempDirectory("ogrtmpout");
 
-        // build the ogr wrapper used to run the ogr2ogr commands
-        OGRWrapper wrapper = new OGRWrapper(ogrExecutable, gdalData);
-
         // actually export each feature collection
         try {
             Iterator outputFeatureCollections = featureCollection.getFeature().iterator();
@@ -275,6 +281,35 @@ public class Ogr2OgrOutputFormat extends WFSGetFeatureOutputFormat {
         }
     }
     
+    /**
+     * Writes out the data to an OGR known format and has ogr2ogr convert it to its standard
+     * output, which is copied to the response as the conversion goes. The input still has to
+     * be dumped on disk, as OGR needs to scan it more than once (e.g., to guess the GML schema)
+     */
+    private void writeStreaming(FeatureCollectionResponse featureCollection, OutputStream output, 
+            OgrFormat format, OGRWrapper wrapper) throws ServiceException {
+        File tempGS = null;
+        try {
+            tempGS = org.geoserver.data.util.IOUtils.createTempDirectory("ogrtmpin");
+            SimpleFeatureCollection collection = 
+                (SimpleFeatureCollection) featureCollection.getFeature().get(0);
+            File intermediate = writeToDisk(tempGS, collection);
+            
+            CoordinateReferenceSystem crs = collection.getSchema().getCoordinateReferenceSystem();
+            wrapper.convert(intermediate, output, format, crs);
+        } catch (Exception e) {
+            throw new ServiceException("Exception occurred during output generation", e);
+        } finally {
+            if (tempGS != null) {
+                try {
+                    IOUtils.delete(tempGS);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not delete temp directory " + tempGS, e);
+                }
+            }
+        }
+    }
+    
     /**
      * Writes to disk using shapefile if the feature type allows for it, GML otherwise
      * @param tempDir
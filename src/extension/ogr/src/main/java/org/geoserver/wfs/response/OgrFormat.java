@@ -45,6 +45,13 @@ public class OgrFormat {
      * The mime type of the single file output
      */
     public String mimeType;
+    
+    /**
+     * If the single file output can be written by ogr2ogr to its standard output (/vsistdout/),
+     * in which case it is streamed back as it's being produced instead of going through a
+     * temporary file. Requires a GDAL version and driver supporting /vsistdout/
+     */
+    public boolean streaming;
 
     public OgrFormat(String ogrFormat, String formatName, String fileExtension, boolean singleFile, 
             String mimeType, String... options) {
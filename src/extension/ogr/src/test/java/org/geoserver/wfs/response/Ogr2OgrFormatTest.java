@@ -72,6 +72,10 @@ public class Ogr2OgrFormatTest {
         ogr.addFormat(new OgrFormat("KML", "OGR-KML", ".kml", true, "application/vnd.google-earth.kml"));
         ogr.addFormat(new OgrFormat("KML", "OGR-KML-ZIP", ".kml", false, "application/vnd.google-earth.kml"));
         ogr.addFormat(new OgrFormat("CSV", "OGR-CSV", ".csv", true, "text/csv"));
+        OgrFormat streamingKml = new OgrFormat("KML", "OGR-KML-STREAM", ".kml", true, 
+                "application/vnd.google-earth.kml");
+        streamingKml.streaming = true;
+        ogr.addFormat(streamingKml);
         ogr.addFormat(new OgrFormat("SHP", "OGR-SHP", ".shp", false, null));
         ogr.addFormat(new OgrFormat("MapInfo File", "OGR-MIF", ".mif", false, null, "-dsco", "FORMAT=MIF"));
         
@@ -129,6 +133,23 @@ public class Ogr2OgrFormatTest {
         assertEquals(2, dom.getElementsByTagName("Placemark").getLength());
     }
     
+    @Test
+    public void testStreamingKML() throws Exception {
+        // prepare input
+        FeatureCollection fc = dataStore.getFeatureSource("Buildings").getFeatures();
+        fct.getFeature().add(fc);
+
+        // write out
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        gft.setOutputFormat("OGR-KML-STREAM");
+        ogr.write(fct, bos, op);
+
+        // same output as going through the temp file
+        Document dom = dom(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals("kml", dom.getDocumentElement().getTagName());
+        assertEquals(2, dom.getElementsByTagName("Placemark").getLength());
+    }
+    
     @Test
     public void testZippedKML() throws Exception {
         // prepare input
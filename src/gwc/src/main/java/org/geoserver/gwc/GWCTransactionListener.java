@@ -29,6 +29,7 @@ import org.geoserver.wfs.TransactionPlugin;
 import org.geoserver.wfs.WFSException;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.geowebcache.GeoWebCacheException;
 import org.opengis.referencing.FactoryException;
@@ -227,6 +228,23 @@ public class GWCTransactionListener implements TransactionPlugin {
             layerDirtyRegion = new ArrayList<ReferencedEnvelope>(2);
             byLayerDirtyRegions.put(tileLayerName, layerDirtyRegion);
         }
+        if (affectedBounds == null || affectedBounds.isEmpty()) {
+            return;
+        }
+
+        // coalesce with the bounds already collected in the same crs, so that large transactions
+        // do not pile up one envelope per element until the truncation
+        // (the envelopes are shared among layers and events, merge into a copy)
+        for (int i = 0; i < layerDirtyRegion.size(); i++) {
+            ReferencedEnvelope dirty = layerDirtyRegion.get(i);
+            if (CRS.equalsIgnoreMetadata(dirty.getCoordinateReferenceSystem(),
+                    affectedBounds.getCoordinateReferenceSystem())) {
+                ReferencedEnvelope merged = new ReferencedEnvelope(dirty);
+                merged.expandToInclude(affectedBounds);
+                layerDirtyRegion.set(i, merged);
+                return;
+            }
+        }
         layerDirtyRegion.add(affectedBounds);
     }
 }
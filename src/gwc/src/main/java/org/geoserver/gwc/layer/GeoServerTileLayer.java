@@ -52,6 +52,7 @@ import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.OutsideCoverageException;
 import org.geowebcache.grid.SRS;
+import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.LayerListenerList;
 import org.geowebcache.layer.MetaTile;
@@ -65,6 +66,8 @@ import org.geowebcache.locks.LockProvider.Lock;
 import org.geowebcache.mime.FormatModifier;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileObject;
 import org.geowebcache.util.GWCVars;
 import org.geowebcache.util.ServletUtils;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -92,6 +95,11 @@ public class GeoServerTileLayer extends TileLayer {
 
     private static LayerListenerList listeners = new LayerListenerList();
 
+    private static final MetaTileCoalescer COALESCER = new MetaTileCoalescer();
+    static {
+        COALESCER.register();
+    }
+
     private final GridSetBroker gridSetBroker;
     
     public GeoServerTileLayer(final LayerGroupInfo layerGroup, final GWCConfig configDefaults,
@@ -478,10 +486,29 @@ public class GeoServerTileLayer extends TileLayer {
         }
 
         final GeoServerMetaTile metaTile = createMetaTile(tile, metaX, metaY);
+        final String metaKey = buildLockKey(tile, metaTile);
+
+        // if the meta tile is already being rendered by another thread wait for it and use
+        // the tiles it encoded, no need to queue on the lock and hit the storage again
+        MetaTileCoalescer.Render render = null;
+        if (tryCache) {
+            render = COALESCER.start(metaKey);
+            if (!render.isLeader()) {
+                Resource coalesced = COALESCER.await(render, tile.getTileIndex());
+                if (coalesced != null) {
+                    metaTile.dispose();
+                    tile.setBlob(coalesced);
+                    return finalizeTile(tile);
+                }
+                render = null;
+            }
+        }
+
         Lock lock = null;
+        Map<String, Resource> encoded = null;
         try {
             /** ****************** Acquire lock ******************* */
-            lock = GWC.get().getLockProvider().getLock(buildLockKey(tile, metaTile));
+            lock = GWC.get().getLockProvider().getLock(metaKey);
             // got the lock on the meta tile, try again
             if (tryCache && tryCacheFetch(tile)) {
                 LOGGER.finest("--> " + Thread.currentThread().getName() + " returns cache hit for "
@@ -496,13 +523,16 @@ public class GeoServerTileLayer extends TileLayer {
                     map = dispatchGetMap(tile, metaTile);
                     checkNotNull(map, "Did not obtain a WebMap from GeoServer's Dispatcher");
                     metaTile.setWebMap(map);
-                    saveTiles(metaTile, tile, requestTime);
+                    encoded = encodeAndSaveTiles(metaTile, tile, requestTime, render != null);
                 } catch (Exception e) {
                     throw new GeoWebCacheException("Problem communicating with GeoServer", e);
                 } 
             }
             /** ****************** Return lock and response ****** */
         } finally {
+            if (render != null) {
+                COALESCER.finish(render, encoded);
+            }
             if(lock != null) {
                 lock.release();
             }
@@ -512,6 +542,77 @@ public class GeoServerTileLayer extends TileLayer {
 
         return finalizeTile(tile);
     }
+
+    /**
+     * Encodes and stores the tiles of the meta tile, like {@code TileLayer.saveTiles}, but
+     * keeping each tile in its own buffer so that they can be handed over to the threads waiting
+     * on the same meta tile.
+     *
+     * @param keep whether to return the encoded tiles
+     * @return the encoded tiles keyed by {@link MetaTileCoalescer#tileKey(long[])}
+     */
+    private Map<String, Resource> encodeAndSaveTiles(GeoServerMetaTile metaTile,
+            ConveyorTile tileProto, long requestTime, boolean keep) throws GeoWebCacheException,
+            IOException {
+
+        final long[][] gridPositions = metaTile.getTilesGridPositions();
+        final long[] gridLoc = tileProto.getTileIndex();
+        final GridSubset gridSubset = getGridSubset(tileProto.getGridSetId());
+        final int zoomLevel = (int) gridLoc[2];
+        final boolean store = getExpireCache(zoomLevel) != GWCVars.CACHE_DISABLE_CACHE;
+
+        Map<String, Resource> encoded = new HashMap<String, Resource>();
+        for (int i = 0; i < gridPositions.length; i++) {
+            final long[] gridPos = gridPositions[i];
+            final boolean requested = Arrays.equals(gridLoc, gridPos);
+            if (!requested && (!store || !gridSubset.covers(gridPos))) {
+                continue;
+            }
+
+            Resource resource = new ByteArrayResource(16 * 1024);
+            if (requested) {
+                metaTile.writeTileToStream(i, resource);
+                tileProto.setBlob(resource);
+            } else {
+                try {
+                    metaTile.writeTileToStream(i, resource);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to encode tile " + Arrays.toString(gridPos)
+                            + " of " + getName(), e);
+                    continue;
+                }
+            }
+            if (keep) {
+                encoded.put(MetaTileCoalescer.tileKey(gridPos), resource);
+            }
+
+            if (store) {
+                long[] idx = { gridPos[0], gridPos[1], gridPos[2] };
+                TileObject tile = TileObject.createCompleteTileObject(getName(), idx,
+                        tileProto.getGridSetId(), tileProto.getMimeType().getFormat(),
+                        tileProto.getParameters(), resource);
+                tile.setCreated(requestTime);
+                try {
+                    if (tileProto.isMetaTileCacheOnly()) {
+                        tileProto.getStorageBroker().putTransient(tile);
+                    } else {
+                        tileProto.getStorageBroker().put(tile);
+                    }
+                } catch (StorageException e) {
+                    LOGGER.log(Level.WARNING, "Unable to store tile " + Arrays.toString(gridPos)
+                            + " of " + getName(), e);
+                }
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Returns the process wide meta tile render coalescer
+     */
+    public static MetaTileCoalescer getMetaTileCoalescer() {
+        return COALESCER;
+    }
     
     private String buildLockKey(ConveyorTile tile, GeoServerMetaTile metaTile) {
         StringBuilder metaKey = new StringBuilder();
@@ -0,0 +1,198 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.util.logging.Logging;
+import org.geowebcache.io.Resource;
+
+/**
+ * Keeps track of the meta tiles being rendered in this process, so that concurrent misses on
+ * tiles of the same meta tile wait for a single rendering and are then served the encoded tiles
+ * straight from memory, instead of queueing on the meta tile lock and re-reading the tiles from
+ * the blob store one after the other.
+ * <p>
+ * The thread that first asks for a meta tile becomes the leader of the render and must call
+ * {@link #finish(Render, Map)} once done, the others wait on {@link #await(Render, long[])}.
+ * </p>
+ * <p>
+ * The counters are registered in the platform MBean server under
+ * <tt>org.geoserver:type=GWC,name=MetaTileCoalescer</tt>.
+ * </p>
+ */
+public class MetaTileCoalescer implements MetaTileCoalescerMBean {
+
+    static final Logger LOGGER = Logging.getLogger(MetaTileCoalescer.class);
+
+    final ConcurrentHashMap<String, Render> inFlight = new ConcurrentHashMap<String, Render>();
+
+    final AtomicLong rendered = new AtomicLong();
+
+    final AtomicLong coalesced = new AtomicLong();
+
+    final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Returns the in flight render of the specified meta tile, registering a new one led by the
+     * calling thread if none is running
+     */
+    public Render start(String metaTileKey) {
+        Render render = new Render(metaTileKey);
+        Render existing = inFlight.putIfAbsent(metaTileKey, render);
+        return existing != null ? existing : render;
+    }
+
+    /**
+     * Completes the render, publishing the encoded tiles to the waiting threads.
+     *
+     * @param tiles the encoded tiles keyed by {@link #tileKey(long[])}, or {@code null} if the
+     *        leader did not render the meta tile, in which case the waiting threads will go
+     *        through the regular lock and cache lookup path
+     */
+    public void finish(Render render, Map<String, Resource> tiles) {
+        inFlight.remove(render.key, render);
+        if (tiles != null) {
+            rendered.incrementAndGet();
+        }
+        render.complete(tiles);
+    }
+
+    /**
+     * Waits for the render to complete and returns the requested tile
+     *
+     * @return the encoded tile, or {@code null} if the render did not produce it
+     */
+    public Resource await(Render render, long[] tileIndex) {
+        Resource tile = null;
+        try {
+            render.done.await();
+            tile = render.tiles.get(tileKey(tileIndex));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (tile != null) {
+            coalesced.incrementAndGet();
+        } else {
+            fallbacks.incrementAndGet();
+        }
+        return tile;
+    }
+
+    static String tileKey(long[] tileIndex) {
+        return Arrays.toString(tileIndex);
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public long getRenderedCount() {
+        return rendered.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Ratio of tile requests served from another thread's render over all the rendered and
+     * coalesced requests
+     */
+    public double getCoalescedRatio() {
+        long coalesced = this.coalesced.get();
+        long total = coalesced + rendered.get();
+        return total == 0 ? 0 : (double) coalesced / total;
+    }
+
+    public void reset() {
+        rendered.set(0);
+        coalesced.set(0);
+        fallbacks.set(0);
+    }
+
+    /**
+     * Returns the counters as a map, property name to value.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("inFlight", getInFlight());
+        map.put("rendered", getRenderedCount());
+        map.put("coalesced", getCoalescedCount());
+        map.put("fallbacks", getFallbackCount());
+        map.put("coalescedRatio", getCoalescedRatio());
+        return map;
+    }
+
+    /**
+     * Registers the counters in the platform MBean server, replacing any previous registration
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.geoserver:type=GWC,name=MetaTileCoalescer");
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not register the meta tile coalescer statistics", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetaTileCoalescer[" + toMap() + "]";
+    }
+
+    /**
+     * A meta tile render, in progress or completed
+     */
+    public static class Render {
+
+        final String key;
+
+        final Thread leader;
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile Map<String, Resource> tiles = Collections.emptyMap();
+
+        Render(String key) {
+            this.key = key;
+            this.leader = Thread.currentThread();
+        }
+
+        /**
+         * Whether the calling thread is the one in charge of rendering the meta tile
+         */
+        public boolean isLeader() {
+            return leader == Thread.currentThread();
+        }
+
+        void complete(Map<String, Resource> tiles) {
+            if (tiles != null) {
+                this.tiles = tiles;
+            }
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+/**
+ * JMX view of the {@link MetaTileCoalescer} counters.
+ */
+public interface MetaTileCoalescerMBean {
+
+    int getInFlight();
+
+    long getRenderedCount();
+
+    long getCoalescedCount();
+
+    long getFallbackCount();
+
+    double getCoalescedRatio();
+
+    void reset();
+}
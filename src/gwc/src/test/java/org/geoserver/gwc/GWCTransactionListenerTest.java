@@ -4,6 +4,7 @@
  */
 package org.geoserver.gwc;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
@@ -159,6 +160,31 @@ public class GWCTransactionListenerTest {
         assertSame(affectedBounds, placeHolder.get("theGroup").get(0));
     }
 
+    @Test
+    public void testDataStoreChangeCoalescesBounds() {
+
+        Map<Object, Object> extendedProperties = new HashMap<Object, Object>();
+        ReferencedEnvelope affectedBounds1 = new ReferencedEnvelope(-180, 0, 0, 90, WGS84);
+        ReferencedEnvelope affectedBounds2 = new ReferencedEnvelope(0, 180, 0, 90, WGS84);
+
+        issueInsert(extendedProperties, affectedBounds1);
+        issueInsert(extendedProperties, affectedBounds2);
+
+        @SuppressWarnings("unchecked")
+        Map<String, List<ReferencedEnvelope>> placeHolder = (Map<String, List<ReferencedEnvelope>>) extendedProperties
+                .get(GWCTransactionListener.GWC_TRANSACTION_INFO_PLACEHOLDER);
+
+        ReferencedEnvelope expectedEnv = new ReferencedEnvelope(affectedBounds1);
+        expectedEnv.expandToInclude(affectedBounds2);
+
+        assertEquals(1, placeHolder.get("theLayer").size());
+        assertEquals(expectedEnv, placeHolder.get("theLayer").get(0));
+        assertEquals(1, placeHolder.get("theGroup").size());
+        assertEquals(expectedEnv, placeHolder.get("theGroup").get(0));
+        // the original bounds have not been modified
+        assertEquals(new ReferencedEnvelope(-180, 0, 0, 90, WGS84), affectedBounds1);
+    }
+
     @Test
     public void testAfterTransaction() throws Exception {
 
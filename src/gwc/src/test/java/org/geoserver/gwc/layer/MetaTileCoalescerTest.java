@@ -0,0 +1,104 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.gwc.layer.MetaTileCoalescer.Render;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetaTileCoalescerTest {
+
+    MetaTileCoalescer coalescer;
+
+    ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        coalescer = new MetaTileCoalescer();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testWaitersServedFromRender() throws Exception {
+        final Resource tile = new ByteArrayResource(new byte[] { 1, 2, 3 });
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+        Future<Boolean> leader = executor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                Render render = coalescer.start("meta");
+                started.countDown();
+                joined.await();
+
+                Map<String, Resource> tiles = new HashMap<String, Resource>();
+                tiles.put(MetaTileCoalescer.tileKey(new long[] { 0, 0, 3 }),
+                        new ByteArrayResource());
+                tiles.put(MetaTileCoalescer.tileKey(new long[] { 1, 0, 3 }), tile);
+                coalescer.finish(render, tiles);
+                return render.isLeader();
+            }
+        });
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(1, coalescer.getInFlight());
+        Render render = coalescer.start("meta");
+        assertFalse(render.isLeader());
+        joined.countDown();
+
+        assertSame(tile, coalescer.await(render, new long[] { 1, 0, 3 }));
+        assertTrue(leader.get(10, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.getInFlight());
+        assertEquals(1, coalescer.getRenderedCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+        assertEquals(0.5, coalescer.getCoalescedRatio(), 0);
+
+        // a new request for the same meta tile starts a new render
+        assertTrue(coalescer.start("meta").isLeader());
+    }
+
+    @Test
+    public void testFallbackWhenNotRendered() throws Exception {
+        Render render = coalescer.start("meta");
+        // the leader found the tiles in the cache after acquiring the lock
+        coalescer.finish(render, null);
+
+        assertNull(coalescer.await(render, new long[] { 0, 0, 3 }));
+        assertEquals(0, coalescer.getRenderedCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+        assertEquals(1, coalescer.getFallbackCount());
+    }
+
+    @Test
+    public void testFallbackOnMissingTile() throws Exception {
+        Render render = coalescer.start("meta");
+        coalescer.finish(render, new HashMap<String, Resource>());
+
+        assertNull(coalescer.await(render, new long[] { 0, 0, 3 }));
+        assertEquals(1, coalescer.getRenderedCount());
+        assertEquals(1, coalescer.getFallbackCount());
+    }
+}
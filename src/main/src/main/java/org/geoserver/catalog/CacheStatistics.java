@@ -0,0 +1,185 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Hit, miss and load time counters for one of the caches owned by {@link ResourcePool}.
+ * <p>
+ * Instances are registered in the platform MBean server under
+ * <tt>org.geoserver:type=ResourcePoolCache,name=&lt;cache name></tt> and are also exposed
+ * as a map via {@link #toMap()} for the REST api.
+ * </p>
+ */
+public class CacheStatistics implements CacheStatisticsMBean {
+
+    static Logger LOGGER = Logging.getLogger("org.geoserver.catalog");
+
+    final String name;
+
+    volatile Map<?, ?> cache;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong loads = new AtomicLong();
+
+    final AtomicLong loadFailures = new AtomicLong();
+
+    final AtomicLong coalescedLoads = new AtomicLong();
+
+    final AtomicLong evictions = new AtomicLong();
+
+    final AtomicLong totalLoadTime = new AtomicLong();
+
+    public CacheStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Sets the cache the statistics refer to, used to report its size.
+     */
+    void setCache(Map<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void loaded(long nanos) {
+        loads.incrementAndGet();
+        totalLoadTime.addAndGet(nanos);
+    }
+
+    void failed(long nanos) {
+        loadFailures.incrementAndGet();
+        totalLoadTime.addAndGet(nanos);
+    }
+
+    void coalesced() {
+        coalescedLoads.incrementAndGet();
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        Map<?, ?> cache = this.cache;
+        return cache != null ? cache.size() : 0;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long hits = this.hits.get();
+        long requests = hits + misses.get();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.get();
+    }
+
+    public long getCoalescedLoadCount() {
+        return coalescedLoads.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Average load time in milliseconds
+     */
+    public double getAverageLoadTime() {
+        long count = loads.get() + loadFailures.get();
+        return count == 0 ? 0 : totalLoadTime.get() / 1000000d / count;
+    }
+
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        loads.set(0);
+        loadFailures.set(0);
+        coalescedLoads.set(0);
+        evictions.set(0);
+        totalLoadTime.set(0);
+    }
+
+    /**
+     * Returns the statistics as a map, property name to value.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("size", getSize());
+        map.put("hits", getHitCount());
+        map.put("misses", getMissCount());
+        map.put("hitRatio", getHitRatio());
+        map.put("loads", getLoadCount());
+        map.put("loadFailures", getLoadFailureCount());
+        map.put("coalescedLoads", getCoalescedLoadCount());
+        map.put("evictions", getEvictionCount());
+        map.put("averageLoadTime", getAverageLoadTime());
+        return map;
+    }
+
+    /**
+     * Registers the statistics in the platform MBean server, replacing any previous registration
+     * under the same name.
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not register cache statistics for " + name, e);
+        }
+    }
+
+    ObjectName objectName() throws Exception {
+        return new ObjectName("org.geoserver:type=ResourcePoolCache,name=" + name);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics[" + name + ", " + toMap() + "]";
+    }
+}
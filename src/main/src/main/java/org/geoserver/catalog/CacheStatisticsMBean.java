@@ -0,0 +1,33 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+/**
+ * JMX view of a {@link CacheStatistics}.
+ */
+public interface CacheStatisticsMBean {
+
+    String getName();
+
+    int getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    long getLoadCount();
+
+    long getLoadFailureCount();
+
+    long getCoalescedLoadCount();
+
+    long getEvictionCount();
+
+    double getAverageLoadTime();
+
+    void reset();
+}
@@ -0,0 +1,30 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import org.geotools.filter.FunctionExpressionImpl;
+import org.geotools.filter.capability.FunctionNameImpl;
+import org.opengis.filter.capability.FunctionName;
+
+/**
+ * Returns true if the evaluated object is an instance of the class passed as the only parameter.
+ * <p>
+ * Used by {@link Predicates#isInstanceOf(Class)} to filter catalog objects by type.
+ * </p>
+ */
+public class IsInstanceOf extends FunctionExpressionImpl {
+
+    public static FunctionName NAME = new FunctionNameImpl("isInstanceOf", 1);
+
+    public IsInstanceOf() {
+        super(NAME);
+    }
+
+    public Object evaluate(Object object) {
+        Class<?> clazz = getParameters().get(0).evaluate(object, Class.class);
+        return clazz != null && clazz.isInstance(object);
+    }
+
+}
@@ -5,6 +5,7 @@
 package org.geoserver.catalog;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -17,6 +18,7 @@ import org.opengis.filter.FilterFactory;
 import org.opengis.filter.MultiValuedFilter.MatchAction;
 import org.opengis.filter.Or;
 import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.expression.Expression;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
@@ -255,6 +257,19 @@ public class Predicates {
         return factory.or(ored);
     }
 
+    /**
+     * Returns a predicate that evaluates to {@code true} if the object is an instance of the
+     * specified class, e.g. {@code isInstanceOf(DataStoreInfo.class)} to filter the stores by
+     * kind.
+     * 
+     * @see IsInstanceOf
+     */
+    public static Filter isInstanceOf(final Class<?> clazz) {
+        IsInstanceOf function = new IsInstanceOf();
+        function.setParameters(Collections.<Expression> singletonList(factory.literal(clazz)));
+        return factory.equals(function, factory.literal(Boolean.TRUE));
+    }
+
     public static Filter isNull(final String propertyName) {
         return factory.isNull(factory.property(propertyName));
     }
@@ -0,0 +1,180 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Counts how many times the resources of the catalog are accessed through the
+ * {@link ResourcePool}, keyed by the id of the {@link FeatureTypeInfo} or
+ * {@link CoverageStoreInfo} accessed.
+ * <p>
+ * The counts are persisted in a properties file so that they survive restarts, and are used by
+ * the {@link ResourcePoolWarmer} to open the most used resources first. They are halved once per
+ * {@link #DECAY_INTERVAL} by {@link #decay(long)}, so that resources that used to be popular but
+ * are no longer accessed lose their priority over time.
+ * </p>
+ */
+public class ResourceAccessTracker {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver.catalog");
+
+    /**
+     * Interval after which the counts are halved, one day
+     */
+    public static final long DECAY_INTERVAL = 24 * 60 * 60 * 1000;
+
+    /**
+     * Key under which the time of the last decay is persisted, catalog ids never start with a dot
+     */
+    static final String LAST_DECAY = ".lastDecay";
+
+    /**
+     * Accesses performed by the current thread are not counted while set, used by the warm up to
+     * avoid counting its own accesses
+     */
+    static final ThreadLocal<Boolean> IGNORED = new ThreadLocal<Boolean>();
+
+    final ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+    final File file;
+
+    volatile long lastDecay = System.currentTimeMillis();
+
+    /**
+     * Creates a tracker persisting its counts in the specified file
+     */
+    public ResourceAccessTracker(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Records an access to the catalog object with the specified id.
+     */
+    public void accessed(String id) {
+        if (id == null || Boolean.TRUE.equals(IGNORED.get())) {
+            return;
+        }
+        AtomicLong count = counts.get(id);
+        if (count == null) {
+            count = new AtomicLong();
+            AtomicLong existing = counts.putIfAbsent(id, count);
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of recorded accesses to the catalog object with the specified id.
+     */
+    public long getCount(String id) {
+        AtomicLong count = id != null ? counts.get(id) : null;
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Halves the counts once per {@link #DECAY_INTERVAL} elapsed since the last decay, dropping
+     * the ones reaching zero.
+     *
+     * @param now the current time, in milliseconds
+     */
+    public synchronized void decay(long now) {
+        long intervals = (now - lastDecay) / DECAY_INTERVAL;
+        if (intervals <= 0) {
+            return;
+        }
+        // past 63 halvings everything is zero anyways
+        int shift = (int) Math.min(intervals, 63);
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            AtomicLong count = entry.getValue();
+            long value;
+            do {
+                value = count.get();
+            } while (!count.compareAndSet(value, value >> shift));
+            if (count.get() == 0) {
+                counts.remove(entry.getKey(), count);
+            }
+        }
+        lastDecay += intervals * DECAY_INTERVAL;
+    }
+
+    /**
+     * Loads the counts persisted by a previous run, if any.
+     */
+    public void load() throws IOException {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        String decayed = props.getProperty(LAST_DECAY);
+        if (decayed != null) {
+            try {
+                lastDecay = Long.parseLong(decayed.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Skipping invalid last decay time", e);
+            }
+            props.remove(LAST_DECAY);
+        }
+        for (String id : props.stringPropertyNames()) {
+            try {
+                counts.put(id, new AtomicLong(Long.parseLong(props.getProperty(id).trim())));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Skipping invalid access count for " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Persists the current counts.
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Properties props = new Properties();
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            props.setProperty(entry.getKey(), String.valueOf(entry.getValue().get()));
+        }
+        props.setProperty(LAST_DECAY, String.valueOf(lastDecay));
+
+        // write to a temporary file first, so that a crash does not leave a truncated file
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            props.store(out, "Resource access counts, used to prioritize the startup warm up");
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file.getAbsolutePath());
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp.getAbsolutePath() + " to "
+                    + file.getAbsolutePath());
+        }
+    }
+}
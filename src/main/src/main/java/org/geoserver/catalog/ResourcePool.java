@@ -25,9 +25,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Level;
@@ -101,6 +103,10 @@ import org.vfny.geoserver.global.GeoServerFeatureLocking;
 import org.vfny.geoserver.global.GeoserverDataDirectory;
 import org.vfny.geoserver.util.DataStoreUtils;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
 /**
  * Provides access to resources such as datastores, coverage readers, and 
  * feature types.
@@ -145,6 +151,16 @@ public class ResourcePool {
      */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
     
+    /**
+     * Default maximum number of entries in the CRS cache
+     */
+    static int CRS_CACHE_SIZE_DEFAULT = 1000;
+    
+    /**
+     * Default maximum number of entries in the style cache
+     */
+    static int STYLE_CACHE_SIZE_DEFAULT = 1000;
+    
     private static final String IMAGE_PYRAMID = "ImagePyramid";
     private static final String IMAGE_MOSAIC = "ImageMosaic";
 
@@ -157,9 +173,19 @@ public class ResourcePool {
     Map<String, GridCoverageReader>  coverageReaderCache;
     Map<CoverageHintReaderKey, GridCoverageReader> hintCoverageReaderCache;
     Map<StyleInfo,Style> styleCache;
+    Map<String, CacheStatistics> cacheStatistics;
+    SingleFlightLoader<String, CoordinateReferenceSystem> crsLoader;
+    SingleFlightLoader<String, DataAccess> dataStoreLoader;
+    SingleFlightLoader<String, FeatureType> featureTypeLoader;
+    SingleFlightLoader<String, List<AttributeTypeInfo>> featureTypeAttributeLoader;
+    SingleFlightLoader<String, GridCoverageReader> coverageReaderLoader;
+    SingleFlightLoader<CoverageHintReaderKey, GridCoverageReader> hintCoverageReaderLoader;
+    SingleFlightLoader<String, WebMapServer> wmsLoader;
+    SingleFlightLoader<StyleInfo, Style> styleLoader;
     List<Listener> listeners;
     ThreadPoolExecutor coverageExecutor;
     CatalogRepository repository;
+    volatile ResourceAccessTracker accessTracker;
 
     /**
      * Creates a new instance of the resource pool.
@@ -184,6 +210,17 @@ public class ResourcePool {
     }
 
     protected ResourcePool() {
+        // statistics go first, the bounded caches report their evictions to them
+        cacheStatistics = new LinkedHashMap<String, CacheStatistics>();
+        crsLoader = createLoader("crs");
+        dataStoreLoader = createLoader("dataStore");
+        featureTypeLoader = createLoader("featureType");
+        featureTypeAttributeLoader = createLoader("featureTypeAttribute");
+        coverageReaderLoader = createLoader("coverageReader");
+        hintCoverageReaderLoader = createLoader("hintCoverageReader");
+        wmsLoader = createLoader("wms");
+        styleLoader = createLoader("style");
+        
         crsCache = createCrsCache();
         dataStoreCache = createDataStoreCache();
         featureTypeCache = createFeatureTypeCache(FEATURETYPE_CACHE_SIZE_DEFAULT);
@@ -194,9 +231,63 @@ public class ResourcePool {
         
         wmsCache = createWmsCache();
         styleCache = createStyleCache();
+        bindStatistics();
 
         listeners = new CopyOnWriteArrayList<Listener>();
     }
+    
+    <K, V> SingleFlightLoader<K, V> createLoader(String name) {
+        CacheStatistics statistics = new CacheStatistics(name);
+        cacheStatistics.put(name, statistics);
+        return new SingleFlightLoader<K, V>(statistics);
+    }
+    
+    /**
+     * Points the statistics to the current caches, to be called every time a cache is replaced
+     */
+    void bindStatistics() {
+        bindStatistics(crsLoader, crsCache);
+        bindStatistics(dataStoreLoader, dataStoreCache);
+        bindStatistics(featureTypeLoader, featureTypeCache);
+        bindStatistics(featureTypeAttributeLoader, featureTypeAttributeCache);
+        bindStatistics(coverageReaderLoader, coverageReaderCache);
+        bindStatistics(hintCoverageReaderLoader, hintCoverageReaderCache);
+        bindStatistics(wmsLoader, wmsCache);
+        bindStatistics(styleLoader, styleCache);
+    }
+    
+    void bindStatistics(SingleFlightLoader<?, ?> loader, Map<?, ?> cache) {
+        loader.statistics.setCache(cache);
+        if (cache instanceof CatalogResourceCache) {
+            ((CatalogResourceCache<?, ?>) cache).statistics = loader.statistics;
+        }
+    }
+    
+    /**
+     * Creates a thread safe map holding at most <tt>maxSize</tt> entries, least recently used
+     * entries are evicted first.
+     */
+    <K, V> Map<K, V> createBoundedCache(int maxSize, final SingleFlightLoader<K, V> loader) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize)
+                .removalListener(new RemovalListener<K, V>() {
+                    public void onRemoval(RemovalNotification<K, V> notification) {
+                        if (notification.wasEvicted()) {
+                            loader.statistics.evicted();
+                        }
+                    }
+                }).<K, V> build().asMap();
+    }
+    
+    /**
+     * Returns the hit/miss/load statistics of the caches owned by the pool, keyed by cache name.
+     * <p>
+     * The same statistics are registered as MBeans under
+     * <tt>org.geoserver:type=ResourcePoolCache</tt>.
+     * </p>
+     */
+    public Map<String, CacheStatistics> getCacheStatistics() {
+        return Collections.unmodifiableMap(cacheStatistics);
+    }
 
     /**
      * Creates the resource pool.
@@ -220,6 +311,10 @@ public class ResourcePool {
 
         catalog.removeListeners(CacheClearingListener.class);
         catalog.addListener(new CacheClearingListener());
+        
+        for (CacheStatistics statistics : cacheStatistics.values()) {
+            statistics.register();
+        }
     }
 
     /**
@@ -236,7 +331,7 @@ public class ResourcePool {
     }
 
     protected Map<String,CoordinateReferenceSystem> createCrsCache() {
-        return new HashMap<String, CoordinateReferenceSystem>();
+        return createBoundedCache(CRS_CACHE_SIZE_DEFAULT, crsLoader);
     }
 
     /**
@@ -332,7 +427,7 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, Style> createStyleCache() {
-        return new HashMap<StyleInfo, Style>();
+        return createBoundedCache(STYLE_CACHE_SIZE_DEFAULT, styleLoader);
     }
 
     /**
@@ -360,10 +455,14 @@ public class ResourcePool {
      */
     public void setFeatureTypeCacheSize(int featureTypeCacheSize) {
         synchronized (this) {
+            featureTypeLoader.invalidateAll();
+            featureTypeAttributeLoader.invalidateAll();
             featureTypeCache.clear();
             featureTypeCache = createFeatureTypeCache(featureTypeCacheSize);
             featureTypeAttributeCache.clear();
             featureTypeAttributeCache = createFeatureTypeAttributeCache(featureTypeCacheSize);
+            bindStatistics(featureTypeLoader, featureTypeCache);
+            bindStatistics(featureTypeAttributeLoader, featureTypeAttributeCache);
         }
     }
     
@@ -379,6 +478,18 @@ public class ResourcePool {
         }
     }
     
+    /**
+     * Sets the tracker recording the accesses to feature types and coverage stores, or
+     * <code>null</code> to stop tracking.
+     */
+    public void setAccessTracker(ResourceAccessTracker accessTracker) {
+        this.accessTracker = accessTracker;
+    }
+    
+    public ResourceAccessTracker getAccessTracker() {
+        return accessTracker;
+    }
+    
     /**
      * Adds a pool listener.
      */
@@ -410,29 +521,22 @@ public class ResourcePool {
      * @throws IOException In the event the srsName can not be parsed or leads 
      * to an exception in the underlying call to CRS.decode.
      */
-    public CoordinateReferenceSystem getCRS( String srsName )
+    public CoordinateReferenceSystem getCRS( final String srsName )
         throws IOException {
         
         if(srsName == null)
             return null;
         
-        CoordinateReferenceSystem crs = crsCache.get( srsName );
-        if ( crs == null ) {
-            synchronized (crsCache) {
-                crs = crsCache.get( srsName );
-                if ( crs == null ) {
-                    try {
-                        crs = CRS.decode( srsName );
-                        crsCache.put( srsName, crs );
-                    }
-                    catch( Exception e) {
-                        throw (IOException) new IOException().initCause(e);
-                    }
+        return crsLoader.get(crsCache, srsName, new Callable<CoordinateReferenceSystem>() {
+            public CoordinateReferenceSystem call() throws Exception {
+                try {
+                    return CRS.decode( srsName );
+                }
+                catch( Exception e) {
+                    throw (IOException) new IOException().initCause(e);
                 }
             }
-        }
-        
-        return crs;
+        });
     }
     
     /**
@@ -472,95 +576,101 @@ public class ResourcePool {
      * 
      * @throws IOException Any errors that occur connecting to the resource.
      */
-    public DataAccess<? extends FeatureType, ? extends Feature> getDataStore( DataStoreInfo info ) throws IOException {
+    public DataAccess<? extends FeatureType, ? extends Feature> getDataStore( final DataStoreInfo info ) throws IOException {
+        String id = info.getId();
+        if (id == null) {
+            // cache only if the id is not null, no need to cache the stores
+            // returned from un-saved DataStoreInfo objects (it would be actually
+            // harmful, NPE when trying to dispose of them)
+            return createDataStore(info);
+        }
+        
+        // concurrent requests for the same store share a single connection attempt, while
+        // connections to different stores proceed in parallel
+        return dataStoreLoader.get(dataStoreCache, id, new Callable<DataAccess>() {
+            public DataAccess call() throws Exception {
+                return createDataStore(info);
+            }
+        });
+    }
+    
+    /**
+     * Connects to the store described by the specified {@link DataStoreInfo}, without caching
+     * the result.
+     */
+    DataAccess<? extends FeatureType, ? extends Feature> createDataStore( DataStoreInfo info ) throws IOException {
         DataAccess<? extends FeatureType, ? extends Feature> dataStore = null;
         try {
-            String id = info.getId();
-            dataStore = (DataAccess<? extends FeatureType, ? extends Feature>) dataStoreCache.get(id);
-            if ( dataStore == null ) {
-                synchronized (dataStoreCache) {
-                    dataStore = (DataAccess<? extends FeatureType, ? extends Feature>) dataStoreCache.get( id );
-                    if ( dataStore == null ) {
-                        //create data store
-                        Map<String, Serializable> connectionParameters = info.getConnectionParameters();
-                        
-                        //call this methdo to execute the hack which recognizes 
-                        // urls which are relative to the data directory
-                        // TODO: find a better way to do this
-                        connectionParameters = DataStoreUtils.getParams(connectionParameters,null);
-                        
-                        // obtain the factory
-                        DataAccessFactory factory = null;
-                        try {
-                            factory = getDataStoreFactory(info);
-                        } catch(IOException e) {
-                            throw new IOException("Failed to find the datastore factory for " + info.getName() 
-                                    + ", did you forget to install the store extension jar?");
-                        }
-                        Param[] params = factory.getParametersInfo();
-                        
-                        //ensure that the namespace parameter is set for the datastore
-                        if (!connectionParameters.containsKey( "namespace") && params != null) {
-                            //if we grabbed the factory, check that the factory actually supports
-                            // a namespace parameter, if we could not get the factory, assume that
-                            // it does
-                            boolean supportsNamespace = true;
-                            supportsNamespace = false;
-                            
-                            for ( Param p : params ) {
-                                if ( "namespace".equalsIgnoreCase( p.key ) ) {
-                                    supportsNamespace = true;
-                                    break;
-                                }
-                            }
-                            
-                            if ( supportsNamespace ) {
-                                WorkspaceInfo ws = info.getWorkspace();
-                                NamespaceInfo ns = info.getCatalog().getNamespaceByPrefix( ws.getName() );
-                                if ( ns == null ) {
-                                    ns = info.getCatalog().getDefaultNamespace();
-                                }
-                                if ( ns != null ) {
-                                    connectionParameters.put( "namespace", ns.getURI() );
-                                }    
-                            }
-                        }
-                        
-                        // see if the store has a repository param, if so, pass the one wrapping
-                        // the store
-                        if(params != null) {
-                            for ( Param p : params ) {
-                                if(Repository.class.equals(p.getType())) {
-                                    connectionParameters.put(p.getName(), repository);
-                                }
-                            }
-                        }
-                        
-                        dataStore = DataStoreUtils.getDataAccess(connectionParameters);
-                        if (dataStore == null) {
-                            /*
-                             * Preserve DataStore retyping behaviour by calling
-                             * DataAccessFinder.getDataStore after the call to
-                             * DataStoreUtils.getDataStore above.
-                             * 
-                             * TODO: DataAccessFinder can also find DataStores, and when retyping is
-                             * supported for DataAccess, we can use a single mechanism.
-                             */
-                            dataStore = DataAccessFinder.getDataStore(connectionParameters);
-                        }
-                        
-                        if ( dataStore == null ) {
-                            throw new NullPointerException("Could not acquire data access '" + info.getName() + "'");
-                        }
-                        
-                        // cache only if the id is not null, no need to cache the stores
-                        // returned from un-saved DataStoreInfo objects (it would be actually
-                        // harmful, NPE when trying to dispose of them)
-                        if(id != null) {
-                            dataStoreCache.put( id, dataStore );
-                        }
+            //create data store
+            Map<String, Serializable> connectionParameters = info.getConnectionParameters();
+            
+            //call this methdo to execute the hack which recognizes 
+            // urls which are relative to the data directory
+            // TODO: find a better way to do this
+            connectionParameters = DataStoreUtils.getParams(connectionParameters,null);
+            
+            // obtain the factory
+            DataAccessFactory factory = null;
+            try {
+                factory = getDataStoreFactory(info);
+            } catch(IOException e) {
+                throw new IOException("Failed to find the datastore factory for " + info.getName() 
+                        + ", did you forget to install the store extension jar?");
+            }
+            Param[] params = factory.getParametersInfo();
+            
+            //ensure that the namespace parameter is set for the datastore
+            if (!connectionParameters.containsKey( "namespace") && params != null) {
+                //if we grabbed the factory, check that the factory actually supports
+                // a namespace parameter, if we could not get the factory, assume that
+                // it does
+                boolean supportsNamespace = true;
+                supportsNamespace = false;
+                
+                for ( Param p : params ) {
+                    if ( "namespace".equalsIgnoreCase( p.key ) ) {
+                        supportsNamespace = true;
+                        break;
                     }
-                } 
+                }
+                
+                if ( supportsNamespace ) {
+                    WorkspaceInfo ws = info.getWorkspace();
+                    NamespaceInfo ns = info.getCatalog().getNamespaceByPrefix( ws.getName() );
+                    if ( ns == null ) {
+                        ns = info.getCatalog().getDefaultNamespace();
+                    }
+                    if ( ns != null ) {
+                        connectionParameters.put( "namespace", ns.getURI() );
+                    }    
+                }
+            }
+            
+            // see if the store has a repository param, if so, pass the one wrapping
+            // the store
+            if(params != null) {
+                for ( Param p : params ) {
+                    if(Repository.class.equals(p.getType())) {
+                        connectionParameters.put(p.getName(), repository);
+                    }
+                }
+            }
+            
+            dataStore = DataStoreUtils.getDataAccess(connectionParameters);
+            if (dataStore == null) {
+                /*
+                 * Preserve DataStore retyping behaviour by calling
+                 * DataAccessFinder.getDataStore after the call to
+                 * DataStoreUtils.getDataStore above.
+                 * 
+                 * TODO: DataAccessFinder can also find DataStores, and when retyping is
+                 * supported for DataAccess, we can use a single mechanism.
+                 */
+                dataStore = DataAccessFinder.getDataStore(connectionParameters);
+            }
+            
+            if ( dataStore == null ) {
+                throw new NullPointerException("Could not acquire data access '" + info.getName() + "'");
             }
             
             return dataStore;
@@ -627,10 +737,11 @@ public class ResourcePool {
      * @param info The data store metadata.
      */
     public void clear( DataStoreInfo info ) {
+        dataStoreLoader.invalidate( info.getId() );
         dataStoreCache.remove( info.getId() );
     }
     
-    public List<AttributeTypeInfo> getAttributes(FeatureTypeInfo info) throws IOException {
+    public List<AttributeTypeInfo> getAttributes(final FeatureTypeInfo info) throws IOException {
         //first check the feature type itself
         //      workaround for GEOS-3294, upgrading from 2.0 data directory,
         //      simply ignore any stored attributes
@@ -642,32 +753,30 @@ public class ResourcePool {
             return info.getAttributes();
         }
         
-        //check the cache
-        List<AttributeTypeInfo> atts = (List<AttributeTypeInfo>) featureTypeAttributeCache.get(info.getId());
-        if (atts == null) {
-            synchronized (featureTypeAttributeCache) {
-                atts = (List<AttributeTypeInfo>) featureTypeAttributeCache.get(info.getId());
-                if (atts == null) {
-                    //load from feature type
-                    atts = loadAttributes(info);
-                    
-                    //check for a schema override
-                    try {
-                        handleSchemaOverride(atts,info);
+        // cache attributes only if the id is not null -> the feature type is not new
+        if (info.getId() == null) {
+            return loadAttributesWithOverrides(info);
+        }
+        return featureTypeAttributeLoader.get(featureTypeAttributeCache, info.getId(),
+                new Callable<List<AttributeTypeInfo>>() {
+                    public List<AttributeTypeInfo> call() throws Exception {
+                        return loadAttributesWithOverrides(info);
                     }
-                    catch( Exception e ) {
-                        LOGGER.log( Level.WARNING, 
-                            "Error occured applying schema override for "+info.getName(), e);
-                    }
-                    
-                    // cache attributes only if the id is not null -> the feature type is not new
-                    if(info.getId() != null) {
-                        featureTypeAttributeCache.put(info.getId(), atts);
-                    }
-                }
-            }
-        }
+                });
+    }
+    
+    List<AttributeTypeInfo> loadAttributesWithOverrides(FeatureTypeInfo info) throws IOException {
+        //load from feature type
+        List<AttributeTypeInfo> atts = loadAttributes(info);
         
+        //check for a schema override
+        try {
+            handleSchemaOverride(atts,info);
+        }
+        catch( Exception e ) {
+            LOGGER.log( Level.WARNING, 
+                "Error occured applying schema override for "+info.getName(), e);
+        }
         return atts;
     }
     
@@ -799,100 +908,109 @@ public class ResourcePool {
         return getFeatureType(info, true);
     }
     
-    FeatureType getFeatureType( FeatureTypeInfo info, boolean handleProjectionPolicy ) throws IOException {
+    FeatureType getFeatureType( final FeatureTypeInfo info, final boolean handleProjectionPolicy ) throws IOException {
         boolean cacheable = isCacheable(info) && handleProjectionPolicy;
-        FeatureType ft = (FeatureType) featureTypeCache.get( info.getId() );
-        if ( ft == null || !cacheable ) {
+        if ( !cacheable ) {
+            // not cached, and possibly registering a temporary virtual table in the store,
+            // keep these loads serialized
             synchronized ( featureTypeCache ) {
-                ft = (FeatureType) featureTypeCache.get( info.getId() );
-                if ( ft == null || !cacheable) {
-                    
-                    //grab the underlying feature type
-                    DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
-                    
-                    // sql view handling
-                    VirtualTable vt = null;
-                    String vtName = null;
-                    if(dataAccess instanceof JDBCDataStore && info.getMetadata() != null &&
-                            (info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE) instanceof VirtualTable)) {
-                        JDBCDataStore jstore = (JDBCDataStore) dataAccess;
-                        vt = info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, VirtualTable.class);
-                        
-                        if(!cacheable) {
-                            // use a highly random name, we don't want to actually add the
-                            // virtual table to the store as this feature type is not cacheable,
-                            // it is "dirty" or un-saved. The renaming below will take care
-                            // of making the user see the actual name
-                            final String[] typeNames = jstore.getTypeNames();
-                            do {
-                                vtName = UUID.randomUUID().toString();
-                            } while (Arrays.asList(typeNames).contains(vtName));
-    
-                            // try adding the vt and see if that works
-                            jstore.addVirtualTable(new VirtualTable(vtName, vt));
-                            ft = jstore.getSchema(vtName);
-                        } else {
-                            vtName = vt.getName();
-                            if(!jstore.getVirtualTables().containsValue(vt)) {
-                                jstore.addVirtualTable(vt);
-                            }
-                            ft = jstore.getSchema(vt.getName());
-                        }
-                    } else {
-                        ft = dataAccess.getSchema(info.getQualifiedNativeName());
+                return loadFeatureType( info, false, handleProjectionPolicy );
+            }
+        }
+        
+        return featureTypeLoader.get(featureTypeCache, info.getId(), new Callable<FeatureType>() {
+            public FeatureType call() throws Exception {
+                return loadFeatureType( info, true, handleProjectionPolicy );
+            }
+        });
+    }
+    
+    /**
+     * Loads the feature type from the underlying store, without caching it.
+     */
+    FeatureType loadFeatureType( FeatureTypeInfo info, boolean cacheable, boolean handleProjectionPolicy ) throws IOException {
+        FeatureType ft;
+        //grab the underlying feature type
+        DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
+        
+        // sql view handling
+        VirtualTable vt = null;
+        String vtName = null;
+        if(dataAccess instanceof JDBCDataStore && info.getMetadata() != null &&
+                (info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE) instanceof VirtualTable)) {
+            JDBCDataStore jstore = (JDBCDataStore) dataAccess;
+            vt = info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, VirtualTable.class);
+            
+            if(!cacheable) {
+                // use a highly random name, we don't want to actually add the
+                // virtual table to the store as this feature type is not cacheable,
+                // it is "dirty" or un-saved. The renaming below will take care
+                // of making the user see the actual name
+                final String[] typeNames = jstore.getTypeNames();
+                do {
+                    vtName = UUID.randomUUID().toString();
+                } while (Arrays.asList(typeNames).contains(vtName));
+    
+                // try adding the vt and see if that works
+                jstore.addVirtualTable(new VirtualTable(vtName, vt));
+                ft = jstore.getSchema(vtName);
+            } else {
+                vtName = vt.getName();
+                if(!jstore.getVirtualTables().containsValue(vt)) {
+                    jstore.addVirtualTable(vt);
+                }
+                ft = jstore.getSchema(vt.getName());
+            }
+        } else {
+            ft = dataAccess.getSchema(info.getQualifiedNativeName());
+        }
+        
+        // TODO: support reprojection for non-simple FeatureType
+        if (ft instanceof SimpleFeatureType) {
+            SimpleFeatureType sft = (SimpleFeatureType) ft;
+            //create the feature type so it lines up with the "declared" schema
+            SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+            tb.setName( info.getName() );
+            tb.setNamespaceURI( info.getNamespace().getURI() );
+
+            if ( info.getAttributes() == null || info.getAttributes().isEmpty() ) {
+                //take this to mean just load all native
+                for ( PropertyDescriptor pd : ft.getDescriptors() ) {
+                    if ( !( pd instanceof AttributeDescriptor ) ) {
+                        continue;
                     }
                     
-                    // TODO: support reprojection for non-simple FeatureType
-                    if (ft instanceof SimpleFeatureType) {
-                        SimpleFeatureType sft = (SimpleFeatureType) ft;
-                        //create the feature type so it lines up with the "declared" schema
-                        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
-                        tb.setName( info.getName() );
-                        tb.setNamespaceURI( info.getNamespace().getURI() );
-
-                        if ( info.getAttributes() == null || info.getAttributes().isEmpty() ) {
-                            //take this to mean just load all native
-                            for ( PropertyDescriptor pd : ft.getDescriptors() ) {
-                                if ( !( pd instanceof AttributeDescriptor ) ) {
-                                    continue;
-                                }
-                                
-                                AttributeDescriptor ad = (AttributeDescriptor) pd;
-                                if(handleProjectionPolicy) {
-                                    ad = handleDescriptor(ad, info);
-                                }
-                                tb.add( ad );
-                            }
-                        }
-                        else {
-                            //only load native attributes configured
-                            for ( AttributeTypeInfo att : info.getAttributes() ) {
-                                String attName = att.getName();
-                                
-                                //load the actual underlying attribute type
-                                PropertyDescriptor pd = ft.getDescriptor( attName );
-                                if ( pd == null || !( pd instanceof AttributeDescriptor) ) {
-                                    throw new IOException("the SimpleFeatureType " + info.getPrefixedName()
-                                            + " does not contains the configured attribute " + attName
-                                            + ". Check your schema configuration");
-                                }
-                            
-                                AttributeDescriptor ad = (AttributeDescriptor) pd;
-                                ad = handleDescriptor(ad, info);
-                                tb.add( (AttributeDescriptor) ad );
-                            }
-                        }
-                        ft = tb.buildFeatureType();
-                    } // end special case for SimpleFeatureType
+                    AttributeDescriptor ad = (AttributeDescriptor) pd;
+                    if(handleProjectionPolicy) {
+                        ad = handleDescriptor(ad, info);
+                    }
+                    tb.add( ad );
+                }
+            }
+            else {
+                //only load native attributes configured
+                for ( AttributeTypeInfo att : info.getAttributes() ) {
+                    String attName = att.getName();
                     
-                    if(cacheable) {
-                        featureTypeCache.put( info.getId(), ft );
-                    } else if(vtName != null) {
-                        JDBCDataStore jstore = (JDBCDataStore) dataAccess;
-                        jstore.removeVirtualTable(vtName);
+                    //load the actual underlying attribute type
+                    PropertyDescriptor pd = ft.getDescriptor( attName );
+                    if ( pd == null || !( pd instanceof AttributeDescriptor) ) {
+                        throw new IOException("the SimpleFeatureType " + info.getPrefixedName()
+                                + " does not contains the configured attribute " + attName
+                                + ". Check your schema configuration");
                     }
+                
+                    AttributeDescriptor ad = (AttributeDescriptor) pd;
+                    ad = handleDescriptor(ad, info);
+                    tb.add( (AttributeDescriptor) ad );
                 }
             }
+            ft = tb.buildFeatureType();
+        } // end special case for SimpleFeatureType
+        
+        if(!cacheable && vtName != null) {
+            JDBCDataStore jstore = (JDBCDataStore) dataAccess;
+            jstore.removeVirtualTable(vtName);
         }
         
         return ft;
@@ -1006,6 +1124,8 @@ public class ResourcePool {
      * @param info The feature type metadata.
      */
     public void clear( FeatureTypeInfo info ) {
+        featureTypeLoader.invalidate( info.getId() );
+        featureTypeAttributeLoader.invalidate( info.getId() );
         featureTypeCache.remove( info.getId() );
         featureTypeAttributeCache.remove( info.getId() );
     }
@@ -1024,6 +1144,11 @@ public class ResourcePool {
      * @throws IOException Any errors that occur while loading the feature source.
      */
     public FeatureSource<? extends FeatureType, ? extends Feature> getFeatureSource( FeatureTypeInfo info, Hints hints ) throws IOException {
+        ResourceAccessTracker tracker = accessTracker;
+        if (tracker != null) {
+            tracker.accessed(info.getId());
+        }
+        
         DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
         
         // TODO: support aliasing (renaming), reprojection, versioning, and locking for DataAccess
@@ -1155,7 +1280,7 @@ public class ResourcePool {
      * @throws IOException Any errors that occur loading the reader.
      */
     @SuppressWarnings("deprecation")
-    public GridCoverageReader getGridCoverageReader( CoverageStoreInfo info, Hints hints ) 
+    public GridCoverageReader getGridCoverageReader( final CoverageStoreInfo info, Hints hints ) 
         throws IOException {
         
         final AbstractGridFormat gridFormat = info.getFormat();
@@ -1163,7 +1288,11 @@ public class ResourcePool {
             throw new IOException("Could not find the raster plugin for format " + info.getType());
         }
         
-        GridCoverageReader reader = null;
+        ResourceAccessTracker tracker = accessTracker;
+        if (tracker != null) {
+            tracker.accessed(info.getId());
+        }
+        
         Object key;
         if ( hints != null && info.getId() != null) {
             // expand the hints if necessary
@@ -1179,27 +1308,13 @@ public class ResourcePool {
             }
             
             key = new CoverageHintReaderKey(info.getId(), hints);
-            reader = (GridCoverageReader) hintCoverageReaderCache.get( key );    
         } else {
             key = info.getId();
-            if(key != null) {
-                reader = (GridCoverageReader) coverageReaderCache.get( key );
-            }
-        }
-        
-        if (reader != null) {
-            return reader;
         }
         
-        synchronized ( hints != null ? hintCoverageReaderCache : coverageReaderCache ) {
-            if (key != null) {
-                if (hints != null) {
-                    reader = (GridCoverageReader) hintCoverageReaderCache.get(key);
-                } else {
-                    reader = (GridCoverageReader) coverageReaderCache.get(key);
-                }
-            }
-            if (reader == null) {
+        final Hints readerHints = hints;
+        Callable<GridCoverageReader> loader = new Callable<GridCoverageReader>() {
+            public GridCoverageReader call() throws Exception {
                 /////////////////////////////////////////////////////////
                 //
                 // Getting coverage reader using the format and the real path.
@@ -1207,18 +1322,25 @@ public class ResourcePool {
                 // /////////////////////////////////////////////////////////
                 final File obj = GeoserverDataDirectory.findDataFile(info.getURL());
     
-                reader = gridFormat.getReader(obj,hints);
-                if(key != null) {
-                    if(hints != null) {
-                        hintCoverageReaderCache.put((CoverageHintReaderKey) key, reader);
-                    } else {
-                        coverageReaderCache.put((String) key, reader);
-                    }
-                }
+                return gridFormat.getReader(obj,readerHints);
             }
-        }
+        };
         
-        return reader;
+        if (key == null) {
+            // un-saved store, do not cache
+            try {
+                return loader.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw (IOException) new IOException().initCause(e);
+            }
+        } else if (key instanceof CoverageHintReaderKey) {
+            return hintCoverageReaderLoader.get(hintCoverageReaderCache,
+                    (CoverageHintReaderKey) key, loader);
+        } else {
+            return coverageReaderLoader.get(coverageReaderCache, (String) key, loader);
+        }
             
     }
     
@@ -1227,6 +1349,12 @@ public class ResourcePool {
      */
     public void clear(CoverageStoreInfo info) {
         String storeId = info.getId();
+        coverageReaderLoader.invalidate(storeId);
+        for (CoverageHintReaderKey key : hintCoverageReaderLoader.inflight.keySet()) {
+            if (key.id != null && key.id.equals(storeId)) {
+                hintCoverageReaderLoader.invalidate(key);
+            }
+        }
         coverageReaderCache.remove(storeId);
         HashSet<CoverageHintReaderKey> keys = new HashSet<CoverageHintReaderKey>(hintCoverageReaderCache.keySet());
         for (CoverageHintReaderKey key : keys) {
@@ -1384,43 +1512,41 @@ public class ResourcePool {
      * @param info The WMS configuration
      * @throws IOException
      */
-    public WebMapServer getWebMapServer(WMSStoreInfo info) throws IOException {
+    public WebMapServer getWebMapServer(final WMSStoreInfo info) throws IOException {
         try {
-            String id = info.getId();
-            WebMapServer wms = (WebMapServer) wmsCache.get(id);
-            if (wms == null) {
-                synchronized (wmsCache) {
-                    wms = (WebMapServer) wmsCache.get(id);
-                    if (wms == null) {
-                        HTTPClient client;
-                        if (info.isUseConnectionPooling()) {
-                            client = new MultithreadedHttpClient();
-                            if (info.getMaxConnections() > 0) {
-                                int maxConnections = info.getMaxConnections();
-                                MultithreadedHttpClient mtClient = (MultithreadedHttpClient) client;
-                                mtClient.setMaxConnections(maxConnections);
-                            }
-                        } else {
-                            client = new SimpleHttpClient();
+            Callable<WebMapServer> loader = new Callable<WebMapServer>() {
+                public WebMapServer call() throws Exception {
+                    HTTPClient client;
+                    if (info.isUseConnectionPooling()) {
+                        client = new MultithreadedHttpClient();
+                        if (info.getMaxConnections() > 0) {
+                            int maxConnections = info.getMaxConnections();
+                            MultithreadedHttpClient mtClient = (MultithreadedHttpClient) client;
+                            mtClient.setMaxConnections(maxConnections);
                         }
-                        String username = info.getUsername();
-                        String password = info.getPassword();
-                        int connectTimeout = info.getConnectTimeout();
-                        int readTimeout = info.getReadTimeout();
-                        client.setUser(username);
-                        client.setPassword(password);
-                        client.setConnectTimeout(connectTimeout);
-                        client.setReadTimeout(readTimeout);
-
-                        URL serverURL = new URL(info.getCapabilitiesURL());
-                        wms = new WebMapServer(serverURL, client);
-                        
-                        wmsCache.put(id, wms);
+                    } else {
+                        client = new SimpleHttpClient();
                     }
+                    String username = info.getUsername();
+                    String password = info.getPassword();
+                    int connectTimeout = info.getConnectTimeout();
+                    int readTimeout = info.getReadTimeout();
+                    client.setUser(username);
+                    client.setPassword(password);
+                    client.setConnectTimeout(connectTimeout);
+                    client.setReadTimeout(readTimeout);
+
+                    URL serverURL = new URL(info.getCapabilitiesURL());
+                    return new WebMapServer(serverURL, client);
                 }
+            };
+            
+            String id = info.getId();
+            if (id == null) {
+                // un-saved store, do not cache
+                return loader.call();
             }
-
-            return wms;
+            return wmsLoader.get(wmsCache, id, loader);
         } catch (IOException ioe) {
             throw ioe;
         } catch (Exception e) {
@@ -1456,6 +1582,7 @@ public class ResourcePool {
      * Clears the cached resource for a web map server
      */
     public void clear( WMSStoreInfo info ) {
+        wmsLoader.invalidate( info.getId() );
         wmsCache.remove( info.getId() );
     }
     
@@ -1469,32 +1596,25 @@ public class ResourcePool {
      * 
      * @throws IOException Any parsing errors.
      */
-    public Style getStyle( StyleInfo info ) throws IOException {
-        Style style = styleCache.get( info );
-        if ( style == null ) {
-            synchronized (styleCache) {
-                style = styleCache.get( info );
-                if ( style == null ) {
-                    
-                    //JD: it is important that we call the SLDParser(File) constructor because
-                    // if not the sourceURL will not be set which will mean it will fail to 
-                    //resolve relative references to online resources
-                    File styleFile = dataDir().findStyleSldFile(info);
-                    if ( styleFile == null ){
-                        throw new IOException( "No such file: " + info.getFilename());
-                    }
-                    
-                    style = Styles.style(Styles.parse(styleFile, info.getSLDVersion()));
-                    
-                    //set the name of the style to be the name of hte style metadata
-                    // remove this when wms works off style info
-                    style.setName( info.getName() );
-                    styleCache.put( info, style );
+    public Style getStyle( final StyleInfo info ) throws IOException {
+        return styleLoader.get(styleCache, info, new Callable<Style>() {
+            public Style call() throws Exception {
+                //JD: it is important that we call the SLDParser(File) constructor because
+                // if not the sourceURL will not be set which will mean it will fail to 
+                //resolve relative references to online resources
+                File styleFile = dataDir().findStyleSldFile(info);
+                if ( styleFile == null ){
+                    throw new IOException( "No such file: " + info.getFilename());
                 }
+                
+                Style style = Styles.style(Styles.parse(styleFile, info.getSLDVersion()));
+                
+                //set the name of the style to be the name of hte style metadata
+                // remove this when wms works off style info
+                style.setName( info.getName() );
+                return style;
             }
-        }
-        
-        return style;
+        });
     }
     
     /**
@@ -1503,6 +1623,7 @@ public class ResourcePool {
      * @param info The style metadata.
      */
     public void clear(StyleInfo info) {
+        styleLoader.invalidate( info );
         styleCache.remove( info );
     }
     
@@ -1607,6 +1728,11 @@ public class ResourcePool {
      *
      */
     public void dispose() {
+        for (SingleFlightLoader<?, ?> loader : new SingleFlightLoader<?, ?>[] { crsLoader,
+                dataStoreLoader, featureTypeLoader, featureTypeAttributeLoader,
+                coverageReaderLoader, hintCoverageReaderLoader, wmsLoader, styleLoader }) {
+            loader.invalidateAll();
+        }
         crsCache.clear();
         dataStoreCache.clear();
         featureTypeCache.clear();
@@ -1628,6 +1754,11 @@ public class ResourcePool {
      */
     abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> {
 
+        /**
+         * Counts the values reclaimed by the garbage collector
+         */
+        CacheStatistics statistics;
+
         public CatalogResourceCache() {
             this(100);
         }
@@ -1638,6 +1769,9 @@ public class ResourcePool {
 
                 @Override
                 public void clean(Object key, Object object) {
+                    if (statistics != null) {
+                        statistics.evicted();
+                    }
                     dispose((K) key, (V) object);
                 }
             };
@@ -0,0 +1,317 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInitializer;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.factory.GeoTools;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Opens the data stores, coverage readers and feature types of the catalog in the background
+ * right after startup, so that the first requests do not pay for connection pool and index
+ * initialization.
+ * <p>
+ * The warm up is disabled by default, and can be enabled setting the
+ * <tt>GEOSERVER_WARMUP</tt> system/context/environment variable to <code>true</code>. The
+ * resources are opened by a bounded pool of <tt>GEOSERVER_WARMUP_THREADS</tt> threads (the
+ * number of processors by default), most accessed first according to the counts recorded in
+ * <tt>warmup/access.properties</tt> by the previous runs. The server keeps on accepting
+ * requests while the warm up is running, requests for a resource being opened simply wait for
+ * it as they would in case of a concurrent cache miss.
+ * </p>
+ * <p>
+ * The resources are opened the same way the requests open them, feature sources for the feature
+ * types and coverage readers with the default GeoTools hints, so that the requests find them in
+ * the caches. The access counts are not cumulative, they are halved every
+ * {@link ResourceAccessTracker#DECAY_INTERVAL}, so the priority favors the recently used
+ * resources.
+ * </p>
+ */
+public class ResourcePoolWarmer implements GeoServerInitializer, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver.catalog");
+
+    /**
+     * Enables the warm up
+     */
+    public static final String WARMUP = "GEOSERVER_WARMUP";
+
+    /**
+     * Number of threads used for the warm up
+     */
+    public static final String WARMUP_THREADS = "GEOSERVER_WARMUP_THREADS";
+
+    /**
+     * Interval between two saves of the access counts, in seconds
+     */
+    static final long SAVE_INTERVAL = 10 * 60;
+
+    GeoServerResourceLoader resourceLoader;
+
+    ResourceAccessTracker tracker;
+
+    ExecutorService executor;
+
+    ScheduledExecutorService scheduler;
+
+    volatile int total;
+
+    final AtomicInteger completed = new AtomicInteger();
+
+    final AtomicInteger failed = new AtomicInteger();
+
+    volatile long startTime;
+
+    public ResourcePoolWarmer(GeoServerResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    public void initialize(GeoServer geoServer) throws Exception {
+        if (!Boolean.valueOf(GeoServerExtensions.getProperty(WARMUP))) {
+            return;
+        }
+        // in case we are being re-initialized
+        destroy();
+
+        Catalog catalog = geoServer.getCatalog();
+        ResourcePool pool = catalog.getResourcePool();
+
+        File dir = resourceLoader.findOrCreateDirectory("warmup");
+        tracker = new ResourceAccessTracker(new File(dir, "access.properties"));
+        try {
+            tracker.load();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not load the resource access counts, "
+                    + "the warm up will not be prioritized", e);
+        }
+        pool.setAccessTracker(tracker);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new WarmerThreadFactory(
+                "GeoServerWarmupSaver"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                ResourceAccessTracker tracker = ResourcePoolWarmer.this.tracker;
+                if (tracker != null) {
+                    tracker.decay(System.currentTimeMillis());
+                }
+                save();
+            }
+        }, SAVE_INTERVAL, SAVE_INTERVAL, TimeUnit.SECONDS);
+
+        List<WarmupTask> tasks = tasks(catalog, pool);
+        executor = Executors.newFixedThreadPool(threads(), new WarmerThreadFactory(
+                "GeoServerWarmup"));
+        total = tasks.size();
+        completed.set(0);
+        failed.set(0);
+        startTime = System.currentTimeMillis();
+        LOGGER.info("Warming up " + total + " resources on " + threads() + " threads");
+        for (WarmupTask task : tasks) {
+            executor.execute(task);
+        }
+        // let the threads die once done
+        executor.shutdown();
+    }
+
+    int threads() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String value = GeoServerExtensions.getProperty(WARMUP_THREADS);
+        if (value != null) {
+            try {
+                threads = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + WARMUP_THREADS + ": " + value);
+            }
+        }
+        return Math.max(1, threads);
+    }
+
+    /**
+     * Builds the list of warm up tasks, sorted by decreasing access count
+     */
+    List<WarmupTask> tasks(Catalog catalog, final ResourcePool pool) {
+        List<WarmupTask> tasks = new ArrayList<WarmupTask>();
+
+        // feature types, opening them also connects to their store
+        Set<String> warmedStores = new HashSet<String>();
+        for (final FeatureTypeInfo ft : catalog.getFeatureTypes()) {
+            if (!ft.enabled()) {
+                continue;
+            }
+            warmedStores.add(ft.getStore().getId());
+            tasks.add(new WarmupTask(ft.prefixedName(), tracker.getCount(ft.getId())) {
+                void warm() throws Exception {
+                    // same path as the requests, opens the store and caches the feature type
+                    pool.getFeatureSource(ft, null);
+                }
+            });
+        }
+
+        // stores without any feature type
+        for (final DataStoreInfo ds : catalog.getDataStores()) {
+            if (!ds.isEnabled() || warmedStores.contains(ds.getId())) {
+                continue;
+            }
+            tasks.add(new WarmupTask(ds.getName(), 0) {
+                void warm() throws Exception {
+                    pool.getDataStore(ds);
+                }
+            });
+        }
+
+        // coverage readers
+        for (final CoverageStoreInfo cs : catalog.getCoverageStores()) {
+            if (!cs.isEnabled()) {
+                continue;
+            }
+            tasks.add(new WarmupTask(cs.getName(), tracker.getCount(cs.getId())) {
+                void warm() throws Exception {
+                    // requests ask for the readers with the default hints, and the readers
+                    // are cached by hints
+                    pool.getGridCoverageReader(cs, GeoTools.getDefaultHints());
+                }
+            });
+        }
+
+        // most used first, the sort is stable so catalog order is kept otherwise
+        Collections.sort(tasks, new Comparator<WarmupTask>() {
+            public int compare(WarmupTask t1, WarmupTask t2) {
+                return t1.priority > t2.priority ? -1 : (t1.priority == t2.priority ? 0 : 1);
+            }
+        });
+        return tasks;
+    }
+
+    void save() {
+        ResourceAccessTracker tracker = this.tracker;
+        if (tracker == null) {
+            return;
+        }
+        try {
+            tracker.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the resource access counts", e);
+        }
+    }
+
+    /**
+     * Number of resources scheduled for warm up
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Number of resources whose warm up completed, successfully or not
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Number of resources that could not be opened
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public boolean isDone() {
+        return executor == null || executor.isTerminated();
+    }
+
+    public void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        save();
+    }
+
+    abstract class WarmupTask implements Runnable {
+
+        String name;
+
+        long priority;
+
+        WarmupTask(String name, long priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        public void run() {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            // the warm up accesses do not count as usage
+            ResourceAccessTracker.IGNORED.set(Boolean.TRUE);
+            try {
+                warm();
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to warm up " + name, t);
+            } finally {
+                ResourceAccessTracker.IGNORED.remove();
+            }
+            progress();
+        }
+
+        void progress() {
+            int done = completed.incrementAndGet();
+            // log every 10% and at the end
+            int step = Math.max(1, total / 10);
+            if (done == total) {
+                LOGGER.info("Warm up completed in " + (System.currentTimeMillis() - startTime)
+                        + "ms, " + done + " resources, " + failed.get() + " failures");
+            } else if (done % step == 0) {
+                LOGGER.info("Warm up progress: " + done + "/" + total);
+            }
+        }
+
+        abstract void warm() throws Exception;
+    }
+
+    static class WarmerThreadFactory implements ThreadFactory {
+
+        String prefix;
+
+        AtomicInteger count = new AtomicInteger();
+
+        WarmerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            // do not prevent the container from shutting down
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads values into one of the {@link ResourcePool} caches making sure that concurrent misses on
+ * the same key trigger a single load, while loads for different keys proceed in parallel.
+ * <p>
+ * Threads missing on a key that is already being loaded wait for the in flight load and share
+ * its result (or failure). The cache itself is only locked for the time needed to store the
+ * loaded value, so that a slow load (e.g. connecting to a remote data store) does not block
+ * lookups and loads of unrelated keys.
+ * </p>
+ * <p>
+ * Code removing entries from the cache must call {@link #invalidate(Object)} (or
+ * {@link #invalidateAll()}) before doing so: a value whose load was in flight at that time is
+ * built from the old configuration, so it is disposed instead of being stored, and loaded again.
+ * </p>
+ *
+ * @param <K> The cache key
+ * @param <V> The cached value
+ */
+class SingleFlightLoader<K, V> {
+
+    final ConcurrentHashMap<K, Flight> inflight = new ConcurrentHashMap<K, Flight>();
+
+    final CacheStatistics statistics;
+
+    SingleFlightLoader(CacheStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the value cached under the specified key, loading it with the specified loader
+     * and storing it in the cache if missing.
+     */
+    V get(final Map<K, V> cache, final K key, final Callable<V> loader) throws IOException {
+        V value = cache.get(key);
+        if (value != null) {
+            statistics.hit();
+            return value;
+        }
+        statistics.miss();
+
+        Flight flight = new Flight(cache, key, loader);
+        Flight running = inflight.putIfAbsent(key, flight);
+        if (running == null) {
+            try {
+                flight.task.run();
+            } finally {
+                inflight.remove(key, flight);
+            }
+            running = flight;
+        } else {
+            statistics.coalesced();
+        }
+
+        try {
+            return running.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted while loading " + key).initCause(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (IOException) new IOException().initCause(cause);
+        }
+    }
+
+    /**
+     * Makes the load in flight for the specified key, if any, drop its value instead of storing
+     * it in the cache
+     */
+    void invalidate(K key) {
+        Flight flight = inflight.get(key);
+        if (flight != null) {
+            flight.stale = true;
+        }
+    }
+
+    /**
+     * Makes all the loads in flight drop their value instead of storing it in the cache
+     */
+    void invalidateAll() {
+        for (Flight flight : inflight.values()) {
+            flight.stale = true;
+        }
+    }
+
+    /**
+     * Disposes a value that has been loaded but not stored in the cache
+     */
+    @SuppressWarnings("unchecked")
+    void dispose(Map<K, V> cache, K key, V value) {
+        if (cache instanceof ResourcePool.CatalogResourceCache) {
+            ((ResourcePool.CatalogResourceCache<K, V>) cache).dispose(key, value);
+        }
+    }
+
+    /**
+     * A load of a single key, shared by all the threads missing on it
+     */
+    class Flight implements Callable<V> {
+
+        final Map<K, V> cache;
+
+        final K key;
+
+        final Callable<V> loader;
+
+        final FutureTask<V> task = new FutureTask<V>(this);
+
+        /**
+         * Set when the cache entry is removed while loading
+         */
+        volatile boolean stale;
+
+        Flight(Map<K, V> cache, K key, Callable<V> loader) {
+            this.cache = cache;
+            this.key = key;
+            this.loader = loader;
+        }
+
+        public V call() throws Exception {
+            // someone else might have completed a load right before we started
+            V value = cache.get(key);
+            if (value != null) {
+                return value;
+            }
+
+            while (true) {
+                long start = System.nanoTime();
+                try {
+                    value = loader.call();
+                    statistics.loaded(System.nanoTime() - start);
+                } catch (Exception e) {
+                    statistics.failed(System.nanoTime() - start);
+                    throw e;
+                }
+                if (value == null) {
+                    return null;
+                }
+                synchronized (cache) {
+                    if (!stale) {
+                        cache.put(key, value);
+                        return value;
+                    }
+                    stale = false;
+                }
+                // built from the configuration that has just been cleared, load it again
+                dispose(cache, key, value);
+            }
+        }
+    }
+}
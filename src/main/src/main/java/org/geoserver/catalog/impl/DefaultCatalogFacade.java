@@ -997,6 +997,13 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         }
     }
 
+    /**
+     * Hook called after the backing collections have been replaced as a whole, allows 
+     * subclasses maintaining secondary indexes to rebuild them. This implementation does nothing.
+     */
+    protected void reindex() {
+    }
+
     public void syncTo(CatalogFacade dao) {
         if (dao instanceof DefaultCatalogFacade) {
             //do an optimized sync
@@ -1011,6 +1018,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             other.maps = maps;
             other.layerGroups = layerGroups;
             other.styles = styles;
+            other.reindex();
         }
         else {
             //do a manual import
@@ -1172,7 +1180,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         return Iterables.filter(all, filterAdapter);
     }
 
-    private Comparator<Object> comparator(final SortBy sortOrder) {
+    Comparator<Object> comparator(final SortBy sortOrder) {
         return new Comparator<Object>() {
             @Override
             public int compare(Object o1, Object o2) {
@@ -0,0 +1,834 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+
+/**
+ * In memory catalog facade that keeps hash indexes on top of the collections maintained by
+ * {@link DefaultCatalogFacade}.
+ * <p>
+ * Lookups by id, name, prefixed name, resource, style and workspace are answered from the
+ * indexes instead of walking the full collections, which makes a difference on catalogs with
+ * tens of thousands of layers. The indexes are kept consistent on add, remove and save, and are
+ * rebuilt whenever the backing collections are replaced as a whole ({@link #resolve()},
+ * {@link #syncTo(CatalogFacade)}).
+ * </p>
+ * <p>
+ * {@link #list} and {@link #count} use the same indexes to answer equality and "in" predicates
+ * on the indexed properties, see {@link IndexedQueryPlanner}.
+ * </p>
+ * <p>
+ * The facade can be plugged into the catalog from the spring context:
+ * <pre>
+ * &lt;bean id="rawCatalog" class="org.geoserver.catalog.impl.CatalogImpl">
+ *   &lt;property name="facade">
+ *     &lt;bean class="org.geoserver.catalog.impl.IndexedCatalogFacade"/>
+ *   &lt;/property>
+ *   ...
+ * &lt;/bean>
+ * </pre>
+ * </p>
+ */
+public class IndexedCatalogFacade extends DefaultCatalogFacade {
+
+    /*
+     * stores
+     */
+    transient Map<String, StoreInfo> storesById;
+
+    transient MultiIndex<StoreInfo> storesByName;
+
+    transient MultiIndex<StoreInfo> storesByWorkspace;
+
+    /*
+     * resources
+     */
+    transient Map<String, ResourceInfo> resourcesById;
+
+    transient MultiIndex<ResourceInfo> resourcesByName;
+
+    transient MultiIndex<ResourceInfo> resourcesByStore;
+
+    /*
+     * layers
+     */
+    transient Map<String, LayerInfo> layersById;
+
+    transient MultiIndex<LayerInfo> layersByName;
+
+    transient MultiIndex<LayerInfo> layersByPrefixedName;
+
+    transient MultiIndex<LayerInfo> layersByResource;
+
+    transient MultiIndex<LayerInfo> layersByStyle;
+
+    /*
+     * layer groups
+     */
+    transient Map<String, LayerGroupInfo> layerGroupsById;
+
+    /*
+     * styles
+     */
+    transient Map<String, StyleInfo> stylesById;
+
+    transient MultiIndex<StyleInfo> stylesByName;
+
+    /*
+     * workspaces and namespaces
+     */
+    transient Map<String, WorkspaceInfo> workspacesById;
+
+    transient Map<String, NamespaceInfo> namespacesById;
+
+    /*
+     * list/count query planner working against the above indexes
+     */
+    transient IndexedQueryPlanner planner;
+
+    public IndexedCatalogFacade() {
+        this(null);
+    }
+
+    public IndexedCatalogFacade(Catalog catalog) {
+        super(catalog);
+        createIndexes();
+    }
+
+    //
+    // Stores
+    //
+    @Override
+    public StoreInfo add(StoreInfo store) {
+        StoreInfo added = super.add(store);
+        index(unwrap(store));
+        return added;
+    }
+
+    @Override
+    public void remove(StoreInfo store) {
+        unindex(unwrap(store));
+        super.remove(store);
+    }
+
+    @Override
+    public void save(StoreInfo store) {
+        beforeSaved(store);
+        StoreInfo real = unwrap(store);
+        synchronized (storesById) {
+            unindex(real);
+            commitProxy(store);
+            index(real);
+        }
+        afterSaved(store);
+    }
+
+    @Override
+    public <T extends StoreInfo> T getStore(String id, Class<T> clazz) {
+        StoreInfo store = storesById.get(id);
+        if (store != null && clazz.isInstance(store)) {
+            return ModificationProxy.create((T) store, clazz);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends StoreInfo> T getStoreByName(WorkspaceInfo workspace, String name,
+            Class<T> clazz) {
+        List<StoreInfo> candidates = storesByName.get(name);
+        if (workspace == ANY_WORKSPACE) {
+            T match = null;
+            for (StoreInfo store : candidates) {
+                if (clazz.isInstance(store)) {
+                    if (match != null) {
+                        // ambiguous
+                        return null;
+                    }
+                    match = (T) store;
+                }
+            }
+            return match != null ? ModificationProxy.create(match, clazz) : null;
+        }
+
+        for (StoreInfo store : candidates) {
+            if (clazz.isInstance(store) && store.getWorkspace().equals(workspace)) {
+                return ModificationProxy.create((T) store, clazz);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends StoreInfo> List<T> getStoresByWorkspace(WorkspaceInfo workspace,
+            Class<T> clazz) {
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+        if (workspace == null || workspace == ANY_WORKSPACE) {
+            return super.getStoresByWorkspace(workspace, clazz);
+        }
+
+        List<T> matches = new ArrayList<T>();
+        for (StoreInfo store : storesByWorkspace.get(workspace.getId())) {
+            if (clazz.isInstance(store)) {
+                matches.add((T) store);
+            }
+        }
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    //
+    // Resources
+    //
+    @Override
+    public ResourceInfo add(ResourceInfo resource) {
+        ResourceInfo added = super.add(resource);
+        index(unwrap(resource));
+        return added;
+    }
+
+    @Override
+    public void remove(ResourceInfo resource) {
+        unindex(unwrap(resource));
+        super.remove(resource);
+    }
+
+    @Override
+    public void save(ResourceInfo resource) {
+        beforeSaved(resource);
+        ResourceInfo real = unwrap(resource);
+        synchronized (resourcesById) {
+            // the layer names and prefixed names derive from the resource ones
+            List<LayerInfo> layers = layersByResource.get(real.getId());
+            for (LayerInfo layer : layers) {
+                unindex(layer);
+            }
+            unindex(real);
+            commitProxy(resource);
+            index(real);
+            for (LayerInfo layer : layers) {
+                index(layer);
+            }
+        }
+        afterSaved(resource);
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResource(String id, Class<T> clazz) {
+        ResourceInfo resource = resourcesById.get(id);
+        if (resource != null && clazz.isInstance(resource)) {
+            return ModificationProxy.create((T) resource, clazz);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResourceByName(NamespaceInfo namespace, String name,
+            Class<T> clazz) {
+        List<ResourceInfo> candidates = resourcesByName.get(name);
+        if (namespace == ANY_NAMESPACE) {
+            T match = null;
+            for (ResourceInfo resource : candidates) {
+                if (clazz.isInstance(resource)) {
+                    if (match != null) {
+                        // ambiguous
+                        return null;
+                    }
+                    match = (T) resource;
+                }
+            }
+            return match != null ? ModificationProxy.create(match, clazz) : null;
+        }
+
+        for (ResourceInfo resource : candidates) {
+            if (clazz.isInstance(resource)) {
+                NamespaceInfo ns = resource.getNamespace();
+                if (ns != null && ns.equals(namespace)) {
+                    return ModificationProxy.create((T) resource, clazz);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResourceByStore(StoreInfo store, String name,
+            Class<T> clazz) {
+        for (ResourceInfo resource : resourcesByName.get(name)) {
+            if (clazz.isInstance(resource) && store.equals(resource.getStore())) {
+                return ModificationProxy.create((T) resource, clazz);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
+        List<T> matches = new ArrayList<T>();
+        for (ResourceInfo resource : resourcesByStore.get(store.getId())) {
+            if (clazz.isInstance(resource)) {
+                matches.add((T) resource);
+            }
+        }
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    //
+    // Layers
+    //
+    @Override
+    public LayerInfo add(LayerInfo layer) {
+        LayerInfo added = super.add(layer);
+        index(unwrap(layer));
+        return added;
+    }
+
+    @Override
+    public void remove(LayerInfo layer) {
+        unindex(unwrap(layer));
+        super.remove(layer);
+    }
+
+    @Override
+    public void save(LayerInfo layer) {
+        beforeSaved(layer);
+        LayerInfo real = unwrap(layer);
+        synchronized (layersById) {
+            // the layer name is the resource one, saving the layer can rename the resource
+            ResourceInfo resource = real.getResource();
+            unindex(real);
+            if (resource != null) {
+                unindex(resource);
+            }
+            commitProxy(layer);
+            if (resource != null) {
+                index(resource);
+            }
+            index(real);
+        }
+        afterSaved(layer);
+    }
+
+    @Override
+    public LayerInfo getLayer(String id) {
+        LayerInfo layer = layersById.get(id);
+        return layer != null ? ModificationProxy.create(layer, LayerInfo.class) : null;
+    }
+
+    @Override
+    public LayerInfo getLayerByName(String name) {
+        LayerInfo layer = null;
+        if (name.indexOf(':') != -1) {
+            layer = layersByPrefixedName.first(name);
+        }
+        if (layer == null) {
+            layer = layersByName.first(name);
+        }
+        return layer != null ? ModificationProxy.create(layer, LayerInfo.class) : null;
+    }
+
+    @Override
+    public List<LayerInfo> getLayers(ResourceInfo resource) {
+        List<LayerInfo> matches = new ArrayList<LayerInfo>();
+        for (LayerInfo layer : layersByResource.get(resource.getId())) {
+            if (resource.equals(layer.getResource())) {
+                matches.add(layer);
+            }
+        }
+        return ModificationProxy.createList(matches, LayerInfo.class);
+    }
+
+    @Override
+    public List<LayerInfo> getLayers(StyleInfo style) {
+        return ModificationProxy.createList(layersByStyle.get(style.getId()), LayerInfo.class);
+    }
+
+    //
+    // Layer groups
+    //
+    @Override
+    public LayerGroupInfo add(LayerGroupInfo layerGroup) {
+        LayerGroupInfo added = super.add(layerGroup);
+        LayerGroupInfo real = unwrap(layerGroup);
+        layerGroupsById.put(real.getId(), real);
+        return added;
+    }
+
+    @Override
+    public void remove(LayerGroupInfo layerGroup) {
+        layerGroupsById.remove(unwrap(layerGroup).getId());
+        super.remove(layerGroup);
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroup(String id) {
+        LayerGroupInfo layerGroup = layerGroupsById.get(id);
+        return layerGroup != null ? ModificationProxy.create(layerGroup, LayerGroupInfo.class)
+                : null;
+    }
+
+    //
+    // Namespaces
+    //
+    @Override
+    public NamespaceInfo add(NamespaceInfo namespace) {
+        NamespaceInfo added = super.add(namespace);
+        NamespaceInfo real = unwrap(namespace);
+        namespacesById.put(real.getId(), real);
+        return added;
+    }
+
+    @Override
+    public void remove(NamespaceInfo namespace) {
+        namespacesById.remove(unwrap(namespace).getId());
+        super.remove(namespace);
+    }
+
+    @Override
+    public void save(NamespaceInfo namespace) {
+        NamespaceInfo real = unwrap(namespace);
+        String oldPrefix = real.getPrefix();
+        super.save(namespace);
+        if (oldPrefix == null || !oldPrefix.equals(real.getPrefix())) {
+            // prefix changed, the prefixed layer names need to be recomputed
+            synchronized (layersById) {
+                layersByPrefixedName.clear();
+                for (LayerInfo layer : layersById.values()) {
+                    String prefixedName = prefixedName(layer);
+                    if (prefixedName != null) {
+                        layersByPrefixedName.add(prefixedName, layer);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public NamespaceInfo getNamespace(String id) {
+        NamespaceInfo namespace = namespacesById.get(id);
+        return namespace != null ? ModificationProxy.create(namespace, NamespaceInfo.class) : null;
+    }
+
+    //
+    // Workspaces
+    //
+    @Override
+    public WorkspaceInfo add(WorkspaceInfo workspace) {
+        WorkspaceInfo added = super.add(workspace);
+        WorkspaceInfo real = unwrap(workspace);
+        workspacesById.put(real.getId(), real);
+        return added;
+    }
+
+    @Override
+    public void remove(WorkspaceInfo workspace) {
+        workspacesById.remove(unwrap(workspace).getId());
+        super.remove(workspace);
+    }
+
+    @Override
+    public WorkspaceInfo getWorkspace(String id) {
+        WorkspaceInfo workspace = workspacesById.get(id);
+        return workspace != null ? ModificationProxy.create(workspace, WorkspaceInfo.class) : null;
+    }
+
+    //
+    // Styles
+    //
+    @Override
+    public StyleInfo add(StyleInfo style) {
+        StyleInfo added = super.add(style);
+        StyleInfo real = unwrap(style);
+        stylesById.put(real.getId(), real);
+        stylesByName.add(real.getName(), real);
+        return added;
+    }
+
+    @Override
+    public void remove(StyleInfo style) {
+        StyleInfo real = unwrap(style);
+        stylesById.remove(real.getId());
+        stylesByName.remove(real.getName(), real);
+        super.remove(style);
+    }
+
+    @Override
+    public void save(StyleInfo style) {
+        beforeSaved(style);
+        StyleInfo real = unwrap(style);
+        synchronized (stylesById) {
+            stylesByName.remove(real.getName(), real);
+            commitProxy(style);
+            stylesByName.add(real.getName(), real);
+        }
+        afterSaved(style);
+    }
+
+    @Override
+    public StyleInfo getStyle(String id) {
+        StyleInfo style = stylesById.get(id);
+        return style != null ? ModificationProxy.create(style, StyleInfo.class) : null;
+    }
+
+    @Override
+    public StyleInfo getStyleByName(String name) {
+        for (StyleInfo style : stylesByName.get(name)) {
+            if (style.getWorkspace() == null) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StyleInfo getStyleByName(WorkspaceInfo workspace, String name) {
+        if (null == workspace) {
+            throw new NullPointerException("workspace");
+        }
+        if (null == name) {
+            throw new NullPointerException("name");
+        }
+        List<StyleInfo> candidates = stylesByName.get(name);
+        if (workspace == ANY_WORKSPACE) {
+            return candidates.size() == 1 ? ModificationProxy.create(candidates.get(0),
+                    StyleInfo.class) : null;
+        }
+        for (StyleInfo style : candidates) {
+            if (style.getWorkspace() != null && style.getWorkspace().equals(workspace)
+                    || style.getWorkspace() == null && workspace == NO_WORKSPACE) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+        return null;
+    }
+
+    //
+    // Queries
+    //
+    @Override
+    public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
+        return Iterables.size(query(of, filter));
+    }
+
+    /**
+     * Answers the query from the indexes when the filter allows it (see
+     * {@link IndexedQueryPlanner}), filters the candidates lazily, and when sorting with a
+     * limited page size retains only the top <tt>offset + count</tt> items instead of sorting the
+     * full list of matches.
+     */
+    @Override
+    public <T extends CatalogInfo> CloseableIterator<T> list(final Class<T> of,
+            final Filter filter, @Nullable Integer offset, @Nullable Integer count,
+            @Nullable SortBy sortOrder) {
+
+        if (null != sortOrder && !canSort(of, sortOrder.getPropertyName().getPropertyName())) {
+            throw new IllegalArgumentException("Can't sort objects of type " + of.getName()
+                    + " by " + sortOrder.getPropertyName());
+        }
+
+        Iterable<T> iterable = query(of, filter);
+        int skip = offset != null && offset.intValue() > 0 ? offset.intValue() : 0;
+        boolean limit = count != null && count.intValue() >= 0;
+
+        if (null != sortOrder) {
+            Ordering<Object> ordering = Ordering.from(comparator(sortOrder));
+            if (SortOrder.DESCENDING.equals(sortOrder.getSortOrder())) {
+                ordering = ordering.reverse();
+            }
+            if (limit) {
+                // large offsets and counts (e.g. Integer.MAX_VALUE) must not overflow
+                int top = (int) Math.min((long) skip + count.intValue(), Integer.MAX_VALUE);
+                iterable = IndexedQueryPlanner.topN(iterable.iterator(), ordering, top);
+            } else {
+                iterable = ordering.sortedCopy(iterable);
+            }
+        }
+
+        if (skip > 0) {
+            iterable = Iterables.skip(iterable, skip);
+        }
+        if (limit) {
+            iterable = Iterables.limit(iterable, count.intValue());
+        }
+
+        return new CloseableIteratorAdapter<T>(iterable.iterator());
+    }
+
+    /**
+     * Returns a lazy iterable over the objects of the specified type matching the filter.
+     */
+    <T extends CatalogInfo> Iterable<T> query(final Class<T> of, final Filter filter) {
+        Collection<? extends CatalogInfo> candidates = planner.candidates(of, filter);
+        if (candidates == null) {
+            // no index can be used, full scan
+            return iterable(of, filter, null);
+        }
+
+        Iterable<? extends CatalogInfo> matches = Iterables.filter(candidates,
+                new Predicate<CatalogInfo>() {
+                    @Override
+                    public boolean apply(CatalogInfo input) {
+                        return of.isInstance(input) && filter.evaluate(input);
+                    }
+                });
+        return Iterables.transform(matches, new Function<CatalogInfo, T>() {
+            @Override
+            public T apply(CatalogInfo input) {
+                return ModificationProxy.create(of.cast(input), of);
+            }
+        });
+    }
+
+    //
+    // Lifecycle
+    //
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (storesById != null) {
+            createIndexes();
+        }
+    }
+
+    @Override
+    public void resolve() {
+        super.resolve();
+        reindex();
+    }
+
+    /**
+     * Rebuilds all the indexes from the backing collections.
+     */
+    @Override
+    protected void reindex() {
+        createIndexes();
+        for (WorkspaceInfo ws : workspaces.values()) {
+            workspacesById.put(ws.getId(), ws);
+        }
+        for (NamespaceInfo ns : namespaces.values()) {
+            namespacesById.put(ns.getId(), ns);
+        }
+        for (Object store : stores.values()) {
+            index((StoreInfo) store);
+        }
+        for (Object resource : resources.values()) {
+            index((ResourceInfo) resource);
+        }
+        for (StyleInfo style : styles) {
+            stylesById.put(style.getId(), style);
+            stylesByName.add(style.getName(), style);
+        }
+        for (LayerInfo layer : layers) {
+            index(layer);
+        }
+        for (LayerGroupInfo layerGroup : layerGroups) {
+            layerGroupsById.put(layerGroup.getId(), layerGroup);
+        }
+    }
+
+    void createIndexes() {
+        storesById = new ConcurrentHashMap<String, StoreInfo>();
+        storesByName = new MultiIndex<StoreInfo>();
+        storesByWorkspace = new MultiIndex<StoreInfo>();
+
+        resourcesById = new ConcurrentHashMap<String, ResourceInfo>();
+        resourcesByName = new MultiIndex<ResourceInfo>();
+        resourcesByStore = new MultiIndex<ResourceInfo>();
+
+        layersById = new ConcurrentHashMap<String, LayerInfo>();
+        layersByName = new MultiIndex<LayerInfo>();
+        layersByPrefixedName = new MultiIndex<LayerInfo>();
+        layersByResource = new MultiIndex<LayerInfo>();
+        layersByStyle = new MultiIndex<LayerInfo>();
+
+        layerGroupsById = new ConcurrentHashMap<String, LayerGroupInfo>();
+
+        stylesById = new ConcurrentHashMap<String, StyleInfo>();
+        stylesByName = new MultiIndex<StyleInfo>();
+
+        workspacesById = new ConcurrentHashMap<String, WorkspaceInfo>();
+        namespacesById = new ConcurrentHashMap<String, NamespaceInfo>();
+
+        planner = new IndexedQueryPlanner(this);
+    }
+
+    void index(StoreInfo store) {
+        storesById.put(store.getId(), store);
+        storesByName.add(store.getName(), store);
+        if (store.getWorkspace() != null) {
+            storesByWorkspace.add(store.getWorkspace().getId(), store);
+        }
+    }
+
+    void unindex(StoreInfo store) {
+        storesById.remove(store.getId());
+        storesByName.remove(store.getName(), store);
+        if (store.getWorkspace() != null) {
+            storesByWorkspace.remove(store.getWorkspace().getId(), store);
+        }
+    }
+
+    void index(ResourceInfo resource) {
+        resourcesById.put(resource.getId(), resource);
+        resourcesByName.add(resource.getName(), resource);
+        if (resource.getStore() != null) {
+            resourcesByStore.add(resource.getStore().getId(), resource);
+        }
+    }
+
+    void unindex(ResourceInfo resource) {
+        resourcesById.remove(resource.getId());
+        resourcesByName.remove(resource.getName(), resource);
+        if (resource.getStore() != null) {
+            resourcesByStore.remove(resource.getStore().getId(), resource);
+        }
+    }
+
+    void index(LayerInfo layer) {
+        layersById.put(layer.getId(), layer);
+        ResourceInfo resource = layer.getResource();
+        if (resource != null) {
+            layersByName.add(layer.getName(), layer);
+            layersByResource.add(resource.getId(), layer);
+            String prefixedName = prefixedName(layer);
+            if (prefixedName != null) {
+                layersByPrefixedName.add(prefixedName, layer);
+            }
+        }
+        for (String styleId : styleIds(layer)) {
+            layersByStyle.add(styleId, layer);
+        }
+    }
+
+    void unindex(LayerInfo layer) {
+        layersById.remove(layer.getId());
+        ResourceInfo resource = layer.getResource();
+        if (resource != null) {
+            layersByName.remove(layer.getName(), layer);
+            layersByResource.remove(resource.getId(), layer);
+            String prefixedName = prefixedName(layer);
+            if (prefixedName != null) {
+                layersByPrefixedName.remove(prefixedName, layer);
+            }
+        }
+        for (String styleId : styleIds(layer)) {
+            layersByStyle.remove(styleId, layer);
+        }
+    }
+
+    String prefixedName(LayerInfo layer) {
+        ResourceInfo resource = layer.getResource();
+        if (resource == null || resource.getNamespace() == null
+                || resource.getNamespace().getPrefix() == null) {
+            return null;
+        }
+        return resource.getNamespace().getPrefix() + ":" + resource.getName();
+    }
+
+    Collection<String> styleIds(LayerInfo layer) {
+        List<String> ids = new ArrayList<String>();
+        if (layer.getDefaultStyle() != null) {
+            ids.add(layer.getDefaultStyle().getId());
+        }
+        if (layer.getStyles() != null) {
+            for (StyleInfo style : layer.getStyles()) {
+                if (style != null && !ids.contains(style.getId())) {
+                    ids.add(style.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Multi valued index, maps a key to all the catalog objects sharing it, in insertion order.
+     * <p>
+     * Values are tracked by id rather than by equals/hashCode since the catalog objects are
+     * mutable.
+     * </p>
+     */
+    static class MultiIndex<T extends CatalogInfo> {
+
+        Map<String, Map<String, T>> index = new HashMap<String, Map<String, T>>();
+
+        synchronized void add(String key, T value) {
+            if (key == null) {
+                return;
+            }
+            Map<String, T> values = index.get(key);
+            if (values == null) {
+                values = new LinkedHashMap<String, T>(2);
+                index.put(key, values);
+            }
+            values.put(value.getId(), value);
+        }
+
+        synchronized void remove(String key, T value) {
+            if (key == null) {
+                return;
+            }
+            Map<String, T> values = index.get(key);
+            if (values != null) {
+                values.remove(value.getId());
+                if (values.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+
+        synchronized List<T> get(String key) {
+            Map<String, T> values = key != null ? index.get(key) : null;
+            if (values == null) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<T>(values.values());
+        }
+
+        synchronized T first(String key) {
+            Map<String, T> values = index.get(key);
+            if (values == null) {
+                return null;
+            }
+            Iterator<T> it = values.values().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+
+        synchronized void clear() {
+            index.clear();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geotools.util.Converters;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * Answers {@link IndexedCatalogFacade#list} and {@link IndexedCatalogFacade#count} queries out
+ * of the facade secondary indexes when possible.
+ * <p>
+ * The planner recognizes equality predicates, and "in" predicates expressed as an {@link Or} of
+ * equalities against the same property, on the indexed properties (<tt>id</tt>, <tt>name</tt>,
+ * <tt>workspace.name</tt>, <tt>store.id</tt>, <tt>resource.store.id</tt>,
+ * <tt>defaultStyle.id</tt>, ...). For an {@link And} the most selective indexed operand wins.
+ * The indexes only narrow down the set of candidates, the full filter is always evaluated
+ * against them, so an index is allowed to return a superset of the actual matches.
+ * </p>
+ */
+class IndexedQueryPlanner {
+
+    IndexedCatalogFacade facade;
+
+    IndexedQueryPlanner(IndexedCatalogFacade facade) {
+        this.facade = facade;
+    }
+
+    /**
+     * Returns the candidate objects for the specified filter, or <code>null</code> if the filter
+     * cannot be answered from the indexes and a full scan is needed.
+     */
+    Collection<? extends CatalogInfo> candidates(Class<?> of, Filter filter) {
+        if (filter instanceof PropertyIsEqualTo) {
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) filter;
+            String property = property(equal);
+            String value = value(equal);
+            if (property == null || value == null) {
+                return null;
+            }
+            return lookup(of, property, Collections.singletonList(value));
+        }
+        if (filter instanceof Or) {
+            // an "in" predicate, all the operands need to be equalities on the same property
+            String property = null;
+            List<String> values = new ArrayList<String>();
+            for (Filter child : ((Or) filter).getChildren()) {
+                if (!(child instanceof PropertyIsEqualTo)) {
+                    return null;
+                }
+                String p = property((PropertyIsEqualTo) child);
+                String v = value((PropertyIsEqualTo) child);
+                if (p == null || v == null || (property != null && !property.equals(p))) {
+                    return null;
+                }
+                property = p;
+                values.add(v);
+            }
+            return property != null ? lookup(of, property, values) : null;
+        }
+        if (filter instanceof And) {
+            // pick the most selective operand that can be answered from the indexes
+            Collection<? extends CatalogInfo> best = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                Collection<? extends CatalogInfo> candidates = candidates(of, child);
+                if (candidates != null && (best == null || candidates.size() < best.size())) {
+                    best = candidates;
+                }
+            }
+            return best;
+        }
+        return null;
+    }
+
+    /**
+     * Collects the objects indexed under any of the specified values of a property, or returns
+     * <code>null</code> if the property is not indexed for the specified type.
+     */
+    Collection<? extends CatalogInfo> lookup(Class<?> of, String property, List<String> values) {
+        // use a map keyed by id to remove duplicates, values may be repeated in the "in" list
+        Map<String, CatalogInfo> result = new LinkedHashMap<String, CatalogInfo>();
+        for (String value : values) {
+            Collection<? extends CatalogInfo> matches = lookup(of, property, value);
+            if (matches == null) {
+                return null;
+            }
+            for (CatalogInfo info : matches) {
+                result.put(info.getId(), info);
+            }
+        }
+        return result.values();
+    }
+
+    Collection<? extends CatalogInfo> lookup(Class<?> of, String property, String value) {
+        if ("id".equals(property)) {
+            Map<String, ? extends CatalogInfo> byId = byId(of);
+            return byId != null ? single(byId.get(value)) : null;
+        }
+
+        if (StoreInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return facade.storesByName.get(value);
+            }
+            if ("workspace.id".equals(property)) {
+                return facade.storesByWorkspace.get(value);
+            }
+            if ("workspace.name".equals(property)) {
+                WorkspaceInfo ws = facade.workspaces.get(value);
+                return ws != null ? facade.storesByWorkspace.get(ws.getId())
+                        : Collections.<StoreInfo> emptyList();
+            }
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return facade.resourcesByName.get(value);
+            }
+            if ("store.id".equals(property)) {
+                return facade.resourcesByStore.get(value);
+            }
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property) || "resource.name".equals(property)) {
+                return facade.layersByName.get(value);
+            }
+            if ("resource.id".equals(property)) {
+                return facade.layersByResource.get(value);
+            }
+            if ("resource.store.id".equals(property)) {
+                List<LayerInfo> layers = new ArrayList<LayerInfo>();
+                for (ResourceInfo resource : facade.resourcesByStore.get(value)) {
+                    layers.addAll(facade.layersByResource.get(resource.getId()));
+                }
+                return layers;
+            }
+            if ("defaultStyle.id".equals(property) || "styles.id".equals(property)) {
+                // indexes both default and alternate styles, so this is a superset
+                return facade.layersByStyle.get(value);
+            }
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return facade.stylesByName.get(value);
+            }
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return single(facade.workspaces.get(value));
+            }
+        } else if (NamespaceInfo.class.isAssignableFrom(of)) {
+            if ("prefix".equals(property) || "name".equals(property)) {
+                return single(facade.namespaces.get(value));
+            }
+        }
+        return null;
+    }
+
+    Map<String, ? extends CatalogInfo> byId(Class<?> of) {
+        if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            return facade.workspacesById;
+        } else if (NamespaceInfo.class.isAssignableFrom(of)) {
+            return facade.namespacesById;
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            return facade.storesById;
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            return facade.resourcesById;
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            return facade.layersById;
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            return facade.layerGroupsById;
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            return facade.stylesById;
+        }
+        return null;
+    }
+
+    Collection<? extends CatalogInfo> single(CatalogInfo info) {
+        if (info == null) {
+            return Collections.<CatalogInfo> emptyList();
+        }
+        return Collections.singletonList(info);
+    }
+
+    String property(PropertyIsEqualTo equal) {
+        if (!equal.isMatchingCase()) {
+            // indexes are case sensitive
+            return null;
+        }
+        Expression e1 = equal.getExpression1();
+        Expression e2 = equal.getExpression2();
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            return ((PropertyName) e1).getPropertyName();
+        }
+        if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            return ((PropertyName) e2).getPropertyName();
+        }
+        return null;
+    }
+
+    String value(PropertyIsEqualTo equal) {
+        Expression e1 = equal.getExpression1();
+        Expression e2 = equal.getExpression2();
+        Object value = null;
+        if (e2 instanceof Literal) {
+            value = ((Literal) e2).getValue();
+        } else if (e1 instanceof Literal) {
+            value = ((Literal) e1).getValue();
+        }
+        if (value == null) {
+            return null;
+        }
+        return Converters.convert(value, String.class);
+    }
+
+    /**
+     * Returns the first <tt>n</tt> items of the iteration according to the comparator, keeping
+     * at most <tt>n</tt> items in memory at any time. Items comparing as equal are returned in
+     * iteration order, as a stable sort of the full list would.
+     */
+    static <T> List<T> topN(Iterator<T> it, final Comparator<? super T> comparator, int n) {
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+        Comparator<Ranked<T>> ranking = new Comparator<Ranked<T>>() {
+            public int compare(Ranked<T> r1, Ranked<T> r2) {
+                int result = comparator.compare(r1.item, r2.item);
+                if (result == 0) {
+                    result = r1.rank < r2.rank ? -1 : (r1.rank == r2.rank ? 0 : 1);
+                }
+                return result;
+            }
+        };
+
+        // max-heap, the head is the worst of the items retained so far
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<Ranked<T>>(Math.min(n, 1024) + 1,
+                Collections.reverseOrder(ranking));
+        long rank = 0;
+        while (it.hasNext()) {
+            Ranked<T> ranked = new Ranked<T>(it.next(), rank++);
+            if (heap.size() < n) {
+                heap.add(ranked);
+            } else if (ranking.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+
+        List<Ranked<T>> sorted = new ArrayList<Ranked<T>>(heap);
+        Collections.sort(sorted, ranking);
+        List<T> result = new ArrayList<T>(sorted.size());
+        for (Ranked<T> ranked : sorted) {
+            result.add(ranked.item);
+        }
+        return result;
+    }
+
+    static class Ranked<T> {
+        T item;
+
+        long rank;
+
+        Ranked(T item, long rank) {
+            this.item = item;
+            this.rank = rank;
+        }
+    }
+}
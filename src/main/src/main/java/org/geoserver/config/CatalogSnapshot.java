@@ -0,0 +1,345 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.WMSStoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A binary snapshot of the catalog, used to speed up startup when the data directory did not
+ * change since the last time the catalog was read from the xml files.
+ * <p>
+ * The snapshot contains the catalog objects encoded with the binary
+ * {@link XStreamPersister}, in dependency order, preceded by a fingerprint of the catalog
+ * configuration files (paths, sizes and modification times). The snapshot is used only if the
+ * fingerprint matches the current state of the data directory, in any other case, or if
+ * anything goes wrong reading it, the catalog is read from the xml files as usual.
+ * </p>
+ */
+public class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver");
+
+    /**
+     * Name of the snapshot file, in the root of the data directory
+     */
+    public static final String FILE_NAME = "catalog.snapshot";
+
+    static final int MAGIC = 0x47534353;
+
+    /**
+     * Bump up every time the encoding of the snapshot, or of the catalog objects, changes
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The directories, relative to the data directory, holding the catalog configuration
+     */
+    static final String[] CATALOG_DIRECTORIES = { "workspaces", "styles", "layergroups" };
+
+    static final byte END = 0;
+    static final byte WORKSPACE = 1;
+    static final byte NAMESPACE = 2;
+    static final byte STYLE = 3;
+    static final byte DATASTORE = 4;
+    static final byte COVERAGESTORE = 5;
+    static final byte WMSSTORE = 6;
+    static final byte FEATURETYPE = 7;
+    static final byte COVERAGE = 8;
+    static final byte WMSLAYER = 9;
+    static final byte LAYER = 10;
+    static final byte LAYERGROUP = 11;
+    static final byte DEFAULT_WORKSPACE = 12;
+    static final byte DEFAULT_NAMESPACE = 13;
+
+    static final Class<?>[] TYPES = { null, WorkspaceInfo.class, NamespaceInfo.class,
+            StyleInfo.class, DataStoreInfo.class, CoverageStoreInfo.class, WMSStoreInfo.class,
+            FeatureTypeInfo.class, CoverageInfo.class, WMSLayerInfo.class, LayerInfo.class,
+            LayerGroupInfo.class };
+
+    GeoServerResourceLoader resourceLoader;
+
+    XStreamPersisterFactory xpf;
+
+    public CatalogSnapshot(GeoServerResourceLoader resourceLoader, XStreamPersisterFactory xpf) {
+        this.resourceLoader = resourceLoader;
+        this.xpf = xpf;
+    }
+
+    File getFile() {
+        return new File(resourceLoader.getBaseDirectory(), FILE_NAME);
+    }
+
+    /**
+     * Computes the fingerprint of the catalog configuration files in the data directory.
+     */
+    public String fingerprint() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (Exception e) {
+            throw (IOException) new IOException("MD5 not available").initCause(e);
+        }
+        update(digest, "version:" + VERSION);
+        File base = resourceLoader.getBaseDirectory();
+        for (String dir : CATALOG_DIRECTORIES) {
+            fingerprint(digest, new File(base, dir), dir);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        return sb.toString();
+    }
+
+    void fingerprint(MessageDigest digest, File file, String path) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            // not a directory, or missing
+            if (file.isFile()) {
+                update(digest, path + ":" + file.length() + ":" + file.lastModified());
+            }
+            return;
+        }
+        // listing order is file system dependent
+        Arrays.sort(children);
+        for (File child : children) {
+            fingerprint(digest, child, path + "/" + child.getName());
+        }
+    }
+
+    void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the catalog from the snapshot, returning <code>null</code> if the snapshot does not
+     * exist, is stale, or cannot be read.
+     */
+    public Catalog read(String fingerprint) {
+        File file = getFile();
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Ignoring catalog snapshot, unknown format");
+                return null;
+            }
+            if (!fingerprint.equals(in.readUTF())) {
+                LOGGER.info("Catalog snapshot is stale, reading the catalog from the data directory");
+                return null;
+            }
+
+            Catalog catalog = new CatalogImpl();
+            catalog.setResourceLoader(resourceLoader);
+            XStreamPersister xp = xpf.createBinaryPersister();
+            xp.setCatalog(catalog);
+
+            int count = 0;
+            byte type;
+            while ((type = in.readByte()) != END) {
+                if (type == DEFAULT_WORKSPACE) {
+                    catalog.setDefaultWorkspace(catalog.getWorkspaceByName(in.readUTF()));
+                } else if (type == DEFAULT_NAMESPACE) {
+                    catalog.setDefaultNamespace(catalog.getNamespaceByPrefix(in.readUTF()));
+                } else {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    add(catalog, xp.load(new ByteArrayInputStream(bytes), TYPES[type]));
+                    count++;
+                }
+            }
+            LOGGER.info("Read " + count + " catalog objects from the snapshot");
+            return catalog;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the catalog snapshot, "
+                    + "reading the catalog from the data directory", e);
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // never mind
+                }
+            }
+        }
+    }
+
+    void add(Catalog catalog, Object info) {
+        if (info instanceof WorkspaceInfo) {
+            catalog.add((WorkspaceInfo) info);
+        } else if (info instanceof NamespaceInfo) {
+            catalog.add((NamespaceInfo) info);
+        } else if (info instanceof StyleInfo) {
+            catalog.add((StyleInfo) info);
+        } else if (info instanceof StoreInfo) {
+            catalog.add((StoreInfo) info);
+        } else if (info instanceof ResourceInfo) {
+            catalog.add((ResourceInfo) info);
+        } else if (info instanceof LayerInfo) {
+            catalog.add((LayerInfo) info);
+        } else if (info instanceof LayerGroupInfo) {
+            catalog.add((LayerGroupInfo) info);
+        }
+    }
+
+    /**
+     * Writes out a snapshot of the catalog, tagged with the specified fingerprint.
+     */
+    public void write(Catalog catalog, String fingerprint) throws IOException {
+        File file = getFile();
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        XStreamPersister xp = xpf.createBinaryPersister();
+        xp.setCatalog(catalog);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+
+            // dependency order, references are resolved against the catalog while reading
+            write(out, xp, WORKSPACE, catalog.getWorkspaces());
+            write(out, xp, NAMESPACE, catalog.getNamespaces());
+            if (catalog.getDefaultWorkspace() != null) {
+                out.writeByte(DEFAULT_WORKSPACE);
+                out.writeUTF(catalog.getDefaultWorkspace().getName());
+            }
+            if (catalog.getDefaultNamespace() != null) {
+                out.writeByte(DEFAULT_NAMESPACE);
+                out.writeUTF(catalog.getDefaultNamespace().getPrefix());
+            }
+            write(out, xp, STYLE, catalog.getStyles());
+            write(out, xp, DATASTORE, catalog.getDataStores());
+            write(out, xp, COVERAGESTORE, catalog.getCoverageStores());
+            write(out, xp, WMSSTORE, catalog.getStores(WMSStoreInfo.class));
+            write(out, xp, FEATURETYPE, catalog.getFeatureTypes());
+            write(out, xp, COVERAGE, catalog.getCoverages());
+            write(out, xp, WMSLAYER, catalog.getResources(WMSLayerInfo.class));
+            write(out, xp, LAYER, catalog.getLayers());
+            write(out, xp, LAYERGROUP, catalog.getLayerGroups());
+            out.writeByte(END);
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getAbsolutePath());
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp.getAbsolutePath() + " to "
+                    + file.getAbsolutePath());
+        }
+    }
+
+    void write(DataOutputStream out, XStreamPersister xp, byte type,
+            List<? extends CatalogInfo> infos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (CatalogInfo info : infos) {
+            bytes.reset();
+            xp.save(info, bytes);
+            out.writeByte(type);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Removes the snapshot, if any
+     */
+    public void delete() {
+        File file = getFile();
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("Could not delete the catalog snapshot " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Streams the contents of a (memory mapped) byte buffer
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+    }
+}
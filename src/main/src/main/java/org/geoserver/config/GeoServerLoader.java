@@ -15,6 +15,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +29,7 @@ import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.CoverageStoreInfo;
 import org.geoserver.catalog.DataStoreInfo;
@@ -31,7 +37,9 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMSStoreInfo;
@@ -67,6 +75,18 @@ public abstract class GeoServerLoader {
 
     static Logger LOGGER = Logging.getLogger( "org.geoserver" );
     
+    /**
+     * Number of threads used to read the catalog stores, resources and layers. Either a 
+     * number or "auto" to use as many threads as processors. When unset the catalog is read
+     * sequentially.
+     */
+    public static final String LOAD_THREADS = "GEOSERVER_CATALOG_LOAD_THREADS";
+    
+    /**
+     * Enables the binary snapshot of the catalog, see {@link CatalogSnapshot}
+     */
+    public static final String CATALOG_SNAPSHOT = "GEOSERVER_CATALOG_SNAPSHOT";
+    
     protected GeoServerResourceLoader resourceLoader;
     GeoServer geoserver;
     XStreamPersisterFactory xpf = new XStreamPersisterFactory();
@@ -223,7 +243,7 @@ public abstract class GeoServerLoader {
         File f = resourceLoader.find( "catalog.xml" );
         if ( f == null ) {
             //assume 2.x style data directory
-            CatalogImpl catalog2 = (CatalogImpl) readCatalog( xp );
+            CatalogImpl catalog2 = (CatalogImpl) readCatalogOrSnapshot( xp );
             // make to remove the old resource pool catalog listener
             ((CatalogImpl)catalog).sync( catalog2 );
         } else {
@@ -239,10 +259,61 @@ public abstract class GeoServerLoader {
         }
     }
     
+    /**
+     * Reads the catalog from the binary snapshot if enabled and up to date, from the xml files
+     * otherwise. In the latter case a new snapshot is written out for the next startup.
+     */
+    Catalog readCatalogOrSnapshot( XStreamPersister xp ) throws Exception {
+        if ( !Boolean.valueOf( GeoServerExtensions.getProperty( CATALOG_SNAPSHOT ) ) ) {
+            return readCatalog( xp );
+        }
+        
+        long start = System.currentTimeMillis();
+        CatalogSnapshot snapshot = new CatalogSnapshot( resourceLoader, xpf );
+        String fingerprint = snapshot.fingerprint();
+        Catalog catalog = snapshot.read( fingerprint );
+        if ( catalog != null ) {
+            xp.setCatalog( catalog );
+            
+            //connect to the datastores to determine if we should disable them, as the xml
+            // loading does
+            for ( DataStoreInfo ds : catalog.getDataStores() ) {
+                if ( ds.isEnabled() ) {
+                    connect( ds );
+                }
+            }
+            LOGGER.info("Read catalog from snapshot in " + (System.currentTimeMillis() - start) + "ms");
+            return catalog;
+        }
+        
+        catalog = readCatalog( xp );
+        
+        // stores that failed to connect got disabled, that is runtime state that must not
+        // end up in the snapshot
+        for ( DataStoreInfo ds : catalog.getDataStores() ) {
+            if ( ds.getError() != null ) {
+                LOGGER.info("Not writing the catalog snapshot, store '" + ds.getName() 
+                        + "' failed to connect");
+                snapshot.delete();
+                return catalog;
+            }
+        }
+        try {
+            snapshot.write( catalog, fingerprint );
+        }
+        catch( Exception e ) {
+            LOGGER.log( Level.WARNING, "Failed to write the catalog snapshot", e );
+            snapshot.delete();
+        }
+        return catalog;
+    }
+    
     /**
      * Reads the catalog from disk.
      */
     Catalog readCatalog( XStreamPersister xp ) throws Exception {
+        long start = System.currentTimeMillis();
+        long phaseStart = start;
         Catalog catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
         xp.setCatalog( catalog );
@@ -334,57 +405,138 @@ public abstract class GeoServerLoader {
                 }
             }
             
-            for ( File wsd : list(workspaces, DirectoryFileFilter.INSTANCE ) ) {
-                
-                //load the stores for this workspace
-                for ( File sd : list(wsd, DirectoryFileFilter.INSTANCE) ) {
-                    File f = new File( sd, "datastore.xml");
-                    if ( f.exists() ) {
-                        //load as a datastore
-                        DataStoreInfo ds = null;
-                        try {    
-                            ds = depersist( xp, f, DataStoreInfo.class );
-                            catalog.add( ds );
+            LOGGER.info("Loaded styles and workspaces in " + (System.currentTimeMillis() - phaseStart) + "ms");
+            
+            phaseStart = System.currentTimeMillis();
+            int threads = getLoadingThreads();
+            if (threads > 1) {
+                loadStoresParallel(workspaces, catalog, threads);
+            } else {
+                loadStores(workspaces, catalog, xp);
+            }
+            LOGGER.info("Loaded stores, resources and layers in " + (System.currentTimeMillis() - phaseStart) + "ms");
+        }
+        else {
+            LOGGER.warning( "No 'workspaces' directory found, unable to load any stores." );
+        }
+
+        //namespaces
+        
+        //layergroups
+        File layergroups = resourceLoader.find( "layergroups" );
+        if ( layergroups != null ) {
+           loadLayerGroups(layergroups, catalog, xp);
+        }
+
+        LOGGER.info("Read catalog in " + (System.currentTimeMillis() - start) + "ms");
+        return catalog;
+    }
+    
+    /**
+     * Loads the stores, resources and layers of all workspaces, along with the workspace
+     * specific layer groups, one after the other.
+     */
+    void loadStores(File workspaces, Catalog catalog, XStreamPersister xp) {
+        for ( File wsd : list(workspaces, DirectoryFileFilter.INSTANCE ) ) {
+            
+            //load the stores for this workspace
+            for ( File sd : list(wsd, DirectoryFileFilter.INSTANCE) ) {
+                File f = new File( sd, "datastore.xml");
+                if ( f.exists() ) {
+                    //load as a datastore
+                    DataStoreInfo ds = null;
+                    try {    
+                        ds = depersist( xp, f, DataStoreInfo.class );
+                        catalog.add( ds );
+                        
+                        LOGGER.info( "Loaded data store '" + ds.getName() +"'");
+                        
+                        if (ds.isEnabled()) {
+                            //connect to the datastore to determine if we should disable it
+                            try {
+                                ds.getDataStore(null);
+                            }
+                            catch( Throwable t ) {
+                                LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
+                                LOGGER.log( Level.INFO, "", t );
+                                
+                                ds.setError(t);
+                                ds.setEnabled(false);
+                            }
+                        }
+                    }
+                    catch( Exception e ) {
+                        LOGGER.log( Level.WARNING, "Failed to load data store '" + sd.getName() +"'", e);
+                        continue;
+                    }
+                    
+                    //load feature types
+                    for ( File ftd : list(sd,DirectoryFileFilter.INSTANCE) ) {
+                        f = new File( ftd, "featuretype.xml" );
+                        if( f.exists() ) {
+                            FeatureTypeInfo ft = null;
+                            try {
+                                ft = depersist(xp,f,FeatureTypeInfo.class);
+                            }
+                            catch( Exception e ) {
+                                LOGGER.log( Level.WARNING, "Failed to load feature type '" + ftd.getName() +"'", e);
+                                continue;
+                            }
+                            
+                            catalog.add( ft );
                             
-                            LOGGER.info( "Loaded data store '" + ds.getName() +"'");
+                            LOGGER.info( "Loaded feature type '" + ds.getName() +"'");
                             
-                            if (ds.isEnabled()) {
-                                //connect to the datastore to determine if we should disable it
+                            f = new File( ftd, "layer.xml" );
+                            if ( f.exists() ) {
                                 try {
-                                    ds.getDataStore(null);
-                                }
-                                catch( Throwable t ) {
-                                    LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
-                                    LOGGER.log( Level.INFO, "", t );
+                                    LayerInfo l = depersist(xp, f, LayerInfo.class );
+                                    catalog.add( l );
                                     
-                                    ds.setError(t);
-                                    ds.setEnabled(false);
+                                    LOGGER.info( "Loaded layer '" + l.getName() + "'" );
+                                }
+                                catch( Exception e ) {
+                                    LOGGER.log( Level.WARNING, "Failed to load layer for feature type '" + ft.getName() +"'", e);
                                 }
                             }
                         }
+                        else {
+                            LOGGER.warning( "Ignoring feature type directory " + ftd.getAbsolutePath() );
+                        }
+                    }
+                } else {
+                    //look for a coverage store
+                    f = new File( sd, "coveragestore.xml" );
+                    if ( f.exists() ) {
+                        CoverageStoreInfo cs = null;
+                        try {
+                            cs = depersist( xp, f, CoverageStoreInfo.class );
+                            catalog.add( cs );
+                        
+                            LOGGER.info( "Loaded coverage store '" + cs.getName() +"'");
+                        }
                         catch( Exception e ) {
-                            LOGGER.log( Level.WARNING, "Failed to load data store '" + sd.getName() +"'", e);
+                            LOGGER.log( Level.WARNING, "Failed to load coverage store '" + sd.getName() +"'", e);
                             continue;
                         }
                         
-                        //load feature types
-                        for ( File ftd : list(sd,DirectoryFileFilter.INSTANCE) ) {
-                            f = new File( ftd, "featuretype.xml" );
+                        //load coverages
+                        for ( File cd : list(sd,DirectoryFileFilter.INSTANCE) ) {
+                            f = new File( cd, "coverage.xml" );
                             if( f.exists() ) {
-                                FeatureTypeInfo ft = null;
+                                CoverageInfo c = null;
                                 try {
-                                    ft = depersist(xp,f,FeatureTypeInfo.class);
+                                    c = depersist(xp,f,CoverageInfo.class);
+                                    catalog.add( c );
+                                    
+                                    LOGGER.info( "Loaded coverage '" + cs.getName() +"'");
                                 }
                                 catch( Exception e ) {
-                                    LOGGER.log( Level.WARNING, "Failed to load feature type '" + ftd.getName() +"'", e);
+                                    LOGGER.log( Level.WARNING, "Failed to load coverage '" + cd.getName() +"'", e);
                                     continue;
                                 }
                                 
-                                catalog.add( ft );
-                                
-                                LOGGER.info( "Loaded feature type '" + ds.getName() +"'");
-                                
-                                f = new File( ftd, "layer.xml" );
+                                f = new File( cd, "layer.xml" );
                                 if ( f.exists() ) {
                                     try {
                                         LayerInfo l = depersist(xp, f, LayerInfo.class );
@@ -393,43 +545,41 @@ public abstract class GeoServerLoader {
                                         LOGGER.info( "Loaded layer '" + l.getName() + "'" );
                                     }
                                     catch( Exception e ) {
-                                        LOGGER.log( Level.WARNING, "Failed to load layer for feature type '" + ft.getName() +"'", e);
+                                        LOGGER.log( Level.WARNING, "Failed to load layer coverage '" + c.getName() +"'", e);
                                     }
                                 }
                             }
                             else {
-                                LOGGER.warning( "Ignoring feature type directory " + ftd.getAbsolutePath() );
+                                LOGGER.warning( "Ignoring coverage directory " + cd.getAbsolutePath() );
                             }
                         }
                     } else {
-                        //look for a coverage store
-                        f = new File( sd, "coveragestore.xml" );
-                        if ( f.exists() ) {
-                            CoverageStoreInfo cs = null;
+                        f = new File( sd, "wmsstore.xml" );
+                        if(f.exists()) {
+                            WMSStoreInfo wms = null;
                             try {
-                                cs = depersist( xp, f, CoverageStoreInfo.class );
-                                catalog.add( cs );
+                                wms = depersist( xp, f, WMSStoreInfo.class );
+                                catalog.add( wms );
                             
-                                LOGGER.info( "Loaded coverage store '" + cs.getName() +"'");
-                            }
-                            catch( Exception e ) {
-                                LOGGER.log( Level.WARNING, "Failed to load coverage store '" + sd.getName() +"'", e);
+                                LOGGER.info( "Loaded wmsstore '" + wms.getName() +"'");
+                            } catch( Exception e ) {
+                                LOGGER.log( Level.WARNING, "Failed to load wms store '" + sd.getName() +"'", e);
                                 continue;
                             }
                             
-                            //load coverages
+                            //load wms layers
                             for ( File cd : list(sd,DirectoryFileFilter.INSTANCE) ) {
-                                f = new File( cd, "coverage.xml" );
+                                f = new File( cd, "wmslayer.xml" );
                                 if( f.exists() ) {
-                                    CoverageInfo c = null;
+                                    WMSLayerInfo wl = null;
                                     try {
-                                        c = depersist(xp,f,CoverageInfo.class);
-                                        catalog.add( c );
+                                        wl = depersist(xp,f,WMSLayerInfo.class);
+                                        catalog.add( wl );
                                         
-                                        LOGGER.info( "Loaded coverage '" + cs.getName() +"'");
+                                        LOGGER.info( "Loaded wms layer'" + wl.getName() +"'");
                                     }
                                     catch( Exception e ) {
-                                        LOGGER.log( Level.WARNING, "Failed to load coverage '" + cd.getName() +"'", e);
+                                        LOGGER.log( Level.WARNING, "Failed to load wms layer '" + cd.getName() +"'", e);
                                         continue;
                                     }
                                     
@@ -442,7 +592,7 @@ public abstract class GeoServerLoader {
                                             LOGGER.info( "Loaded layer '" + l.getName() + "'" );
                                         }
                                         catch( Exception e ) {
-                                            LOGGER.log( Level.WARNING, "Failed to load layer coverage '" + c.getName() +"'", e);
+                                            LOGGER.log( Level.WARNING, "Failed to load cascaded wms layer '" + wl.getName() +"'", e);
                                         }
                                     }
                                 }
@@ -451,80 +601,297 @@ public abstract class GeoServerLoader {
                                 }
                             }
                         } else {
-                            f = new File( sd, "wmsstore.xml" );
-                            if(f.exists()) {
-                                WMSStoreInfo wms = null;
-                                try {
-                                    wms = depersist( xp, f, WMSStoreInfo.class );
-                                    catalog.add( wms );
-                                
-                                    LOGGER.info( "Loaded wmsstore '" + wms.getName() +"'");
-                                } catch( Exception e ) {
-                                    LOGGER.log( Level.WARNING, "Failed to load wms store '" + sd.getName() +"'", e);
-                                    continue;
-                                }
-                                
-                                //load wms layers
-                                for ( File cd : list(sd,DirectoryFileFilter.INSTANCE) ) {
-                                    f = new File( cd, "wmslayer.xml" );
-                                    if( f.exists() ) {
-                                        WMSLayerInfo wl = null;
-                                        try {
-                                            wl = depersist(xp,f,WMSLayerInfo.class);
-                                            catalog.add( wl );
-                                            
-                                            LOGGER.info( "Loaded wms layer'" + wl.getName() +"'");
-                                        }
-                                        catch( Exception e ) {
-                                            LOGGER.log( Level.WARNING, "Failed to load wms layer '" + cd.getName() +"'", e);
-                                            continue;
-                                        }
-                                        
-                                        f = new File( cd, "layer.xml" );
-                                        if ( f.exists() ) {
-                                            try {
-                                                LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                                catalog.add( l );
-                                                
-                                                LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                            }
-                                            catch( Exception e ) {
-                                                LOGGER.log( Level.WARNING, "Failed to load cascaded wms layer '" + wl.getName() +"'", e);
-                                            }
-                                        }
-                                    }
-                                    else {
-                                        LOGGER.warning( "Ignoring coverage directory " + cd.getAbsolutePath() );
-                                    }
-                                }
-                            } else {
-                                LOGGER.warning( "Ignoring store directory '" + sd.getName() +  "'");
-                                continue;
-                            }
+                            LOGGER.warning( "Ignoring store directory '" + sd.getName() +  "'");
+                            continue;
                         }
                     }
                 }
+            }
 
-                //load hte layer groups for this workspace
-                File layergroups = resourceLoader.find(wsd, "layergroups");
-                if (layergroups != null) {
-                    loadLayerGroups(layergroups, catalog, xp);
+            //load hte layer groups for this workspace
+            File layergroups = resourceLoader.find(wsd, "layergroups");
+            if (layergroups != null) {
+                loadLayerGroups(layergroups, catalog, xp);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of threads used to read the stores, resources and layers, as
+     * configured by the {@link #LOAD_THREADS} variable. Defaults to 1, that is, sequential
+     * loading.
+     */
+    int getLoadingThreads() {
+        String value = GeoServerExtensions.getProperty(LOAD_THREADS);
+        if (value == null) {
+            return 1;
+        }
+        if ("auto".equalsIgnoreCase(value.trim())) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid value for " + LOAD_THREADS + ": " + value
+                    + ", loading the catalog sequentially");
+            return 1;
+        }
+    }
+    
+    /**
+     * Loads the stores, resources and layers of all workspaces using the specified number of
+     * threads, each with its own {@link XStreamPersister}.
+     * <p>
+     * The load happens in phases: all the store files are decoded in parallel and then added to 
+     * the catalog, then the data stores are connected to, then the resource files are decoded 
+     * and added, and finally the layers. Decoding resolves references against the catalog, so
+     * the catalog is only modified by the calling thread, between phases.
+     * </p>
+     */
+    void loadStoresParallel(File workspaces, final Catalog catalog, int threads) throws Exception {
+        LOGGER.info("Loading stores, resources and layers using " + threads + " threads");
+        final ThreadLocal<XStreamPersister> persisters = new ThreadLocal<XStreamPersister>() {
+            @Override
+            protected XStreamPersister initialValue() {
+                XStreamPersister xp = xpf.createXMLPersister();
+                xp.setCatalog(catalog);
+                return xp;
+            }
+        };
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // decode the stores
+            long phaseStart = System.currentTimeMillis();
+            List<Callable<LoadedInfo<StoreInfo>>> storeTasks = new ArrayList<Callable<LoadedInfo<StoreInfo>>>();
+            for ( File wsd : list(workspaces, DirectoryFileFilter.INSTANCE ) ) {
+                for ( final File sd : list(wsd, DirectoryFileFilter.INSTANCE) ) {
+                    storeTasks.add(new Callable<LoadedInfo<StoreInfo>>() {
+                        public LoadedInfo<StoreInfo> call() throws Exception {
+                            return loadStore(sd, persisters.get());
+                        }
+                    });
+                }
+            }
+            List<LoadedInfo<StoreInfo>> stores = invokeAll(executor, storeTasks);
+            List<LoadedInfo<StoreInfo>> added = new ArrayList<LoadedInfo<StoreInfo>>();
+            for (LoadedInfo<StoreInfo> store : stores) {
+                try {
+                    catalog.add( store.info );
+                    added.add(store);
+                    LOGGER.info( "Loaded " + store.type + " '" + store.info.getName() +"'");
+                } catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Failed to load " + store.type + " '" 
+                            + store.dir.getName() +"'", e);
+                }
+            }
+            LOGGER.info("Decoded " + added.size() + " stores in " 
+                    + (System.currentTimeMillis() - phaseStart) + "ms");
+            
+            // connect to the data stores to determine if we should disable them
+            phaseStart = System.currentTimeMillis();
+            List<Callable<Object>> connectTasks = new ArrayList<Callable<Object>>();
+            for (LoadedInfo<StoreInfo> store : added) {
+                if (store.info instanceof DataStoreInfo && store.info.isEnabled()) {
+                    final DataStoreInfo ds = (DataStoreInfo) store.info;
+                    connectTasks.add(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            connect(ds);
+                            return null;
+                        }
+                    });
+                }
+            }
+            invokeAll(executor, connectTasks);
+            LOGGER.info("Connected to " + connectTasks.size() + " data stores in "
+                    + (System.currentTimeMillis() - phaseStart) + "ms");
+            
+            // decode the resources
+            phaseStart = System.currentTimeMillis();
+            List<Callable<LoadedInfo<ResourceInfo>>> resourceTasks = new ArrayList<Callable<LoadedInfo<ResourceInfo>>>();
+            for (LoadedInfo<StoreInfo> store : added) {
+                final String resourceFile = store.childFile;
+                final Class<? extends ResourceInfo> resourceClass = store.childClass;
+                for ( final File rd : list(store.dir, DirectoryFileFilter.INSTANCE) ) {
+                    resourceTasks.add(new Callable<LoadedInfo<ResourceInfo>>() {
+                        public LoadedInfo<ResourceInfo> call() throws Exception {
+                            return loadResource(rd, resourceFile, resourceClass, persisters.get());
+                        }
+                    });
+                }
+            }
+            List<LoadedInfo<ResourceInfo>> resources = invokeAll(executor, resourceTasks);
+            List<LoadedInfo<ResourceInfo>> addedResources = new ArrayList<LoadedInfo<ResourceInfo>>();
+            for (LoadedInfo<ResourceInfo> resource : resources) {
+                try {
+                    catalog.add( resource.info );
+                    addedResources.add(resource);
+                    LOGGER.info( "Loaded " + resource.type + " '" + resource.info.getName() +"'");
+                } catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Failed to load " + resource.type + " '" 
+                            + resource.dir.getName() +"'", e);
+                }
+            }
+            LOGGER.info("Decoded " + addedResources.size() + " resources in " 
+                    + (System.currentTimeMillis() - phaseStart) + "ms");
+            
+            // decode the layers
+            phaseStart = System.currentTimeMillis();
+            List<Callable<LoadedInfo<LayerInfo>>> layerTasks = new ArrayList<Callable<LoadedInfo<LayerInfo>>>();
+            for (final LoadedInfo<ResourceInfo> resource : addedResources) {
+                final File f = new File( resource.dir, "layer.xml" );
+                if ( f.exists() ) {
+                    layerTasks.add(new Callable<LoadedInfo<LayerInfo>>() {
+                        public LoadedInfo<LayerInfo> call() throws Exception {
+                            try {
+                                LayerInfo l = depersist(persisters.get(), f, LayerInfo.class);
+                                return new LoadedInfo<LayerInfo>(l, resource.dir, "layer");
+                            } catch( Exception e ) {
+                                LOGGER.log( Level.WARNING, "Failed to load layer for " 
+                                        + resource.type + " '" + resource.info.getName() +"'", e);
+                                return null;
+                            }
+                        }
+                    });
+                }
+            }
+            int layers = 0;
+            for (LoadedInfo<LayerInfo> layer : invokeAll(executor, layerTasks)) {
+                try {
+                    catalog.add( layer.info );
+                    layers++;
+                    LOGGER.info( "Loaded layer '" + layer.info.getName() + "'" );
+                } catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Failed to load layer '" 
+                            + layer.dir.getName() + "'", e );
                 }
             }
+            LOGGER.info("Decoded " + layers + " layers in " 
+                    + (System.currentTimeMillis() - phaseStart) + "ms");
+        } finally {
+            executor.shutdown();
         }
-        else {
-            LOGGER.warning( "No 'workspaces' directory found, unable to load any stores." );
+        
+        //load the layer groups for each workspace
+        XStreamPersister xp = xpf.createXMLPersister();
+        xp.setCatalog(catalog);
+        for ( File wsd : list(workspaces, DirectoryFileFilter.INSTANCE ) ) {
+            File layergroups = resourceLoader.find(wsd, "layergroups");
+            if (layergroups != null) {
+                loadLayerGroups(layergroups, catalog, xp);
+            }
         }
-
-        //namespaces
+    }
+    
+    /**
+     * Decodes the store contained in the specified directory, returns <code>null</code> if the
+     * directory does not contain a store or the store could not be decoded.
+     */
+    LoadedInfo<StoreInfo> loadStore(File sd, XStreamPersister xp) {
+        LoadedInfo<StoreInfo> store = null;
+        try {
+            File f = new File( sd, "datastore.xml" );
+            if ( f.exists() ) {
+                store = new LoadedInfo<StoreInfo>(depersist( xp, f, DataStoreInfo.class ), sd, 
+                        "data store");
+                store.setChildren("featuretype.xml", FeatureTypeInfo.class);
+                return store;
+            }
+            f = new File( sd, "coveragestore.xml" );
+            if ( f.exists() ) {
+                store = new LoadedInfo<StoreInfo>(depersist( xp, f, CoverageStoreInfo.class ), sd,
+                        "coverage store");
+                store.setChildren("coverage.xml", CoverageInfo.class);
+                return store;
+            }
+            f = new File( sd, "wmsstore.xml" );
+            if ( f.exists() ) {
+                store = new LoadedInfo<StoreInfo>(depersist( xp, f, WMSStoreInfo.class ), sd,
+                        "wms store");
+                store.setChildren("wmslayer.xml", WMSLayerInfo.class);
+                return store;
+            }
+            LOGGER.warning( "Ignoring store directory '" + sd.getName() +  "'");
+        } catch( Exception e ) {
+            LOGGER.log( Level.WARNING, "Failed to load store '" + sd.getName() +"'", e);
+        }
+        return null;
+    }
+    
+    /**
+     * Decodes the resource contained in the specified directory, returns <code>null</code> if
+     * the directory does not contain a resource or the resource could not be decoded.
+     */
+    LoadedInfo<ResourceInfo> loadResource(File rd, String resourceFile,
+            Class<? extends ResourceInfo> resourceClass, XStreamPersister xp) {
+        File f = new File( rd, resourceFile );
+        if ( !f.exists() ) {
+            LOGGER.warning( "Ignoring resource directory " + rd.getAbsolutePath() );
+            return null;
+        }
+        String type = resourceFile.substring(0, resourceFile.length() - 4);
+        try {
+            return new LoadedInfo<ResourceInfo>(depersist( xp, f, resourceClass ), rd, type);
+        } catch( Exception e ) {
+            LOGGER.log( Level.WARNING, "Failed to load " + type + " '" + rd.getName() +"'", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Connects to the data store, disabling it if the connection fails
+     */
+    void connect(DataStoreInfo ds) {
+        try {
+            ds.getDataStore(null);
+        }
+        catch( Throwable t ) {
+            LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
+            LOGGER.log( Level.INFO, "", t );
+            
+            ds.setError(t);
+            ds.setEnabled(false);
+        }
+    }
+    
+    /**
+     * Runs the tasks and collects their non null results, in task order
+     */
+    <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks) 
+        throws InterruptedException, ExecutionException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            T result = future.get();
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * A catalog object decoded by one of the parallel loading threads, along with the 
+     * directory it was loaded from
+     */
+    static class LoadedInfo<T extends CatalogInfo> {
+        T info;
+        File dir;
+        String type;
         
-        //layergroups
-        File layergroups = resourceLoader.find( "layergroups" );
-        if ( layergroups != null ) {
-           loadLayerGroups(layergroups, catalog, xp);
+        // for stores, the name and type of the resource files contained in the store directory
+        String childFile;
+        Class<? extends ResourceInfo> childClass;
+        
+        LoadedInfo(T info, File dir, String type) {
+            this.info = info;
+            this.dir = dir;
+            this.type = type;
+        }
+        
+        void setChildren(String childFile, Class<? extends ResourceInfo> childClass) {
+            this.childFile = childFile;
+            this.childClass = childClass;
         }
-
-        return catalog;
     }
     
     /**
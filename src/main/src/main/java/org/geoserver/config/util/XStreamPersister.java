@@ -130,6 +130,7 @@ import com.thoughtworks.xstream.io.ExtendedHierarchicalStreamWriterHelper;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamDriver;
 import com.thoughtworks.xstream.mapper.ClassAliasingMapper;
 import com.thoughtworks.xstream.mapper.Mapper;
 import com.vividsolutions.jts.geom.Geometry;
@@ -202,6 +203,11 @@ public class XStreamPersister {
      * internal xstream instance
      */
     XStream xs;
+    
+    /**
+     * the stream driver, or null for the default xml one
+     */
+    HierarchicalStreamDriver streamDriver;
 
     /**
      * GeoServer reference used to resolve references to gloal from services
@@ -248,6 +254,7 @@ public class XStreamPersister {
      * Constructs the persister and underlying xstream specifying the stream driver explicitly.
      */
     protected XStreamPersister(HierarchicalStreamDriver streamDriver) {
+        this.streamDriver = streamDriver;
         
         //control the order in which fields are sorted
         SortableFieldKeySorter sorter = new SortableFieldKeySorter();
@@ -517,7 +524,15 @@ public class XStreamPersister {
     public void save(Object obj, OutputStream out) throws IOException {
         //unwrap dynamic proxies
         obj = unwrapProxies( obj );
-        xs.toXML(obj, new OutputStreamWriter( out, "UTF-8" ));
+        if ( streamDriver instanceof BinaryStreamDriver ) {
+            // binary streams cannot be written through a character writer
+            HierarchicalStreamWriter writer = streamDriver.createWriter( out );
+            xs.marshal(obj, writer);
+            writer.flush();
+        }
+        else {
+            xs.toXML(obj, new OutputStreamWriter( out, "UTF-8" ));
+        }
     }
     
     /**
@@ -0,0 +1,95 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A capabilities document served from the {@link CapabilitiesCache}, or the marker telling the
+ * client its copy is still valid when {@link #isNotModified()} is true.
+ * <p>
+ * The document is kept gzipped in memory, large capabilities documents compress very well.
+ * </p>
+ */
+public class CachedCapabilities {
+
+    final String etag;
+
+    final String mimeType;
+
+    final String[][] headers;
+
+    final String disposition;
+
+    final String fileName;
+
+    final byte[] content;
+
+    final long length;
+
+    CachedCapabilities(String etag, String mimeType, String[][] headers, String disposition,
+            String fileName, byte[] content, long length) {
+        this.etag = etag;
+        this.mimeType = mimeType;
+        this.headers = headers;
+        this.disposition = disposition;
+        this.fileName = fileName;
+        this.content = content;
+        this.length = length;
+    }
+
+    /**
+     * Builds the marker for a matching <tt>If-None-Match</tt> request
+     */
+    static CachedCapabilities notModified(String etag) {
+        return new CachedCapabilities(etag, null, null, null, null, null, 0);
+    }
+
+    public boolean isNotModified() {
+        return content == null;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Size of the uncompressed document
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Size of the document as stored in memory
+     */
+    public int getStoredLength() {
+        return content == null ? 0 : content.length;
+    }
+
+    /**
+     * Writes the uncompressed document to the output
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        if (content == null) {
+            return;
+        }
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(content));
+        try {
+            IOUtils.copy(input, output);
+        } finally {
+            input.close();
+        }
+    }
+}
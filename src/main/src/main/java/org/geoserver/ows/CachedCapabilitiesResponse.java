@@ -0,0 +1,51 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+
+/**
+ * Writes out the capabilities documents served by the {@link CapabilitiesCache}
+ */
+public class CachedCapabilitiesResponse extends Response {
+
+    public CachedCapabilitiesResponse() {
+        super(CachedCapabilities.class);
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        CachedCapabilities caps = (CachedCapabilities) value;
+        return caps.isNotModified() ? "text/xml" : caps.getMimeType();
+    }
+
+    @Override
+    public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+        CachedCapabilities caps = (CachedCapabilities) value;
+        return CapabilitiesCache.addETag(caps.headers, caps.getETag());
+    }
+
+    @Override
+    public String getPreferredDisposition(Object value, Operation operation) {
+        return ((CachedCapabilities) value).disposition;
+    }
+
+    @Override
+    public String getAttachmentFileName(Object value, Operation operation) {
+        CachedCapabilities caps = (CachedCapabilities) value;
+        return caps.fileName != null ? caps.fileName : super.getAttachmentFileName(value,
+                operation);
+    }
+
+    @Override
+    public void write(Object value, OutputStream output, Operation operation) throws IOException,
+            ServiceException {
+        ((CachedCapabilities) value).writeTo(output);
+    }
+}
@@ -0,0 +1,657 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Caches the GetCapabilities documents produced by the OWS services, so that they are not
+ * rebuilt from the catalog at each request.
+ * <p>
+ * Documents are keyed by service, version, virtual service workspace and layer, the roles of the
+ * current user, the request URL and the request parameters. Catalog and configuration events
+ * invalidate only the documents they can affect: a change to a layer in workspace <tt>topp</tt>
+ * drops the global and <tt>topp</tt> virtual service documents, a change to the WFS
+ * configuration drops the WFS documents, changes to the global settings, workspaces, namespaces
+ * and global styles and groups drop everything.
+ * </p>
+ * <p>
+ * Responses carry an <tt>ETag</tt> computed from the key and the invalidation counters, clients
+ * sending it back with <tt>If-None-Match</tt> get a <tt>304 Not Modified</tt> as long as none
+ * of the documents it depends on was invalidated and the document is still cached.
+ * </p>
+ * <p>
+ * The cache is disabled by default, it can be enabled setting the
+ * <tt>CAPABILITIES_CACHE</tt> system/context/environment variable to true. The memory used
+ * (documents are stored gzipped) is bounded by <tt>CAPABILITIES_CACHE_SIZE</tt>, in megabytes,
+ * 64 by default. Since changes in the data, such as new time values, are not notified, the
+ * <tt>CAPABILITIES_CACHE_TTL</tt> variable can be used to expire documents after the
+ * specified number of seconds.
+ * </p>
+ */
+public class CapabilitiesCache extends AbstractDispatcherCallback implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesCache.class);
+
+    public static final String CAPABILITIES_CACHE = "CAPABILITIES_CACHE";
+
+    public static final String CAPABILITIES_CACHE_SIZE = "CAPABILITIES_CACHE_SIZE";
+
+    public static final String CAPABILITIES_CACHE_TTL = "CAPABILITIES_CACHE_TTL";
+
+    static final String GLOBAL = "";
+
+    static final ThreadLocal<Pending> PENDING = new ThreadLocal<Pending>();
+
+    final GeoServer geoServer;
+
+    volatile boolean enabled;
+
+    Cache<Key, CachedCapabilities> cache;
+
+    /**
+     * Changes at every boot, the invalidation counters start over from zero and would otherwise
+     * match the tags handed out before the restart
+     */
+    final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    final AtomicLong globalGeneration = new AtomicLong();
+
+    final ConcurrentHashMap<String, AtomicLong> workspaceGenerations = new ConcurrentHashMap<String, AtomicLong>();
+
+    final ConcurrentHashMap<String, AtomicLong> serviceGenerations = new ConcurrentHashMap<String, AtomicLong>();
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong notModified = new AtomicLong();
+
+    public CapabilitiesCache(GeoServer geoServer) {
+        this.geoServer = geoServer;
+        this.enabled = Boolean.valueOf(GeoServerExtensions.getProperty(CAPABILITIES_CACHE));
+        this.cache = buildCache(getLongProperty(CAPABILITIES_CACHE_SIZE, 64),
+                getLongProperty(CAPABILITIES_CACHE_TTL, 0));
+
+        geoServer.getCatalog().addListener(this);
+        geoServer.addListener(new ConfigurationListenerAdapter() {
+            @Override
+            public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                // the update sequence is bumped at every change, and it's not worth dropping
+                // all the documents for it
+                if (!Collections.singletonList("updateSequence").equals(propertyNames)) {
+                    invalidateAll();
+                }
+            }
+
+            @Override
+            public void handleSettingsAdded(SettingsInfo settings) {
+                invalidateWorkspace(settings.getWorkspace());
+            }
+
+            @Override
+            public void handleSettingsModified(SettingsInfo settings, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                invalidateWorkspace(settings.getWorkspace());
+            }
+
+            @Override
+            public void handleSettingsPostModified(SettingsInfo settings) {
+                invalidateWorkspace(settings.getWorkspace());
+            }
+
+            @Override
+            public void handleSettingsRemoved(SettingsInfo settings) {
+                invalidateWorkspace(settings.getWorkspace());
+            }
+
+            @Override
+            public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                invalidateService(service);
+            }
+
+            @Override
+            public void handlePostServiceChange(ServiceInfo service) {
+                invalidateService(service);
+            }
+
+            @Override
+            public void handleServiceRemove(ServiceInfo service) {
+                invalidateService(service);
+            }
+
+            @Override
+            public void reloaded() {
+                invalidateAll();
+            }
+        });
+    }
+
+    Cache<Key, CachedCapabilities> buildCache(long maxSizeMB, long ttlSeconds) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        builder.maximumWeight(maxSizeMB * 1024 * 1024).weigher(
+                new Weigher<Key, CachedCapabilities>() {
+                    public int weigh(Key key, CachedCapabilities value) {
+                        return value.getStoredLength();
+                    }
+                });
+        if (ttlSeconds > 0) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        }
+        return builder.build();
+    }
+
+    long getLongProperty(String name, long defaultValue) {
+        String value = GeoServerExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + name + ": " + value + ", using "
+                        + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            cache.invalidateAll();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Dispatcher callback
+    // ---------------------------------------------------------------------------------------
+
+    @Override
+    public Object operationExecuted(Request request, Operation operation, Object result) {
+        if (!enabled || result == null || result instanceof CachedCapabilities
+                || !"GetCapabilities".equalsIgnoreCase(operation.getId()) || request.isSOAP()
+                || !request.isGet() || request.getHttpRequest() == null) {
+            return result;
+        }
+
+        Key key = buildKey(request, operation);
+        String stamp = stamp(key);
+        String etag = etag(key, stamp);
+
+        // only answer 304 when the document is actually cached, it might have been evicted
+        // without the counters changing, or never built by this instance
+        CachedCapabilities caps = cache.getIfPresent(key);
+        if (caps != null && caps.getETag().equals(etag)) {
+            if (matches(request.getHttpRequest().getHeader("If-None-Match"), etag)) {
+                notModified.incrementAndGet();
+                request.getHttpResponse().setStatus(304);
+                return CachedCapabilities.notModified(etag);
+            }
+            hits.incrementAndGet();
+            return caps;
+        }
+
+        misses.incrementAndGet();
+        PENDING.set(new Pending(key, stamp, etag));
+        return result;
+    }
+
+    @Override
+    public Response responseDispatched(Request request, Operation operation, Object result,
+            Response response) {
+        Pending pending = PENDING.get();
+        if (pending != null && !(result instanceof CachedCapabilities)) {
+            return new CachingResponse(response, pending);
+        }
+        return response;
+    }
+
+    @Override
+    public void finished(Request request) {
+        PENDING.remove();
+    }
+
+    Key buildKey(Request request, Operation operation) {
+        WorkspaceInfo ws = LocalWorkspace.get();
+        LayerInfo layer = LocalLayer.get();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getHttpRequest().getRequestURL()).append('\n');
+        sb.append(operation.getService().getVersion()).append('\n');
+        // the raw kvp keys are upper cased already, sort them to get a stable key
+        Map<String, Object> kvp = new TreeMap<String, Object>();
+        if (request.getRawKvp() != null) {
+            for (Object o : request.getRawKvp().entrySet()) {
+                Map.Entry e = (Map.Entry) o;
+                kvp.put(String.valueOf(e.getKey()).toUpperCase(), e.getValue());
+            }
+        }
+        sb.append(kvp).append('\n');
+        sb.append(getRoles());
+
+        return new Key(operation.getService().getId().toLowerCase(), ws != null ? ws.getName()
+                : GLOBAL, layer != null ? layer.getName() : null, sb.toString());
+    }
+
+    List<String> getRoles() {
+        List<String> roles = new ArrayList<String>();
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getAuthorities() != null) {
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+        }
+        return roles;
+    }
+
+    /**
+     * Returns the current value of the invalidation counters the document depends on, prefixed
+     * by the boot epoch
+     */
+    String stamp(Key key) {
+        return epoch + "." + globalGeneration.get() + "." + generation(workspaceGenerations, key.workspace).get()
+                + "." + generation(serviceGenerations, key.service).get() + "."
+                + getRulesLastModified();
+    }
+
+    long getRulesLastModified() {
+        try {
+            DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+            if (dao != null) {
+                // forces a check of the property file
+                dao.getRules();
+                return dao.getLastModified();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not check the data access rules", e);
+        }
+        return 0;
+    }
+
+    String etag(Key key, String stamp) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(key.service.getBytes("UTF-8"));
+            md.update(key.workspace.getBytes("UTF-8"));
+            if (key.layer != null) {
+                md.update(key.layer.getBytes("UTF-8"));
+            }
+            md.update(key.signature.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder("\"");
+            for (byte b : md.digest()) {
+                sb.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+            }
+            return sb.append('-').append(stamp).append('"').toString();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String[][] addETag(String[][] headers, String etag) {
+        List<String[]> result = new ArrayList<String[]>();
+        if (headers != null) {
+            for (String[] header : headers) {
+                if (!"ETag".equalsIgnoreCase(header[0])) {
+                    result.add(header);
+                }
+            }
+        }
+        result.add(new String[] { "ETag", etag });
+        return result.toArray(new String[result.size()][]);
+    }
+
+    void store(Pending pending, CachedCapabilities caps) {
+        // the configuration might have changed while the document was being built
+        if (enabled && pending.stamp.equals(stamp(pending.key))) {
+            cache.put(pending.key, caps);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Invalidation
+    // ---------------------------------------------------------------------------------------
+
+    static AtomicLong generation(ConcurrentHashMap<String, AtomicLong> generations, String name) {
+        AtomicLong generation = generations.get(name);
+        if (generation == null) {
+            AtomicLong created = new AtomicLong();
+            generation = generations.putIfAbsent(name, created);
+            if (generation == null) {
+                generation = created;
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Drops all the cached documents
+     */
+    public void invalidateAll() {
+        globalGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Drops the documents of the specified workspace virtual services, and the global ones
+     */
+    public void invalidateWorkspace(WorkspaceInfo workspace) {
+        if (workspace == null) {
+            invalidateAll();
+            return;
+        }
+        String name = workspace.getName();
+        generation(workspaceGenerations, name).incrementAndGet();
+        generation(workspaceGenerations, GLOBAL).incrementAndGet();
+        for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext();) {
+            Key key = it.next();
+            if (GLOBAL.equals(key.workspace) || name.equals(key.workspace)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the documents of the specified service
+     */
+    void invalidateService(ServiceInfo service) {
+        if (service.getName() == null) {
+            invalidateAll();
+            return;
+        }
+        String name = service.getName().toLowerCase();
+        generation(serviceGenerations, name).incrementAndGet();
+        for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext();) {
+            if (name.equals(it.next().service)) {
+                it.remove();
+            }
+        }
+    }
+
+    void invalidate(CatalogEvent event) {
+        Object source = event.getSource();
+        WorkspaceInfo ws = null;
+        if (source instanceof StoreInfo) {
+            ws = ((StoreInfo) source).getWorkspace();
+        } else if (source instanceof ResourceInfo) {
+            ws = workspace(((ResourceInfo) source));
+        } else if (source instanceof LayerInfo) {
+            ResourceInfo resource = ((LayerInfo) source).getResource();
+            ws = resource != null ? workspace(resource) : null;
+        } else if (source instanceof LayerGroupInfo) {
+            ws = ((LayerGroupInfo) source).getWorkspace();
+        } else if (source instanceof StyleInfo) {
+            ws = ((StyleInfo) source).getWorkspace();
+        }
+        // workspaces, namespaces, global styles and groups and anything else affect all the
+        // documents
+        invalidateWorkspace(ws);
+    }
+
+    WorkspaceInfo workspace(ResourceInfo resource) {
+        if (resource.getStore() != null) {
+            return resource.getStore().getWorkspace();
+        }
+        if (resource.getNamespace() != null) {
+            Catalog catalog = geoServer.getCatalog();
+            return catalog.getWorkspaceByName(resource.getNamespace().getPrefix());
+        }
+        return null;
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    public void reloaded() {
+        invalidateAll();
+    }
+
+    /**
+     * Cache key, the service and workspace are kept apart for invalidation purposes
+     */
+    static class Key {
+        final String service;
+
+        final String workspace;
+
+        final String layer;
+
+        final String signature;
+
+        Key(String service, String workspace, String layer, String signature) {
+            this.service = service;
+            this.workspace = workspace;
+            this.layer = layer;
+            this.signature = signature;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = service.hashCode();
+            result = 31 * result + workspace.hashCode();
+            result = 31 * result + (layer == null ? 0 : layer.hashCode());
+            return 31 * result + signature.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return service.equals(other.service) && workspace.equals(other.workspace)
+                    && (layer == null ? other.layer == null : layer.equals(other.layer))
+                    && signature.equals(other.signature);
+        }
+    }
+
+    /**
+     * A document being built by the current request
+     */
+    static class Pending {
+        final Key key;
+
+        final String stamp;
+
+        final String etag;
+
+        Pending(Key key, String stamp, String etag) {
+            this.key = key;
+            this.stamp = stamp;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * Wraps the actual capabilities response, tagging it and storing a compressed copy of the
+     * document while it's written out
+     */
+    class CachingResponse extends Response {
+
+        final Response delegate;
+
+        final Pending pending;
+
+        CachingResponse(Response delegate, Pending pending) {
+            super(delegate.getBinding(), delegate.getOutputFormats());
+            this.delegate = delegate;
+            this.pending = pending;
+        }
+
+        @Override
+        public boolean canHandle(Operation operation) {
+            return delegate.canHandle(operation);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            return delegate.getMimeType(value, operation);
+        }
+
+        @Override
+        public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+            return addETag(delegate.getHeaders(value, operation), pending.etag);
+        }
+
+        @Override
+        public String getPreferredDisposition(Object value, Operation operation) {
+            return delegate.getPreferredDisposition(value, operation);
+        }
+
+        @Override
+        public String getAttachmentFileName(Object value, Operation operation) {
+            return delegate.getAttachmentFileName(value, operation);
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CopyingOutputStream copy = new CopyingOutputStream(output, new GZIPOutputStream(
+                    bytes));
+            delegate.write(value, copy, operation);
+            copy.copy.close();
+
+            CachedCapabilities caps = new CachedCapabilities(pending.etag, delegate.getMimeType(
+                    value, operation), delegate.getHeaders(value, operation),
+                    delegate.getPreferredDisposition(value, operation),
+                    delegate.getAttachmentFileName(value, operation), bytes.toByteArray(),
+                    copy.count);
+            store(pending, caps);
+        }
+    }
+
+    /**
+     * Writes to the actual output and to a copy, without closing the actual output
+     */
+    static class CopyingOutputStream extends OutputStream {
+        final OutputStream output;
+
+        final OutputStream copy;
+
+        long count;
+
+        CopyingOutputStream(OutputStream output, OutputStream copy) {
+            this.output = output;
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            copy.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            output.write(b, off, len);
+            copy.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+    }
+}
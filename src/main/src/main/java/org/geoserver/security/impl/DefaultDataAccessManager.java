@@ -6,11 +6,20 @@ package org.geoserver.security.impl;
 
 import static org.geoserver.security.impl.DataAccessRule.*;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.WorkspaceInfo;
@@ -44,34 +53,62 @@ import org.geotools.util.logging.Logging;
  * <p>
  * If no {@link Properties} is provided, one will be looked upon in
  * <code>GEOSERVER_DATA_DIR/security/layers.properties, and the class will
- * keep up to date vs changes in the file</code>
+ * keep up to date vs changes in the file</code>. The file is checked for changes
+ * in a background thread, every {@link #RULES_CHECK_INTERVAL} milliseconds.
+ * <p>
+ * The access decisions are cached by role set, workspace, layer and access mode,
+ * the cache is dropped every time the rules are reloaded
  * 
  * @author Andrea Aime - TOPP
  */
 public class DefaultDataAccessManager implements DataAccessManager {
     static final Logger LOGGER = Logging.getLogger(DataAccessManager.class);
 
-    SecureTreeNode root;
+    /**
+     * Delay between two checks of the rules file
+     */
+    static final long RULES_CHECK_INTERVAL = 2000;
+
+    /**
+     * Max number of cached decisions, the cache is dropped when it grows past it
+     */
+    static final int MAX_DECISIONS = 100000;
+
+    /**
+     * Checks the rules files of all the managers, shared as the managers are normally just one
+     */
+    static final Timer RULES_WATCHER = new Timer("DataAccessRulesWatcher", true);
+
+    volatile SecureTreeNode root;
+
+    volatile CatalogMode mode;
+
+    /**
+     * The decisions taken against {@link #root}, replaced along with it
+     */
+    volatile ConcurrentHashMap<DecisionKey, Boolean> decisions;
 
 //    Catalog catalog;
     
     DataAccessRuleDAO dao;
 
-    long lastLoaded = Long.MIN_VALUE;
+    volatile long lastLoaded = Long.MIN_VALUE;
 
     public DefaultDataAccessManager(DataAccessRuleDAO dao) {
         this.dao = dao;
-        this.root = buildAuthorizationTree(dao);
+        loadRules(Long.MIN_VALUE);
+        RULES_WATCHER.schedule(new RulesWatcherTask(this), RULES_CHECK_INTERVAL,
+                RULES_CHECK_INTERVAL);
     }
 
     public CatalogMode getMode() {
-        return dao.getMode();
+        checkPropertyFile();
+        return mode;
     }
 
     public boolean canAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         checkPropertyFile();
-        SecureTreeNode node = root.getDeepestNode(new String[] { workspace.getName() });
-        return node.canAccess(user, mode);
+        return canAccess(user, workspace.getName(), null, mode);
     }
 
     public boolean canAccess(Authentication user, LayerInfo layer, AccessMode mode) {
@@ -99,14 +136,68 @@ public class DefaultDataAccessManager implements DataAccessManager {
             return true;
         }
 
-        SecureTreeNode node = root.getDeepestNode(new String[] { workspace, resource.getName() });
-        return node.canAccess(user, mode);
+        return canAccess(user, workspace, resource.getName(), mode);
     }
 
+    /**
+     * Looks up the decision in the cache, or computes it against the authorization tree
+     */
+    boolean canAccess(Authentication user, String workspace, String layer, AccessMode mode) {
+        // grab the cache before the tree, the cache is replaced after the tree on reload
+        ConcurrentHashMap<DecisionKey, Boolean> decisions = this.decisions;
+        DecisionKey key = new DecisionKey(getRoles(user), workspace, layer, mode);
+        Boolean result = decisions.get(key);
+        if (result == null) {
+            String[] path = layer == null ? new String[] { workspace } : new String[] {
+                    workspace, layer };
+            SecureTreeNode node = root.getDeepestNode(path);
+            result = node.canAccess(user, mode);
+
+            if (decisions.size() >= MAX_DECISIONS) {
+                decisions.clear();
+            }
+            decisions.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted list of roles of the user, the only bit of the user the decisions
+     * depend on
+     */
+    List<String> getRoles(Authentication user) {
+        Collection<? extends GrantedAuthority> authorities = user == null ? null : user
+                .getAuthorities();
+        if (authorities == null || authorities.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (authorities.size() == 1) {
+            return Collections.singletonList(authorities.iterator().next().getAuthority());
+        }
+        List<String> roles = new ArrayList<String>(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            roles.add(authority.getAuthority());
+        }
+        Collections.sort(roles);
+        return roles;
+    }
+
+    /**
+     * Rebuilds the tree if the rules have been modified. This is just a comparison against the
+     * last load time of the dao, the rules file itself is checked by {@link RulesWatcherTask}
+     */
     void checkPropertyFile() {
         long daoLastModified = dao.getLastModified();
         if(lastLoaded < daoLastModified) {
+            loadRules(daoLastModified);
+        }
+    }
+
+    synchronized void loadRules(long daoLastModified) {
+        if (lastLoaded < daoLastModified || root == null) {
             root = buildAuthorizationTree(dao);
+            mode = dao.getMode();
+            decisions = new ConcurrentHashMap<DecisionKey, Boolean>();
             lastLoaded = daoLastModified;
         }
     }
@@ -155,4 +246,74 @@ public class DefaultDataAccessManager implements DataAccessManager {
         
         return root;
     }
+
+    /**
+     * Identifies an access decision
+     */
+    static class DecisionKey {
+        final List<String> roles;
+
+        final String workspace;
+
+        final String layer;
+
+        final AccessMode mode;
+
+        DecisionKey(List<String> roles, String workspace, String layer, AccessMode mode) {
+            this.roles = roles;
+            this.workspace = workspace;
+            this.layer = layer;
+            this.mode = mode;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = roles.hashCode();
+            result = 31 * result + (workspace == null ? 0 : workspace.hashCode());
+            result = 31 * result + (layer == null ? 0 : layer.hashCode());
+            result = 31 * result + mode.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) obj;
+            return mode == other.mode && roles.equals(other.roles)
+                    && (workspace == null ? other.workspace == null : workspace
+                            .equals(other.workspace))
+                    && (layer == null ? other.layer == null : layer.equals(other.layer));
+        }
+    }
+
+    /**
+     * Checks the rules file for changes out of the request threads, and rebuilds the tree of the
+     * manager if the rules got reloaded. Stops once the manager is garbage collected.
+     */
+    static class RulesWatcherTask extends TimerTask {
+        final WeakReference<DefaultDataAccessManager> manager;
+
+        RulesWatcherTask(DefaultDataAccessManager manager) {
+            this.manager = new WeakReference<DefaultDataAccessManager>(manager);
+        }
+
+        @Override
+        public void run() {
+            DefaultDataAccessManager m = manager.get();
+            if (m == null) {
+                cancel();
+                return;
+            }
+            try {
+                if (m.dao.isModified()) {
+                    m.dao.reload();
+                }
+                m.checkPropertyFile();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to check the data access rules for changes", e);
+            }
+        }
+    }
 }
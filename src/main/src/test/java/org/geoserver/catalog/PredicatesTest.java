@@ -6,6 +6,7 @@ package org.geoserver.catalog;
 
 import static org.geoserver.catalog.Predicates.contains;
 import static org.geoserver.catalog.Predicates.equal;
+import static org.geoserver.catalog.Predicates.isInstanceOf;
 import static org.junit.Assert.*;
 
 import java.net.URI;
@@ -232,4 +233,14 @@ public class PredicatesTest {
 
         assertFalse(contains("resource.name", name).evaluate(vectorLayer));
     }
+
+    @Test
+    public void testIsInstanceOf() {
+        coverageStore = new CoverageStoreInfoImpl(null);
+        assertTrue(isInstanceOf(DataStoreInfo.class).evaluate(dataStore));
+        assertTrue(isInstanceOf(StoreInfo.class).evaluate(dataStore));
+        assertTrue(isInstanceOf(StoreInfo.class).evaluate(coverageStore));
+        assertFalse(isInstanceOf(DataStoreInfo.class).evaluate(coverageStore));
+        assertFalse(isInstanceOf(StoreInfo.class).evaluate(vectorLayer));
+    }
 }
@@ -0,0 +1,86 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class ResourceAccessTrackerTest {
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        File file = File.createTempFile("access", ".properties");
+        file.delete();
+        try {
+            ResourceAccessTracker tracker = new ResourceAccessTracker(file);
+            tracker.accessed("ft1");
+            tracker.accessed("ft1");
+            tracker.accessed("cs1");
+            tracker.accessed(null);
+            assertEquals(2, tracker.getCount("ft1"));
+            assertEquals(1, tracker.getCount("cs1"));
+            assertEquals(0, tracker.getCount("unknown"));
+
+            tracker.save();
+            assertTrue(file.exists());
+            assertFalse(new File(file.getParentFile(), file.getName() + ".tmp").exists());
+
+            ResourceAccessTracker reloaded = new ResourceAccessTracker(file);
+            reloaded.load();
+            assertEquals(2, reloaded.getCount("ft1"));
+            assertEquals(1, reloaded.getCount("cs1"));
+
+            // counts keep on growing from the persisted values
+            reloaded.accessed("ft1");
+            assertEquals(3, reloaded.getCount("ft1"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLoadMissing() throws Exception {
+        ResourceAccessTracker tracker = new ResourceAccessTracker(new File("target",
+                "missing-access.properties"));
+        tracker.load();
+        assertEquals(0, tracker.getCount("ft1"));
+    }
+
+    @Test
+    public void testDecay() throws Exception {
+        ResourceAccessTracker tracker = new ResourceAccessTracker(null);
+        for (int i = 0; i < 8; i++) {
+            tracker.accessed("ft1");
+        }
+        tracker.accessed("cs1");
+
+        // not enough time elapsed
+        long start = tracker.lastDecay;
+        tracker.decay(start + ResourceAccessTracker.DECAY_INTERVAL - 1);
+        assertEquals(8, tracker.getCount("ft1"));
+
+        // halved once per interval, the ones reaching zero are dropped
+        tracker.decay(start + 2 * ResourceAccessTracker.DECAY_INTERVAL);
+        assertEquals(2, tracker.getCount("ft1"));
+        assertFalse(tracker.counts.containsKey("cs1"));
+    }
+
+    @Test
+    public void testIgnored() throws Exception {
+        ResourceAccessTracker tracker = new ResourceAccessTracker(null);
+        ResourceAccessTracker.IGNORED.set(Boolean.TRUE);
+        try {
+            tracker.accessed("ft1");
+        } finally {
+            ResourceAccessTracker.IGNORED.remove();
+        }
+        assertEquals(0, tracker.getCount("ft1"));
+    }
+}
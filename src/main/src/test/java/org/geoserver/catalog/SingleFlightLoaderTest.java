@@ -0,0 +1,180 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightLoaderTest {
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        CacheStatistics statistics = new CacheStatistics("test");
+        SingleFlightLoader<String, Object> loader = new SingleFlightLoader<String, Object>(
+                statistics);
+        Map<String, Object> cache = new HashMap<String, Object>();
+        statistics.setCache(cache);
+
+        final Object value = new Object();
+        Callable<Object> callable = new Callable<Object>() {
+            public Object call() throws Exception {
+                return value;
+            }
+        };
+        assertSame(value, loader.get(cache, "key", callable));
+        assertSame(value, loader.get(cache, "key", callable));
+
+        assertEquals(1, statistics.getSize());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getLoadCount());
+        assertEquals(0.5, statistics.getHitRatio(), 0d);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        CacheStatistics statistics = new CacheStatistics("test");
+        SingleFlightLoader<String, Object> loader = new SingleFlightLoader<String, Object>(
+                statistics);
+        Map<String, Object> cache = new HashMap<String, Object>();
+
+        try {
+            loader.get(cache, "key", new Callable<Object>() {
+                public Object call() throws Exception {
+                    throw new IOException("boom");
+                }
+            });
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertTrue(cache.isEmpty());
+        assertEquals(1, statistics.getLoadFailureCount());
+        // the failed load is not remembered
+        assertTrue(loader.inflight.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        CacheStatistics statistics = new CacheStatistics("test");
+        final SingleFlightLoader<String, Object> loader = new SingleFlightLoader<String, Object>(
+                statistics);
+        final Map<String, Object> cache = new HashMap<String, Object>();
+
+        final int threads = 8;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<Object> callable = new Callable<Object>() {
+            public Object call() throws Exception {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new Object();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return loader.get(cache, "key", callable);
+                    }
+                }));
+            }
+            // wait for the load to start and give the other threads time to pile up on it
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+
+            Object value = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Object> future : futures) {
+                assertSame(value, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, statistics.getLoadCount());
+        assertEquals(threads, statistics.getHitCount() + statistics.getMissCount());
+    }
+
+    @Test
+    public void testClearDuringLoad() throws Exception {
+        CacheStatistics statistics = new CacheStatistics("test");
+        final List<Object> disposed = Collections.synchronizedList(new ArrayList<Object>());
+        final SingleFlightLoader<String, Object> loader = new SingleFlightLoader<String, Object>(
+                statistics) {
+            @Override
+            void dispose(Map<String, Object> cache, String key, Object value) {
+                disposed.add(value);
+            }
+        };
+        final Map<String, Object> cache = new HashMap<String, Object>();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<Object> callable = new Callable<Object>() {
+            public Object call() throws Exception {
+                if (loads.incrementAndGet() == 1) {
+                    started.countDown();
+                    release.await();
+                    return "stale";
+                }
+                return "fresh";
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> future = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return loader.get(cache, "key", callable);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // the configuration changes while the first load is blocked
+            loader.invalidate("key");
+            cache.remove("key");
+            release.countDown();
+
+            assertEquals("fresh", future.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals("fresh", cache.get("key"));
+        assertEquals(Collections.singletonList("stale"), disposed);
+        assertTrue(loader.inflight.isEmpty());
+
+        // invalidating with no load in flight has no effect on the next ones
+        loader.invalidate("other");
+        assertEquals("fresh", loader.get(cache, "other", callable));
+        assertEquals("fresh", cache.get("other"));
+    }
+}
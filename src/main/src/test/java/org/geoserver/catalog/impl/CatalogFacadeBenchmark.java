@@ -0,0 +1,125 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+
+/**
+ * Micro benchmark comparing the lookup performance of {@link DefaultCatalogFacade} and
+ * {@link IndexedCatalogFacade} with growing numbers of layers.
+ * <p>
+ * Not a unit test, run it manually from the IDE or with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=org.geoserver.catalog.impl.CatalogFacadeBenchmark
+ * </pre>
+ * </p>
+ */
+public class CatalogFacadeBenchmark {
+
+    static final int[] LAYER_COUNTS = { 1000, 10000, 100000 };
+
+    static final int WARMUP_LOOKUPS = 2000;
+
+    static final int LOOKUPS = 10000;
+
+    public static void main(String[] args) {
+        for (int count : LAYER_COUNTS) {
+            CatalogImpl defaultCatalog = new CatalogImpl();
+            CatalogImpl indexedCatalog = new CatalogImpl();
+            indexedCatalog.setFacade(new IndexedCatalogFacade(indexedCatalog));
+
+            List<LayerInfo> defaultLayers = populate(defaultCatalog, count);
+            List<LayerInfo> indexedLayers = populate(indexedCatalog, count);
+
+            System.out.println("Layers: " + count);
+            run("  default", defaultCatalog.getFacade(), defaultLayers);
+            run("  indexed", indexedCatalog.getFacade(), indexedLayers);
+        }
+    }
+
+    static List<LayerInfo> populate(Catalog catalog, int count) {
+        CatalogFactory factory = catalog.getFactory();
+
+        WorkspaceInfo ws = factory.createWorkspace();
+        ws.setName("bench");
+        catalog.add(ws);
+
+        NamespaceInfo ns = factory.createNamespace();
+        ns.setPrefix("bench");
+        ns.setURI("http://geoserver.org/bench");
+        catalog.add(ns);
+
+        DataStoreInfo ds = factory.createDataStore();
+        ds.setName("benchStore");
+        ds.setWorkspace(ws);
+        ds.setEnabled(true);
+        catalog.add(ds);
+
+        StyleInfo style = factory.createStyle();
+        style.setName("benchStyle");
+        style.setFilename("benchStyle.sld");
+        catalog.add(style);
+
+        List<LayerInfo> layers = new ArrayList<LayerInfo>(count);
+        for (int i = 0; i < count; i++) {
+            FeatureTypeInfo ft = factory.createFeatureType();
+            ft.setName("ft" + i);
+            ft.setNativeName("ft" + i);
+            ft.setStore(ds);
+            ft.setNamespace(ns);
+            ft.setEnabled(true);
+            catalog.add(ft);
+
+            LayerInfo layer = factory.createLayer();
+            layer.setResource(ft);
+            layer.setDefaultStyle(style);
+            layer.setEnabled(true);
+            catalog.add(layer);
+            layers.add(layer);
+        }
+        return layers;
+    }
+
+    static void run(String label, CatalogFacade facade, List<LayerInfo> layers) {
+        // warm up
+        lookup(facade, layers, WARMUP_LOOKUPS);
+
+        long start = System.nanoTime();
+        lookup(facade, layers, LOOKUPS);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(label + ": " + (elapsed / LOOKUPS) + " ns/op (getLayer, "
+                + "getLayerByName, getLayers(resource))");
+    }
+
+    static int lookup(CatalogFacade facade, List<LayerInfo> layers, int lookups) {
+        Random random = new Random(0);
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            LayerInfo layer = layers.get(random.nextInt(layers.size()));
+            if (facade.getLayer(layer.getId()) != null) {
+                found++;
+            }
+            if (facade.getLayerByName(layer.getName()) != null) {
+                found++;
+            }
+            found += facade.getLayers(layer.getResource()).size();
+        }
+        return found;
+    }
+}
@@ -0,0 +1,168 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.geoserver.catalog.Predicates.and;
+import static org.geoserver.catalog.Predicates.desc;
+import static org.geoserver.catalog.Predicates.equal;
+import static org.geoserver.catalog.Predicates.or;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
+/**
+ * Runs the whole catalog test suite against the {@link IndexedCatalogFacade}, plus some checks
+ * on the consistency of the indexes.
+ */
+public class IndexedCatalogFacadeTest extends CatalogImplTest {
+
+    @Override
+    protected Catalog createCatalog() {
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setFacade(new IndexedCatalogFacade(catalog));
+        return catalog;
+    }
+
+    @Test
+    public void testLayerIndexesFollowSave() {
+        addLayer();
+
+        StyleInfo s2 = catalog.getFactory().createStyle();
+        s2.setName("s2Name");
+        s2.setFilename("s2Filename");
+        catalog.add(s2);
+
+        LayerInfo l2 = catalog.getLayer(l.getId());
+        l2.setDefaultStyle(catalog.getStyleByName("s2Name"));
+        catalog.save(l2);
+
+        assertTrue(catalog.getLayers(s).isEmpty());
+        assertEquals(1, catalog.getLayers(s2).size());
+    }
+
+    @Test
+    public void testLayerByPrefixedName() {
+        addLayer();
+
+        assertNotNull(catalog.getFacade().getLayerByName(ns.getPrefix() + ":" + ft.getName()));
+
+        NamespaceInfo ns2 = catalog.getNamespaceByPrefix(ns.getPrefix());
+        ns2.setPrefix("changedPrefix");
+        catalog.save(ns2);
+
+        assertNull(catalog.getFacade().getLayerByName("wsName:" + ft.getName()));
+        assertNotNull(catalog.getFacade().getLayerByName("changedPrefix:" + ft.getName()));
+    }
+
+    @Test
+    public void testStoreIndexesFollowSave() {
+        addDataStore();
+
+        DataStoreInfo ds2 = catalog.getDataStoreByName(ds.getName());
+        ds2.setName("changed");
+        catalog.save(ds2);
+
+        assertNull(catalog.getDataStoreByName(ws, "dsName"));
+        assertNotNull(catalog.getDataStoreByName(ws, "changed"));
+        assertEquals(1, catalog.getDataStoresByWorkspace(ws).size());
+    }
+
+    @Test
+    public void testSyncFromDefaultFacade() {
+        CatalogImpl other = new CatalogImpl();
+        other.add(ws);
+        other.add(ns);
+        other.add(ds);
+        other.add(ft);
+        other.add(s);
+        other.add(l);
+
+        ((CatalogImpl) catalog).sync(other);
+
+        assertNotNull(catalog.getLayer(l.getId()));
+        assertNotNull(catalog.getLayerByName(ft.getName()));
+        assertEquals(1, catalog.getLayers(ft).size());
+        assertNotNull(catalog.getDataStore(ds.getId()));
+    }
+
+    @Test
+    public void testListFromIndexes() {
+        addDataStore();
+        addNamespace();
+
+        FeatureTypeInfo ft1, ft2, ft3;
+        catalog.add(ft1 = newFeatureType("ft1", ds));
+        catalog.add(ft2 = newFeatureType("ft2", ds));
+        catalog.add(ft3 = newFeatureType("ft3", ds));
+
+        StyleInfo s1 = newStyle("s1", "s1Filename");
+        catalog.add(s1);
+        catalog.add(newLayer(ft1, s1));
+        catalog.add(newLayer(ft2, s1));
+        catalog.add(newLayer(ft3, s1));
+
+        // equality on id
+        Filter filter = equal("id", ft2.getId());
+        assertEquals(1, catalog.count(FeatureTypeInfo.class, filter));
+        assertEquals(ft2.getId(), catalog.list(FeatureTypeInfo.class, filter).next().getId());
+
+        // in on name, combined with a non indexed predicate
+        filter = and(or(equal("name", "ft1"), equal("name", "ft3")), equal("enabled", true));
+        Set<String> names = new HashSet<String>();
+        for (FeatureTypeInfo info : Lists.newArrayList(catalog.list(FeatureTypeInfo.class,
+                filter))) {
+            names.add(info.getName());
+        }
+        assertEquals(Sets.newHashSet("ft1", "ft3"), names);
+
+        // nested indexed property, sorted and paged
+        filter = equal("resource.store.id", ds.getId());
+        assertEquals(3, catalog.count(LayerInfo.class, filter));
+        List<LayerInfo> page = Lists.newArrayList(catalog.list(LayerInfo.class, filter, 1, 1,
+                desc("resource.name")));
+        assertEquals(1, page.size());
+        assertEquals("ft2", page.get(0).getResource().getName());
+
+        // offset plus count past Integer.MAX_VALUE
+        page = Lists.newArrayList(catalog.list(LayerInfo.class, filter, 1, Integer.MAX_VALUE,
+                desc("resource.name")));
+        assertEquals(2, page.size());
+        assertEquals("ft2", page.get(0).getResource().getName());
+
+        // no matches
+        assertEquals(0, catalog.count(LayerInfo.class, equal("defaultStyle.id", "foo")));
+    }
+
+    @Test
+    public void testTopN() {
+        List<Integer> values = Lists.newArrayList(5, 3, 9, 1, 7, 3);
+        Comparator<Integer> natural = Ordering.natural();
+
+        assertEquals(Lists.newArrayList(1, 3, 3),
+                IndexedQueryPlanner.topN(values.iterator(), natural, 3));
+        assertEquals(Lists.newArrayList(1, 3, 3, 5, 7, 9),
+                IndexedQueryPlanner.topN(values.iterator(), natural, 10));
+        assertTrue(IndexedQueryPlanner.topN(values.iterator(), natural, 0).isEmpty());
+    }
+}
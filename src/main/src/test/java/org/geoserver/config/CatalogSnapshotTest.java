@@ -0,0 +1,103 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.geoserver.test.SystemTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SystemTest.class)
+public class CatalogSnapshotTest extends GeoServerSystemTestSupport {
+
+    @After
+    public void removeSnapshot() {
+        snapshot().delete();
+    }
+
+    CatalogSnapshot snapshot() {
+        return new CatalogSnapshot(getResourceLoader(), new XStreamPersisterFactory());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Catalog catalog = getCatalog();
+        CatalogSnapshot snapshot = snapshot();
+        String fingerprint = snapshot.fingerprint();
+        snapshot.write(catalog, fingerprint);
+
+        Catalog read = snapshot.read(fingerprint);
+        assertNotNull(read);
+        assertEquals(ids(catalog.getWorkspaces()), ids(read.getWorkspaces()));
+        assertEquals(ids(catalog.getNamespaces()), ids(read.getNamespaces()));
+        assertEquals(ids(catalog.getStyles()), ids(read.getStyles()));
+        assertEquals(ids(catalog.getStores(StoreInfo.class)), ids(read.getStores(StoreInfo.class)));
+        assertEquals(ids(catalog.getResources(ResourceInfo.class)),
+                ids(read.getResources(ResourceInfo.class)));
+        assertEquals(ids(catalog.getLayers()), ids(read.getLayers()));
+        assertEquals(ids(catalog.getLayerGroups()), ids(read.getLayerGroups()));
+        assertEquals(catalog.getDefaultWorkspace().getName(), read.getDefaultWorkspace().getName());
+
+        // references are resolved against the new catalog
+        FeatureTypeInfo lakes = read.getFeatureTypeByName(getLayerId(MockData.LAKES));
+        assertNotNull(lakes.getStore().getWorkspace());
+        LayerInfo layer = read.getLayerByName(getLayerId(MockData.LAKES));
+        assertEquals(lakes.getId(), layer.getResource().getId());
+        assertNotNull(layer.getDefaultStyle());
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        CatalogSnapshot snapshot = snapshot();
+        String fingerprint = snapshot.fingerprint();
+        snapshot.write(getCatalog(), fingerprint);
+
+        // add a file to the catalog configuration
+        File extra = new File(getDataDirectory().root(), "layergroups/extra.xml");
+        extra.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(extra, "<layerGroup/>");
+        try {
+            String newFingerprint = snapshot.fingerprint();
+            assertFalse(fingerprint.equals(newFingerprint));
+            assertNull(snapshot.read(newFingerprint));
+        } finally {
+            extra.delete();
+        }
+    }
+
+    @Test
+    public void testMissing() throws Exception {
+        CatalogSnapshot snapshot = snapshot();
+        snapshot.delete();
+        assertNull(snapshot.read(snapshot.fingerprint()));
+    }
+
+    Set<String> ids(Iterable<? extends CatalogInfo> infos) {
+        Set<String> ids = new TreeSet<String>();
+        for (CatalogInfo info : infos) {
+            ids.add(info.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,61 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.geoserver.test.RunTestSetup;
+import org.geoserver.test.SystemTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SystemTest.class)
+public class GeoServerLoaderTest extends GeoServerSystemTestSupport {
+
+    @RunTestSetup
+    @Test
+    public void testParallelReload() throws Exception {
+        Catalog catalog = getCatalog();
+        Set<String> stores = ids(catalog.getStores(StoreInfo.class));
+        Set<String> resources = ids(catalog.getResources(ResourceInfo.class));
+        Set<String> layers = ids(catalog.getLayers());
+
+        System.setProperty(GeoServerLoader.LOAD_THREADS, "4");
+        try {
+            getGeoServer().reload();
+        } finally {
+            System.clearProperty(GeoServerLoader.LOAD_THREADS);
+        }
+
+        assertEquals(stores, ids(catalog.getStores(StoreInfo.class)));
+        assertEquals(resources, ids(catalog.getResources(ResourceInfo.class)));
+        assertEquals(layers, ids(catalog.getLayers()));
+
+        // references have been resolved
+        LayerInfo lakes = catalog.getLayerByName(getLayerId(MockData.LAKES));
+        assertNotNull(lakes);
+        assertNotNull(lakes.getResource().getStore().getWorkspace());
+        assertNotNull(lakes.getDefaultStyle());
+    }
+
+    Set<String> ids(Iterable<? extends CatalogInfo> infos) {
+        Set<String> ids = new TreeSet<String>();
+        for (CatalogInfo info : infos) {
+            ids.add(info.getId());
+        }
+        return ids;
+    }
+}
@@ -5,6 +5,8 @@
 package org.geoserver.security.impl;
 import static org.junit.Assert.*;
 
+import java.util.Properties;
+
 import org.springframework.security.core.Authentication;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.security.AccessMode;
@@ -39,6 +41,29 @@ public class DefaultDataAccessManagerAuthTest extends AbstractAuthorizationTest
         checkUserAccessFlat(manager, root, true, true);
     }
     
+    @Test
+    public void testDecisionsDroppedOnReload() throws Exception {
+        Properties props = new Properties();
+        props.load(getClass().getResourceAsStream("lockedDown.properties"));
+        DataAccessRuleDAO dao = new MemoryDataAccessRuleDAO(catalog, props) {
+            @Override
+            void checkPropertyFile(boolean force) {
+                // keep the modification time set by the rule changes
+            }
+        };
+        DefaultDataAccessManager manager = new DefaultDataAccessManager(dao);
+        assertFalse(manager.canAccess(anonymous, statesLayer, AccessMode.READ));
+        // same answer, this time from the cache
+        assertFalse(manager.canAccess(anonymous, statesLayer, AccessMode.READ));
+        assertTrue(manager.canAccess(rwUser, statesLayer, AccessMode.READ));
+
+        // changing the rules drops the cached decisions
+        Thread.sleep(10);
+        dao.addRule(dao.parseDataAccessRule("topp.states.r", "*"));
+        assertTrue(manager.canAccess(anonymous, statesLayer, AccessMode.READ));
+        assertFalse(manager.canAccess(anonymous, roadsLayer, AccessMode.READ));
+    }
+    
     private void checkUserAccessFlat(DataAccessManager manager, Authentication user, boolean expectedRead, boolean expectedWrite) {
         // states as a layer
         assertEquals(expectedRead, manager.canAccess(user, statesLayer, AccessMode.READ));
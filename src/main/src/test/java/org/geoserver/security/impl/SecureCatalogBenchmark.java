@@ -0,0 +1,150 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.security.DataAccessManagerAdapter;
+import org.geoserver.security.SecureCatalogImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Benchmark of a filtered {@link SecureCatalogImpl#list} over a large catalog secured by the
+ * {@link DefaultDataAccessManager}, reporting the time needed to list all the layers right after a
+ * rule change, when every access decision has to be computed, and when the decisions are cached.
+ * <p>
+ * Not part of the build, run it manually with:
+ * <pre>
+ * mvn test -Dtest=SecureCatalogBenchmark [-Dsecurity.layers=20000] [-Dsecurity.workspaces=20]
+ * </pre>
+ * </p>
+ */
+public class SecureCatalogBenchmark {
+
+    static final int LAYERS = Integer.getInteger("security.layers", 20000);
+
+    static final int WORKSPACES = Integer.getInteger("security.workspaces", 20);
+
+    static final int ROUNDS = 5;
+
+    @After
+    public void clearAuthentication() {
+        SecurityContextHolder.getContext().setAuthentication(null);
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        Catalog catalog = buildCatalog();
+
+        // every other workspace is restricted to the military
+        Properties props = new Properties();
+        props.put("mode", "HIDE");
+        props.put("*.*.r", "*");
+        props.put("*.*.w", "WRITER");
+        for (int i = 0; i < WORKSPACES; i += 2) {
+            props.put("ws" + i + ".*.r", "MILITARY");
+        }
+        MemoryDataAccessRuleDAO dao = new MemoryDataAccessRuleDAO(catalog, props);
+        DefaultDataAccessManager manager = new DefaultDataAccessManager(dao);
+        SecureCatalogImpl secure = new SecureCatalogImpl(catalog, new DataAccessManagerAdapter(
+                manager));
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new TestingAuthenticationToken("reader", "secret", Arrays
+                        .asList(new GrantedAuthority[] { new GeoServerRole("READER") })));
+
+        // warm up
+        list(secure);
+        list(secure);
+
+        System.out.println("Layers: " + LAYERS + ", workspaces: " + WORKSPACES);
+        for (int i = 0; i < ROUNDS; i++) {
+            // a rule change drops the cached decisions
+            dao.addRule(dao.parseDataAccessRule("ws1.layer" + i + ".w", "ADMIN"));
+            long start = System.nanoTime();
+            int count = list(secure);
+            report("Uncached", start, count);
+
+            start = System.nanoTime();
+            count = list(secure);
+            report("Cached", start, count);
+        }
+    }
+
+    int list(Catalog catalog) {
+        int count = 0;
+        CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class, Filter.INCLUDE);
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    void report(String name, long start, int count) {
+        System.out.println("  " + name + ": " + (System.nanoTime() - start) / 1000000 + "ms, "
+                + count + " layers listed");
+    }
+
+    /**
+     * A catalog with the layers evenly distributed among the workspaces, one store per workspace
+     */
+    Catalog buildCatalog() {
+        CatalogImpl catalog = new CatalogImpl();
+        CatalogFactory factory = catalog.getFactory();
+        for (int i = 0; i < WORKSPACES; i++) {
+            WorkspaceInfo ws = factory.createWorkspace();
+            ws.setName("ws" + i);
+            catalog.add(ws);
+
+            NamespaceInfo ns = factory.createNamespace();
+            ns.setPrefix("ws" + i);
+            ns.setURI("http://www.geoserver.org/ws" + i);
+            catalog.add(ns);
+
+            DataStoreInfo ds = factory.createDataStore();
+            ds.setName("store" + i);
+            ds.setEnabled(true);
+            ds.setWorkspace(ws);
+            catalog.add(ds);
+        }
+
+        for (int i = 0; i < LAYERS; i++) {
+            int w = i % WORKSPACES;
+            FeatureTypeInfo ft = factory.createFeatureType();
+            ft.setName("layer" + i);
+            ft.setNativeName("layer" + i);
+            ft.setEnabled(true);
+            ft.setStore(catalog.getDataStoreByName("ws" + w, "store" + w));
+            ft.setNamespace(catalog.getNamespaceByPrefix("ws" + w));
+            catalog.add(ft);
+
+            LayerInfo layer = factory.createLayer();
+            layer.setResource(ft);
+            layer.setEnabled(true);
+            catalog.add(layer);
+        }
+        return catalog;
+    }
+}
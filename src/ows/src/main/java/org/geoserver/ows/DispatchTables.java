@@ -0,0 +1,268 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Service;
+
+/**
+ * Lookup tables used by the {@link Dispatcher} to resolve a request against the services and
+ * request readers available in the application context.
+ * <p>
+ * Each table is an immutable index of the extensions found at the time it was built. The
+ * extensions are still looked up at every request, as extension filters can enable or disable
+ * them at runtime, but the table is rebuilt only when the lookup returns a different set of
+ * extensions, which normally happens only after a context refresh.
+ * </p>
+ */
+class DispatchTables {
+
+    static volatile ServiceTable services;
+
+    static volatile KvpReaderTable kvpReaders;
+
+    static volatile XmlReaderTable xmlReaders;
+
+    /**
+     * Returns the table for the current services
+     */
+    static ServiceTable services() {
+        List<Service> current = GeoServerExtensions.extensions(Service.class);
+        ServiceTable table = services;
+        if (table == null || !table.isCurrent(current)) {
+            table = new ServiceTable(current);
+            services = table;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the table for the current kvp request readers
+     */
+    static KvpReaderTable kvpReaders() {
+        List<KvpRequestReader> current = GeoServerExtensions.extensions(KvpRequestReader.class);
+        KvpReaderTable table = kvpReaders;
+        if (table == null || !table.isCurrent(current)) {
+            table = new KvpReaderTable(current);
+            kvpReaders = table;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the table for the current xml request readers
+     */
+    static XmlReaderTable xmlReaders() {
+        List<XmlRequestReader> current = GeoServerExtensions.extensions(XmlRequestReader.class);
+        XmlReaderTable table = xmlReaders;
+        if (table == null || !table.isCurrent(current)) {
+            table = new XmlReaderTable(current);
+            xmlReaders = table;
+        }
+        return table;
+    }
+
+    static String key(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Base class for the tables, holds the extensions the table was built from
+     */
+    static abstract class ExtensionTable<T> {
+
+        final List<T> extensions;
+
+        ExtensionTable(List<T> extensions) {
+            this.extensions = Collections.unmodifiableList(new ArrayList<T>(extensions));
+        }
+
+        /**
+         * The extensions the table was built from
+         */
+        public List<T> getExtensions() {
+            return extensions;
+        }
+
+        /**
+         * Returns true if the table was built from the very same extension instances, in the
+         * same order
+         */
+        boolean isCurrent(List<T> current) {
+            if (current.size() != extensions.size()) {
+                return false;
+            }
+            for (int i = 0; i < current.size(); i++) {
+                if (current.get(i) != extensions.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Services indexed by their id (case insensitive)
+     */
+    static class ServiceTable extends ExtensionTable<Service> {
+
+        final Map<String, List<Service>> byId = new HashMap<String, List<Service>>();
+
+        ServiceTable(List<Service> services) {
+            super(services);
+            if (!(new HashSet<Service>(services).size() == services.size())) {
+                String msg = "Two identical service descriptors found";
+                throw new IllegalStateException(msg);
+            }
+
+            for (Service service : services) {
+                String key = key(service.getId());
+                List<Service> matches = byId.get(key);
+                if (matches == null) {
+                    matches = new ArrayList<Service>();
+                    byId.put(key, matches);
+                }
+                matches.add(service);
+            }
+        }
+
+        /**
+         * Returns the services with the given id, in lookup order, or an empty list
+         */
+        List<Service> getServices(String id) {
+            List<Service> matches = id != null ? byId.get(key(id)) : null;
+            if (matches == null) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(matches);
+        }
+    }
+
+    /**
+     * Kvp request readers, with the reader chosen for each request bean class remembered after
+     * the first lookup
+     */
+    static class KvpReaderTable extends ExtensionTable<KvpRequestReader> {
+
+        /**
+         * Marks the request types having no reader
+         */
+        static final Object NONE = new Object();
+
+        final Map<Class, Object> byType = new ConcurrentHashMap<Class, Object>();
+
+        KvpReaderTable(List<KvpRequestReader> kvpReaders) {
+            super(kvpReaders);
+            if (!(new HashSet<KvpRequestReader>(kvpReaders).size() == kvpReaders.size())) {
+                String msg = "Two identical kvp readers found";
+                throw new IllegalStateException(msg);
+            }
+        }
+
+        /**
+         * Returns the reader for the given request type, the one declaring the most specific
+         * request bean the type is assignable to, or null if there is none
+         */
+        KvpRequestReader getReader(Class type) {
+            Object reader = byType.get(type);
+            if (reader == null) {
+                reader = findReader(type);
+                byType.put(type, reader != null ? reader : NONE);
+            }
+            return reader != NONE ? (KvpRequestReader) reader : null;
+        }
+
+        KvpRequestReader findReader(Class type) {
+            List<KvpRequestReader> matches = new ArrayList<KvpRequestReader>();
+
+            for (KvpRequestReader kvpReader : extensions) {
+                if (kvpReader.getRequestBean().isAssignableFrom(type)) {
+                    matches.add(kvpReader);
+                }
+            }
+
+            if (matches.isEmpty()) {
+                return null;
+            }
+
+            if (matches.size() > 1) {
+                //sort by class hierarchy
+                Comparator<KvpRequestReader> comparator = new Comparator<KvpRequestReader>() {
+                    public int compare(KvpRequestReader kvp1, KvpRequestReader kvp2) {
+                        if (kvp2.getRequestBean().isAssignableFrom(kvp1.getRequestBean())) {
+                            return -1;
+                        }
+
+                        return 1;
+                    }
+                };
+
+                Collections.sort(matches, comparator);
+            }
+
+            return matches.get(0);
+        }
+    }
+
+    /**
+     * Xml request readers indexed by the local name of their element (case insensitive)
+     */
+    static class XmlReaderTable extends ExtensionTable<XmlRequestReader> {
+
+        final Map<String, List<XmlRequestReader>> byElement = new HashMap<String, List<XmlRequestReader>>();
+
+        XmlReaderTable(List<XmlRequestReader> xmlReaders) {
+            super(xmlReaders);
+            if (!(new HashSet<XmlRequestReader>(xmlReaders).size() == xmlReaders.size())) {
+                String msg = "Two identical xml readers found";
+                for (int i = 0; i < xmlReaders.size(); i++) {
+                    XmlRequestReader r1 = xmlReaders.get(i);
+                    for (int j = i + 1; j < xmlReaders.size(); j++) {
+                        XmlRequestReader r2 = xmlReaders.get(j);
+                        if (r1.equals(r2)) {
+                            msg += ": " + r1 + " and " + r2;
+                            break;
+                        }
+                    }
+
+                }
+
+                throw new IllegalStateException(msg);
+            }
+
+            for (XmlRequestReader xmlReader : xmlReaders) {
+                String key = key(xmlReader.getElement().getLocalPart());
+                List<XmlRequestReader> matches = byElement.get(key);
+                if (matches == null) {
+                    matches = new ArrayList<XmlRequestReader>();
+                    byElement.put(key, matches);
+                }
+                matches.add(xmlReader);
+            }
+        }
+
+        /**
+         * Returns the readers whose element local name matches the given one ignoring case, in
+         * lookup order, or an empty list
+         */
+        List<XmlRequestReader> getReaders(String element) {
+            List<XmlRequestReader> matches = element != null ? byElement.get(key(element)) : null;
+            if (matches == null) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(matches);
+        }
+    }
+}
@@ -21,7 +21,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -1013,19 +1012,11 @@ public class Dispatcher extends AbstractController {
     }
     
     Collection loadServices() {
-        Collection services = GeoServerExtensions.extensions(Service.class);
-
-        if (!(new HashSet(services).size() == services.size())) {
-            String msg = "Two identical service descriptors found";
-            throw new IllegalStateException(msg);
-        }
-
-        return services;
+        return DispatchTables.services().getExtensions();
     }
 
     Service findService(String id, String ver, String namespace) throws ServiceException {
         Version version = (ver != null) ? new Version(ver) : null;
-        Collection services = loadServices();
         
         // the id is actually the pathinfo, in case workspace specific services
         // are active we want to skip the workspace part in the path and go directly to the
@@ -1035,15 +1026,7 @@ public class Dispatcher extends AbstractController {
         }
 
         //first just match on service,request
-        List matches = new ArrayList();
-
-        for (Iterator itr = services.iterator(); itr.hasNext();) {
-            Service sBean = (Service) itr.next();
-
-            if (sBean.getId().equalsIgnoreCase(id)) {
-                matches.add(sBean);
-            }
-        }
+        List matches = DispatchTables.services().getServices(id);
 
         if (matches.isEmpty()) {
             return null;
@@ -1119,80 +1102,20 @@ public class Dispatcher extends AbstractController {
     }
 
     public static Collection loadKvpRequestReaders() {
-        Collection kvpReaders = GeoServerExtensions.extensions(KvpRequestReader.class);
-
-        if (!(new HashSet(kvpReaders).size() == kvpReaders.size())) {
-            String msg = "Two identical kvp readers found";
-            throw new IllegalStateException(msg);
-        }
-
-        return kvpReaders;
+        return DispatchTables.kvpReaders().getExtensions();
     }
 
     public static KvpRequestReader findKvpRequestReader(Class type) {
-        Collection kvpReaders = loadKvpRequestReaders();
-
-        List matches = new ArrayList();
-
-        for (Iterator itr = kvpReaders.iterator(); itr.hasNext();) {
-            KvpRequestReader kvpReader = (KvpRequestReader) itr.next();
-
-            if (kvpReader.getRequestBean().isAssignableFrom(type)) {
-                matches.add(kvpReader);
-            }
-        }
-
-        if (matches.isEmpty()) {
-            return null;
-        }
-
-        if (matches.size() > 1) {
-            //sort by class hierarchy
-            Comparator comparator = new Comparator() {
-                    public int compare(Object o1, Object o2) {
-                        KvpRequestReader kvp1 = (KvpRequestReader) o1;
-                        KvpRequestReader kvp2 = (KvpRequestReader) o2;
-
-                        if (kvp2.getRequestBean().isAssignableFrom(kvp1.getRequestBean())) {
-                            return -1;
-                        }
-
-                        return 1;
-                    }
-                };
-
-            Collections.sort(matches, comparator);
-        }
-
-        return (KvpRequestReader) matches.get(0);
+        return DispatchTables.kvpReaders().getReader(type);
     }
 
     Collection loadXmlReaders() {
-        List<XmlRequestReader> xmlReaders = GeoServerExtensions.extensions(XmlRequestReader.class);
-
-        if (!(new HashSet<XmlRequestReader>(xmlReaders).size() == xmlReaders.size())) {
-        
-            String msg = "Two identical xml readers found";
-            for (int i = 0; i < xmlReaders.size(); i++) {
-                XmlRequestReader r1 = xmlReaders.get(i);
-                for (int j = i + 1; j < xmlReaders.size(); j++) {
-                    XmlRequestReader r2 = xmlReaders.get(j);
-                    if(r1.equals(r2)) {
-                        msg += ": " + r1 + " and " + r2;
-                        break;
-                    }
-                }
-                
-            }
-            
-            throw new IllegalStateException(msg);
-        }
-
-        return xmlReaders;
+        return DispatchTables.xmlReaders().getExtensions();
     }
 
     XmlRequestReader findXmlReader(String namespace, String element, String serviceId, String ver) {
-        Collection xmlReaders = loadXmlReaders();
+        // readers with a matching element name, ignoring case
+        Collection xmlReaders = DispatchTables.xmlReaders().getReaders(element);
 
         //first just match on namespace, element
         List matches = new ArrayList();
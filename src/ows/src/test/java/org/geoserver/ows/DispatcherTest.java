@@ -450,4 +450,33 @@ public class DispatcherTest extends TestCase {
         dispatcher.handleRequest(request, response);
         assertEquals("Hello world!:V2", response.getOutputStreamContent());
     }
+
+    public void testDispatchTables() throws Exception {
+        URL url = getClass().getResource("applicationContext.xml");
+        FileSystemXmlApplicationContext context = new FileSystemXmlApplicationContext(url.toString());
+        Dispatcher dispatcher = (Dispatcher) context.getBean("dispatcher");
+
+        // service ids are matched ignoring case
+        Service service = dispatcher.findService("HELLO", null, null);
+        assertSame(context.getBean("helloWorldService"), service);
+        assertNull(dispatcher.findService("goodbye", null, null));
+        assertSame(context.getBean("messageKvpReader"), Dispatcher.findKvpRequestReader(Message.class));
+        assertNull(Dispatcher.findKvpRequestReader(String.class));
+
+        // the tables are reused as long as the extensions do not change
+        DispatchTables.ServiceTable services = DispatchTables.services();
+        dispatcher.findService("hello", null, null);
+        assertSame(services, DispatchTables.services());
+
+        // a new context brings in new extensions, the tables are rebuilt
+        url = getClass().getResource("applicationContextNamespace.xml");
+        context = new FileSystemXmlApplicationContext(url.toString());
+        dispatcher = (Dispatcher) context.getBean("dispatcher");
+        assertNotSame(services, DispatchTables.services());
+        service = dispatcher.findService("hello", null, null);
+        assertSame(context.getBean("helloWorldServiceV2"), service);
+        service = dispatcher.findService("hello", "1.0.0", null);
+        assertSame(context.getBean("helloWorldService"), service);
+        assertSame(context.getBean("messageKvpReader"), Dispatcher.findKvpRequestReader(Message.class));
+    }
 }
@@ -64,6 +64,33 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
      */
     static SoftValueHashMap<Class, List<Object>> spiCache = new SoftValueHashMap<Class, List<Object>>(40);
     
+    /**
+     * Snapshots of the extensions found in the default context, already resolved and sorted, 
+     * so that looking them up only requires evaluating the {@link ExtensionFilter}s. Cleared 
+     * along with the other caches when the context is refreshed
+     */
+    static ConcurrentHashMap<Class, ExtensionSnapshot> snapshots = new ConcurrentHashMap<Class, ExtensionSnapshot>();
+    
+    /**
+     * Sorts extensions based on {@link ExtensionPriority}
+     */
+    static final Comparator<Object> PRIORITY_COMPARATOR = new Comparator<Object>() {
+
+        public int compare(Object o1, Object o2) {
+            int p1 = ExtensionPriority.LOWEST;
+            if ( o1 instanceof ExtensionPriority ) {
+                p1 = ((ExtensionPriority)o1).getPriority();
+            }
+            
+            int p2 = ExtensionPriority.LOWEST;
+            if ( o2 instanceof ExtensionPriority ) {
+                p2 = ((ExtensionPriority)o2).getPriority();
+            }
+            
+            return p1 - p2;
+        }
+    };
+    
     /**
      * A static application context
      */
@@ -86,6 +113,7 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
         GeoServerExtensions.context = context;
         extensionsCache.clear();
         singletonBeanCache.clear();
+        snapshots.clear();
     }
 
     /**
@@ -97,8 +125,12 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
      * @return A collection of the extensions, or an empty collection.
      */
     public static final <T> List<T> extensions(Class<T> extensionPoint, ApplicationContext context) {
+        final boolean defaultContext = GeoServerExtensions.context == context;
+        ExtensionSnapshot snapshot = defaultContext ? snapshots.get(extensionPoint) : null;
         String[] names;
-        if(GeoServerExtensions.context == context){
+        if(snapshot != null) {
+            names = snapshot.names;
+        }else if(defaultContext){
             names = extensionsCache.get(extensionPoint);
         }else{
             names = null;
@@ -109,7 +141,7 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
                 try {
                     names = context.getBeanNamesForType(extensionPoint);
                     //update cache only if dealing with the same context
-                    if(GeoServerExtensions.context == context){
+                    if(defaultContext){
                         extensionsCache.put(extensionPoint, names);
                     }
                 }
@@ -134,19 +166,11 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
             filters = extensions(ExtensionFilter.class, context);
         }
         
-        // look up all the beans
-        List result = new ArrayList(names.length);
-        for(String name : names) {
-            Object bean = getBean(context, name);
-            if(!excludeBean(name, bean, filters))
-                result.add(bean);
-        }
-        
         // load from secondary extension providers
+        List secondary = new ArrayList();
         if (!ExtensionProvider.class.isAssignableFrom(extensionPoint) && 
             !ExtensionFilter.class.isAssignableFrom(extensionPoint)) {
             
-            List secondary = new ArrayList();
             for (ExtensionProvider xp : extensions(ExtensionProvider.class, context)) {
                 try {
                     if (extensionPoint.isAssignableFrom(xp.getExtensionPoint())) {
@@ -157,9 +181,26 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
                     LOGGER.log(Level.WARNING, "Extension provider threw exception", e);
                 }
             }
-            filter(secondary, filters, result);
         }
         
+        // the snapshot already has the beans and SPI extensions sorted, only the filters 
+        // need to be evaluated, as they can change their mind from call to call
+        if(snapshot != null && secondary.isEmpty()) {
+            return snapshot.filter(filters);
+        }
+        
+        // look up all the beans
+        List beans = new ArrayList(names.length);
+        List result = new ArrayList(names.length);
+        for(String name : names) {
+            Object bean = getBean(context, name);
+            beans.add(bean);
+            if(!excludeBean(name, bean, filters))
+                result.add(bean);
+        }
+        
+        filter(secondary, filters, result);
+        
         // load from factory spi
         List<Object> spiExtensions = spiCache.get(extensionPoint);
         if(spiExtensions == null) {
@@ -176,22 +217,15 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
         filter(spiExtensions, filters, result);
         
         //sort the results based on ExtensionPriority
-        Collections.sort( result, new Comparator() {
-
-            public int compare(Object o1, Object o2) {
-                int p1 = ExtensionPriority.LOWEST;
-                if ( o1 instanceof ExtensionPriority ) {
-                    p1 = ((ExtensionPriority)o1).getPriority();
-                }
-                
-                int p2 = ExtensionPriority.LOWEST;
-                if ( o2 instanceof ExtensionPriority ) {
-                    p2 = ((ExtensionPriority)o2).getPriority();
-                }
-                
-                return p1 - p2;
+        Collections.sort( result, PRIORITY_COMPARATOR );
+        
+        // snapshot the extensions for the next lookups, if they are stable
+        if(defaultContext && snapshot == null && secondary.isEmpty()) {
+            snapshot = ExtensionSnapshot.build(context, names, beans, spiExtensions);
+            if(snapshot != null) {
+                snapshots.put(extensionPoint, snapshot);
             }
-        });
+        }
         
         return result;
     }
@@ -304,6 +338,7 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
         if(event instanceof ContextRefreshedEvent) { 
             extensionsCache.clear();
             singletonBeanCache.clear();
+            snapshots.clear();
         }
     }
     
@@ -402,4 +437,83 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
         return result;
     }
     
+    /**
+     * Immutable snapshot of the extensions of a given type, made of the beans and the SPI 
+     * extensions sorted by priority, before any {@link ExtensionFilter} is applied.
+     */
+    static class ExtensionSnapshot {
+        
+        /**
+         * The names of the beans, as returned by the context
+         */
+        final String[] names;
+        
+        /**
+         * The extensions, sorted by priority
+         */
+        final Object[] extensions;
+        
+        /**
+         * The bean names of the extensions, null for the ones coming from SPI
+         */
+        final String[] ids;
+        
+        ExtensionSnapshot(String[] names, Object[] extensions, String[] ids) {
+            this.names = names;
+            this.extensions = extensions;
+            this.ids = ids;
+        }
+        
+        /**
+         * Builds the snapshot, or returns null if any of the beans is not a singleton, as a 
+         * new instance has to be fetched from the context at each lookup in that case
+         */
+        static ExtensionSnapshot build(ApplicationContext context, String[] names, List beans, 
+                List<Object> spiExtensions) {
+            final List<Object> all = new ArrayList<Object>(beans.size() + spiExtensions.size());
+            for (int i = 0; i < names.length; i++) {
+                Object bean = beans.get(i);
+                if(bean == null || !context.isSingleton(names[i])) {
+                    return null;
+                }
+                all.add(bean);
+            }
+            all.addAll(spiExtensions);
+            
+            // sort the positions, so that the bean names follow their beans (the sort is stable,
+            // same as the one of the lookup)
+            List<Integer> positions = new ArrayList<Integer>(all.size());
+            for (int i = 0; i < all.size(); i++) {
+                positions.add(i);
+            }
+            Collections.sort(positions, new Comparator<Integer>() {
+
+                public int compare(Integer i1, Integer i2) {
+                    return PRIORITY_COMPARATOR.compare(all.get(i1), all.get(i2));
+                }
+            });
+            
+            Object[] extensions = new Object[all.size()];
+            String[] ids = new String[all.size()];
+            for (int i = 0; i < extensions.length; i++) {
+                int position = positions.get(i);
+                extensions[i] = all.get(position);
+                ids[i] = position < names.length ? names[position] : null;
+            }
+            return new ExtensionSnapshot(names, extensions, ids);
+        }
+        
+        /**
+         * Returns the extensions that are not excluded by the filters, in priority order
+         */
+        List filter(List<ExtensionFilter> filters) {
+            List result = new ArrayList(extensions.length);
+            for (int i = 0; i < extensions.length; i++) {
+                if(!excludeBean(ids[i], extensions[i], filters)) {
+                    result.add(extensions[i]);
+                }
+            }
+            return result;
+        }
+    }
 }
@@ -26,6 +26,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
 
 /**
  * Unit test suite for {@link GeoServerExtensions}
@@ -239,6 +240,41 @@ public class GeoServerExtensionsTest {
         verify(appContext);
     }
     
+    @Test
+    public void testSnapshot() {
+        ApplicationContext appContext = createMock(ApplicationContext.class);
+        GeoServerExtensions gse = new GeoServerExtensions();
+        gse.setApplicationContext(appContext);
+
+        NameExclusionFilter filter = new NameExclusionFilter();
+        filter.setBeanId("holabaloo");
+        // each lookup is expected only once, the following ones hit the snapshot
+        expect(appContext.getBeanNamesForType(ExtensionFilter.class)).andReturn(new String[] { "filter" });
+        expect(appContext.getBean("filter")).andReturn(filter);
+        expect(appContext.getBeanNamesForType(ExtensionProvider.class)).andReturn(new String[0]);
+        expect(appContext.getBeanNamesForType(GeoServerExtensionsTest.class)).andReturn(
+                new String[] { "testId" });
+        expect(appContext.getBean("testId")).andReturn(this);
+        expect(appContext.isSingleton((String) anyObject())).andReturn(true).anyTimes();
+        replay(appContext);
+
+        assertEquals(1, gse.extensions(GeoServerExtensionsTest.class).size());
+        assertTrue(GeoServerExtensions.snapshots.containsKey(GeoServerExtensionsTest.class));
+
+        // the filters are still evaluated at each lookup
+        filter.setBeanId("testId");
+        assertEquals(0, gse.extensions(GeoServerExtensionsTest.class).size());
+        filter.setBeanId("holabaloo");
+        List<GeoServerExtensionsTest> extensions = gse.extensions(GeoServerExtensionsTest.class);
+        assertEquals(1, extensions.size());
+        assertSame(this, extensions.get(0));
+        verify(appContext);
+
+        // a refresh drops the snapshots
+        gse.onApplicationEvent(new ContextRefreshedEvent(appContext));
+        assertEquals(0, GeoServerExtensions.snapshots.size());
+    }
+
     public void _testBeanClassOfT() {
         fail("Not yet implemented");
     }
@@ -0,0 +1,37 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geoserver.catalog.CacheStatistics;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.rest.MapResource;
+
+/**
+ * Reports the hit/miss/load statistics of the caches owned by the catalog
+ * {@link org.geoserver.catalog.ResourcePool}.
+ */
+public class ResourcePoolCacheResource extends MapResource {
+
+    Catalog catalog;
+
+    public ResourcePoolCacheResource(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Map getMap() throws Exception {
+        Map<String, Object> caches = new LinkedHashMap<String, Object>();
+        for (CacheStatistics statistics : catalog.getResourcePool().getCacheStatistics().values()) {
+            caches.put(statistics.getName(), statistics.toMap());
+        }
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("caches", caches);
+        return map;
+    }
+}
@@ -16,19 +16,21 @@ import org.apache.wicket.model.Model;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CoverageStoreInfo;
 import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.ResourcePool;
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.web.GeoServerApplication;
-import org.geoserver.web.wicket.GeoServerDataProvider;
+import org.geoserver.web.wicket.CatalogDataProvider;
 import org.geotools.data.DataAccessFactory;
 import org.opengis.coverage.grid.Format;
+import org.opengis.filter.Filter;
 
 /**
  * Data providers for the {@link StorePanel}
  */
 @SuppressWarnings("serial")
-public class StoreProvider extends GeoServerDataProvider<StoreInfo> {
+public class StoreProvider extends CatalogDataProvider<StoreInfo> {
     
     static final Property<StoreInfo> DATA_TYPE = new AbstractProperty<StoreInfo>("datatype") {
 
@@ -98,13 +100,39 @@ public class StoreProvider extends GeoServerDataProvider<StoreInfo> {
     }
     
     public StoreProvider(WorkspaceInfo workspace) {
+        super(StoreInfo.class);
         this.workspace = workspace;
     }
     
     @Override
-    protected List<StoreInfo> getItems() {
-        return workspace == null ? getCatalog().getStores(StoreInfo.class) 
-            : getCatalog().getStoresByWorkspace( workspace, StoreInfo.class );
+    protected Filter getBaseFilter() {
+        return workspace == null ? Predicates.acceptAll() 
+            : Predicates.equal("workspace.id", workspace.getId());
+    }
+
+    /**
+     * Translates the computed {@link #DATA_TYPE} property into a check on the kind of store, and
+     * the computed {@link #TYPE} one into a check on the store type
+     */
+    @Override
+    protected Filter getKeywordFilter(Property<StoreInfo> property, String keyword) {
+        if (property == TYPE) {
+            return Predicates.contains("type", keyword);
+        } else if (property != DATA_TYPE) {
+            return super.getKeywordFilter(property, keyword);
+        }
+
+        String kw = keyword.toLowerCase();
+        boolean vector = "vector".contains(kw);
+        boolean raster = "raster".contains(kw);
+        if (vector && raster) {
+            return Predicates.acceptAll();
+        } else if (vector) {
+            return Predicates.isInstanceOf(DataStoreInfo.class);
+        } else if (raster) {
+            return Predicates.factory.not(Predicates.isInstanceOf(DataStoreInfo.class));
+        }
+        return null;
     }
 
     @Override
@@ -0,0 +1,195 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.web.wicket;
+
+import static org.geoserver.catalog.Predicates.acceptAll;
+import static org.geoserver.catalog.Predicates.and;
+import static org.geoserver.catalog.Predicates.or;
+import static org.geoserver.catalog.Predicates.sortBy;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link GeoServerDataProvider} serving catalog objects straight from the catalog.
+ * <p>
+ * The keywords are turned into a {@link Filter} matching them against the properties shown, see
+ * {@link #getKeywordFilter(Property, String)}, and the sort property into a
+ * {@link SortBy}, so that {@link #size()} and {@link #iterator(int, int)} can be answered by
+ * {@link Catalog#count(Class, Filter)} and
+ * {@link Catalog#list(Class, Filter, Integer, Integer, SortBy)}, loading only the page being
+ * displayed. Properties the catalog cannot sort on (computed ones, or ones the catalog backend
+ * does not support) are sorted in memory instead, after loading all the filtered items.
+ * </p>
+ *
+ * @param <T>
+ */
+@SuppressWarnings("serial")
+public abstract class CatalogDataProvider<T extends CatalogInfo> extends GeoServerDataProvider<T> {
+
+    /**
+     * The type of the catalog objects served
+     */
+    protected final Class<T> type;
+
+    protected CatalogDataProvider(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Returns the filter selecting the items served before any keyword filtering. Defaults to all
+     * the catalog objects of the served type
+     *
+     * @return
+     */
+    protected Filter getBaseFilter() {
+        return acceptAll();
+    }
+
+    /**
+     * Returns the filter selecting the items served, that is, the base filter and the keywords
+     * combined
+     *
+     * @return
+     */
+    protected Filter getFilter() {
+        Filter filter = getBaseFilter();
+        final String[] keywords = getKeywords();
+        if (keywords != null && keywords.length > 0) {
+            Filter keywordsFilter = Filter.INCLUDE;
+            for (String keyword : keywords) {
+                Filter keywordFilter = getKeywordFilter(keyword);
+                // chain the filters together
+                if (Filter.INCLUDE == keywordsFilter) {
+                    keywordsFilter = keywordFilter;
+                } else {
+                    keywordsFilter = or(keywordsFilter, keywordFilter);
+                }
+            }
+            filter = Filter.INCLUDE == filter ? keywordsFilter : and(filter, keywordsFilter);
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the filter matching the items having the keyword in any of the properties shown,
+     * the same ones the in memory filtering would look into
+     *
+     * @param keyword
+     * @return
+     */
+    protected Filter getKeywordFilter(String keyword) {
+        Filter filter = Filter.EXCLUDE;
+        for (Property<T> property : getProperties()) {
+            Filter propContains = getKeywordFilter(property, keyword);
+            if (propContains == null) {
+                continue;
+            }
+            if (Filter.EXCLUDE == filter) {
+                filter = propContains;
+            } else {
+                filter = or(filter, propContains);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the filter matching the items whose property contains the keyword, or null if the
+     * property is not searchable. Defaults to a case insensitive match on the property path of
+     * {@link BeanProperty} instances, computed properties have to be translated by subclasses
+     *
+     * @param property
+     * @param keyword
+     * @return
+     */
+    protected Filter getKeywordFilter(Property<T> property, String keyword) {
+        if (property instanceof BeanProperty) {
+            return Predicates.contains(((BeanProperty<T>) property).getPropertyPath(), keyword);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the catalog property the items have to be sorted on for the given provider property,
+     * or null if the catalog cannot sort on it. Defaults to the property path of
+     * {@link BeanProperty} instances
+     *
+     * @param property
+     * @return
+     */
+    protected String getSortPropertyPath(Property<T> property) {
+        if (property instanceof BeanProperty) {
+            return ((BeanProperty<T>) property).getPropertyPath();
+        }
+        return null;
+    }
+
+    /**
+     * Loads all the items matching the base filter
+     */
+    @Override
+    protected List<T> getItems() {
+        return list(getBaseFilter(), null, null, null);
+    }
+
+    /**
+     * Loads all the items matching the base filter and the keywords
+     */
+    @Override
+    protected List<T> getFilteredItems() {
+        return list(getFilter(), null, null, null);
+    }
+
+    @Override
+    public int size() {
+        return getCatalog().count(type, getFilter());
+    }
+
+    @Override
+    public int fullSize() {
+        return getCatalog().count(type, getBaseFilter());
+    }
+
+    @Override
+    public Iterator<T> iterator(int first, int count) {
+        SortBy sortOrder = null;
+        final SortParam sort = getSort();
+        final Property<T> property = getProperty(sort);
+        if (property != null) {
+            String path = getSortPropertyPath(property);
+            if (path == null || !getCatalog().getFacade().canSort(type, path)) {
+                // the catalog cannot do it, sort and page in memory
+                return super.iterator(first, count);
+            }
+            sortOrder = sortBy(path, sort.isAscending());
+        }
+
+        return list(getFilter(), first, count, sortOrder).iterator();
+    }
+
+    /**
+     * Runs the catalog query and copies the results, there is no way to have wicket close the
+     * iterator. Shouldn't be much overhead when paging
+     */
+    List<T> list(Filter filter, Integer first, Integer count, SortBy sortOrder) {
+        CloseableIterator<T> items = getCatalog().list(type, filter, first, count, sortOrder);
+        try {
+            return Lists.newArrayList(items);
+        } finally {
+            items.close();
+        }
+    }
+}
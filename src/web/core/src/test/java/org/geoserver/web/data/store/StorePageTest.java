@@ -6,12 +6,21 @@ package org.geoserver.web.data.store;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import org.apache.wicket.markup.repeater.data.DataView;
+import org.geoserver.catalog.CoverageStoreInfo;
 import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.web.GeoServerWicketTestSupport;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 public class StorePageTest extends GeoServerWicketTestSupport {
 
     @Before
@@ -32,4 +41,79 @@ public class StorePageTest extends GeoServerWicketTestSupport {
         StoreInfo ws = (StoreInfo) dv.getDataProvider().iterator(0, 1).next();
         assertEquals(getCatalog().getStores(StoreInfo.class).get(0), ws);
     }
+    
+    @Test
+    public void testProviderPagingAndSorting() {
+        List<StoreInfo> stores = new ArrayList<StoreInfo>(getCatalog().getStores(StoreInfo.class));
+        StoreProvider provider = new StoreProvider();
+        assertEquals(stores.size(), provider.size());
+        assertEquals(stores.size(), provider.fullSize());
+        
+        // sorted and paged by the catalog
+        provider.setSort("name", false);
+        Collections.sort(stores, new Comparator<StoreInfo>() {
+            public int compare(StoreInfo s1, StoreInfo s2) {
+                return s2.getName().compareTo(s1.getName());
+            }
+        });
+        List<StoreInfo> page = Lists.newArrayList(provider.iterator(1, 2));
+        assertEquals(stores.subList(1, 3), page);
+        
+        // computed property, sorted in memory
+        provider.setSort("datatype", true);
+        page = Lists.newArrayList(provider.iterator(0, stores.size()));
+        assertEquals(stores.size(), page.size());
+        for (int i = 1; i < page.size(); i++) {
+            String previous = (String) StoreProvider.DATA_TYPE.getPropertyValue(page.get(i - 1));
+            String current = (String) StoreProvider.DATA_TYPE.getPropertyValue(page.get(i));
+            assertTrue(previous.compareTo(current) <= 0);
+        }
+        
+        // keyword filtering
+        provider.setKeywords(new String[] {"cdf"});
+        assertEquals(1, provider.size());
+        assertEquals(stores.size(), provider.fullSize());
+        assertEquals("cdf", ((StoreInfo) provider.iterator(0, 10).next()).getName());
+
+        // computed and nested properties are matched as well
+        int rasters = stores.size() - getCatalog().getDataStores().size();
+        CoverageStoreInfo cs = getCatalog().getFactory().createCoverageStore();
+        cs.setName("tiff");
+        cs.setType("GeoTIFF");
+        cs.setEnabled(true);
+        cs.setWorkspace(getCatalog().getWorkspaceByName("cdf"));
+        getCatalog().add(cs);
+        try {
+            provider.setKeywords(new String[] {"Vector"});
+            assertEquals(getCatalog().getDataStores().size(), provider.size());
+            provider.setKeywords(new String[] {"raster"});
+            assertEquals(rasters + 1, provider.size());
+            // the store type
+            provider.setKeywords(new String[] {"GeoTIFF"});
+            int tiffs = 0;
+            for (StoreInfo store : getCatalog().getStores(StoreInfo.class)) {
+                if ("GeoTIFF".equals(store.getType())) {
+                    tiffs++;
+                }
+            }
+            assertTrue(tiffs > 0);
+            assertEquals(tiffs, provider.size());
+            // the workspace of the coverage store
+            provider.setKeywords(new String[] {"cdf"});
+            assertEquals(2, provider.size());
+        } finally {
+            getCatalog().remove(cs);
+        }
+    }
+    
+    @Test
+    public void testProviderWorkspace() {
+        WorkspaceInfo ws = getCatalog().getWorkspaceByName("cdf");
+        StoreProvider provider = new StoreProvider(ws);
+        int expected = getCatalog().getStoresByWorkspace(ws, StoreInfo.class).size();
+        assertEquals(expected, provider.fullSize());
+        assertEquals(expected, provider.size());
+        StoreInfo store = (StoreInfo) provider.iterator(0, 1).next();
+        assertEquals(ws, store.getWorkspace());
+    }
 }
@@ -10,13 +10,14 @@ import java.util.List;
 import org.apache.wicket.model.IModel;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.web.data.style.StyleDetachableModel;
+import org.geoserver.web.wicket.CatalogDataProvider;
 import org.geoserver.web.wicket.GeoServerDataProvider;
 
 /**
  * A {@link GeoServerDataProvider} provider for styles
  */
 @SuppressWarnings("serial")
-public class StyleProvider extends GeoServerDataProvider<StyleInfo> {
+public class StyleProvider extends CatalogDataProvider<StyleInfo> {
 
     public static Property<StyleInfo> NAME = 
         new BeanProperty<StyleInfo>( "name", "name" );
@@ -27,13 +28,9 @@ public class StyleProvider extends GeoServerDataProvider<StyleInfo> {
     static List PROPERTIES = Arrays.asList(NAME, WORKSPACE);
     
     public StyleProvider() {
+        super(StyleInfo.class);
         setSort(NAME.getName(), true);
     }
-    
-    @Override
-    protected List<StyleInfo> getItems() {
-        return getCatalog().getStyles();
-    }
 
     @Override
     protected List<Property<StyleInfo>> getProperties() {
@@ -4,7 +4,18 @@
  */
 package org.geoserver.wfs;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.geoserver.config.GeoServer;
+import org.geoserver.wfs.request.TransactionElement;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
 
 /**
  * Base class for transaction element handlers.
@@ -23,4 +34,43 @@ public abstract class AbstractTransactionElementHandler implements TransactionEl
     protected WFSInfo getInfo() {
         return geoServer.getService(WFSInfo.class);
     }
+
+    /**
+     * Returns true if the two elements have the same handle, used to make sure a batch of elements
+     * reports the same handles as the elements would have reported one by one
+     */
+    protected boolean sameHandle(TransactionElement e1, TransactionElement e2) {
+        String h1 = e1.getHandle();
+        String h2 = e2.getHandle();
+        return h1 == null ? h2 == null : h1.equals(h2);
+    }
+
+    /**
+     * Merges the filters of a batch of elements in a single one matching all the features matched
+     * by any of them. Id filters, the common case when bulk editing, are merged in a single id
+     * filter rather than a long chain of ORs, which the stores can turn into a single query.
+     */
+    protected Filter mergeFilters(List<Filter> filters) {
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        Set<Identifier> ids = new HashSet<Identifier>();
+        List<Filter> others = new ArrayList<Filter>();
+        for (Filter filter : filters) {
+            if (filter instanceof Id) {
+                ids.addAll(((Id) filter).getIdentifiers());
+            } else if (Filter.INCLUDE.equals(filter)) {
+                return Filter.INCLUDE;
+            } else {
+                others.add(filter);
+            }
+        }
+
+        if (!ids.isEmpty()) {
+            others.add(ff.id(ids));
+        }
+        return others.size() == 1 ? others.get(0) : ff.or(others);
+    }
 }
@@ -0,0 +1,48 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.wfs.request.TransactionElement;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.FeatureStore;
+
+/**
+ * Element handler that can execute a run of consecutive transaction elements as a single batch,
+ * issuing one write against the feature store and one set of events to the transaction listeners
+ * for the whole run, instead of one per element.
+ * <p>
+ * Used by {@link Transaction} when the bulk mode is enabled, see
+ * {@link Transaction#BULK_TRANSACTION}.
+ * </p>
+ */
+public interface BatchTransactionElementHandler extends TransactionElementHandler {
+
+    /**
+     * Returns true if <code>element</code> can be executed in the same batch as
+     * <code>first</code>, the element that started the batch, with the same outcome as executing
+     * them one after the other
+     */
+    boolean canBatch(TransactionElement first, TransactionElement element);
+
+    /**
+     * Executes the elements as a single batch. The events sent to the listener cover the features
+     * affected by the whole batch, and report the first element as their source. See
+     * {@link #execute(TransactionElement, TransactionRequest, Map, TransactionResponse, TransactionListener)}
+     * for the meaning of the other parameters
+     *
+     * @param elements
+     *            the elements to be executed, all accepted by {@link #canBatch}
+     */
+    @SuppressWarnings("rawtypes")
+    void execute(List<TransactionElement> elements, TransactionRequest request,
+            Map<QName, FeatureStore> featureStores, TransactionResponse response,
+            TransactionListener listener) throws WFSTransactionException;
+}
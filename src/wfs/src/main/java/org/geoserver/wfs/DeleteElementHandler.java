@@ -6,6 +6,8 @@ package org.geoserver.wfs;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -28,7 +30,6 @@ import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataUtilities;
-import org.geotools.data.Query;
 import org.geotools.data.FeatureLockException;
 import org.geotools.data.FeatureLocking;
 import org.geotools.data.FeatureStore;
@@ -43,8 +44,6 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Envelope;
-
 
 /**
  * Processes standard Delete elements
@@ -52,7 +51,8 @@ import com.vividsolutions.jts.geom.Envelope;
  * @author Andrea Aime - TOPP
  *
  */
-public class DeleteElementHandler extends AbstractTransactionElementHandler {
+public class DeleteElementHandler extends AbstractTransactionElementHandler implements
+        BatchTransactionElementHandler {
     /**
      * logger
      */
@@ -91,7 +91,29 @@ public class DeleteElementHandler extends AbstractTransactionElementHandler {
 
     public void execute(TransactionElement delete, TransactionRequest request, Map featureStores, 
         TransactionResponse response, TransactionListener listener) throws WFSTransactionException {
+        execute(Collections.singletonList(delete), request, featureStores, response, listener);
+    }
+
+    /**
+     * Consecutive deletes against the same feature type are removed with a single call
+     */
+    public boolean canBatch(TransactionElement first, TransactionElement element) {
+        return first.getTypeName().equals(element.getTypeName()) && sameHandle(first, element);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void execute(List<TransactionElement> deletes, TransactionRequest request,
+        Map<QName, FeatureStore> featureStores, TransactionResponse response,
+        TransactionListener listener) throws WFSTransactionException {
+        // locks are released one feature at a time, no point in batching
+        if (deletes.size() > 1 && (request.getLockId() != null) && (request.isReleaseActionSome())) {
+            for (TransactionElement delete : deletes) {
+                execute(delete, request, featureStores, response, listener);
+            }
+            return;
+        }
         
+        TransactionElement delete = deletes.get(0);
         QName elementName = delete.getTypeName();
         String handle = delete.getHandle();
         
@@ -107,13 +129,16 @@ public class DeleteElementHandler extends AbstractTransactionElementHandler {
         LOGGER.finer("Transaction Delete:" + delete);
 
         try {
-            Filter filter = delete.getFilter();
-            
             // make sure all geometric elements in the filter have a crs, and that the filter
             // is reprojected to store's native crs as well
             CoordinateReferenceSystem declaredCRS = WFSReprojectionUtil.getDeclaredCrs(
                     store.getSchema(), request.getVersion());
-            filter = WFSReprojectionUtil.normalizeFilterCRS(filter, store.getSchema(), declaredCRS);
+            List<Filter> filters = new ArrayList<Filter>(deletes.size());
+            for (TransactionElement element : deletes) {
+                filters.add(WFSReprojectionUtil.normalizeFilterCRS(element.getFilter(),
+                        store.getSchema(), declaredCRS));
+            }
+            Filter filter = mergeFilters(filters);
             
             // notify listeners
             TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_DELETE, request,
@@ -121,13 +146,6 @@ public class DeleteElementHandler extends AbstractTransactionElementHandler {
             event.setSource( Delete.WFS11.unadapt((Delete)delete));
             listener.dataStoreChange( event );
 
-            // compute damaged area
-            Envelope damaged = store.getBounds(new Query(elementName.getLocalPart(), filter));
-
-            if (damaged == null) {
-                damaged = store.getFeatures(filter).getBounds();
-            }
-
             if ((request.getLockId() != null) && store instanceof FeatureLocking
                     && (request.isReleaseActionSome())) {
                 SimpleFeatureLocking locking;
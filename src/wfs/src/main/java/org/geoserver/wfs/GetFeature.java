@@ -307,6 +307,13 @@ public class GetFeature {
             totalCount = -1;
         }
 
+        // complex feature collections cannot report their size, the number of features matched
+        // is asked to the feature source instead. When the source cannot tell the output format
+        // counts the features returned while encoding them, and the total is reported as 
+        // unknown, counting it would mean building all the features matched
+        boolean countUnknown = false;
+        boolean totalUnknown = false;
+
         //offset into result set in which to return features
         int totalOffset = request.getStartIndex() != null ? request.getStartIndex().intValue() : -1;
         if (totalOffset == -1 && request.getVersion().startsWith("2") && wfs.isCiteCompliant()) {
@@ -500,9 +507,28 @@ public class GetFeature {
                     calculateSize = offset > 0 && i < queries.size() - 1; 
                 }
 
+                boolean complex = !(meta.getFeatureType() instanceof SimpleFeatureType);
+                if (complex && totalCount == -1 && request.getVersion().startsWith("2")) {
+                    // the encoder would make up the total from the collection sizes
+                    totalUnknown = true;
+                }
+
+                int matched = -1;
+                if (complex && (calculateSize || totalCount > -1)) {
+                    org.geotools.data.Query q2 = toDataQuery(query, filter, 0, Integer.MAX_VALUE, 
+                        source, request, allPropNames.get(0), viewParam, joins);
+                    matched = source.getCount(q2);
+                }
+
                 int size = 0;
                 if (calculateSize) {
-                    size = features.size();
+                    if (!complex) {
+                        size = features.size();
+                    } else if (matched > -1) {
+                        size = Math.max(0, Math.min(matched - Math.max(offset, 0), queryMaxFeatures));
+                    } else {
+                        countUnknown = true;
+                    }
                 }
                 
                 //update the count
@@ -534,7 +560,13 @@ public class GetFeature {
                 if (totalCount > -1) {
                     //check maxFeatures and offset, if they are unset we can use the size we 
                     // calculated above
-                    if (calculateSize && queryMaxFeatures == Integer.MAX_VALUE && offset == 0) {
+                    if (complex && matched > -1) {
+                        totalCount += matched;
+                    }
+                    else if (complex) {
+                        totalUnknown = true;
+                    }
+                    else if (calculateSize && queryMaxFeatures == Integer.MAX_VALUE && offset <= 0) {
                         totalCount += size;
                     }
                     else {
@@ -616,7 +648,17 @@ public class GetFeature {
             lockId = response.getLockId();
         }
 
-        return buildResults(request, totalOffset, maxFeatures, count, totalCount, results, lockId);
+        FeatureCollectionResponse result = 
+            buildResults(request, totalOffset, maxFeatures, count, totalCount, results, lockId);
+        if (countUnknown) {
+            // leave it to the output format, see GML3OutputFormat#setNumberOfFeatures
+            result.setNumberOfFeatures(null);
+        }
+        if (totalUnknown) {
+            // reported as "unknown", see GML32OutputFormat
+            result.setTotalNumberOfFeatures(null);
+        }
+        return result;
     }
 
     protected void processStoredQueries(GetFeatureRequest request) {
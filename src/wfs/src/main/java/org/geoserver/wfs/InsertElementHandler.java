@@ -6,9 +6,12 @@ package org.geoserver.wfs;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,11 +36,11 @@ import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureStore;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.factory.Hints;
-import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.operation.projection.PointOutsideEnvelopeException;
 import org.opengis.feature.simple.SimpleFeature;
@@ -56,7 +59,8 @@ import com.vividsolutions.jts.geom.Geometry;
  * @author Andrea Aime - TOPP
  *
  */
-public class InsertElementHandler extends AbstractTransactionElementHandler {
+public class InsertElementHandler extends AbstractTransactionElementHandler implements
+        BatchTransactionElementHandler {
     /**
      * logger
      */
@@ -75,39 +79,56 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public void execute(TransactionElement element, TransactionRequest request, Map featureStores, 
         TransactionResponse response, TransactionListener listener) throws WFSTransactionException {
+        execute(Collections.singletonList(element), request, featureStores, response, listener);
+    }
+
+    /**
+     * Inserts can always be batched, the features are grouped by feature type anyways and the
+     * inserted fids are reported back element by element once all the features have been written
+     */
+    public boolean canBatch(TransactionElement first, TransactionElement element) {
+        return true;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void execute(List<TransactionElement> elements, TransactionRequest request,
+        Map<QName, FeatureStore> featureStores, TransactionResponse response,
+        TransactionListener listener) throws WFSTransactionException {
         
-        Insert insert = (Insert) element;
+        Insert insert = (Insert) elements.get(0);
         LOGGER.finer("Transasction Insert:" + insert);
 
         long inserted = response.getTotalInserted().longValue();
 
         try {
-            // group features by their schema
-            HashMap /* <SimpleFeatureType,FeatureCollection> */ schema2features = new HashMap();
-
-            
-            List featureList = insert.getFeatures();
-            for (Iterator f = featureList.iterator(); f.hasNext();) {
-                SimpleFeature feature = (SimpleFeature) f.next();
-                SimpleFeatureType schema = feature.getFeatureType();
-                DefaultFeatureCollection collection = 
-                    (DefaultFeatureCollection) schema2features.get(schema);
+            // group features by their schema, keeping them in the same order as in the request,
+            // the lists are wrapped and handed to the stores without further copies
+            Map<SimpleFeatureType, List<SimpleFeature>> schema2features = 
+                new LinkedHashMap<SimpleFeatureType, List<SimpleFeature>>();
+
+            for (TransactionElement element : elements) {
+                Insert current = (Insert) element;
+                List featureList = current.getFeatures();
+                for (Iterator f = featureList.iterator(); f.hasNext();) {
+                    SimpleFeature feature = (SimpleFeature) f.next();
+                    SimpleFeatureType schema = feature.getFeatureType();
+                    List<SimpleFeature> features = schema2features.get(schema);
+
+                    if (features == null) {
+                        features = new ArrayList<SimpleFeature>();
+                        schema2features.put(schema, features);
+                    }
 
-                if (collection == null) {
-                    collection = new DefaultFeatureCollection(null, schema);
-                    schema2features.put(schema, collection);
-                }
+                    // do a check for idegen = useExisting, if set try to tell the datastore to use
+                    // the privided fid
+                    if (current.isIdGenUseExisting()) {
+                        feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+                    }
 
-                // do a check for idegen = useExisting, if set try to tell the datastore to use
-                // the privided fid
-                if (insert.isIdGenUseExisting()) {
-                    feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+                    features.add(feature);
                 }
-
-                collection.add(feature);
             }
 
             // JD: change from set fo list because if inserting
@@ -118,9 +139,9 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
             // as they were supplied
             Map<String, List<FeatureId>> schema2fids = new HashMap<String, List<FeatureId>>();
 
-            for (Iterator c = schema2features.values().iterator(); c.hasNext();) {
-                SimpleFeatureCollection collection = (SimpleFeatureCollection) c.next();
-                SimpleFeatureType schema = collection.getSchema();
+            for (Map.Entry<SimpleFeatureType, List<SimpleFeature>> entry : schema2features.entrySet()) {
+                SimpleFeatureType schema = entry.getKey();
+                SimpleFeatureCollection collection = new ListFeatureCollection(schema, entry.getValue());
 
                 final QName elementName = new QName(schema.getName().getNamespaceURI(), schema.getTypeName());
                 SimpleFeatureStore store;
@@ -196,19 +217,22 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
 
             // report back fids, we need to keep the same order the
             // fids were reported in the original feature collection
-            for (Iterator f = featureList.iterator(); f.hasNext();) {
-                SimpleFeature feature = (SimpleFeature) f.next();
-                SimpleFeatureType schema = feature.getFeatureType();
+            for (TransactionElement element : elements) {
+                List featureList = ((Insert) element).getFeatures();
+                for (Iterator f = featureList.iterator(); f.hasNext();) {
+                    SimpleFeature feature = (SimpleFeature) f.next();
+                    SimpleFeatureType schema = feature.getFeatureType();
 
-                // get the next fid
-                LinkedList<FeatureId> fids = (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
-                FeatureId fid = fids.removeFirst();
+                    // get the next fid
+                    LinkedList<FeatureId> fids = (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
+                    FeatureId fid = fids.removeFirst();
 
-                response.addInsertedFeature(insert.getHandle(), fid);
-            }
+                    response.addInsertedFeature(element.getHandle(), fid);
+                }
 
-            // update the insert counter
-            inserted += featureList.size();
+                // update the insert counter
+                inserted += featureList.size();
+            }
         } catch (Exception e) {
             String msg = "Error performing insert: " + e.getMessage();
             throw new WFSTransactionException(msg, e, insert.getHandle());
@@ -254,15 +278,21 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
     public QName[] getTypeNames(TransactionElement element) throws WFSTransactionException {
         Insert insert = (Insert) element;
         
-        List typeNames = new ArrayList();
+        // large inserts contain the same few types over and over, only report them once
+        Set<QName> typeNames = new LinkedHashSet<QName>();
 
         List features = insert.getFeatures();
         if (!features.isEmpty()) {
+            SimpleFeatureType last = null;
             for (Iterator f = features.iterator(); f.hasNext();) {
                 SimpleFeature feature = (SimpleFeature) f.next();
+                if (feature.getFeatureType() == last) {
+                    continue;
+                }
+                last = feature.getFeatureType();
 
-                String name = feature.getFeatureType().getTypeName();
-                String namespaceURI = feature.getFeatureType().getName().getNamespaceURI();
+                String name = last.getTypeName();
+                String namespaceURI = last.getName().getNamespaceURI();
 
                 typeNames.add(new QName(namespaceURI, name));
             }
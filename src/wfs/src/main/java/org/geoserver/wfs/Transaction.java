@@ -52,6 +52,12 @@ public class Transaction {
      */
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
 
+    /**
+     * Enables the bulk mode, in which runs of consecutive elements that can be merged are
+     * executed as a single batch, see {@link BatchTransactionElementHandler}
+     */
+    public static final String BULK_TRANSACTION = "WFS_BULK_TRANSACTION";
+
     /**
      * WFS configuration
      */
@@ -72,10 +78,14 @@ public class Transaction {
     protected List transactionElementHandlers = new ArrayList();
     protected List transactionListeners = new ArrayList();
     protected List transactionPlugins = new ArrayList();
+
+    /** Whether consecutive elements should be merged in batches */
+    protected boolean bulk;
     
     public Transaction(WFSInfo wfs, Catalog catalog, ApplicationContext context) {
         this.wfs = wfs;
         this.catalog = catalog;
+        this.bulk = Boolean.valueOf(GeoServerExtensions.getProperty(BULK_TRANSACTION, context));
         
         // register element handlers, listeners and plugins
         transactionElementHandlers.addAll(GeoServerExtensions.extensions(TransactionElementHandler.class));
@@ -93,6 +103,14 @@ public class Transaction {
         this.filterFactory = filterFactory;
     }
 
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public void setBulk(boolean bulk) {
+        this.bulk = bulk;
+    }
+
     public TransactionResponse transaction(TransactionRequest request)
         throws WFSException {
         // make sure server is supporting transactions
@@ -182,6 +200,9 @@ public class Transaction {
         // List typeNames = new ArrayList();
         Map elementHandlers = gatherElementHandlers(request);
 
+        // large transactions keep on hitting the same few types, look them up only once
+        Map<QName, FeatureTypeInfo> typeInfoCache = new HashMap<QName, FeatureTypeInfo>();
+
         // Gather feature types required by transaction elements and validate
         // the elements
         // finally gather FeatureStores required by Transaction Elements
@@ -200,6 +221,12 @@ public class Transaction {
 
             for (int i = 0; i < typeNames.length; i++) {
                 final QName typeName = typeNames[i];
+                FeatureTypeInfo cached = typeInfoCache.get(typeName);
+                if (cached != null) {
+                    featureTypeInfos.put(typeName, cached);
+                    continue;
+                }
+
                 final String name = typeName.getLocalPart();
                 final String namespaceURI;
 
@@ -219,6 +246,7 @@ public class Transaction {
                 }
 
                 featureTypeInfos.put(typeName, meta);
+                typeInfoCache.put(typeName, meta);
             }
 
             // check element validity
@@ -311,12 +339,16 @@ public class Transaction {
         Exception exception = null;
 
         try {
-            for (Iterator it = elementHandlers.entrySet().iterator(); it.hasNext();) {
-                Map.Entry entry = (Map.Entry) it.next();
-                TransactionElement element = (TransactionElement) entry.getKey();
-                TransactionElementHandler handler = (TransactionElementHandler) entry.getValue();
+            if (bulk) {
+                executeBatched(elementHandlers, request, stores, result, multiplexer);
+            } else {
+                for (Iterator it = elementHandlers.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry entry = (Map.Entry) it.next();
+                    TransactionElement element = (TransactionElement) entry.getKey();
+                    TransactionElementHandler handler = (TransactionElementHandler) entry.getValue();
 
-                handler.execute(element, request, stores, result, multiplexer);
+                    handler.execute(element, request, stores, result, multiplexer);
+                }
             }
         } catch (WFSTransactionException e) {
             LOGGER.log(Level.SEVERE, "Transaction failed", e);
@@ -440,6 +472,41 @@ public class Transaction {
         // response = build;
     }
 
+    /**
+     * Executes the elements in order, merging runs of consecutive elements accepted by the same
+     * {@link BatchTransactionElementHandler} in a single batch
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    void executeBatched(Map elementHandlers, TransactionRequest request, Map stores,
+            TransactionResponse result, TransactionListener listener)
+            throws WFSTransactionException {
+        BatchTransactionElementHandler batchHandler = null;
+        List<TransactionElement> batch = new ArrayList<TransactionElement>();
+        for (Iterator it = elementHandlers.entrySet().iterator(); it.hasNext();) {
+            Map.Entry entry = (Map.Entry) it.next();
+            TransactionElement element = (TransactionElement) entry.getKey();
+            TransactionElementHandler handler = (TransactionElementHandler) entry.getValue();
+
+            // close the current batch if this element cannot join it
+            if (batchHandler != null
+                    && (handler != batchHandler || !batchHandler.canBatch(batch.get(0), element))) {
+                batchHandler.execute(batch, request, stores, result, listener);
+                batchHandler = null;
+                batch = new ArrayList<TransactionElement>();
+            }
+
+            if (handler instanceof BatchTransactionElementHandler) {
+                batchHandler = (BatchTransactionElementHandler) handler;
+                batch.add(element);
+            } else {
+                handler.execute(element, request, stores, result, listener);
+            }
+        }
+        if (batchHandler != null) {
+            batchHandler.execute(batch, request, stores, result, listener);
+        }
+    }
+
     void fireAfterTransaction(TransactionRequest request, TransactionResponse result, boolean committed, TransactionPlugin tp) {
         TransactionType tx = TransactionRequest.WFS11.unadapt(request);
         TransactionResponseType tr = TransactionResponse.WFS11.unadapt(result);
@@ -469,9 +536,15 @@ public class Transaction {
         // must be respected
         Map map = new LinkedHashMap();
 
+        Map<Class, TransactionElementHandler> handlers = new HashMap<Class, TransactionElementHandler>();
         List<TransactionElement> elements = request.getElements();
         for (TransactionElement element : elements) {
-            map.put(element, findElementHandler(element.getClass()));
+            TransactionElementHandler handler = handlers.get(element.getClass());
+            if (handler == null) {
+                handler = findElementHandler(element.getClass());
+                handlers.put(element.getClass(), handler);
+            }
+            map.put(element, handler);
         }
 
         return map;
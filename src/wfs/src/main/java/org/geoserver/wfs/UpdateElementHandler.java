@@ -6,6 +6,8 @@ package org.geoserver.wfs;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -60,7 +62,8 @@ import com.vividsolutions.jts.geom.Geometry;
  * @author Andrea Aime - TOPP
  *
  */
-public class UpdateElementHandler extends AbstractTransactionElementHandler {
+public class UpdateElementHandler extends AbstractTransactionElementHandler implements
+        BatchTransactionElementHandler {
     /**
      * logger
      */
@@ -127,10 +130,46 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
     }
 
     public void execute(TransactionElement element, TransactionRequest request, 
+       @SuppressWarnings("rawtypes") Map<QName, FeatureStore> featureStores,
+       TransactionResponse response, TransactionListener listener) throws WFSTransactionException {
+        execute(Collections.singletonList(element), request, featureStores, response, listener);
+    }
+
+    /**
+     * Consecutive updates can be run with a single call to the store only if they apply the very
+     * same changes to the same feature type, e.g., when setting a status flag on many features.
+     * Updates setting geometries are never batched, geometry equality does not account for the
+     * CRS they are expressed in
+     */
+    public boolean canBatch(TransactionElement first, TransactionElement element) {
+        if (!first.getTypeName().equals(element.getTypeName()) || !sameHandle(first, element)) {
+            return false;
+        }
+
+        List<Property> p1 = ((Update) first).getUpdateProperties();
+        List<Property> p2 = ((Update) element).getUpdateProperties();
+        if (p1.size() != p2.size()) {
+            return false;
+        }
+        for (int i = 0; i < p1.size(); i++) {
+            Object v1 = p1.get(i).getValue();
+            Object v2 = p2.get(i).getValue();
+            if (v1 instanceof Geometry || v2 instanceof Geometry) {
+                return false;
+            }
+            if (!p1.get(i).getName().equals(p2.get(i).getName())
+                    || !(v1 == null ? v2 == null : v1.equals(v2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void execute(List<TransactionElement> elements, TransactionRequest request, 
        @SuppressWarnings("rawtypes") Map<QName, FeatureStore> featureStores,
        TransactionResponse response, TransactionListener listener) throws WFSTransactionException {
         
-        Update update = (Update) element;
+        Update update = (Update) elements.get(0);
         final QName elementName = update.getTypeName();
         String handle = update.getHandle();
         
@@ -145,17 +184,21 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
         LOGGER.finer("Transaction Update:" + update);
 
         try {
-            Filter filter = update.getFilter();
-
             // make sure all geometric elements in the filter have a crs, and that the filter
             // is reprojected to store's native crs as well
             CoordinateReferenceSystem declaredCRS = WFSReprojectionUtil.getDeclaredCrs(
                     store.getSchema(), request.getVersion());
-            if(filter != null) {
-                filter = WFSReprojectionUtil.normalizeFilterCRS(filter, store.getSchema(), declaredCRS);
-            } else {
-                filter = Filter.INCLUDE;
+            List<Filter> filters = new ArrayList<Filter>(elements.size());
+            for (TransactionElement element : elements) {
+                Filter filter = element.getFilter();
+                if(filter != null) {
+                    filter = WFSReprojectionUtil.normalizeFilterCRS(filter, store.getSchema(), declaredCRS);
+                } else {
+                    filter = Filter.INCLUDE;
+                }
+                filters.add(filter);
             }
+            Filter filter = mergeFilters(filters);
 
             List<Property> properties = update.getUpdateProperties();
             AttributeDescriptor[] types = new AttributeDescriptor[properties.size()];
@@ -221,6 +264,9 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
             // for validation
             //
             Set<FeatureId> fids = new HashSet<FeatureId>();
+            // the features each element updates, the same feature counts once per element
+            // updating it, as when the elements are run one by one
+            int matched = 0;
             LOGGER.finer("Preprocess to remember modification as a set of fids");
             
             SimpleFeatureCollection features = store.getFeatures(filter);
@@ -236,6 +282,13 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
                 while (preprocess.hasNext()) {
                     SimpleFeature feature = (SimpleFeature) preprocess.next();
                     fids.add(feature.getIdentifier());
+                    if (filters.size() > 1) {
+                        for (Filter f : filters) {
+                            if (f.evaluate(feature)) {
+                                matched++;
+                            }
+                        }
+                    }
                 }
             } catch (NoSuchElementException e) {
                 throw new WFSException(request, "Could not aquire FeatureIDs", e);
@@ -299,7 +352,7 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
             }
 
             // update the update counter
-            updated += fids.size();
+            updated += filters.size() > 1 ? matched : fids.size();
         } catch (IOException ioException) {
             // JD: changing from throwing service exception to
             // adding action that failed
@@ -17,6 +17,7 @@ import java.util.logging.Logger;
 
 import net.sf.json.JSONException;
 
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
@@ -104,7 +105,7 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
                 outWriter.write(getCallbackFunction() + "(");
             }
 
-            final GeoJSONBuilder jsonWriter = new GeoJSONBuilder(outWriter);
+            final GeoJSONWriter jsonWriter = new GeoJSONWriter(outWriter);
             jsonWriter.object().key("type").value("FeatureCollection");
             jsonWriter.key("features");
             jsonWriter.array();
@@ -115,8 +116,17 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             // execute should also fail if all of the locks could not be aquired
             List resultsList = featureCollection.getFeature();
             CoordinateReferenceSystem crs = null;
+            int maxDecimals = -1;
             for (int i = 0; i < resultsList.size(); i++) {
                 FeatureCollection collection = (FeatureCollection) resultsList.get(i);
+                int numDecimals = getNumDecimals(collection);
+                jsonWriter.setNumDecimals(numDecimals);
+                // the collection bounds are written with the max precision of all the layers
+                if (i == 0 || numDecimals < 0) {
+                    maxDecimals = numDecimals;
+                } else if (maxDecimals >= 0) {
+                    maxDecimals = Math.max(maxDecimals, numDecimals);
+                }
                 FeatureIterator iterator = collection.features();
 
                 try {
@@ -245,6 +255,7 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
                 }
 
                 if (e != null) {
+                    jsonWriter.setNumDecimals(maxDecimals);
                     jsonWriter.writeBoundingBox(e);
                 }
             }
@@ -265,6 +276,18 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
         }
     }
 
+    /**
+     * Returns the number of decimals configured for the layer of the collection, or -1 if not set
+     */
+    int getNumDecimals(FeatureCollection collection) {
+        FeatureTypeInfo info = gs.getCatalog().getFeatureTypeByName(
+                collection.getSchema().getName());
+        if (info != null && info.getNumDecimals() > 0) {
+            return info.getNumDecimals();
+        }
+        return -1;
+    }
+
     private String getCallbackFunction() {
         Request request = Dispatcher.REQUEST.get();
         if (request == null) {
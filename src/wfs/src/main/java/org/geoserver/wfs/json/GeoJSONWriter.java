@@ -0,0 +1,488 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Calendar;
+
+import net.sf.json.JSONException;
+import net.sf.json.util.JSONUtils;
+
+import org.geotools.util.Converters;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streaming GeoJSON writer, a purpose built replacement for {@link GeoJSONBuilder} when encoding
+ * large amounts of features.
+ * <p>
+ * It has the same fluent API as the json-lib builder, but numbers are formatted straight into a
+ * reusable char buffer, and coordinates are read from the geometry coordinate sequences and
+ * written without boxing or intermediate strings. Doubles are written with the fewest fraction
+ * digits that parse back to the same value, unless a number of decimals is set with
+ * {@link #setNumDecimals(int)}, in which case coordinates are rounded to it.
+ * </p>
+ */
+public class GeoJSONWriter {
+
+    /** 2^53, the doubles below it can represent any integer exactly */
+    static final double MAX_EXACT = 9007199254740992d;
+
+    /** Max number of fraction digits tried when looking for the shortest representation */
+    static final int MAX_DECIMALS = 17;
+
+    static final double[] POW10 = new double[MAX_DECIMALS + 1];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /** Writing state: initial, done, expecting a key, expecting an object value, in an array */
+    static final char INIT = 'i', DONE = 'd', KEY = 'k', OBJECT = 'o', ARRAY = 'a';
+
+    final Writer writer;
+
+    /** Reused to format the numbers, large enough for 2^53 with the sign and 17 decimals */
+    final char[] buffer = new char[40];
+
+    char[] stack = new char[16];
+
+    int top;
+
+    char mode = INIT;
+
+    boolean comma;
+
+    int numDecimals = -1;
+
+    public GeoJSONWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Sets the number of decimals used for coordinates and bounding boxes, a negative value (the
+     * default) writes them with full precision
+     */
+    public void setNumDecimals(int numDecimals) {
+        this.numDecimals = Math.min(numDecimals, MAX_DECIMALS);
+    }
+
+    public int getNumDecimals() {
+        return numDecimals;
+    }
+
+    public GeoJSONWriter object() throws JSONException {
+        try {
+            beforeValue();
+            writer.write('{');
+            push(KEY);
+            return this;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    public GeoJSONWriter endObject() throws JSONException {
+        return end(KEY, '}');
+    }
+
+    public GeoJSONWriter array() throws JSONException {
+        try {
+            beforeValue();
+            writer.write('[');
+            push(ARRAY);
+            return this;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    public GeoJSONWriter endArray() throws JSONException {
+        return end(ARRAY, ']');
+    }
+
+    public GeoJSONWriter key(String key) throws JSONException {
+        if (key == null) {
+            throw new JSONException("Null key.");
+        }
+        if (mode != KEY) {
+            throw new JSONException("Misplaced key.");
+        }
+        try {
+            if (comma) {
+                writer.write(',');
+            }
+            writeString(key);
+            writer.write(':');
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        mode = OBJECT;
+        return this;
+    }
+
+    /**
+     * Writes a value, dates and calendars are encoded as ISO 8601 strings, any other type not
+     * handled directly is encoded the same way as json-lib would
+     */
+    public GeoJSONWriter value(Object value) throws JSONException {
+        if (value == null) {
+            return raw("null");
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Double) {
+            return value(((Double) value).doubleValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof java.util.Date || value instanceof Calendar) {
+            return value(Converters.convert(value, String.class));
+        }
+        return raw(JSONUtils.valueToString(value));
+    }
+
+    public GeoJSONWriter value(String value) throws JSONException {
+        if (value == null) {
+            return raw("null");
+        }
+        try {
+            beforeValue();
+            writeString(value);
+            afterValue();
+            return this;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    public GeoJSONWriter value(double value) throws JSONException {
+        try {
+            beforeValue();
+            writeNumber(value, -1);
+            afterValue();
+            return this;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    public GeoJSONWriter value(long value) throws JSONException {
+        try {
+            beforeValue();
+            if (value == Long.MIN_VALUE) {
+                writer.write(String.valueOf(value));
+            } else {
+                writeDigits(value < 0, Math.abs(value), 0);
+            }
+            afterValue();
+            return this;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    public GeoJSONWriter value(boolean value) throws JSONException {
+        return raw(value ? "true" : "false");
+    }
+
+    /**
+     * Writes any geometry object, as a GeoJSON geometry object
+     */
+    public GeoJSONWriter writeGeom(Geometry geometry) throws JSONException {
+        object();
+        key("type").value(GeoJSONBuilder.getGeometryName(geometry));
+
+        final int geometryType = GeoJSONBuilder.getGeometryType(geometry);
+        if (geometryType == GeoJSONBuilder.MULTIGEOMETRY) {
+            key("geometries");
+            array();
+            for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                writeGeom(geometry.getGeometryN(i));
+            }
+            endArray();
+            return endObject();
+        }
+
+        key("coordinates");
+        try {
+            switch (geometryType) {
+            case GeoJSONBuilder.POINT:
+                Point point = (Point) geometry;
+                writeCoordinate(point.getX(), point.getY());
+                break;
+            case GeoJSONBuilder.LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case GeoJSONBuilder.MULTIPOINT:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    Point p = (Point) geometry.getGeometryN(i);
+                    writeCoordinate(p.getX(), p.getY());
+                }
+                endArray();
+                break;
+            case GeoJSONBuilder.POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case GeoJSONBuilder.MULTILINESTRING:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    writeCoordinates(((LineString) geometry.getGeometryN(i))
+                            .getCoordinateSequence());
+                }
+                endArray();
+                break;
+            case GeoJSONBuilder.MULTIPOLYGON:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                endArray();
+                break;
+            }
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return endObject();
+    }
+
+    /**
+     * Writes the "bbox" key and the envelope as an array [minX,minY,maxX,maxY]
+     */
+    public GeoJSONWriter writeBoundingBox(Envelope env) throws JSONException {
+        key("bbox");
+        array();
+        try {
+            writeOrdinate(env.getMinX());
+            writeOrdinate(env.getMinY());
+            writeOrdinate(env.getMaxX());
+            writeOrdinate(env.getMaxY());
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return endArray();
+    }
+
+    void writePolygon(Polygon polygon) throws IOException {
+        array();
+        writeCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0, n = polygon.getNumInteriorRing(); i < n; i++) {
+            writeCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+        endArray();
+    }
+
+    void writeCoordinates(CoordinateSequence coords) throws IOException {
+        array();
+        for (int i = 0, n = coords.size(); i < n; i++) {
+            writeCoordinate(coords.getX(i), coords.getY(i));
+        }
+        endArray();
+    }
+
+    void writeCoordinate(double x, double y) throws IOException {
+        beforeValue();
+        writer.write('[');
+        writeNumber(x, numDecimals);
+        writer.write(',');
+        writeNumber(y, numDecimals);
+        writer.write(']');
+        afterValue();
+    }
+
+    void writeOrdinate(double value) throws IOException {
+        beforeValue();
+        writeNumber(value, numDecimals);
+        afterValue();
+    }
+
+    /**
+     * Writes a finite double, rounded to the specified decimals, or with the fewest decimals
+     * that parse back to the same double if negative
+     */
+    void writeNumber(double value, int decimals) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        double abs = Math.abs(value);
+        if (decimals >= 0) {
+            double scaled = abs * POW10[decimals];
+            if (scaled < MAX_EXACT) {
+                long unscaled = Math.round(scaled);
+                writeDigits(value < 0 && unscaled != 0, unscaled, decimals);
+                return;
+            }
+        } else {
+            for (int d = 0; d <= MAX_DECIMALS; d++) {
+                double scaled = abs * POW10[d];
+                if (scaled >= MAX_EXACT) {
+                    break;
+                }
+                long unscaled = Math.round(scaled);
+                // both operands are exact, and the division is correctly rounded, so this
+                // matches what parsing the decimal representation would return
+                if (unscaled / POW10[d] == abs) {
+                    writeDigits(value < 0, unscaled, d);
+                    return;
+                }
+            }
+        }
+
+        // too large, or too many significant digits, to be handled with a long
+        String s = Double.toString(value);
+        if (s.indexOf('.') > 0 && s.indexOf('E') < 0) {
+            int end = s.length();
+            while (s.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (s.charAt(end - 1) == '.') {
+                end--;
+            }
+            writer.write(s, 0, end);
+        } else {
+            writer.write(s);
+        }
+    }
+
+    /**
+     * Writes unscaled / 10^decimals, dropping the trailing zero decimals
+     */
+    void writeDigits(boolean negative, long unscaled, int decimals) throws IOException {
+        while (decimals > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            decimals--;
+        }
+        int pos = buffer.length;
+        int digits = 0;
+        do {
+            buffer[--pos] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+            if (++digits == decimals) {
+                buffer[--pos] = '.';
+            }
+        } while (unscaled > 0 || digits <= decimals);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        writer.write(buffer, pos, buffer.length - pos);
+    }
+
+    /**
+     * Writes a quoted string, escaping the same characters as json-lib
+     */
+    void writeString(String s) throws IOException {
+        writer.write('"');
+        char previous = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '\\':
+            case '"':
+                writer.write('\\');
+                writer.write(c);
+                break;
+            case '/':
+                if (previous == '<') {
+                    writer.write('\\');
+                }
+                writer.write(c);
+                break;
+            case '\b':
+                writer.write("\\b");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\f':
+                writer.write("\\f");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            default:
+                if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
+                        || (c >= '\u2000' && c < '\u2100')) {
+                    writer.write("\\u");
+                    for (int shift = 12; shift >= 0; shift -= 4) {
+                        writer.write(Character.forDigit((c >> shift) & 0xF, 16));
+                    }
+                } else {
+                    writer.write(c);
+                }
+            }
+            previous = c;
+        }
+        writer.write('"');
+    }
+
+    GeoJSONWriter raw(String value) throws JSONException {
+        try {
+            beforeValue();
+            writer.write(value);
+            afterValue();
+            return this;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    void beforeValue() throws IOException {
+        if (mode == ARRAY) {
+            if (comma) {
+                writer.write(',');
+            }
+        } else if (mode != OBJECT && mode != INIT) {
+            throw new JSONException("Value out of sequence.");
+        }
+    }
+
+    void afterValue() {
+        if (mode == OBJECT) {
+            mode = KEY;
+        } else if (mode == INIT) {
+            mode = DONE;
+        }
+        comma = true;
+    }
+
+    void push(char newMode) {
+        if (top == stack.length) {
+            char[] grown = new char[stack.length * 2];
+            System.arraycopy(stack, 0, grown, 0, top);
+            stack = grown;
+        }
+        stack[top++] = mode;
+        mode = newMode;
+        comma = false;
+    }
+
+    GeoJSONWriter end(char expected, char c) throws JSONException {
+        if (mode != expected) {
+            throw new JSONException(expected == KEY ? "Misplaced endObject."
+                    : "Misplaced endArray.");
+        }
+        try {
+            writer.write(c);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        mode = stack[--top];
+        afterValue();
+        return this;
+    }
+}
@@ -6,7 +6,6 @@ package org.geoserver.wfs.response;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigInteger;
 import java.nio.charset.Charset;
 
 import net.opengis.wfs.GetFeatureType;
@@ -20,8 +19,6 @@ import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.WFSInfo;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
 import org.geoserver.wfs.xml.GML3OutputFormat;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.geotools.xml.Configuration;
 import org.geotools.xml.Encoder;
 
@@ -71,18 +68,10 @@ public class HitsOutputFormat extends WFSResponse {
         
         //create a new feautre collcetion type with just the numbers
         FeatureCollectionResponse hits = featureCollection.create();
-        if (GML3OutputFormat.isComplexFeature(featureCollection)) {
-            // we have to count the number of features here manually because complex feature
-            // collection size() now returns 0. In order to count the number of features,
-            // we have to build the features to count them and this has great performance
-            // impact. Unless we introduce joins in our fetching of
-            // data, we will have to count the number of features manually when needed. In
-            // GML3Outputformat I use xslt to populate numberOfFeatures attribute.
-            hits.setNumberOfFeatures(countFeature(featureCollection));
-        } else {
-            hits.setNumberOfFeatures(featureCollection.getNumberOfFeatures());
-        }
-        
+        // complex features the feature source could not count are counted here, building
+        // them, the same way GML3OutputFormat does to populate the numberOfFeatures attribute
+        GML3OutputFormat.setNumberOfFeatures(featureCollection);
+        hits.setNumberOfFeatures(featureCollection.getNumberOfFeatures());
         hits.setTotalNumberOfFeatures(featureCollection.getTotalNumberOfFeatures());
         hits.setNext(featureCollection.getNext());
         hits.setPrevious(featureCollection.getPrevious());
@@ -91,24 +80,6 @@ public class HitsOutputFormat extends WFSResponse {
         encode(hits, output, wfs);
     }
     
-    private BigInteger countFeature(FeatureCollectionResponse fct) {
-        BigInteger count = BigInteger.valueOf(0);
-        for (int fcIndex = 0; fcIndex < fct.getFeature().size(); fcIndex++) {
-            FeatureIterator i = null;
-            try {
-                for (i = (((FeatureCollection) fct.getFeature().get(fcIndex)).features()); i
-                        .hasNext(); i.next()) {
-                    count = count.add(BigInteger.ONE);
-                }
-            } finally {
-                if (i != null) {
-                    i.close();
-                }
-            }
-        }
-        return count;
-    }
-
     protected void encode(FeatureCollectionResponse hits, OutputStream output, WFSInfo wfs) 
         throws IOException {
         Encoder encoder = new Encoder(configuration, configuration.schema());
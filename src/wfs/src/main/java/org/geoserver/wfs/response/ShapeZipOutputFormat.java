@@ -13,6 +13,7 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -31,6 +32,7 @@ import java.util.Set;
 import java.util.SimpleTimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
@@ -116,6 +118,17 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
     private Catalog catalog;
 	private GeoServerResourceLoader resourceLoader;
     
+    /**
+     * The files making up the zip contents
+     */
+    static final FilenameFilter SHAPEFILE_FILTER = new FilenameFilter() {
+        
+        public boolean accept(File dir, String name) {
+            return name.endsWith(".shp") || name.endsWith(".shx") || name.endsWith(".dbf")
+                   || name.endsWith(".prj") || name.endsWith(".cst") || name.endsWith(".txt");
+        }
+    };
+    
     /**
      * Tuple used when fanning out a collection with generic geometry types to multiple outputs 
      * @author Administrator
@@ -214,8 +227,12 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
     public void write(List<SimpleFeatureCollection> collections, Charset charset, OutputStream output, 
         GetFeatureRequest request) throws IOException, ServiceException {
         //We might get multiple featurecollections in our response (multiple queries?) so we need to
-        //write out multiple shapefile sets, one for each query response.
+        //write out multiple shapefile sets, one for each query response. Each set is zipped and 
+        //sent to the client as soon as it's ready, so that the temp directory never holds more
+        //than one of them, and the client starts receiving data before the last one is written
         File tempDir = IOUtils.createTempDirectory("shpziptemp");
+        ZipOutputStream zipOut = new ZipOutputStream(output);
+        Set<String> zipped = new HashSet<String>();
         
         // target charset
         
@@ -238,7 +255,9 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
                     writeCollectionToShapefile(curCollection, tempDir, charset, request);
                     shapefileCreated = true;
                 }
-
+                
+                // ship what we have so far
+                zipFiles(tempDir, zipOut, zipped);
             }
             
             // take care of the case the output is completely empty
@@ -253,16 +272,8 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
             // dump the request
             createRequestDump(tempDir, request, collections.get(0));
             
-            // zip all the files produced
-            final FilenameFilter filter = new FilenameFilter() {
-            
-                public boolean accept(File dir, String name) {
-                    return name.endsWith(".shp") || name.endsWith(".shx") || name.endsWith(".dbf")
-                           || name.endsWith(".prj") || name.endsWith(".cst") || name.endsWith(".txt");
-                }
-            };
-            ZipOutputStream zipOut = new ZipOutputStream(output);
-            IOUtils.zipDirectory(tempDir, zipOut, filter);
+            // zip all the files left
+            zipFiles(tempDir, zipOut, zipped);
             zipOut.finish();
 
             // This is an error, because this closes the output stream too... it's
@@ -278,6 +289,40 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
         }
     }
 
+    /**
+     * Moves the shapefile related files found in the temp directory into the zip, removing them
+     * from the disk as they get written out. Files whose name has already been zipped (the same
+     * feature type requested twice) are skipped, as a zip file cannot contain duplicate entries.
+     */
+    private void zipFiles(File tempDir, ZipOutputStream zipOut, Set<String> zipped) 
+        throws IOException {
+        File[] files = tempDir.listFiles(SHAPEFILE_FILTER);
+        // copy file by reading 4k at a time (faster than buffered reading)
+        byte[] buffer = new byte[4 * 1024];
+        for (File file : files) {
+            if (zipped.add(file.getName())) {
+                zipOut.putNextEntry(new ZipEntry(file.getName()));
+                InputStream in = new FileInputStream(file);
+                try {
+                    int c;
+                    while (-1 != (c = in.read(buffer))) {
+                        zipOut.write(buffer, 0, c);
+                    }
+                    zipOut.closeEntry();
+                } finally {
+                    in.close();
+                }
+            } else {
+                LOGGER.warning("Skipping " + file.getName()
+                        + " as a file with the same name is already in the zip");
+            }
+            if (!file.delete()) {
+                LOGGER.warning("Could not delete temp file " + file.getAbsolutePath());
+            }
+        }
+        zipOut.flush();
+    }
+
     /**
      * Dumps the request
      * @param simpleFeatureCollection
@@ -18,6 +18,7 @@ import org.geoserver.ows.util.ResponseUtils;
 import org.geoserver.platform.Operation;
 import org.geoserver.wfs.WFSInfo;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.xml.GML32OutputFormat;
 import org.geotools.wfs.v2_0.WFS;
 import org.geotools.wfs.v2_0.WFSConfiguration;
 import org.geotools.xml.Encoder;
@@ -43,7 +44,7 @@ public class HitsOutputFormat extends org.geoserver.wfs.response.HitsOutputForma
         e.setSchemaLocation(WFS.NAMESPACE,
             ResponseUtils.appendPath(wfs.getSchemaBaseURL(), "wfs/2.0/wfs.xsd"));
         
-        e.encode(hits.getAdaptee(), WFS.FeatureCollection, output);
+        GML32OutputFormat.encode(hits, output, e, WFS.FeatureCollection);
     }
 
 }
@@ -6,16 +6,15 @@ package org.geoserver.wfs.xml;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.namespace.QName;
 
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
@@ -31,7 +30,6 @@ import org.geotools.gml3.v3_2.GMLConfiguration;
 import org.geotools.wfs.v2_0.WFS;
 import org.geotools.xml.Configuration;
 import org.geotools.xml.Encoder;
-import org.w3c.dom.Document;
 
 public class GML32OutputFormat extends GML3OutputFormat {
 
@@ -47,22 +45,6 @@ public class GML32OutputFormat extends GML3OutputFormat {
     
     GeoServer geoServer;
 
-    protected static DOMSource xslt;
-
-    static {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        docFactory.setNamespaceAware(true);
-        Document xsdDocument = null;
-        try {
-            xsdDocument = docFactory.newDocumentBuilder().parse(
-                    GML3OutputFormat.class.getResourceAsStream("/ChangeNumberOfFeature32.xslt"));
-            xslt = new DOMSource(xsdDocument);
-        } catch (Exception e) {
-            xslt = null;
-            LOGGER.log(Level.INFO, e.getMessage(), e);
-        }
-    }
-
     public GML32OutputFormat(GeoServer geoServer, WFSConfiguration configuration) {
         super(new HashSet(FORMATS), geoServer, configuration);
         this.geoServer = geoServer;
@@ -101,7 +83,25 @@ public class GML32OutputFormat extends GML3OutputFormat {
     @Override
     protected void encode(FeatureCollectionResponse results, OutputStream output, Encoder encoder)
             throws IOException {
-        encoder.encode(results.getAdaptee(), WFS.FeatureCollection, output);
+        encode(results, output, encoder, WFS.FeatureCollection);
+    }
+
+    /**
+     * Encodes the feature collection, reporting the number of features matched as
+     * <code>unknown</code> when the {@link org.geoserver.wfs.GetFeature} operation could not
+     * tell it
+     */
+    public static void encode(FeatureCollectionResponse results, OutputStream output,
+            Encoder encoder, QName element) throws IOException {
+        if (results.getTotalNumberOfFeatures() != null) {
+            encoder.encode(results.getAdaptee(), element, output);
+        } else {
+            results.setTotalNumberOfFeatures(BigInteger.ZERO);
+            UnknownNumberMatchedOutputStream unknown = new UnknownNumberMatchedOutputStream(
+                    output);
+            encoder.encode(results.getAdaptee(), element, unknown);
+            unknown.finish();
+        }
     }
     
     @Override
@@ -119,9 +119,4 @@ public class GML32OutputFormat extends GML3OutputFormat {
         return "wfs/2.0/wfs.xsd";
     }
 
-    @Override
-    protected DOMSource getXSLT() {
-        return GML32OutputFormat.xslt;
-    }
-
 }
@@ -0,0 +1,109 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sets the <code>numberMatched</code> attribute of the root element to <code>unknown</code> while
+ * the document is streamed out, the encoder cannot write it since the attribute is bound to an
+ * integer.
+ * <p>
+ * Only the start of the document, up to the end of the root element start tag, is held in
+ * memory. The encoding is assumed to be ASCII compatible (e.g., UTF-8 or ISO-8859-1).
+ * </p>
+ */
+public class UnknownNumberMatchedOutputStream extends FilterOutputStream {
+
+    static final Pattern NUMBER_MATCHED = Pattern
+            .compile("(\\snumberMatched\\s*=\\s*)(['\"])[^'\"]*\\2");
+
+    /**
+     * Gives up looking for the root element after this many bytes
+     */
+    static final int MAX_HEADER = 64 * 1024;
+
+    static final String CHARSET = "ISO-8859-1";
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    public UnknownNumberMatchedOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (header == null) {
+            out.write(b);
+            return;
+        }
+
+        header.write(b);
+        if (b == '>') {
+            String start = new String(header.toByteArray(), CHARSET);
+            int root = rootStart(start);
+            if (root >= 0) {
+                Matcher matcher = NUMBER_MATCHED.matcher(start);
+                if (matcher.find(root)) {
+                    start = start.substring(0, matcher.start()) + matcher.group(1)
+                            + matcher.group(2) + "unknown" + matcher.group(2)
+                            + start.substring(matcher.end());
+                }
+                header = null;
+                out.write(start.getBytes(CHARSET));
+            }
+        } else if (header.size() > MAX_HEADER) {
+            finish();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int i = 0; i < len; i++) {
+            if (header == null) {
+                out.write(b, off + i, len - i);
+                return;
+            }
+            write(b[off + i]);
+        }
+    }
+
+    /**
+     * Writes out the bytes held, if any, without closing the stream
+     */
+    public void finish() throws IOException {
+        if (header != null) {
+            header.writeTo(out);
+            header = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+
+    /**
+     * Returns the position of the root element start tag, that is, the first tag that is not a
+     * processing instruction, comment or doctype, or -1 if not found yet
+     */
+    static int rootStart(String start) {
+        int i = start.indexOf('<');
+        while (i >= 0 && i + 1 < start.length()) {
+            char c = start.charAt(i + 1);
+            if (c != '?' && c != '!') {
+                return i;
+            }
+            i = start.indexOf('<', i + 1);
+        }
+        return -1;
+    }
+}
@@ -154,4 +154,45 @@ public class TransactionListenerTest extends WFSTestSupport {
         
         assertEquals(2, listener.features.size());
     }
+
+    @Test
+    public void testBulkInsert() throws Exception {
+        System.setProperty(Transaction.BULK_TRANSACTION, "true");
+        try {
+            // two inserts in a row, executed as a single batch
+            String insert = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                    + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                    + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                    + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                    + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                    + linesInsert("t0010") + linesInsert("t0011") + "</wfs:Transaction>";
+
+            postAsDOM("wfs", insert);
+            assertEquals(2, listener.events.size());
+
+            TransactionEvent firstEvent = (TransactionEvent) listener.events.get(0);
+            assertTrue(firstEvent.getSource() instanceof InsertElementType);
+            assertEquals(TransactionEventType.PRE_INSERT, firstEvent.getType());
+            assertEquals(CiteTestData.LINES, firstEvent.getLayerName());
+
+            TransactionEvent secondEvent = (TransactionEvent) listener.events.get(1);
+            assertEquals(TransactionEventType.POST_INSERT, secondEvent.getType());
+            // two features from the pre-insert hook, two from the post-insert hook
+            assertEquals(4, listener.features.size());
+        } finally {
+            System.clearProperty(Transaction.BULK_TRANSACTION);
+        }
+    }
+
+    String linesInsert(String id) {
+        return "<wfs:Insert > "
+                + "<cgf:Lines>"
+                + "<cgf:lineStringProperty>"
+                + "<gml:LineString>"
+                + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                + "</gml:coordinates>" + "</gml:LineString>"
+                + "</cgf:lineStringProperty>" + "<cgf:id>" + id + "</cgf:id>"
+                + "</cgf:Lines>" + "</wfs:Insert>";
+    }
 }
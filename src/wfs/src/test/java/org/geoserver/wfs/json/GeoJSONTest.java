@@ -13,6 +13,9 @@ import java.io.File;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONNull;
 import net.sf.json.JSONObject;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.data.util.IOUtils;
@@ -117,6 +120,30 @@ public class GeoJSONTest extends WFSTestSupport {
     	assertEquals(geomArray.getString(0), "55.174");
     }
     
+    @Test
+    public void testNumDecimals() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo info = catalog.getFeatureTypeByName(getLayerId(SystemTestData.AGGREGATEGEOFEATURE));
+        int before = info.getNumDecimals();
+        info.setNumDecimals(1);
+        catalog.save(info);
+        try {
+            String out = getAsString("wfs?request=GetFeature&version=1.0.0&typename=sf:AggregateGeoFeature&maxfeatures=3&outputformat="+JSONType.json);
+
+            JSONObject rootObject = JSONObject.fromObject( out );
+            JSONArray featureCol = rootObject.getJSONArray("features");
+            JSONObject aGeometry = featureCol.getJSONObject(1).getJSONObject("geometry");
+            JSONArray geomArray = aGeometry.getJSONArray("coordinates");
+            geomArray = geomArray.getJSONArray(0);
+            geomArray = geomArray.getJSONArray(0);
+            assertEquals(geomArray.getString(0), "55.2");
+        } finally {
+            info = catalog.getFeatureTypeByName(getLayerId(SystemTestData.AGGREGATEGEOFEATURE));
+            info.setNumDecimals(before);
+            catalog.save(info);
+        }
+    }
+
     @Test
     public void testMixedCollection() throws Exception {
         String xml = "<wfs:GetFeature " + "service=\"WFS\" " + "outputFormat=\""+JSONType.json+"\" "
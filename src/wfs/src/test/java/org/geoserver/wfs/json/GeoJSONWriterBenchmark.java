@@ -0,0 +1,141 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+
+/**
+ * Benchmark of the geometry encoding of {@link GeoJSONWriter} against {@link GeoJSONBuilder},
+ * reporting the time and the garbage collections needed to encode a set of random polygons.
+ * <p>
+ * Not part of the build, run it manually with:
+ * <pre>
+ * mvn test -Dtest=GeoJSONWriterBenchmark [-Dgeojson.polygons=20000] [-Dgeojson.decimals=6]
+ * </pre>
+ * </p>
+ */
+public class GeoJSONWriterBenchmark {
+
+    static final int POLYGONS = Integer.getInteger("geojson.polygons", 20000);
+
+    static final int VERTICES = 100;
+
+    static final int DECIMALS = Integer.getInteger("geojson.decimals", -1);
+
+    static final int ROUNDS = 5;
+
+    @Test
+    public void testBenchmark() throws Exception {
+        List<Geometry> geometries = buildPolygons();
+
+        // warm up
+        runBuilder(geometries);
+        runWriter(geometries);
+
+        System.out.println("Polygons: " + POLYGONS + ", vertices: " + VERTICES + ", decimals: "
+                + DECIMALS);
+        for (int i = 0; i < ROUNDS; i++) {
+            long collections = collectionCount();
+            long start = System.nanoTime();
+            runBuilder(geometries);
+            report("GeoJSONBuilder", start, collections);
+
+            collections = collectionCount();
+            start = System.nanoTime();
+            runWriter(geometries);
+            report("GeoJSONWriter", start, collections);
+        }
+    }
+
+    void runBuilder(List<Geometry> geometries) throws Exception {
+        Writer out = new BufferedWriter(new NullWriter());
+        GeoJSONBuilder builder = new GeoJSONBuilder(out);
+        builder.array();
+        for (Geometry g : geometries) {
+            builder.writeGeom(g);
+        }
+        builder.endArray();
+        out.flush();
+    }
+
+    void runWriter(List<Geometry> geometries) throws Exception {
+        Writer out = new BufferedWriter(new NullWriter());
+        GeoJSONWriter writer = new GeoJSONWriter(out);
+        writer.setNumDecimals(DECIMALS);
+        writer.array();
+        for (Geometry g : geometries) {
+            writer.writeGeom(g);
+        }
+        writer.endArray();
+        out.flush();
+    }
+
+    void report(String name, long start, long collections) {
+        System.out.println("  " + name + ": " + (System.nanoTime() - start) / 1000000 + "ms, "
+                + (collectionCount() - collections) + " garbage collections");
+    }
+
+    long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Random polygons with coordinates looking like reprojected geographic ones
+     */
+    List<Geometry> buildPolygons() {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(0);
+        List<Geometry> result = new ArrayList<Geometry>();
+        for (int i = 0; i < POLYGONS; i++) {
+            double cx = random.nextDouble() * 360 - 180;
+            double cy = random.nextDouble() * 180 - 90;
+            Coordinate[] coords = new Coordinate[VERTICES + 1];
+            for (int j = 0; j < VERTICES; j++) {
+                double angle = 2 * Math.PI * j / VERTICES;
+                coords[j] = new Coordinate(cx + Math.cos(angle) * 0.01, cy + Math.sin(angle)
+                        * 0.01);
+            }
+            coords[VERTICES] = coords[0];
+            LinearRing shell = factory.createLinearRing(coords);
+            result.add(factory.createPolygon(shell, null));
+        }
+        return result;
+    }
+
+    /**
+     * Discards the output
+     */
+    static class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
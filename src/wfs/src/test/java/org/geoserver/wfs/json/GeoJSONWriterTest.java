@@ -0,0 +1,154 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import net.sf.json.JSONException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class GeoJSONWriterTest {
+
+    StringWriter writer;
+
+    GeoJSONWriter json;
+
+    @Before
+    public void setUp() {
+        writer = new StringWriter();
+        json = new GeoJSONWriter(writer);
+    }
+
+    @Test
+    public void testWriteGeometries() throws Exception {
+        assertGeometry("{\"type\":\"Point\",\"coordinates\":[1,2]}", "POINT(1 2)");
+        assertGeometry("{\"type\":\"MultiLineString\",\"coordinates\":[[[0,0],[1,1]]]}",
+                "MULTILINESTRING((0 0, 1 1))");
+        assertGeometry("{\"type\":\"MultiPoint\",\"coordinates\":[[0,0],[1.5,-1]]}",
+                "MULTIPOINT(0 0, 1.5 -1)");
+        assertGeometry("{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[0,10],[10,10],[0,0]],"
+                + "[[1,1],[1,2],[2,2],[1,1]]]}",
+                "POLYGON((0 0, 0 10, 10 10, 0 0), (1 1, 1 2, 2 2, 1 1))");
+        assertGeometry("{\"type\":\"GeometryCollection\",\"geometries\":["
+                + "{\"type\":\"Point\",\"coordinates\":[1,2]},"
+                + "{\"type\":\"LineString\",\"coordinates\":[[0,0],[1,1]]}]}",
+                "GEOMETRYCOLLECTION(POINT(1 2), LINESTRING(0 0, 1 1))");
+    }
+
+    void assertGeometry(String expected, String wkt) throws Exception {
+        setUp();
+        Geometry g = new WKTReader().read(wkt);
+        json.writeGeom(g);
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void testStructure() throws Exception {
+        json.object().key("a").value(1).key("b").array().value("x").value(null).object()
+                .endObject().array().endArray().endArray().key("c").value(true).endObject();
+        assertEquals("{\"a\":1,\"b\":[\"x\",null,{},[]],\"c\":true}", writer.toString());
+    }
+
+    @Test
+    public void testOutOfSequence() throws Exception {
+        json.object();
+        try {
+            json.value("a");
+            fail("Value without a key should have failed");
+        } catch (JSONException e) {
+            // fine
+        }
+        try {
+            json.endArray();
+            fail("Closing an array in an object should have failed");
+        } catch (JSONException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        assertNumber("0", 0);
+        assertNumber("10", 10);
+        assertNumber("-0.5", -0.5);
+        assertNumber("0.1", 0.1);
+        assertNumber("0.005", 0.005);
+        assertNumber("55.174", 55.174);
+        assertNumber("123456789.123", 123456789.123);
+        assertNumber("0.0000001", 1e-7);
+        // too large to be handled as a long
+        assertNumber("1.0E20", 1e20);
+    }
+
+    void assertNumber(String expected, double value) {
+        setUp();
+        json.value(value);
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            setUp();
+            json.value(value);
+            assertEquals(value, Double.parseDouble(writer.toString()), 0d);
+        }
+    }
+
+    @Test
+    public void testNonFinite() throws Exception {
+        try {
+            json.value(Double.NaN);
+            fail("NaN is not valid JSON");
+        } catch (JSONException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testNumDecimals() throws Exception {
+        json.setNumDecimals(2);
+        json.object();
+        json.key("geometry").writeGeom(new WKTReader().read("LINESTRING(1.23456 -0.001, 7 8.1)"));
+        json.writeBoundingBox(new Envelope(0.123, 10.005, -3.3333, 4));
+        // attributes are not rounded
+        json.key("value").value(0.123456);
+        json.endObject();
+        assertEquals("{\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[1.23,0],[7,8.1]]},"
+                + "\"bbox\":[0.12,-3.33,10.01,4],\"value\":0.123456}", writer.toString());
+    }
+
+    @Test
+    public void testEscape() throws Exception {
+        json.value("a\"b\\c</d\n\u0001");
+        assertEquals("\"a\\\"b\\\\c<\\/d\\n\\u0001\"", writer.toString());
+    }
+
+    @Test
+    public void testWriteDate() throws Exception {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        cal.clear();
+        cal.set(Calendar.YEAR, 2011);
+        cal.set(Calendar.MONTH, 9);
+        cal.set(Calendar.DAY_OF_MONTH, 25);
+
+        java.sql.Date date = new java.sql.Date(cal.getTimeInMillis());
+        json.object().key("date").value(date).endObject();
+        assertEquals("{\"date\":\"2011-10-25Z\"}", writer.toString());
+    }
+}
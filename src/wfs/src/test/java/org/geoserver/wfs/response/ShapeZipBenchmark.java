@@ -0,0 +1,184 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Benchmark of the SHAPE-ZIP output format, reporting the time to first byte, the total time,
+ * and the peak heap and temporary disk usage while writing a few large feature types.
+ * <p>
+ * Not part of the build, run it manually with:
+ * <pre>
+ * mvn test -Dtest=ShapeZipBenchmark [-Dshapezip.features=200000]
+ * </pre>
+ * Run it against the previous revision as well to compare with the write all, then zip
+ * approach.
+ * </p>
+ */
+public class ShapeZipBenchmark extends WFSTestSupport {
+
+    static final QName[] TYPES = { SystemTestData.BASIC_POLYGONS, SystemTestData.BRIDGES,
+            SystemTestData.LAKES, SystemTestData.ROAD_SEGMENTS };
+
+    static final int FEATURES = Integer.getInteger("shapezip.features", 200000);
+
+    @Test
+    public void testBenchmark() throws Exception {
+        List<SimpleFeatureCollection> collections = new ArrayList<SimpleFeatureCollection>();
+        for (QName name : TYPES) {
+            collections.add(replicate((SimpleFeatureSource) getFeatureSource(name), FEATURES));
+        }
+
+        // warm up
+        run(collections.subList(0, 1));
+
+        System.gc();
+        Sampler sampler = new Sampler();
+        sampler.start();
+        Result result = run(collections);
+        sampler.done = true;
+        sampler.join();
+
+        System.out.println("Types: " + TYPES.length + ", features per type: " + FEATURES);
+        System.out.println("  time to first byte: " + result.firstByte + "ms");
+        System.out.println("  total time: " + result.total + "ms");
+        System.out.println("  zip size: " + result.bytes / 1024 + "KB");
+        System.out.println("  peak heap: " + sampler.peakHeap / 1024 / 1024 + "MB");
+        System.out.println("  peak temp disk: " + sampler.peakDisk / 1024 + "KB");
+    }
+
+    Result run(List<SimpleFeatureCollection> collections) throws IOException {
+        ShapeZipOutputFormat format = new ShapeZipOutputFormat();
+        TimingOutputStream out = new TimingOutputStream();
+        format.write(collections, Charset.forName("ISO-8859-1"), out, null);
+
+        Result result = new Result();
+        result.firstByte = (out.firstByte - out.start) / 1000000;
+        result.total = (System.nanoTime() - out.start) / 1000000;
+        result.bytes = out.count;
+        return result;
+    }
+
+    /**
+     * Builds an in memory collection repeating the features of the source up to the specified
+     * count
+     */
+    SimpleFeatureCollection replicate(SimpleFeatureSource source, int count) throws IOException {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator it = source.getFeatures().features();
+        try {
+            while (it.hasNext()) {
+                features.add(it.next());
+            }
+        } finally {
+            it.close();
+        }
+
+        ListFeatureCollection result = new ListFeatureCollection(source.getSchema());
+        for (int i = 0; i < count; i++) {
+            result.add(features.get(i % features.size()));
+        }
+        return result;
+    }
+
+    static class Result {
+        long firstByte;
+
+        long total;
+
+        long bytes;
+    }
+
+    /**
+     * Discards the output, keeping track of when the first byte got written
+     */
+    static class TimingOutputStream extends OutputStream {
+        long start = System.nanoTime();
+
+        long firstByte = -1;
+
+        long count;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (firstByte < 0 && len > 0) {
+                firstByte = System.nanoTime();
+            }
+            count += len;
+        }
+    }
+
+    /**
+     * Periodically samples the used heap and the size of the shape-zip temp directories
+     */
+    static class Sampler extends Thread {
+        volatile boolean done;
+
+        long peakHeap;
+
+        long peakDisk;
+
+        File tempDir = new File(System.getProperty("java.io.tmpdir"));
+
+        Sampler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!done) {
+                peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+                peakDisk = Math.max(peakDisk, diskUsage());
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long diskUsage() {
+            long size = 0;
+            File[] dirs = tempDir.listFiles();
+            if (dirs == null) {
+                return 0;
+            }
+            for (File dir : dirs) {
+                if (dir.isDirectory() && dir.getName().startsWith("shpziptemp")) {
+                    File[] files = dir.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            size += file.length();
+                        }
+                    }
+                }
+            }
+            return size;
+        }
+    }
+}
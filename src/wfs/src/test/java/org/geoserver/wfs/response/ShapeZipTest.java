@@ -233,6 +233,24 @@ public class ShapeZipTest extends WFSTestSupport {
         checkFieldsAreNotEmpty(new ByteArrayInputStream(zip));
     }
 
+    @Test
+    public void testSameTypeTwice() throws Exception {
+        // each collection is zipped as soon as it's written, the second one must not
+        // try to add the same entries again
+        FeatureSource<? extends FeatureType, ? extends Feature> fs;
+        fs = getFeatureSource(SystemTestData.BASIC_POLYGONS);
+        ShapeZipOutputFormat zip = new ShapeZipOutputFormat();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        FeatureCollectionResponse fct = 
+            FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fct.getFeature().add(fs.getFeatures());
+        fct.getFeature().add(fs.getFeatures());
+        zip.write(fct, bos, op);
+
+        checkShapefileIntegrity(new String[] { "BasicPolygons" }, 
+                new ByteArrayInputStream(bos.toByteArray()));
+    }
+
     @Test
     public void testEmptyResult() throws Exception {
         byte[] zip = writeOut(getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures(Filter.EXCLUDE));
@@ -20,6 +20,7 @@ import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.CiteTestData;
 import org.geoserver.data.test.SystemTestData;
+import org.geoserver.wfs.Transaction;
 import org.geoserver.wfs.WFSTestSupport;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
@@ -493,6 +494,110 @@ public class TransactionTest extends WFSTestSupport {
         assertEquals( 52.0648, Double.parseDouble( pos[3] ), 1E-4 );
     }
     
+    @Test
+    public void testBulkInsertDelete() throws Exception {
+        System.setProperty(Transaction.BULK_TRANSACTION, "true");
+        try {
+            String xml = "<wfs:Transaction service=\"WFS\" version=\"1.1.0\" "
+                + " xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + " xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + " xmlns:gml=\"http://www.opengis.net/gml\" "
+                + " xmlns:cite=\"http://www.opengis.net/cite\">"
+                + roadSegmentInsert("insert-1", "bulk1")
+                + roadSegmentInsert("insert-2", "bulk2")
+                + roadSegmentDelete("bulk1")
+                + roadSegmentDelete("bulk2")
+                + "</wfs:Transaction>";
+
+            Document dom = postAsDOM( "wfs", xml );
+            assertEquals("wfs:TransactionResponse", dom.getDocumentElement().getNodeName());
+
+            // both inserts went in the same batch, but the fids are still reported by handle
+            assertEquals( "2", getFirstElementByTagName(dom, "wfs:totalInserted").getFirstChild().getNodeValue());
+            XMLAssert.assertXpathEvaluatesTo("1", "count(//wfs:Feature[@handle='insert-1']/ogc:FeatureId)", dom);
+            XMLAssert.assertXpathEvaluatesTo("1", "count(//wfs:Feature[@handle='insert-2']/ogc:FeatureId)", dom);
+            // the deletes have been merged, and see the features inserted before them
+            assertEquals( "2", getFirstElementByTagName(dom, "wfs:totalDeleted").getFirstChild().getNodeValue());
+
+            dom = getAsDOM( "wfs?version=1.1.0&request=getfeature&typename=cite:RoadSegments&" +
+                "cql_filter=FID%20IN%20('bulk1','bulk2')");
+            assertEquals( 0, dom.getElementsByTagName("cite:RoadSegments").getLength() );
+        } finally {
+            System.clearProperty(Transaction.BULK_TRANSACTION);
+        }
+    }
+
+    @Test
+    public void testBulkUpdate() throws Exception {
+        System.setProperty(Transaction.BULK_TRANSACTION, "true");
+        try {
+            String xml = "<wfs:Transaction service=\"WFS\" version=\"1.1.0\" "
+                + " xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + " xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + " xmlns:gml=\"http://www.opengis.net/gml\" "
+                + " xmlns:cite=\"http://www.opengis.net/cite\">"
+                + roadSegmentUpdate("<ogc:PropertyIsEqualTo><ogc:PropertyName>FID</ogc:PropertyName>"
+                    + "<ogc:Literal>102</ogc:Literal></ogc:PropertyIsEqualTo>")
+                + roadSegmentUpdate("<ogc:Or>"
+                    + "<ogc:PropertyIsEqualTo><ogc:PropertyName>FID</ogc:PropertyName>"
+                    + "<ogc:Literal>102</ogc:Literal></ogc:PropertyIsEqualTo>"
+                    + "<ogc:PropertyIsEqualTo><ogc:PropertyName>FID</ogc:PropertyName>"
+                    + "<ogc:Literal>103</ogc:Literal></ogc:PropertyIsEqualTo>"
+                    + "</ogc:Or>")
+                + "</wfs:Transaction>";
+
+            Document dom = postAsDOM( "wfs", xml );
+            assertEquals("wfs:TransactionResponse", dom.getDocumentElement().getNodeName());
+            // same total as running the updates one by one
+            assertEquals( "3", getFirstElementByTagName(dom, "wfs:totalUpdated").getFirstChild().getNodeValue());
+
+            dom = getAsDOM( "wfs?version=1.1.0&request=getfeature&typename=cite:RoadSegments&" +
+                "cql_filter=NAME%3D'bulk%20update'");
+            assertEquals( 2, dom.getElementsByTagName("cite:RoadSegments").getLength() );
+        } finally {
+            System.clearProperty(Transaction.BULK_TRANSACTION);
+        }
+    }
+
+    String roadSegmentUpdate(String filter) {
+        return "<wfs:Update typeName=\"cite:RoadSegments\">"
+            + " <wfs:Property>"
+            + "  <wfs:Name>NAME</wfs:Name>"
+            + "  <wfs:Value>bulk update</wfs:Value>"
+            + " </wfs:Property>"
+            + " <ogc:Filter>" + filter + "</ogc:Filter>"
+            + "</wfs:Update>";
+    }
+
+    String roadSegmentInsert(String handle, String fid) {
+        return "<wfs:Insert handle=\"" + handle + "\">"
+            + " <cite:RoadSegments>"
+            + "  <cite:the_geom>"
+            + "<gml:MultiLineString srsName=\"EPSG:4326\">"
+            + " <gml:lineStringMember>"
+            + "  <gml:LineString>"
+            + "   <gml:posList>4.2582 52.0643 4.2584 52.0648</gml:posList>"
+            + "  </gml:LineString>"
+            + " </gml:lineStringMember>"
+            + "</gml:MultiLineString>"
+            + "  </cite:the_geom>"
+            + "  <cite:FID>" + fid + "</cite:FID>"
+            + "  <cite:NAME>bulk</cite:NAME>" 
+            + " </cite:RoadSegments>"
+            + "</wfs:Insert>";
+    }
+
+    String roadSegmentDelete(String fid) {
+        return "<wfs:Delete typeName=\"cite:RoadSegments\">"
+            + " <ogc:Filter>"
+            + "  <ogc:PropertyIsEqualTo>"
+            + "   <ogc:PropertyName>FID</ogc:PropertyName>"
+            + "   <ogc:Literal>" + fid + "</ogc:Literal>"
+            + "  </ogc:PropertyIsEqualTo>"
+            + " </ogc:Filter>"
+            + "</wfs:Delete>";
+    }
+    
     @Test
     public void testUpdateForcedSRS() throws Exception {
         testUpdate("srsName=\"EPSG:4326\"");
@@ -8,6 +8,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
 import java.util.Collections;
 
 import javax.xml.namespace.QName;
@@ -60,6 +61,16 @@ public class GML3FeatureProducerTest extends WFSTestSupport {
         return request;
     }
 
+    @Test
+    public void testCountFeatures() throws Exception {
+        FeatureCollectionResponse fcType = 
+            FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fcType.getFeature().add(getFeatureSource(MockData.SEVEN).getFeatures());
+        fcType.getFeature().add(getFeatureSource(MockData.FIFTEEN).getFeatures());
+
+        assertEquals(BigInteger.valueOf(22), GML3OutputFormat.countFeatures(fcType));
+    }
+
     @Test
     public void testSingle() throws Exception {
         FeatureSource<? extends FeatureType, ? extends Feature> source = getFeatureSource(MockData.SEVEN);
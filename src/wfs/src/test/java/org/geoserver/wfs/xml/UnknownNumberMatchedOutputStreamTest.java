@@ -0,0 +1,45 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class UnknownNumberMatchedOutputStreamTest {
+
+    @Test
+    public void testRootAttribute() throws Exception {
+        String doc = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<wfs:FeatureCollection numberMatched=\"0\" numberReturned=\"2\" "
+                + "xmlns:wfs=\"http://www.opengis.net/wfs/2.0\">"
+                + "<wfs:member numberMatched=\"0\"/></wfs:FeatureCollection>";
+        String expected = doc.replaceFirst("numberMatched=\"0\"", "numberMatched=\"unknown\"");
+
+        assertEquals(expected, rewrite(doc, 1));
+        assertEquals(expected, rewrite(doc, 7));
+        assertEquals(expected, rewrite(doc, doc.length()));
+    }
+
+    @Test
+    public void testNoAttribute() throws Exception {
+        String doc = "<wfs:FeatureCollection numberReturned=\"2\"><wfs:member/>"
+                + "</wfs:FeatureCollection>";
+        assertEquals(doc, rewrite(doc, 5));
+    }
+
+    String rewrite(String doc, int chunk) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UnknownNumberMatchedOutputStream out = new UnknownNumberMatchedOutputStream(bytes);
+        byte[] b = doc.getBytes("UTF-8");
+        for (int i = 0; i < b.length; i += chunk) {
+            out.write(b, i, Math.min(chunk, b.length - i));
+        }
+        out.finish();
+        return bytes.toString("UTF-8");
+    }
+}
@@ -4,6 +4,7 @@
  */
 package org.geoserver.kml;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -21,6 +22,7 @@ import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.WMSMapContent;
 import org.geotools.data.FeatureSource;
@@ -36,6 +38,7 @@ import org.geotools.util.logging.Logging;
 import org.h2.tools.DeleteDbFiles;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.PropertyDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.identity.FeatureId;
@@ -82,6 +85,11 @@ public abstract class CachedHierarchyRegionatingStrategy implements
     static CanonicalSet<String> canonicalizer = CanonicalSet
             .newInstance(String.class);
 
+    /**
+     * In memory cache of the tile fids, shared among all strategies
+     */
+    static final RegionatingTileCache TILE_CACHE = new RegionatingTileCache(getTileCacheSize());
+
     static {
         try {
             // common geographic info
@@ -120,6 +128,11 @@ public abstract class CachedHierarchyRegionatingStrategy implements
      */
     protected String tableName;
 
+    /**
+     * The generation of the in memory tiles of the database when this strategy started using it
+     */
+    long tileGeneration;
+
     /**
      * geoserver configuration
      */
@@ -196,9 +209,11 @@ public abstract class CachedHierarchyRegionatingStrategy implements
 
     public void clearCache(FeatureTypeInfo cfg){
         try{
+            String databaseName = getDatabaseName(cfg);
+            TILE_CACHE.clear(databaseName);
             DeleteDbFiles.execute(
                 GeoserverDataDirectory.findCreateConfigDir("geosearch").getCanonicalPath(),
-                "h2cache_" + getDatabaseName(cfg),
+                "h2cache_" + databaseName,
                 true
                 );
         } catch (Exception ioe) {
@@ -206,6 +221,51 @@ public abstract class CachedHierarchyRegionatingStrategy implements
         }
     }
 
+    /**
+     * Drops the regionating caches built for the specified layer by any strategy, both in memory
+     * and on disk. To be used when the layer data changes, since the assignment of features to
+     * tiles depends on the whole data set.
+     */
+    public static void clearLayerCaches(FeatureTypeInfo cfg) {
+        // the geometry and random strategies use the layer name, the sorting ones append the
+        // regionating attribute, which can be any attribute of the layer
+        String layerDatabase = cfg.getNamespace().getPrefix() + "_" + cfg.getName();
+        Set<String> databases = new HashSet<String>();
+        databases.add(layerDatabase);
+        try {
+            for (PropertyDescriptor pd : cfg.getFeatureType().getDescriptors()) {
+                databases.add(layerDatabase + "_" + pd.getName().getLocalPart());
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Couldn't list the attributes of " + cfg.getName()
+                    + ", only its geometry based regionating cache will be cleared", e);
+        }
+
+        try {
+            File geosearch = GeoserverDataDirectory.findCreateConfigDir("geosearch");
+            for (String database : databases) {
+                TILE_CACHE.clear(database);
+                DeleteDbFiles.execute(geosearch.getCanonicalPath(), "h2cache_" + database, true);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Couldn't clear out the regionating caches of " 
+                    + cfg.getName(), e);
+        }
+    }
+
+    static int getTileCacheSize() {
+        String size = GeoServerExtensions.getProperty("REGIONATING_TILE_CACHE_SIZE");
+        if (size != null) {
+            try {
+                return Integer.parseInt(size);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid REGIONATING_TILE_CACHE_SIZE value " + size 
+                        + ", using the default " + RegionatingTileCache.DEFAULT_SIZE);
+            }
+        }
+        return RegionatingTileCache.DEFAULT_SIZE;
+    }
+
     /**
      * Returns true if the two envelope roughly match, that is, they are about
      * the same size and about the same location. The max difference allowed is
@@ -250,6 +310,15 @@ public abstract class CachedHierarchyRegionatingStrategy implements
         canonicalizer.add(tableName);
         tableName = canonicalizer.get(tableName);
 
+        // tiles computed from now on are stale if the layer gets cleared meanwhile
+        tileGeneration = TILE_CACHE.getGeneration(tableName);
+
+        // no need to hit the database if the tile is already in memory
+        Set<String> cached = TILE_CACHE.get(tableName, tile.x, tile.y, tile.z);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
             // make sure no two thread in parallel can build the same db
             synchronized (tableName) {
@@ -351,6 +420,7 @@ public abstract class CachedHierarchyRegionatingStrategy implements
                 }
                 conn.commit();
             }
+            TILE_CACHE.put(tableName, t.x, t.y, t.z, fids, tileGeneration);
         } finally {
             conn.setAutoCommit(true);
             JDBCUtils.close(ps);
@@ -505,7 +575,10 @@ public abstract class CachedHierarchyRegionatingStrategy implements
      */
     protected Set<String> readCachedTileFids(Tile tile, Connection conn)
             throws SQLException {
-        Set<String> fids = null;
+        Set<String> fids = TILE_CACHE.get(tableName, tile.x, tile.y, tile.z);
+        if (fids != null) {
+            return fids;
+        }
         Statement st = null;
         ResultSet rs = null;
         try {
@@ -517,7 +590,8 @@ public abstract class CachedHierarchyRegionatingStrategy implements
             if (rs.next()) {
                 String fid = rs.getString(1);
                 if (fid == null) {
-                    return Collections.emptySet();
+                    TILE_CACHE.put(tableName, tile.x, tile.y, tile.z, NO_FIDS, tileGeneration);
+                    return NO_FIDS;
                 } else {
                     fids = new HashSet<String>();
                     fids.add(fid);
@@ -527,6 +601,9 @@ public abstract class CachedHierarchyRegionatingStrategy implements
             while (rs.next()) {
                 fids.add(rs.getString(1));
             }
+            if (fids != null) {
+                TILE_CACHE.put(tableName, tile.x, tile.y, tile.z, fids, tileGeneration);
+            }
         } finally {
             JDBCUtils.close(rs);
             JDBCUtils.close(st);
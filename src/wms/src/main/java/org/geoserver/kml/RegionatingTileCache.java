@@ -0,0 +1,123 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In memory LRU cache of the tile to feature ids assignments computed by the
+ * {@link CachedHierarchyRegionatingStrategy} subclasses, sitting in front of the H2 databases
+ * storing them. Each tile lookup needs the fids of all its ancestors as well, so keeping the upper
+ * levels in memory saves most of the database round trips.
+ * <p>
+ * Each database has a generation, bumped every time its tiles are cleared, so that tiles computed
+ * from the data as it was before the clear are not stored.
+ * </p>
+ */
+class RegionatingTileCache {
+
+    /**
+     * Max number of tiles in the cache, can be customized with the
+     * REGIONATING_TILE_CACHE_SIZE variable
+     */
+    static final int DEFAULT_SIZE = 2000;
+
+    final Map<TileKey, Set<String>> tiles;
+
+    final Map<String, Long> generations = new HashMap<String, Long>();
+
+    RegionatingTileCache(final int size) {
+        this.tiles = new LinkedHashMap<TileKey, Set<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, Set<String>> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the fids of the tile, or null if they are not in the cache
+     */
+    synchronized Set<String> get(String database, long x, long y, long z) {
+        return tiles.get(new TileKey(database, x, y, z));
+    }
+
+    /**
+     * Returns the current generation of the database, to be read before starting to compute its
+     * tiles
+     */
+    synchronized long getGeneration(String database) {
+        Long generation = generations.get(database);
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * Stores the fids of the tile, unless the database has been cleared since the specified
+     * generation was read
+     */
+    synchronized void put(String database, long x, long y, long z, Set<String> fids,
+            long generation) {
+        if (generation == getGeneration(database)) {
+            tiles.put(new TileKey(database, x, y, z), Collections.unmodifiableSet(fids));
+        }
+    }
+
+    /**
+     * Removes all the tiles of the specified database
+     */
+    synchronized void clear(String database) {
+        generations.put(database, getGeneration(database) + 1);
+        for (Iterator<TileKey> it = tiles.keySet().iterator(); it.hasNext();) {
+            if (it.next().database.equals(database)) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return tiles.size();
+    }
+
+    static class TileKey {
+        final String database;
+
+        final long x;
+
+        final long y;
+
+        final long z;
+
+        TileKey(String database, long x, long y, long z) {
+            this.database = database;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = database.hashCode();
+            result = 31 * result + (int) (x ^ (x >>> 32));
+            result = 31 * result + (int) (y ^ (y >>> 32));
+            result = 31 * result + (int) (z ^ (z >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return x == other.x && y == other.y && z == other.z
+                    && database.equals(other.database);
+        }
+    }
+}
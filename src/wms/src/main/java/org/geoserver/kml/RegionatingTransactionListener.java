@@ -0,0 +1,99 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geoserver.wfs.TransactionPlugin;
+import org.geoserver.wfs.WFSException;
+import org.geotools.feature.NameImpl;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Drops the regionating caches of the layers modified by a WFS transaction, once it's committed.
+ * The features assigned to a tile depend on the ones assigned to its ancestors, so a single
+ * change can affect the whole tile hierarchy of the layer.
+ */
+public class RegionatingTransactionListener implements TransactionPlugin {
+
+    static final Logger LOGGER = Logging.getLogger(RegionatingTransactionListener.class);
+
+    static final String REGIONATING_CHANGES = "REGIONATING_CHANGES";
+
+    final Catalog catalog;
+
+    public RegionatingTransactionListener(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        // nothing to do
+        return request;
+    }
+
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    public void afterTransaction(TransactionType request, TransactionResponseType result,
+            boolean committed) {
+        Map<String, FeatureTypeInfo> changed = getChanged(request, false);
+        if (!committed || changed == null) {
+            return;
+        }
+        for (FeatureTypeInfo typeInfo : changed.values()) {
+            CachedHierarchyRegionatingStrategy.clearLayerCaches(typeInfo);
+        }
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        TransactionEventType type = event.getType();
+        if (!TransactionEventType.PRE_INSERT.equals(type)
+                && !TransactionEventType.PRE_UPDATE.equals(type)
+                && !TransactionEventType.PRE_DELETE.equals(type)) {
+            return;
+        }
+
+        try {
+            QName name = event.getLayerName();
+            FeatureTypeInfo typeInfo = catalog.getFeatureTypeByName(new NameImpl(name
+                    .getNamespaceURI(), name.getLocalPart()));
+            if (typeInfo != null) {
+                getChanged(event.getRequest(), true).put(typeInfo.getId(), typeInfo);
+            }
+        } catch (RuntimeException e) {
+            // never make the transaction fail because of the regionating caches
+            LOGGER.log(Level.WARNING, "Error tracking the layers modified by the transaction", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, FeatureTypeInfo> getChanged(TransactionType transaction, boolean create) {
+        Map<Object, Object> extendedProperties = transaction.getExtendedProperties();
+        Map<String, FeatureTypeInfo> changed = (Map<String, FeatureTypeInfo>) extendedProperties
+                .get(REGIONATING_CHANGES);
+        if (changed == null && create) {
+            changed = new HashMap<String, FeatureTypeInfo>();
+            extendedProperties.put(REGIONATING_CHANGES, changed);
+        }
+        return changed;
+    }
+}
@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import net.opengis.wfs.FeatureCollectionType;
@@ -23,6 +22,7 @@ import org.geoserver.wms.capabilities.Capabilities_1_3_0_Transformer;
 import org.geoserver.wms.capabilities.GetCapabilitiesTransformer;
 import org.geoserver.wms.describelayer.DescribeLayerModel;
 import org.geoserver.wms.describelayer.DescribeLayerTransformer;
+import org.geoserver.wms.map.RenderingTimeoutEnforcer;
 import org.geotools.data.ows.LayerDescription;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -100,7 +100,7 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
     public static Boolean TRANSPARENT = Boolean.TRUE;
 
     /**
-     * default for 'transparent' parameter.
+     * the rendering thread pool, see {@link #getRenderingPool()}
      */
     public static ExecutorService RENDERING_POOL;
 
@@ -705,7 +705,8 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
     }
 
     /**
-     * Returns a app wide cached rendering pool that can be used for parallelized rendering
+     * Returns a app wide bounded rendering pool that can be used for parallelized rendering, see
+     * {@link RenderingThreadPool} for its configuration
      * 
      * @return
      */
@@ -713,7 +714,9 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         if(USE_GLOBAL_RENDERING_POOL && RENDERING_POOL == null) {
             synchronized (DefaultWebMapService.class) {
                 if(RENDERING_POOL == null) {
-                    RENDERING_POOL = Executors.newCachedThreadPool();
+                    RenderingThreadPool pool = RenderingThreadPool.create();
+                    pool.register();
+                    RENDERING_POOL = pool;
                 }
             }
         }
@@ -723,10 +726,14 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
 
     public void destroy() throws Exception {
         if (RENDERING_POOL != null) {
+            if (RENDERING_POOL instanceof RenderingThreadPool) {
+                ((RenderingThreadPool) RENDERING_POOL).unregister();
+            }
             RENDERING_POOL.shutdown();
             RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
             RENDERING_POOL = null;
         }
+        RenderingTimeoutEnforcer.shutdown();
     }
 
 }
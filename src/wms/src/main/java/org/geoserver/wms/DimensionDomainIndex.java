@@ -0,0 +1,525 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Keeps the time and elevation domains of the vector layers, so that capabilities documents and
+ * "current" time/elevation lookups do not need to scan the data at each request.
+ * <p>
+ * Each domain holds either the sorted distinct values of the dimension attribute, when the
+ * dimension is presented as a list, or just its minimum and maximum. Domains are computed on
+ * first use and saved in the <tt>dimension-index</tt> directory of the data directory. After a
+ * restart they are read back from there and refreshed in the background. Values inserted or
+ * updated by WFS transactions are added on commit (see
+ * {@link DimensionDomainTransactionListener}). Deletes and updates, which might remove values,
+ * trigger a background rebuild. All the domains are also rebuilt every
+ * <tt>DIMENSION_DOMAIN_INDEX_REFRESH</tt> seconds (600 by default, 0 disables), to pick up
+ * changes made to the data outside of GeoServer.
+ * </p>
+ * <p>
+ * The index is disabled by default, it can be enabled setting the
+ * <tt>DIMENSION_DOMAIN_INDEX</tt> system/context/environment variable to true.
+ * </p>
+ */
+public class DimensionDomainIndex implements CatalogListener, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(DimensionDomainIndex.class);
+
+    public static final String DIMENSION_DOMAIN_INDEX = "DIMENSION_DOMAIN_INDEX";
+
+    public static final String DIMENSION_DOMAIN_INDEX_REFRESH = "DIMENSION_DOMAIN_INDEX_REFRESH";
+
+    static final String INDEX_DIRECTORY = "dimension-index";
+
+    static final String[] DIMENSIONS = { ResourceInfo.TIME, ResourceInfo.ELEVATION };
+
+    final WMS wms;
+
+    final GeoServerResourceLoader loader;
+
+    volatile boolean enabled;
+
+    final ConcurrentHashMap<String, Domain> domains = new ConcurrentHashMap<String, Domain>();
+
+    final Set<String> refreshing = new ConcurrentSkipListSet<String>();
+
+    ScheduledExecutorService executor;
+
+    public DimensionDomainIndex(WMS wms, GeoServerResourceLoader loader) {
+        this.wms = wms;
+        this.loader = loader;
+        this.enabled = Boolean.valueOf(GeoServerExtensions.getProperty(DIMENSION_DOMAIN_INDEX));
+
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "DimensionDomainIndex");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long refresh = 600;
+        String value = GeoServerExtensions.getProperty(DIMENSION_DOMAIN_INDEX_REFRESH);
+        if (value != null) {
+            try {
+                refresh = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + DIMENSION_DOMAIN_INDEX_REFRESH + " value " + value
+                        + ", using " + refresh);
+            }
+        }
+        if (refresh > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    refreshAll();
+                }
+            }, refresh, refresh, TimeUnit.SECONDS);
+        }
+
+        wms.getCatalog().addListener(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            domains.clear();
+        }
+    }
+
+    /**
+     * Returns the domain of the specified dimension, all the distinct values if {@code list} is
+     * true, the minimum and maximum otherwise, loading or computing it if necessary.
+     *
+     * @param dimensionName either {@link ResourceInfo#TIME} or {@link ResourceInfo#ELEVATION}
+     * @return the sorted values, empty if the layer has no values
+     */
+    public TreeSet<Object> getValues(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension, boolean list) throws IOException {
+        String key = key(typeInfo, dimensionName);
+        String signature = signature(typeInfo, dimension, list);
+        Domain domain = domains.get(key);
+        if (domain == null || !domain.signature.equals(signature)) {
+            domain = load(key, signature, list);
+            if (domain != null) {
+                // it might be stale, serve it while it's being refreshed
+                refresh(key);
+            } else {
+                domain = build(typeInfo, dimensionName, dimension, list);
+                save(key, domain);
+            }
+            domains.put(key, domain);
+        }
+        return new TreeSet<Object>(domain.values);
+    }
+
+    /**
+     * Collects the values the features have for the indexed dimensions of the layer, in a form
+     * suitable for {@link #addValues(FeatureTypeInfo, Map)}
+     */
+    public Map<String, Set<Object>> collectValues(FeatureTypeInfo typeInfo,
+            FeatureCollection<?, ?> features) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (String dimensionName : DIMENSIONS) {
+            DimensionInfo dimension = typeInfo.getMetadata().get(dimensionName,
+                    DimensionInfo.class);
+            if (dimension != null && dimension.isEnabled()
+                    && domains.containsKey(key(typeInfo, dimensionName))) {
+                attributes.put(dimensionName, dimension.getAttribute());
+            }
+        }
+        Map<String, Set<Object>> result = new HashMap<String, Set<Object>>();
+        if (attributes.isEmpty()) {
+            return result;
+        }
+
+        FeatureIterator<?> it = features.features();
+        try {
+            while (it.hasNext()) {
+                Feature f = it.next();
+                for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                    Property p = f.getProperty(entry.getValue());
+                    Object value = p != null ? normalize(entry.getKey(), p.getValue()) : null;
+                    if (value != null) {
+                        Set<Object> values = result.get(entry.getKey());
+                        if (values == null) {
+                            values = new TreeSet<Object>();
+                            result.put(entry.getKey(), values);
+                        }
+                        values.add(value);
+                    }
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return result;
+    }
+
+    /**
+     * Adds values to the domains of the layer
+     *
+     * @param values the new values, by dimension name
+     */
+    public void addValues(FeatureTypeInfo typeInfo, Map<String, Set<Object>> values) {
+        boolean changed = false;
+        for (Map.Entry<String, Set<Object>> entry : values.entrySet()) {
+            Domain domain = domains.get(key(typeInfo, entry.getKey()));
+            if (domain != null) {
+                for (Object value : entry.getValue()) {
+                    domain.add(value);
+                }
+                changed = true;
+            }
+        }
+        if (changed) {
+            saveAsync(typeInfo);
+        }
+    }
+
+    /**
+     * Rebuilds the domains of the layer in the background
+     */
+    public void refresh(FeatureTypeInfo typeInfo) {
+        for (String dimensionName : DIMENSIONS) {
+            String key = key(typeInfo, dimensionName);
+            if (domains.containsKey(key)) {
+                refresh(key);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds all the domains in the background
+     */
+    public void refreshAll() {
+        for (String key : domains.keySet()) {
+            refresh(key);
+        }
+    }
+
+    void refresh(final String key) {
+        if (!refreshing.add(key)) {
+            // already queued
+            return;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                refreshing.remove(key);
+                try {
+                    rebuild(key);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to refresh the dimension domain " + key, e);
+                }
+            }
+        });
+    }
+
+    void rebuild(String key) throws IOException {
+        Domain current = domains.get(key);
+        if (current == null) {
+            return;
+        }
+        int idx = key.lastIndexOf('/');
+        String dimensionName = key.substring(idx + 1);
+        FeatureTypeInfo typeInfo = wms.getCatalog().getFeatureType(key.substring(0, idx));
+        DimensionInfo dimension = typeInfo != null ? typeInfo.getMetadata().get(dimensionName,
+                DimensionInfo.class) : null;
+        if (dimension == null || !dimension.isEnabled()) {
+            drop(key);
+            return;
+        }
+        // values added while scanning might have been committed after the scan read the data
+        current.tracked = new ConcurrentLinkedQueue<Object>();
+        Domain domain;
+        try {
+            domain = build(typeInfo, dimensionName, dimension, current.list);
+            for (Object value : current.tracked) {
+                domain.add(value);
+            }
+        } finally {
+            current.tracked = null;
+        }
+        if (domain.signature.equals(current.signature)) {
+            domains.replace(key, current, domain);
+            save(key, domain);
+        }
+    }
+
+    Domain build(FeatureTypeInfo typeInfo, String dimensionName, DimensionInfo dimension,
+            boolean list) throws IOException {
+        Domain domain = new Domain(signature(typeInfo, dimension, list), list);
+        FeatureCollection collection = wms.getDimensionCollection(typeInfo, dimension);
+        if (list) {
+            final UniqueVisitor visitor = new UniqueVisitor(dimension.getAttribute());
+            collection.accepts(visitor, null);
+            for (Object value : visitor.getUnique()) {
+                domain.add(normalize(dimensionName, value));
+            }
+        } else {
+            final MinVisitor min = new MinVisitor(dimension.getAttribute());
+            collection.accepts(min, null);
+            if (min.getResult() != CalcResult.NULL_RESULT) {
+                domain.add(normalize(dimensionName, min.getMin()));
+                final MaxVisitor max = new MaxVisitor(dimension.getAttribute());
+                collection.accepts(max, null);
+                domain.add(normalize(dimensionName, max.getMax()));
+            }
+        }
+        return domain;
+    }
+
+    static Object normalize(String dimensionName, Object value) {
+        if (ResourceInfo.ELEVATION.equals(dimensionName) && value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value;
+    }
+
+    static String key(FeatureTypeInfo typeInfo, String dimensionName) {
+        return typeInfo.getId() + "/" + dimensionName;
+    }
+
+    static String signature(FeatureTypeInfo typeInfo, DimensionInfo dimension, boolean list) {
+        return typeInfo.getNativeName() + ":" + dimension.getAttribute() + ":"
+                + (list ? "list" : "range");
+    }
+
+    void drop(String key) {
+        domains.remove(key);
+        File file = file(key);
+        if (file != null && file.exists()) {
+            file.delete();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Persistence
+    // ---------------------------------------------------------------------------------------
+
+    File file(String key) {
+        try {
+            File dir = loader.findOrCreateDirectory(INDEX_DIRECTORY);
+            return new File(dir, key.replaceAll("[^\\w\\-]", "_") + ".domain");
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not access the dimension index directory", e);
+            return null;
+        }
+    }
+
+    void saveAsync(final FeatureTypeInfo typeInfo) {
+        executor.execute(new Runnable() {
+            public void run() {
+                for (String dimensionName : DIMENSIONS) {
+                    String key = key(typeInfo, dimensionName);
+                    Domain domain = domains.get(key);
+                    if (domain != null) {
+                        save(key, domain);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the domain, one value per line after a header with the signature. Only dates and
+     * numbers are supported.
+     */
+    void save(String key, Domain domain) {
+        File file = file(key);
+        if (file == null) {
+            return;
+        }
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    "UTF-8"));
+            writer.write(domain.signature);
+            writer.newLine();
+            for (Object value : domain.values) {
+                if (value instanceof Date) {
+                    writer.write("D" + ((Date) value).getTime());
+                } else if (value instanceof Number) {
+                    writer.write("N" + value);
+                } else {
+                    // not supported, don't leave a partial file around
+                    writer.close();
+                    writer = null;
+                    file.delete();
+                    return;
+                }
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the dimension domain " + key, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    Domain load(String key, String signature, boolean list) {
+        File file = file(key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            if (!signature.equals(reader.readLine())) {
+                return null;
+            }
+            Domain domain = new Domain(signature, list);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("D")) {
+                    domain.add(new Date(Long.parseLong(line.substring(1))));
+                } else if (line.startsWith("N")) {
+                    domain.add(Double.valueOf(line.substring(1)));
+                }
+            }
+            return domain;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the dimension domain " + key, e);
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Catalog listener
+    // ---------------------------------------------------------------------------------------
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // nothing to do
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        if (event.getSource() instanceof FeatureTypeInfo) {
+            FeatureTypeInfo typeInfo = (FeatureTypeInfo) event.getSource();
+            for (String dimensionName : DIMENSIONS) {
+                drop(key(typeInfo, dimensionName));
+            }
+        }
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // nothing to do, configuration changes are caught by the domain signature
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        // nothing to do, configuration changes are caught by the domain signature
+    }
+
+    public void reloaded() {
+        domains.clear();
+    }
+
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The domain of a dimension
+     */
+    static class Domain {
+        final String signature;
+
+        final boolean list;
+
+        final NavigableSet<Object> values = new ConcurrentSkipListSet<Object>();
+
+        Domain(String signature, boolean list) {
+            this.signature = signature;
+            this.list = list;
+        }
+
+        volatile Collection<Object> tracked;
+
+        synchronized void add(Object value) {
+            if (value == null) {
+                return;
+            }
+            Collection<Object> tracked = this.tracked;
+            if (tracked != null) {
+                tracked.add(value);
+            }
+            values.add(value);
+            if (!list && values.size() > 2) {
+                // keep just the extremes
+                Object min = values.first();
+                Object max = values.last();
+                for (Iterator<Object> it = values.iterator(); it.hasNext();) {
+                    Object v = it.next();
+                    if (v != min && v != max) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+}
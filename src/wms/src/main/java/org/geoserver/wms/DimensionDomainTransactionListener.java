@@ -0,0 +1,152 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geoserver.wfs.TransactionPlugin;
+import org.geoserver.wfs.WFSException;
+import org.geotools.feature.NameImpl;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Keeps the {@link DimensionDomainIndex} in synch with the WFS transactions: inserted and updated
+ * values are added to the domains once the transaction is committed, updates and deletes also
+ * schedule a rebuild of the domains, since they might have removed values.
+ */
+public class DimensionDomainTransactionListener implements TransactionPlugin {
+
+    static final Logger LOGGER = Logging.getLogger(DimensionDomainTransactionListener.class);
+
+    static final String DIMENSION_CHANGES = "DIMENSION_DOMAIN_CHANGES";
+
+    final DimensionDomainIndex index;
+
+    public DimensionDomainTransactionListener(DimensionDomainIndex index) {
+        this.index = index;
+    }
+
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        // nothing to do
+        return request;
+    }
+
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    public void afterTransaction(TransactionType request, TransactionResponseType result,
+            boolean committed) {
+        Map<String, Changes> changes = getChanges(request, false);
+        if (!committed || changes == null) {
+            return;
+        }
+        try {
+            for (Changes change : changes.values()) {
+                index.addValues(change.typeInfo, change.added);
+                if (change.removed) {
+                    index.refresh(change.typeInfo);
+                }
+            }
+        } catch (RuntimeException e) {
+            // never make the transaction fail because of the index
+            LOGGER.log(Level.WARNING, "Error updating the dimension domains", e);
+        }
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        if (!index.isEnabled()) {
+            return;
+        }
+        try {
+            TransactionEventType type = event.getType();
+            boolean added = TransactionEventType.PRE_INSERT.equals(type)
+                    || TransactionEventType.POST_UPDATE.equals(type);
+            boolean removed = TransactionEventType.PRE_UPDATE.equals(type)
+                    || TransactionEventType.PRE_DELETE.equals(type);
+            if (!added && !removed) {
+                return;
+            }
+
+            QName name = event.getLayerName();
+            FeatureTypeInfo typeInfo = index.wms.getCatalog().getFeatureTypeByName(
+                    new NameImpl(name.getNamespaceURI(), name.getLocalPart()));
+            if (typeInfo == null) {
+                return;
+            }
+            Map<String, Set<Object>> values = added ? index.collectValues(typeInfo,
+                    event.getAffectedFeatures()) : null;
+            if (!removed && values.isEmpty()) {
+                // no indexed dimension
+                return;
+            }
+
+            Map<String, Changes> changes = getChanges(event.getRequest(), true);
+            Changes change = changes.get(typeInfo.getId());
+            if (change == null) {
+                change = new Changes(typeInfo);
+                changes.put(typeInfo.getId(), change);
+            }
+            change.removed |= removed;
+            if (values != null) {
+                for (Map.Entry<String, Set<Object>> entry : values.entrySet()) {
+                    Set<Object> dimensionValues = change.added.get(entry.getKey());
+                    if (dimensionValues == null) {
+                        dimensionValues = new TreeSet<Object>();
+                        change.added.put(entry.getKey(), dimensionValues);
+                    }
+                    dimensionValues.addAll(entry.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            // never make the transaction fail because of the index
+            LOGGER.log(Level.WARNING, "Error collecting the transaction dimension values", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Changes> getChanges(TransactionType transaction, boolean create) {
+        Map<Object, Object> extendedProperties = transaction.getExtendedProperties();
+        Map<String, Changes> changes = (Map<String, Changes>) extendedProperties
+                .get(DIMENSION_CHANGES);
+        if (changes == null && create) {
+            changes = new HashMap<String, Changes>();
+            extendedProperties.put(DIMENSION_CHANGES, changes);
+        }
+        return changes;
+    }
+
+    /**
+     * The changes a transaction made to a layer
+     */
+    static class Changes {
+        final FeatureTypeInfo typeInfo;
+
+        final Map<String, Set<Object>> added = new HashMap<String, Set<Object>>();
+
+        boolean removed;
+
+        Changes(FeatureTypeInfo typeInfo) {
+            this.typeInfo = typeInfo;
+        }
+    }
+}
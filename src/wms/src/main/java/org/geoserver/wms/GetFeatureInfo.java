@@ -11,11 +11,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +40,11 @@ import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ProjectionPolicy;
 import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.LocalLayer;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.Request;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.featureinfo.FeatureCollectionDecorator;
 import org.geotools.coverage.GridSampleDimension;
@@ -39,8 +56,10 @@ import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.ows.Layer;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.store.FilteringFeatureCollection;
 import org.geotools.data.store.ReTypingFeatureCollection;
 import org.geotools.data.wms.WebMapServer;
@@ -54,6 +73,7 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.Filters;
 import org.geotools.filter.IllegalFilterException;
+import org.geotools.filter.function.EnvFunction;
 import org.geotools.filter.visitor.SimplifyingFilterVisitor;
 import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.TransformedDirectPosition;
@@ -77,6 +97,7 @@ import org.opengis.coverage.CannotEvaluateException;
 import org.opengis.coverage.PointOutsideCoverageException;
 import org.opengis.coverage.grid.GridEnvelope;
 import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
@@ -92,6 +113,9 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.datum.PixelInCell;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -103,12 +127,17 @@ import com.vividsolutions.jts.geom.Polygon;
  * 
  * @author Gabriel Roldan
  */
-public class GetFeatureInfo {
+public class GetFeatureInfo implements DisposableBean {
 
     private static final Logger LOGGER = Logging.getLogger(GetFeatureInfo.class);
 
     private WMS wms;
 
+    /**
+     * Pool used to query the layers in parallel, created on demand
+     */
+    private ThreadPoolExecutor executor;
+
     public GetFeatureInfo(final WMS wms) {
         this.wms = wms;
     }
@@ -181,6 +210,166 @@ public class GetFeatureInfo {
     private List<FeatureCollection> execute(GetFeatureInfoRequest request, Style[] styles,
             Filter[] filters) throws Exception {
 
+        final List<MapLayerInfo> requestedLayers = request.getQueryLayers();
+        int threads = wms.getFeatureInfoThreads();
+        if (threads > 1 && requestedLayers.size() > 1) {
+            return executeParallel(request, styles, filters, threads);
+        }
+
+        List<FeatureCollection> results = new ArrayList<FeatureCollection>(requestedLayers.size());
+        int maxFeatures = request.getFeatureCount();
+        for (int i = 0; i < requestedLayers.size(); i++) {
+            LayerResults layerResults = identifyLayer(request, styles, filters, i, maxFeatures);
+            results.addAll(layerResults.collections);
+
+            // don't return more than FEATURE_COUNT
+            if (layerResults.count > 0) {
+                maxFeatures -= layerResults.count;
+                if (maxFeatures <= 0) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Queries all the layers at the same time, each one with the full FEATURE_COUNT, and then
+     * assembles the results in the order of the query layers, cutting them where the sequential
+     * execution would have stopped. Layers not answering within the configured timeout are left
+     * out of the response.
+     */
+    @SuppressWarnings("rawtypes")
+    private List<FeatureCollection> executeParallel(final GetFeatureInfoRequest request,
+            final Style[] styles, final Filter[] filters, int threads) throws Exception {
+        final List<MapLayerInfo> requestedLayers = request.getQueryLayers();
+        final int featureCount = request.getFeatureCount();
+
+        ExecutorService executor = getExecutor(threads);
+        List<Future<LayerResults>> futures = new ArrayList<Future<LayerResults>>(
+                requestedLayers.size());
+        for (int i = 0; i < requestedLayers.size(); i++) {
+            final int layerIndex = i;
+            futures.add(executor.submit(new RequestContextCallable<LayerResults>() {
+                @Override
+                protected LayerResults callInContext() throws Exception {
+                    LayerResults results = identifyLayer(request, styles, filters, layerIndex,
+                            featureCount);
+                    return results.materialize();
+                }
+            }));
+        }
+
+        long timeout = wms.getFeatureInfoTimeout();
+        long deadline = System.currentTimeMillis() + timeout;
+        List<FeatureCollection> results = new ArrayList<FeatureCollection>(requestedLayers.size());
+        int maxFeatures = featureCount;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<LayerResults> future = futures.get(i);
+                LayerResults layerResults;
+                try {
+                    if (timeout > 0) {
+                        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                        layerResults = future.get(remaining, TimeUnit.MILLISECONDS);
+                    } else {
+                        layerResults = future.get();
+                    }
+                } catch (TimeoutException e) {
+                    LOGGER.warning("Skipping layer " + requestedLayers.get(i).getName()
+                            + " in GetFeatureInfo, it did not answer within " + timeout + "ms");
+                    continue;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw new ServiceException("Internal error occurred", cause);
+                }
+
+                if (layerResults.count > 0) {
+                    for (FeatureCollection fc : layerResults.collections) {
+                        results.add(limit(fc, maxFeatures));
+                    }
+                    // don't return more than FEATURE_COUNT
+                    maxFeatures -= layerResults.count;
+                    if (maxFeatures <= 0) {
+                        break;
+                    }
+                } else {
+                    results.addAll(layerResults.collections);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting for the layers to be queried", e);
+        } finally {
+            // no need to go on with the layers we are not going to use
+            for (Future<LayerResults> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the features of the collection up to the specified amount, the collection is
+     * returned as is if it's not a materialized simple feature collection
+     */
+    @SuppressWarnings("rawtypes")
+    private FeatureCollection limit(FeatureCollection collection, int maxFeatures) {
+        if (!(collection instanceof ListFeatureCollection) || collection.size() <= maxFeatures) {
+            return collection;
+        }
+        ListFeatureCollection features = (ListFeatureCollection) collection;
+        List<SimpleFeature> limited = new ArrayList<SimpleFeature>(maxFeatures);
+        SimpleFeatureIterator it = features.features();
+        try {
+            while (it.hasNext() && limited.size() < maxFeatures) {
+                limited.add(it.next());
+            }
+        } finally {
+            it.close();
+        }
+        return new ListFeatureCollection(features.getSchema(), limited);
+    }
+
+    synchronized ExecutorService getExecutor(int threads) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "GetFeatureInfo-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        } else if (executor.getMaximumPoolSize() != threads) {
+            // the configuration changed
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Queries a single layer
+     * 
+     * @param i the position of the layer among the query layers
+     * @param maxFeatures the maximum number of features to be returned
+     */
+    @SuppressWarnings("rawtypes")
+    private LayerResults identifyLayer(GetFeatureInfoRequest request, Style[] styles,
+            Filter[] filters, int i, int maxFeatures) throws Exception {
+
         final List<MapLayerInfo> requestedLayers = request.getQueryLayers();
         // delegate to subclasses the hard work
         final int x = request.getXPixel();
@@ -197,135 +386,126 @@ public class GetFeatureInfo {
                 getMapReq.getCrs());
         final double scaleDenominator = RendererUtilities.calculateOGCScale(bbox, width, null);
         final List<Object> elevations = request.getGetMapRequest().getElevation();
-		final List<Object> times = request.getGetMapRequest().getTime();
+        final List<Object> times = request.getGetMapRequest().getTime();
         final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
 
-        List<FeatureCollection> results = new ArrayList<FeatureCollection>(requestedLayers.size());
+        final MapLayerInfo layer = requestedLayers.get(i);
 
-        int maxFeatures = request.getFeatureCount();
-        for (int i = 0; i < requestedLayers.size(); i++) {
-            final MapLayerInfo layer = requestedLayers.get(i);
-            
-            // look at the property names
-            String[] names;
-            List<List<String>> propertyNames = request.getPropertyNames();
-            if(propertyNames == null || propertyNames.size() == 0 || propertyNames.get(i) == null) {
-                names = Query.ALL_NAMES;
-            } else {
-                List<String> layerPropNames = propertyNames.get(i);
-                names = (String[]) layerPropNames.toArray(new String[layerPropNames.size()]);
-            }
+        // look at the property names
+        String[] names;
+        List<List<String>> propertyNames = request.getPropertyNames();
+        if(propertyNames == null || propertyNames.size() == 0 || propertyNames.get(i) == null) {
+            names = Query.ALL_NAMES;
+        } else {
+            List<String> layerPropNames = propertyNames.get(i);
+            names = (String[]) layerPropNames.toArray(new String[layerPropNames.size()]);
+        }
 
-            // check cascaded WMS first, it's a special case
-            if (layer.getType() == MapLayerInfo.TYPE_WMS) {
-                List<FeatureCollection> cascadedResults;
-                cascadedResults = handleGetFeatureInfoCascade(request, maxFeatures, layer);
-                if (cascadedResults != null) {
-                    for (FeatureCollection fc : cascadedResults) {
-                        results.add(selectProperties(fc, names));
-                    }
+        // check cascaded WMS first, it's a special case
+        if (layer.getType() == MapLayerInfo.TYPE_WMS) {
+            List<FeatureCollection> results = new ArrayList<FeatureCollection>();
+            List<FeatureCollection> cascadedResults;
+            cascadedResults = handleGetFeatureInfoCascade(request, maxFeatures, layer);
+            if (cascadedResults != null) {
+                for (FeatureCollection fc : cascadedResults) {
+                    results.add(selectProperties(fc, names));
                 }
-                continue;
-            } 
-            final Style style = styles[i];
-            // ok, internally rendered layer then, we check the style to see what's active
-            final List<Rule> rules = getActiveRules(style, scaleDenominator);
-            if (rules.size() == 0) {
-                continue;
             }
-            
-            FeatureCollection collection = null;
-            if (layer.getType() == MapLayerInfo.TYPE_VECTOR) {
-                final Map<String, String> viewParam = viewParams != null ? viewParams.get(i) : null;
-				collection = identifyVectorLayer(filters, x, y, buffer, viewParam,
-                        requestedCRS, width, height, bbox, ff, results, i, layer, rules, maxFeatures,
-                        times, elevations, names);
-            } else if (layer.getType() == MapLayerInfo.TYPE_RASTER) {
-                final CoverageInfo cinfo = requestedLayers.get(i).getCoverage();
-                final AbstractGridCoverage2DReader reader = (AbstractGridCoverage2DReader) cinfo
-                        .getGridCoverageReader(new NullProgressListener(),
-                                GeoTools.getDefaultHints());
-                
-                
-                // set the requested position in model space for this request
-                final Coordinate middle = WMS.pixelToWorld(x, y, bbox, width, height);
-                DirectPosition position = new DirectPosition2D(requestedCRS, middle.x, middle.y);
-
-                // change from request crs to coverage crs in order to compute a minimal request
-                // area,
-                // TODO this code need to be made much more robust
-                if (requestedCRS != null) {
-                    final CoordinateReferenceSystem targetCRS;
-                    if(cinfo.getProjectionPolicy() == ProjectionPolicy.NONE) {
-                        targetCRS = cinfo.getNativeCRS();
-                    } else {
-                        targetCRS = cinfo.getCRS();
-                    }
-                    final TransformedDirectPosition arbitraryToInternal = new TransformedDirectPosition(
-                            requestedCRS, targetCRS, new Hints(Hints.LENIENT_DATUM_SHIFT,
-                                    Boolean.TRUE));
-                    try {
-                        arbitraryToInternal.transform(position);
-                    } catch (TransformException exception) {
-                        throw new CannotEvaluateException("Unable to answer the geatfeatureinfo",
-                                exception);
-                    }
-                    position = arbitraryToInternal;
+            // cascaded features do not count against FEATURE_COUNT
+            return new LayerResults(results, 0);
+        }
+        final Style style = styles[i];
+        // ok, internally rendered layer then, we check the style to see what's active
+        final List<Rule> rules = getActiveRules(style, scaleDenominator);
+        if (rules.size() == 0) {
+            return LayerResults.EMPTY;
+        }
+
+        FeatureCollection collection = null;
+        if (layer.getType() == MapLayerInfo.TYPE_VECTOR) {
+            final Map<String, String> viewParam = viewParams != null ? viewParams.get(i) : null;
+            collection = identifyVectorLayer(filters, x, y, buffer, viewParam,
+                    requestedCRS, width, height, bbox, ff, i, layer, rules, maxFeatures,
+                    times, elevations, names);
+        } else if (layer.getType() == MapLayerInfo.TYPE_RASTER) {
+            final CoverageInfo cinfo = requestedLayers.get(i).getCoverage();
+            final AbstractGridCoverage2DReader reader = (AbstractGridCoverage2DReader) cinfo
+                    .getGridCoverageReader(new NullProgressListener(),
+                            GeoTools.getDefaultHints());
+
+            // set the requested position in model space for this request
+            final Coordinate middle = WMS.pixelToWorld(x, y, bbox, width, height);
+            DirectPosition position = new DirectPosition2D(requestedCRS, middle.x, middle.y);
+
+            // change from request crs to coverage crs in order to compute a minimal request
+            // area,
+            // TODO this code need to be made much more robust
+            if (requestedCRS != null) {
+                final CoordinateReferenceSystem targetCRS;
+                if(cinfo.getProjectionPolicy() == ProjectionPolicy.NONE) {
+                    targetCRS = cinfo.getNativeCRS();
+                } else {
+                    targetCRS = cinfo.getCRS();
                 }
-                // check that the provided point is inside the bbox for this coverage
-                if (!reader.getOriginalEnvelope().contains(position)) {
-                    continue;
+                final TransformedDirectPosition arbitraryToInternal = new TransformedDirectPosition(
+                        requestedCRS, targetCRS, new Hints(Hints.LENIENT_DATUM_SHIFT,
+                                Boolean.TRUE));
+                try {
+                    arbitraryToInternal.transform(position);
+                } catch (TransformException exception) {
+                    throw new CannotEvaluateException("Unable to answer the geatfeatureinfo",
+                            exception);
                 }
+                position = arbitraryToInternal;
+            }
+            // check that the provided point is inside the bbox for this coverage
+            if (!reader.getOriginalEnvelope().contains(position)) {
+                return LayerResults.EMPTY;
+            }
 
-                // read from the request
-                GeneralParameterValue[] parameters = wms.getWMSReadParameters(request.getGetMapRequest(), 
-                        requestedLayers.get(i), filters[i], times, elevations, reader, true);
-                collection = identifyRasterLayer(reader, position, parameters, cinfo, getMapReq);
-                
-                // apply attribute selection
-                collection = selectProperties(collection, names);
-            } else {
-                LOGGER.log(Level.SEVERE,
-                        "Can't perform feature info " + "requests on " + layer.getName()
-                                + ", layer type not supported");
+            // read from the request
+            GeneralParameterValue[] parameters = wms.getWMSReadParameters(request.getGetMapRequest(), 
+                    requestedLayers.get(i), filters[i], times, elevations, reader, true);
+            collection = identifyRasterLayer(reader, position, parameters, cinfo, getMapReq);
+
+            // apply attribute selection
+            collection = selectProperties(collection, names);
+        } else {
+            LOGGER.log(Level.SEVERE,
+                    "Can't perform feature info " + "requests on " + layer.getName()
+                            + ", layer type not supported");
+        }
+
+        if (collection != null) {
+            if (!(collection.getSchema() instanceof SimpleFeatureType)) {
+                //put wrapper around it with layer name
+                Name name = new NameImpl (layer.getFeature().getNamespace().getName(), layer.getFeature().getName());                
+                collection = new FeatureCollectionDecorator(name, collection);
             }
-            
 
-            if (collection != null) {
-                if (!(collection.getSchema() instanceof SimpleFeatureType)) {
-                    //put wrapper around it with layer name
-                    Name name = new NameImpl (layer.getFeature().getNamespace().getName(), layer.getFeature().getName());                
-                    collection = new FeatureCollectionDecorator(name, collection);
-                }
-                
-                int size = collection.size();
-                if(size != 0) {
-
-                    // HACK HACK HACK
-                    // For complex features, we need the targetCrs and version in scenario where we have
-                    // a top level feature that does not contain a geometry(therefore no crs) and has a
-                    // nested feature that contains geometry as its property.Furthermore it is possible
-                    // for each nested feature to have different crs hence we need to reproject on each
-                    // feature accordingly.
-                    // This is a Hack, this information should not be passed through feature type
-                    // appschema will need to remove this information from the feature type again
-                	if (! (collection instanceof SimpleFeatureCollection)) {
-                       collection.getSchema().getUserData().put("targetCrs", request.getGetMapRequest().getCrs());
-                       collection.getSchema().getUserData().put("targetVersion", "wms:getfeatureinfo");
-                       
-                    }
-                	
-                    results.add(collection);
-                    
-                    // don't return more than FEATURE_COUNT
-                    maxFeatures -= size;
-                    if(maxFeatures <= 0) {
-                        break;
-                    }
+            int size = collection.size();
+            if(size != 0) {
+
+                // HACK HACK HACK
+                // For complex features, we need the targetCrs and version in scenario where we have
+                // a top level feature that does not contain a geometry(therefore no crs) and has a
+                // nested feature that contains geometry as its property.Furthermore it is possible
+                // for each nested feature to have different crs hence we need to reproject on each
+                // feature accordingly.
+                // This is a Hack, this information should not be passed through feature type
+                // appschema will need to remove this information from the feature type again
+                if (! (collection instanceof SimpleFeatureCollection)) {
+                   collection.getSchema().getUserData().put("targetCrs", request.getGetMapRequest().getCrs());
+                   collection.getSchema().getUserData().put("targetVersion", "wms:getfeatureinfo");
+
                 }
+
+                List<FeatureCollection> results = new ArrayList<FeatureCollection>(1);
+                results.add(collection);
+                return new LayerResults(results, size);
             }
         }
-        return results;
+        return LayerResults.EMPTY;
     }
 
     private FeatureCollection selectProperties(FeatureCollection collection, String[] names) throws IOException {
@@ -409,7 +589,7 @@ public class GetFeatureInfo {
             final int x, final int y, final int buffer, final Map<String, String> viewParams,
             final CoordinateReferenceSystem requestedCRS, final int width, final int height,
             final ReferencedEnvelope bbox, final FilterFactory2 ff,
-            List<FeatureCollection> results, int i, final MapLayerInfo layer, final List<Rule> rules,
+            int i, final MapLayerInfo layer, final List<Rule> rules,
             final int maxFeatures, List<Object> times, List<Object> elevations, final String[] propertyNames)
             throws IOException {
 
@@ -687,4 +867,98 @@ public class GetFeatureInfo {
         return DataUtilities.collection(SimpleFeatureBuilder.build(gridType, values, ""));
     }
 
-}
\ No newline at end of file
+    public void destroy() throws Exception {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * The features found on a query layer, along with the amount that counts against the
+     * FEATURE_COUNT limit
+     */
+    @SuppressWarnings("rawtypes")
+    static class LayerResults {
+
+        static final LayerResults EMPTY = new LayerResults(
+                Collections.<FeatureCollection> emptyList(), 0);
+
+        final List<FeatureCollection> collections;
+
+        final int count;
+
+        LayerResults(List<FeatureCollection> collections, int count) {
+            this.collections = collections;
+            this.count = count;
+        }
+
+        /**
+         * Loads the simple features in memory, so that the data access happens in the calling
+         * thread instead of during the encoding
+         */
+        LayerResults materialize() {
+            if (collections.isEmpty()) {
+                return this;
+            }
+            List<FeatureCollection> loaded = new ArrayList<FeatureCollection>(collections.size());
+            for (FeatureCollection fc : collections) {
+                if (fc instanceof SimpleFeatureCollection && !(fc instanceof ListFeatureCollection)) {
+                    SimpleFeatureCollection sfc = (SimpleFeatureCollection) fc;
+                    List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+                    SimpleFeatureIterator it = sfc.features();
+                    try {
+                        while (it.hasNext()) {
+                            features.add(it.next());
+                        }
+                    } finally {
+                        it.close();
+                    }
+                    loaded.add(new ListFeatureCollection(sfc.getSchema(), features));
+                } else {
+                    loaded.add(fc);
+                }
+            }
+            return new LayerResults(loaded, count);
+        }
+    }
+
+    /**
+     * Runs a task in a pool thread with the security context and the request thread locals of
+     * the thread that created it
+     */
+    abstract static class RequestContextCallable<T> implements Callable<T> {
+
+        final SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        final Request request = Dispatcher.REQUEST.get();
+
+        final WorkspaceInfo workspace = LocalWorkspace.get();
+
+        final LayerInfo layer = LocalLayer.get();
+
+        final Map<String, Object> envValues = new HashMap<String, Object>(
+                EnvFunction.getLocalValues());
+
+        public T call() throws Exception {
+            SecurityContextHolder.setContext(securityContext);
+            Dispatcher.REQUEST.set(request);
+            LocalWorkspace.set(workspace);
+            LocalLayer.set(layer);
+            EnvFunction.setLocalValues(envValues);
+            try {
+                return callInContext();
+            } finally {
+                SecurityContextHolder.clearContext();
+                Dispatcher.REQUEST.remove();
+                LocalWorkspace.remove();
+                LocalLayer.remove();
+                EnvFunction.clearLocalValues();
+            }
+        }
+
+        protected abstract T callInContext() throws Exception;
+    }
+}
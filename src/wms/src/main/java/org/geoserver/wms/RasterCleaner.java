@@ -14,6 +14,7 @@ import javax.media.jai.RenderedImageList;
 
 import org.geoserver.ows.AbstractDispatcherCallback;
 import org.geoserver.ows.Request;
+import org.geoserver.wms.animate.AnimationFrames;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.resources.image.ImageUtilities;
 
@@ -69,10 +70,17 @@ public class RasterCleaner extends AbstractDispatcherCallback {
         if (list != null) {
             images.remove();
             for (RenderedImage image : list) {
+                if (image instanceof AnimationFrames) {
+                    // stop rendering frames that won't be used, the ones handed out are gone
+                    ((AnimationFrames) image).dispose();
+                }
                 if (image instanceof RenderedImageList) {
                     RenderedImageList ril = (RenderedImageList) image;
                     for (int i = 0; i < ril.size(); i++) {
-                        disposeImage((RenderedImage) ril.get(i));
+                        RenderedImage frame = (RenderedImage) ril.get(i);
+                        if (frame != null) {
+                            disposeImage(frame);
+                        }
                     }
                 } else {
                     disposeImage(image);
@@ -0,0 +1,250 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * The bounded thread pool used by the {@link org.geotools.renderer.lite.StreamingRenderer} to run
+ * its painting threads, along with the render times of the layers.
+ * <p>
+ * The pool is configured with the following system variables:
+ * <ul>
+ * <li>{@link #CORE_SIZE}: the number of threads kept alive, defaults to twice the number of
+ * processors</li>
+ * <li>{@link #MAX_SIZE}: the maximum number of threads, used when the queue is full, defaults to
+ * eight times the number of processors</li>
+ * <li>{@link #QUEUE_SIZE}: the number of renderings waiting for a thread, 0 means no queueing,
+ * negative values an unbounded queue, defaults to 100</li>
+ * <li>{@link #REJECTION}: what to do when both the threads and the queue are exhausted,
+ * {@code wait} (the default) for a queue slot to free up, or {@code abort} to fail the request</li>
+ * </ul>
+ * The counters are registered in the platform MBean server under
+ * <tt>org.geoserver:type=WMS,name=RenderingThreadPool</tt>.
+ * </p>
+ */
+public class RenderingThreadPool extends ThreadPoolExecutor implements RenderingThreadPoolMBean {
+
+    static final Logger LOGGER = Logging.getLogger(RenderingThreadPool.class);
+
+    public static final String CORE_SIZE = "RENDERING_POOL_CORE_SIZE";
+
+    public static final String MAX_SIZE = "RENDERING_POOL_MAX_SIZE";
+
+    public static final String QUEUE_SIZE = "RENDERING_POOL_QUEUE_SIZE";
+
+    public static final String REJECTION = "RENDERING_POOL_REJECTION";
+
+    static final String OBJECT_NAME = "org.geoserver:type=WMS,name=RenderingThreadPool";
+
+    final AtomicLong submitted = new AtomicLong();
+
+    final AtomicLong rejected = new AtomicLong();
+
+    final ConcurrentMap<String, LayerTimes> layerTimes = new ConcurrentHashMap<String, LayerTimes>();
+
+    /**
+     * Builds the pool out of the system variables
+     */
+    public static RenderingThreadPool create() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int core = getIntProperty(CORE_SIZE, processors * 2);
+        int max = Math.max(core, getIntProperty(MAX_SIZE, processors * 8));
+        int queue = getIntProperty(QUEUE_SIZE, 100);
+        boolean abort = "abort".equalsIgnoreCase(GeoServerExtensions.getProperty(REJECTION));
+        return new RenderingThreadPool(core, max, queue, abort);
+    }
+
+    static int getIntProperty(String name, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + name + " value " + value + ", using " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    public RenderingThreadPool(int coreSize, int maxSize, int queueSize, boolean abort) {
+        super(coreSize, maxSize, 60, TimeUnit.SECONDS, buildQueue(queueSize),
+                new RenderingThreadFactory());
+        setRejectedExecutionHandler(new CountingRejectionHandler(abort));
+    }
+
+    static BlockingQueue<Runnable> buildQueue(int queueSize) {
+        if (queueSize == 0) {
+            return new SynchronousQueue<Runnable>();
+        } else if (queueSize < 0) {
+            return new LinkedBlockingQueue<Runnable>();
+        } else {
+            return new ArrayBlockingQueue<Runnable>(queueSize);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.incrementAndGet();
+        super.execute(command);
+    }
+
+    /**
+     * Records the time spent rendering a layer
+     */
+    public void recordLayerTime(String layerName, long millis) {
+        LayerTimes times = layerTimes.get(layerName);
+        if (times == null) {
+            times = new LayerTimes();
+            LayerTimes existing = layerTimes.putIfAbsent(layerName, times);
+            if (existing != null) {
+                times = existing;
+            }
+        }
+        times.add(millis);
+    }
+
+    public int getQueuedCount() {
+        return getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public String[] getLayerRenderTimes() {
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<String, LayerTimes> entry : layerTimes.entrySet()) {
+            LayerTimes times = entry.getValue();
+            long count = times.count.get();
+            if (count > 0) {
+                result.add(entry.getKey() + ": count=" + count + ", avg=" + times.total.get()
+                        / count + "ms, max=" + times.max.get() + "ms");
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    public void reset() {
+        submitted.set(0);
+        rejected.set(0);
+        layerTimes.clear();
+    }
+
+    /**
+     * Registers the counters in the platform MBean server, replacing any previous registration
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not register the rendering thread pool statistics", e);
+        }
+    }
+
+    /**
+     * Removes the counters from the platform MBean server
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unregister the rendering thread pool statistics", e);
+        }
+    }
+
+    /**
+     * Count, total and max render time of a layer
+     */
+    static class LayerTimes {
+        final AtomicLong count = new AtomicLong();
+
+        final AtomicLong total = new AtomicLong();
+
+        final AtomicLong max = new AtomicLong();
+
+        void add(long millis) {
+            count.incrementAndGet();
+            total.addAndGet(millis);
+            long current;
+            while ((current = max.get()) < millis && !max.compareAndSet(current, millis))
+                ;
+        }
+    }
+
+    /**
+     * Counts the rejections and either fails or waits for a queue slot
+     */
+    class CountingRejectionHandler implements RejectedExecutionHandler {
+
+        boolean abort;
+
+        CountingRejectionHandler(boolean abort) {
+            this.abort = abort;
+        }
+
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.incrementAndGet();
+            if (abort || executor.isShutdown() || executor.getQueue() instanceof SynchronousQueue) {
+                throw new RejectedExecutionException(
+                        "The server is too busy to render the map, please try again later");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(
+                        "Interrupted while waiting for a rendering thread", e);
+            }
+        }
+    }
+
+    static class RenderingThreadFactory implements ThreadFactory {
+        AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "GeoServerRendering-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+/**
+ * JMX view of the {@link RenderingThreadPool} counters.
+ */
+public interface RenderingThreadPoolMBean {
+
+    int getCorePoolSize();
+
+    void setCorePoolSize(int corePoolSize);
+
+    int getMaximumPoolSize();
+
+    void setMaximumPoolSize(int maximumPoolSize);
+
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getQueuedCount();
+
+    long getSubmittedCount();
+
+    long getCompletedTaskCount();
+
+    long getRejectedCount();
+
+    String[] getLayerRenderTimes();
+
+    void reset();
+}
@@ -116,6 +116,20 @@ public class WMS implements ApplicationContextAware {
     public static final String LOOP_CONTINUOUSLY = "loopContinuously";
 
     public static final Boolean LOOP_CONTINUOUSLY_DEFAULT = Boolean.FALSE;
+
+    public static final String ANIMATOR_LOOK_AHEAD = "animatorLookAhead";
+
+    public static final int ANIMATOR_LOOK_AHEAD_DEFAULT = 4;
+
+    /** Number of threads used to query the layers of a GetFeatureInfo, 1 means sequential */
+    public static final String FEATURE_INFO_THREADS = "featureInfoThreads";
+
+    public static final int FEATURE_INFO_THREADS_DEFAULT = 1;
+
+    /** Time, in milliseconds, parallel GetFeatureInfo requests wait for each layer, 0 waits forever */
+    public static final String FEATURE_INFO_TIMEOUT = "featureInfoTimeout";
+
+    public static final long FEATURE_INFO_TIMEOUT_DEFAULT = 0;
     
     static final Logger LOGGER = Logging.getLogger(WMS.class);
 
@@ -484,6 +498,21 @@ public class WMS implements ApplicationContextAware {
        return getMetadataValue(LOOP_CONTINUOUSLY, LOOP_CONTINUOUSLY_DEFAULT, Boolean.class);
     }
 
+    /**
+     * Returns how many animation frames can be rendered ahead of the one being encoded
+     */
+    public int getAnimatorLookAhead() {
+        return getMetadataValue(ANIMATOR_LOOK_AHEAD, ANIMATOR_LOOK_AHEAD_DEFAULT, Integer.class);
+    }
+
+    public int getFeatureInfoThreads() {
+        return getMetadataValue(FEATURE_INFO_THREADS, FEATURE_INFO_THREADS_DEFAULT, Integer.class);
+    }
+
+    public long getFeatureInfoTimeout() {
+        return getMetadataValue(FEATURE_INFO_TIMEOUT, FEATURE_INFO_TIMEOUT_DEFAULT, Long.class);
+    }
+
     int getMetadataPercentage(MetadataMap metadata, String key, int defaultValue) {
         Integer parsedValue = Converters.convert(metadata.get(key), Integer.class);
         if (parsedValue == null)
@@ -927,6 +956,20 @@ public class WMS implements ApplicationContextAware {
                     + " does not have time support enabled");
         }
 
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            boolean list = isListDomain(ResourceInfo.TIME, time);
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.TIME, time, list);
+            if (list && values.isEmpty()) {
+                return null;
+            }
+            TreeSet<Date> result = new TreeSet<Date>();
+            for (Object value : values) {
+                result.add((Date) value);
+            }
+            return result;
+        }
+
         FeatureCollection collection = getDimensionCollection(typeInfo, time);
 
         TreeSet<Date> result = new TreeSet<Date>();
@@ -976,12 +1019,25 @@ public class WMS implements ApplicationContextAware {
                     + " does not have elevation support enabled");
         }
 
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            boolean list = isListDomain(ResourceInfo.ELEVATION, elevation);
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.ELEVATION, elevation,
+                    list);
+            if (list && values.isEmpty()) {
+                return null;
+            }
+            TreeSet<Double> result = new TreeSet<Double>();
+            for (Object value : values) {
+                result.add((Double) value);
+            }
+            return result;
+        }
+
         FeatureCollection collection = getDimensionCollection(typeInfo, elevation);
 
         TreeSet<Double> result = new TreeSet<Double>();
-        if (elevation.getPresentation() == DimensionPresentation.LIST
-                || (elevation.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL && elevation
-                        .getResolution() == null)) {
+        if (isListDomain(ResourceInfo.ELEVATION, elevation)) {
             final UniqueVisitor visitor = new UniqueVisitor(elevation.getAttribute());
             collection.accepts(visitor, null);
 
@@ -1026,6 +1082,12 @@ public class WMS implements ApplicationContextAware {
         }
 
         // current is the max time we have
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.TIME, time,
+                    isListDomain(ResourceInfo.TIME, time));
+            return values.isEmpty() ? null : (Date) values.last();
+        }
         FeatureCollection collection = getDimensionCollection(typeInfo, time);
         final MaxVisitor max = new MaxVisitor(time.getAttribute());
         collection.accepts(max, null);
@@ -1067,6 +1129,12 @@ public class WMS implements ApplicationContextAware {
                     + " does not have time support enabled");
         }
 
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.ELEVATION, elevation,
+                    isListDomain(ResourceInfo.ELEVATION, elevation));
+            return values.isEmpty() ? null : (Double) values.first();
+        }
         FeatureCollection collection = getDimensionCollection(typeInfo, elevation);
         final MinVisitor min = new MinVisitor(elevation.getAttribute());
         collection.accepts(min, null);
@@ -1097,6 +1165,27 @@ public class WMS implements ApplicationContextAware {
         return dimensions.getMinElevation();
     }
 
+    /**
+     * Whether the capabilities list all the values of the dimension, or just its extremes
+     */
+    static boolean isListDomain(String dimensionName, DimensionInfo dimension) {
+        if (ResourceInfo.ELEVATION.equals(dimensionName)) {
+            return dimension.getPresentation() == DimensionPresentation.LIST
+                    || (dimension.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL && dimension
+                            .getResolution() == null);
+        }
+        return dimension.getPresentation() == DimensionPresentation.LIST;
+    }
+
+    /**
+     * Returns the dimension domain index, if available and enabled
+     */
+    DimensionDomainIndex getDimensionDomainIndex() {
+        DimensionDomainIndex index = GeoServerExtensions.bean(DimensionDomainIndex.class,
+                applicationContext);
+        return index != null && index.isEnabled() ? index : null;
+    }
+
     /**
      * Returns the collection of all values of the dimension attribute, eventually sorted if the
      * native capabilities allow for it
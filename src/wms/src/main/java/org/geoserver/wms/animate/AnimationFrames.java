@@ -0,0 +1,199 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.animate;
+
+import java.awt.image.RenderedImage;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.media.jai.RenderedImageList;
+
+import org.geoserver.platform.ServiceException;
+
+/**
+ * The frames of an animation, rendered in parallel a few at a time and handed out in order.
+ * <p>
+ * Only a window of frames ahead of the last one requested is rendered and kept in memory: the
+ * frames are meant to be read once, in sequence, by the encoder, which should let go of each of
+ * them once written. Frames already handed out are no longer available, with the exception of the
+ * first one, which backs the {@link RenderedImage} methods of the list.
+ * </p>
+ */
+public class AnimationFrames extends RenderedImageList {
+
+    public AnimationFrames(List<? extends Callable<RenderedImage>> loaders,
+            ExecutorService executor, int lookAhead, Long maxRenderingSize) {
+        this(new Frames(loaders, executor, lookAhead, maxRenderingSize));
+    }
+
+    private AnimationFrames(Frames frames) {
+        super(Collections.singletonList(first(frames)));
+        this.imageCollection = frames;
+    }
+
+    /**
+     * Renders the first frame, and checks the whole animation fits in the max rendering size
+     * assuming all the frames are as big as the first one, so that the request fails before the
+     * encoder writes anything out
+     */
+    static RenderedImage first(Frames frames) {
+        RenderedImage first = frames.get(0);
+        if (first == null) {
+            frames.dispose();
+            throw new ServiceException("The first frame of the animation could not be rendered");
+        }
+        if (frames.maxRenderingSize != null) {
+            long estimate = frames.getImageSizeInBytes(first) * frames.size();
+            if (estimate >= frames.maxRenderingSize) {
+                frames.dispose();
+                throw new ServiceException("Max rendering size exceed! The " + frames.size()
+                        + " frames would take about " + estimate + " bytes");
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Cancels the frames still being rendered, and makes the list return null for all of the
+     * frames but the first one
+     */
+    public void dispose() {
+        ((Frames) imageCollection).dispose();
+    }
+
+    static class Frames extends AbstractList<RenderedImage> {
+
+        final List<? extends Callable<RenderedImage>> loaders;
+
+        final ExecutorService executor;
+
+        final int lookAhead;
+
+        final Long maxRenderingSize;
+
+        final List<Future<RenderedImage>> futures;
+
+        /**
+         * Number of frames submitted for rendering so far
+         */
+        int submitted;
+
+        /**
+         * Number of frames handed out so far
+         */
+        int consumed;
+
+        long renderingSize;
+
+        RenderedImage first;
+
+        boolean disposed;
+
+        Frames(List<? extends Callable<RenderedImage>> loaders, ExecutorService executor,
+                int lookAhead, Long maxRenderingSize) {
+            if (loaders.isEmpty()) {
+                throw new ServiceException("Empty list of frames.");
+            }
+            this.loaders = loaders;
+            this.executor = executor;
+            this.lookAhead = Math.max(1, lookAhead);
+            this.maxRenderingSize = maxRenderingSize;
+            this.futures = new ArrayList<Future<RenderedImage>>(Collections
+                    .<Future<RenderedImage>> nCopies(loaders.size(), null));
+            submit(0);
+        }
+
+        @Override
+        public int size() {
+            return loaders.size();
+        }
+
+        @Override
+        public synchronized RenderedImage get(int index) {
+            if (index < 0 || index >= loaders.size()) {
+                throw new IndexOutOfBoundsException("Frame " + index + " does not exist");
+            }
+            if (index == 0 && consumed > 0) {
+                return first;
+            }
+            if (disposed) {
+                return null;
+            }
+            if (index < consumed) {
+                throw new IllegalStateException("Frame " + index + " has already been encoded");
+            }
+
+            submit(index);
+            RenderedImage image;
+            try {
+                image = futures.get(index).get();
+            } catch (InterruptedException e) {
+                dispose();
+                Thread.currentThread().interrupt();
+                throw new ServiceException("Interrupted while rendering the animation frames", e);
+            } catch (ExecutionException e) {
+                dispose();
+                throw new ServiceException("Failed to render frame " + index, e.getCause());
+            }
+            futures.set(index, null);
+            consumed = index + 1;
+            if (index == 0) {
+                first = image;
+            }
+
+            // frames are normally as big as the first one and checked upfront, this catches
+            // the odd larger ones
+            if (image != null) {
+                renderingSize += getImageSizeInBytes(image);
+                if (maxRenderingSize != null && renderingSize >= maxRenderingSize) {
+                    dispose();
+                    throw new ServiceException("Max rendering size exceed!");
+                }
+            }
+
+            // keep the window full
+            submit(consumed);
+            return image;
+        }
+
+        /**
+         * Makes sure all frames up to the one following the specified one by the look ahead are
+         * being rendered
+         */
+        void submit(int index) {
+            int last = Math.min(loaders.size(), index + lookAhead);
+            while (submitted < last) {
+                futures.set(submitted, executor.submit(loaders.get(submitted)));
+                submitted++;
+            }
+        }
+
+        synchronized void dispose() {
+            disposed = true;
+            for (int i = 0; i < futures.size(); i++) {
+                Future<RenderedImage> future = futures.get(i);
+                if (future != null) {
+                    future.cancel(true);
+                    futures.set(i, null);
+                }
+            }
+        }
+
+        long getImageSizeInBytes(RenderedImage image) {
+            int tileWidth = image.getTileWidth();
+            int tileLength = image.getNumXTiles();
+            int numBands = image.getSampleModel().getNumBands();
+            int[] sampleSize = image.getSampleModel().getSampleSize();
+
+            return (long) Math.ceil(2 * tileWidth * tileLength * numBands * (sampleSize[0] / 8.0));
+        }
+    }
+}
@@ -9,9 +9,7 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -166,7 +164,6 @@ public final class GIFMapResponse extends RenderedImageMapResponse {
         param.setCompressionQuality(0.75f);
 
         ImageOutputStream otStream = null;
-        List<RenderedImage> images = new ArrayList<RenderedImage>();
         try {
             otStream = ImageIO.createImageOutputStream(outStream);
             gifWriter.setOutput(otStream);
@@ -184,24 +181,32 @@ public final class GIFMapResponse extends RenderedImageMapResponse {
                 throw new ServiceException("Animate GIF delay invalid: " + delay);
 
             //
-            // Getting input files
+            // Getting input files, in order, as the list might be rendering them on demand
             //
             for (int i = 0; i < numfiles; i++) {
                 if (LOGGER.isLoggable(Level.FINE))
                     LOGGER.fine("Writing image " + i);
                 // get the image
                 RenderedImage ri = (RenderedImage) ril.get(i);
+                if (ri == null) {
+                    continue;
+                }
                 // convert it to gif compatible
                 ri = applyPalette(ri, mapContent, MIME_TYPE, false);
                 if (ri != null) {
-                    // prepare metadata and write param
-                    final IIOMetadata imageMetadata = gifWriter.getDefaultImageMetadata(
-                            new ImageTypeSpecifier(ri), param);
-                    prepareMetadata(imageMetadata, loopContinuosly, delay);
-
-                    // write
-                    gifWriter.writeToSequence(new IIOImage(ri, null, imageMetadata), param);
-                    images.add(ri);
+                    try {
+                        // prepare metadata and write param
+                        final IIOMetadata imageMetadata = gifWriter.getDefaultImageMetadata(
+                                new ImageTypeSpecifier(ri), param);
+                        prepareMetadata(imageMetadata, loopContinuosly, delay);
+
+                        // write
+                        gifWriter.writeToSequence(new IIOImage(ri, null, imageMetadata), param);
+                        otStream.flush();
+                    } finally {
+                        // let go of the frame as soon as possible to free memory
+                        disposeImage(ri);
+                    }
                 }
             }
 
@@ -228,21 +233,20 @@ public final class GIFMapResponse extends RenderedImageMapResponse {
             } catch (Exception e) {
                 // swallow
             }
-
-            // let go of the image chain as soon as possible to free memory
-            for (RenderedImage image : images) {
-                if (image instanceof PlanarImage) {
-                    ImageUtilities.disposePlanarImageChain((PlanarImage) image);
-                } else if (image instanceof BufferedImage) {
-                    ((BufferedImage) image).flush();
-                }
-            }
         }
 
         if (LOGGER.isLoggable(Level.FINE))
             LOGGER.fine("Done writing animated gif");
     }
 
+    private void disposeImage(RenderedImage image) {
+        if (image instanceof PlanarImage) {
+            ImageUtilities.disposePlanarImageChain((PlanarImage) image);
+        } else if (image instanceof BufferedImage) {
+            ((BufferedImage) image).flush();
+        }
+    }
+
     public String getContentDisposition() {
         // can be null
         return null;
@@ -0,0 +1,54 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geoserver.wms.RenderingThreadPool;
+import org.geotools.renderer.RenderListener;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Measures how long the renderer spends on each feature type: the time elapsed since the
+ * previous rendered feature is attributed to the type of the feature just rendered, so the time
+ * spent querying a layer is accounted to it as well. The totals are reported to the
+ * {@link RenderingThreadPool} once the rendering is done.
+ */
+class LayerRenderTimer implements RenderListener {
+
+    RenderingThreadPool pool;
+
+    Map<String, Long> times = new HashMap<String, Long>();
+
+    long last;
+
+    LayerRenderTimer(RenderingThreadPool pool) {
+        this.pool = pool;
+        this.last = System.nanoTime();
+    }
+
+    public synchronized void featureRenderer(SimpleFeature feature) {
+        long now = System.nanoTime();
+        String typeName = feature.getFeatureType().getTypeName();
+        Long time = times.get(typeName);
+        times.put(typeName, (time != null ? time : 0) + now - last);
+        last = now;
+    }
+
+    public void errorOccurred(Exception e) {
+        // nothing to do
+    }
+
+    /**
+     * Reports the times collected so far
+     */
+    public synchronized void report() {
+        for (Map.Entry<String, Long> entry : times.entrySet()) {
+            pool.recordLayerTime(entry.getKey(), entry.getValue() / 1000000);
+        }
+        times.clear();
+    }
+}
@@ -46,6 +46,7 @@ import javax.media.jai.operator.MosaicDescriptor;
 
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.DefaultWebMapService;
+import org.geoserver.wms.RenderingThreadPool;
 import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapProducerCapabilities;
@@ -481,6 +482,14 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         nonIgnorableExceptionListener = new RenderExceptionStrategy(renderer);
         renderer.addRenderListener(nonIgnorableExceptionListener);
 
+        // collect the per layer render times if the rendering pool is instrumented
+        LayerRenderTimer renderTimer = null;
+        if (DefaultWebMapService.getRenderingPool() instanceof RenderingThreadPool) {
+            renderTimer = new LayerRenderTimer(
+                    (RenderingThreadPool) DefaultWebMapService.getRenderingPool());
+            renderer.addRenderListener(renderTimer);
+        }
+
         // setup the timeout enforcer (the enforcer is neutral when the timeout is 0)
         int maxRenderingTime = wms.getMaxRenderingTime() * 1000;
         RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime, renderer,
@@ -502,6 +511,9 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         } finally {
             timeout.stop();
             graphic.dispose();
+            if (renderTimer != null) {
+                renderTimer.report();
+            }
         }
 
         // check if the request did timeout
@@ -5,8 +5,11 @@
 package org.geoserver.wms.map;
 
 import java.awt.Graphics;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.geotools.renderer.GTRenderer;
 
@@ -14,15 +17,28 @@ import org.geotools.renderer.GTRenderer;
  * An utility class that can be used to set a strict timeout on rendering operations:
  * if the timeout elapses, the renderer will be asked to stop rendering and the graphics
  * will be disposed of to make extra sure the renderer cannot keep going on.
+ * <p>
+ * All the enforcers share a single scheduler thread.
+ * </p>
  * @author Andrea Aime - OpenGeo
  */
 public class RenderingTimeoutEnforcer {
     
+    /**
+     * Cancelled checks stay in the scheduler queue until they expire, purge them every this
+     * many cancellations
+     */
+    static final int PURGE_INTERVAL = 100;
+
+    static ScheduledThreadPoolExecutor SCHEDULER;
+
+    static final AtomicInteger CANCELLED = new AtomicInteger();
+
     long timeout;
     GTRenderer renderer;
     Graphics graphics;
-    Timer timer;
-    boolean timedOut = false;
+    ScheduledFuture<?> check;
+    volatile boolean timedOut = false;
 
     public RenderingTimeoutEnforcer(long timeout, GTRenderer renderer, Graphics graphics) {
         this.timeout = timeout;
@@ -34,13 +50,13 @@ public class RenderingTimeoutEnforcer {
      * Starts checking the rendering timeout (if timeout is positive, does nothing otherwise)
      */
     public void start() {
-        if(timer != null)
+        if(check != null)
             throw new IllegalStateException("The timeout enforcer has already been started");
         
         if(timeout > 0) {
             timedOut = false;
-            timer = new Timer();
-            timer.schedule(new StopRenderingTask(), timeout);
+            check = getScheduler().schedule(new StopRenderingTask(), timeout,
+                    TimeUnit.MILLISECONDS);
         }
     }
     
@@ -48,11 +64,11 @@ public class RenderingTimeoutEnforcer {
      * Stops the timeout check
      */
     public void stop() {
-        if(timer != null) {
-            timer.cancel();
-            timer.purge();
-            // timer.getTheHellOutOfDodge();
-            timer = null;
+        if(check != null) {
+            if(check.cancel(false) && CANCELLED.incrementAndGet() % PURGE_INTERVAL == 0) {
+                getScheduler().purge();
+            }
+            check = null;
         }
     }
     
@@ -63,9 +79,31 @@ public class RenderingTimeoutEnforcer {
         return timedOut;
     }
     
-    class StopRenderingTask extends TimerTask {
+    static synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (SCHEDULER == null) {
+            SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "RenderingTimeoutEnforcer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return SCHEDULER;
+    }
+
+    /**
+     * Stops the shared scheduler, a new one will be created on the next check
+     */
+    public static synchronized void shutdown() {
+        if (SCHEDULER != null) {
+            SCHEDULER.shutdownNow();
+            SCHEDULER = null;
+        }
+    }
+
+    class StopRenderingTask implements Runnable {
 
-        @Override
         public void run() {
             // mark as timed out
             timedOut = true;
@@ -0,0 +1,74 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.kml;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RegionatingTileCacheTest {
+
+    @Test
+    public void testEviction() {
+        RegionatingTileCache cache = new RegionatingTileCache(2);
+        cache.put("sf_roads", 0, 0, 0, fids("a", "b"), 0);
+        cache.put("sf_roads", 0, 0, 1, fids("c"), 0);
+        // touch the first one, the second becomes the eldest
+        assertEquals(fids("a", "b"), cache.get("sf_roads", 0, 0, 0));
+        cache.put("sf_roads", 1, 0, 1, Collections.<String> emptySet(), 0);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("sf_roads", 0, 0, 1));
+        assertNotNull(cache.get("sf_roads", 0, 0, 0));
+        assertTrue(cache.get("sf_roads", 1, 0, 1).isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        RegionatingTileCache cache = new RegionatingTileCache(100);
+        cache.put("sf_roads", 0, 0, 0, fids("a"), 0);
+        cache.put("sf_roads_lanes", 0, 0, 0, fids("b"), 0);
+        cache.put("sf_roads_2", 0, 0, 0, fids("c"), 0);
+
+        cache.clear("sf_roads");
+        assertNull(cache.get("sf_roads", 0, 0, 0));
+        // other databases sharing the name prefix are left alone
+        assertNotNull(cache.get("sf_roads_lanes", 0, 0, 0));
+        assertNotNull(cache.get("sf_roads_2", 0, 0, 0));
+    }
+
+    @Test
+    public void testStaleTileNotStored() {
+        RegionatingTileCache cache = new RegionatingTileCache(100);
+        long generation = cache.getGeneration("sf_roads");
+        // the layer changes while the tile is being computed
+        cache.clear("sf_roads");
+        cache.put("sf_roads", 0, 0, 0, fids("a"), generation);
+        assertNull(cache.get("sf_roads", 0, 0, 0));
+
+        cache.put("sf_roads", 0, 0, 0, fids("a"), cache.getGeneration("sf_roads"));
+        assertEquals(fids("a"), cache.get("sf_roads", 0, 0, 0));
+        // other databases are not affected
+        cache.put("sf_roads_2", 0, 0, 0, fids("b"), generation);
+        assertEquals(fids("b"), cache.get("sf_roads_2", 0, 0, 0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        RegionatingTileCache cache = new RegionatingTileCache(10);
+        cache.put("sf_roads", 0, 0, 0, fids("a"), 0);
+        cache.get("sf_roads", 0, 0, 0).add("b");
+    }
+
+    Set<String> fids(String... fids) {
+        Set<String> result = new HashSet<String>();
+        Collections.addAll(result, fids);
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.DimensionPresentation;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureCollections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DimensionDomainIndexTest extends WMSDimensionsTestSupport {
+
+    DimensionDomainIndex index;
+
+    @Before
+    public void enableIndex() {
+        index = GeoServerExtensions.bean(DimensionDomainIndex.class);
+        index.setEnabled(true);
+    }
+
+    @After
+    public void disableIndex() {
+        index.drop(DimensionDomainIndex.key(te, ResourceInfo.TIME));
+        index.drop(DimensionDomainIndex.key(te, ResourceInfo.ELEVATION));
+        index.setEnabled(false);
+    }
+
+    @Test
+    public void testTimeList() throws Exception {
+        setupVectorDimension(ResourceInfo.TIME, "time", DimensionPresentation.LIST, null, null,
+                null);
+        FeatureTypeInfo typeInfo = getCatalog().getFeatureTypeByName(
+                V_TIME_ELEVATION.getLocalPart());
+        TreeSet<Date> indexed = getWMS().getFeatureTypeTimes(typeInfo);
+
+        index.setEnabled(false);
+        TreeSet<Date> scanned = getWMS().getFeatureTypeTimes(typeInfo);
+        index.setEnabled(true);
+
+        assertEquals(4, indexed.size());
+        assertEquals(times(scanned), times(indexed));
+        assertEquals(scanned.last().getTime(), getWMS().getCurrentTime(typeInfo).getTime());
+    }
+
+    @Test
+    public void testElevationRange() throws Exception {
+        setupVectorDimension(ResourceInfo.ELEVATION, "elevation",
+                DimensionPresentation.CONTINUOUS_INTERVAL, null, UNITS, UNIT_SYMBOL);
+        FeatureTypeInfo typeInfo = getCatalog().getFeatureTypeByName(
+                V_TIME_ELEVATION.getLocalPart());
+        TreeSet<Double> elevations = getWMS().getFeatureTypeElevations(typeInfo);
+
+        // only the extremes are kept
+        assertEquals(2, elevations.size());
+        assertEquals(0d, elevations.first(), 0d);
+        assertEquals(3d, elevations.last(), 0d);
+        assertEquals(0d, getWMS().getDefaultElevation(typeInfo), 0d);
+
+        index.addValues(typeInfo, values(ResourceInfo.ELEVATION, 1.5, 10.0));
+        elevations = getWMS().getFeatureTypeElevations(typeInfo);
+        assertEquals(2, elevations.size());
+        assertEquals(10d, elevations.last(), 0d);
+    }
+
+    @Test
+    public void testAddValuesAndPersistence() throws Exception {
+        setupVectorDimension(ResourceInfo.TIME, "time", DimensionPresentation.LIST, null, null,
+                null);
+        FeatureTypeInfo typeInfo = getCatalog().getFeatureTypeByName(
+                V_TIME_ELEVATION.getLocalPart());
+        getWMS().getFeatureTypeTimes(typeInfo);
+
+        Date added = new Date(getWMS().getCurrentTime(typeInfo).getTime() + 86400000);
+        index.addValues(typeInfo, values(ResourceInfo.TIME, added));
+        TreeSet<Date> times = getWMS().getFeatureTypeTimes(typeInfo);
+        assertEquals(5, times.size());
+        assertEquals(added.getTime(), getWMS().getCurrentTime(typeInfo).getTime());
+
+        // save and reload from disk
+        String key = DimensionDomainIndex.key(typeInfo, ResourceInfo.TIME);
+        DimensionInfo time = typeInfo.getMetadata().get(ResourceInfo.TIME, DimensionInfo.class);
+        index.save(key, index.domains.get(key));
+        DimensionDomainIndex.Domain loaded = index.load(key,
+                DimensionDomainIndex.signature(typeInfo, time, true), true);
+        assertNotNull(loaded);
+        assertEquals(times(times), times(loaded.values));
+
+        // a different configuration invalidates the stored domain
+        assertNull(index.load(key, DimensionDomainIndex.signature(typeInfo, time, false), false));
+
+        // a rebuild drops values that are not in the data
+        index.rebuild(key);
+        assertEquals(4, getWMS().getFeatureTypeTimes(typeInfo).size());
+    }
+
+    @Test
+    public void testCollectValues() throws Exception {
+        setupVectorDimension(ResourceInfo.TIME, "time", DimensionPresentation.LIST, null, null,
+                null);
+        FeatureTypeInfo typeInfo = getCatalog().getFeatureTypeByName(
+                V_TIME_ELEVATION.getLocalPart());
+        FeatureCollection features = typeInfo.getFeatureSource(null, null).getFeatures();
+
+        // nothing is collected until the domain is indexed
+        assertTrue(index.collectValues(typeInfo, features).isEmpty());
+
+        getWMS().getFeatureTypeTimes(typeInfo);
+        Map<String, Set<Object>> values = index.collectValues(typeInfo, features);
+        assertEquals(Collections.singleton(ResourceInfo.TIME), values.keySet());
+        assertEquals(4, values.get(ResourceInfo.TIME).size());
+
+        assertTrue(index.collectValues(typeInfo, FeatureCollections.newCollection()).isEmpty());
+    }
+
+    Map<String, Set<Object>> values(String dimensionName, Object... values) {
+        Set<Object> set = new TreeSet<Object>();
+        Collections.addAll(set, values);
+        Map<String, Set<Object>> result = new HashMap<String, Set<Object>>();
+        result.put(dimensionName, set);
+        return result;
+    }
+
+    Set<Long> times(Set<?> dates) {
+        Set<Long> result = new TreeSet<Long>();
+        for (Object date : dates) {
+            result.add(((Date) date).getTime());
+        }
+        return result;
+    }
+}
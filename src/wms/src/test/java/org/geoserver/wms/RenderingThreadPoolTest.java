@@ -0,0 +1,111 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RenderingThreadPoolTest {
+
+    RenderingThreadPool pool;
+
+    @After
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        pool = new RenderingThreadPool(1, 1, 1, true);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(new Blocker(started, release));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // fills the queue
+        pool.execute(new Blocker(new CountDownLatch(1), release));
+        assertEquals(1, pool.getActiveCount());
+        assertEquals(1, pool.getQueuedCount());
+
+        try {
+            pool.execute(new Blocker(new CountDownLatch(1), release));
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // fine
+        }
+        assertEquals(3, pool.getSubmittedCount());
+        assertEquals(1, pool.getRejectedCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testWait() throws Exception {
+        pool = new RenderingThreadPool(1, 1, 1, false);
+        final CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(new Blocker(started, release));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        pool.execute(new Blocker(new CountDownLatch(1), release));
+
+        // release the running tasks in a bit, the submission has to wait for them
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // go on
+                }
+                release.countDown();
+            }
+        }.start();
+        Future<?> future = pool.submit(new Blocker(new CountDownLatch(1), release));
+        future.get(10, TimeUnit.SECONDS);
+        assertEquals(1, pool.getRejectedCount());
+    }
+
+    @Test
+    public void testLayerTimes() throws Exception {
+        pool = new RenderingThreadPool(1, 1, 1, true);
+        pool.recordLayerTime("lakes", 10);
+        pool.recordLayerTime("lakes", 30);
+        pool.recordLayerTime("roads", 5);
+
+        String[] times = pool.getLayerRenderTimes();
+        assertEquals(2, times.length);
+        String lakes = times[0].startsWith("lakes") ? times[0] : times[1];
+        assertEquals("lakes: count=2, avg=20ms, max=30ms", lakes);
+
+        pool.reset();
+        assertEquals(0, pool.getLayerRenderTimes().length);
+    }
+
+    static class Blocker implements Runnable {
+        CountDownLatch started;
+
+        CountDownLatch release;
+
+        Blocker(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        public void run() {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // done
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.animate;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geoserver.platform.ServiceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnimationFramesTest {
+
+    ExecutorService executor;
+
+    AtomicInteger started;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        started = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOrderAndLookAhead() throws Exception {
+        AnimationFrames frames = new AnimationFrames(loaders(10), executor, 3, null);
+        assertEquals(10, frames.size());
+        // the first frame is rendered upfront, and backs the image methods
+        assertEquals(1, frames.getWidth());
+
+        for (int i = 0; i < 10; i++) {
+            RenderedImage frame = (RenderedImage) frames.get(i);
+            assertEquals(i + 1, frame.getWidth());
+            // never more than the look ahead past the frame being read
+            assertTrue(started.get() <= Math.min(10, i + 1 + 3));
+        }
+
+        try {
+            frames.get(5);
+            fail("Frames already read should not be available anymore");
+        } catch (IllegalStateException e) {
+            // fine
+        }
+        // the first one is still there
+        assertEquals(1, ((RenderedImage) frames.get(0)).getWidth());
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+        AnimationFrames frames = new AnimationFrames(loaders(10), executor, 2, null);
+        frames.get(1);
+        frames.dispose();
+        assertNotNull(frames.get(0));
+        assertNull(frames.get(5));
+        assertTrue(started.get() <= 4);
+    }
+
+    @Test
+    public void testMaxRenderingSize() throws Exception {
+        // frames are estimated at 2, 4, 6, ... bytes, the first one times 10 frames is over
+        try {
+            new AnimationFrames(loaders(10), executor, 2, 20L);
+            fail("Should have exceeded the max rendering size");
+        } catch (ServiceException e) {
+            // fine
+        }
+
+        // the estimate fits, the actual frames do not
+        AnimationFrames frames = new AnimationFrames(loaders(10), executor, 2, 21L);
+        frames.get(1);
+        frames.get(2);
+        frames.get(3);
+        try {
+            frames.get(4);
+            fail("Should have exceeded the max rendering size");
+        } catch (ServiceException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testMissingFirstFrame() throws Exception {
+        List<Callable<RenderedImage>> loaders = loaders(3);
+        loaders.set(0, new Callable<RenderedImage>() {
+            public RenderedImage call() throws Exception {
+                return null;
+            }
+        });
+        try {
+            new AnimationFrames(loaders, executor, 2, null);
+            fail("Should have failed on the missing first frame");
+        } catch (ServiceException e) {
+            // fine
+        }
+    }
+
+    List<Callable<RenderedImage>> loaders(int count) {
+        List<Callable<RenderedImage>> loaders = new ArrayList<Callable<RenderedImage>>();
+        for (int i = 0; i < count; i++) {
+            final int width = i;
+            loaders.add(new Callable<RenderedImage>() {
+                public RenderedImage call() throws Exception {
+                    started.incrementAndGet();
+                    // encode the frame number in the width
+                    return new BufferedImage(width + 1, 1, BufferedImage.TYPE_BYTE_GRAY);
+                }
+            });
+        }
+        return loaders;
+    }
+}
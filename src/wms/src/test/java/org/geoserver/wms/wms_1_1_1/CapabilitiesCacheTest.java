@@ -0,0 +1,115 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.wms_1_1_1;
+
+import static org.junit.Assert.*;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.ows.CapabilitiesCache;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wms.WMSInfo;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class CapabilitiesCacheTest extends WMSTestSupport {
+
+    static final String CAPS = "wms?service=WMS&request=GetCapabilities&version=1.1.1";
+
+    CapabilitiesCache cache;
+
+    @Before
+    public void enableCache() {
+        cache = GeoServerExtensions.bean(CapabilitiesCache.class);
+        cache.setEnabled(true);
+    }
+
+    @After
+    public void disableCache() {
+        cache.setEnabled(false);
+    }
+
+    @Test
+    public void testCachedDocument() throws Exception {
+        long hits = cache.getHitCount();
+        MockHttpServletResponse first = getAsServletResponse(CAPS);
+        String etag = first.getHeader("ETag");
+        assertNotNull(etag);
+        assertEquals(1, cache.getSize());
+
+        MockHttpServletResponse second = getAsServletResponse(CAPS);
+        assertEquals(hits + 1, cache.getHitCount());
+        assertEquals(etag, second.getHeader("ETag"));
+        assertEquals(first.getContentType(), second.getContentType());
+        assertEquals(first.getOutputStreamContent(), second.getOutputStreamContent());
+
+        // different parameters, different document
+        MockHttpServletResponse other = getAsServletResponse(CAPS.replace("1.1.1", "1.3.0"));
+        assertFalse(etag.equals(other.getHeader("ETag")));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        String etag = getAsServletResponse(CAPS).getHeader("ETag");
+
+        MockHttpServletRequest request = createRequest(CAPS);
+        request.setMethod("GET");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = dispatch(request);
+        assertEquals(304, response.getStatusCode());
+        assertEquals("", response.getOutputStreamContent());
+        assertEquals(etag, response.getHeader("ETag"));
+    }
+
+    @Test
+    public void testNotModifiedRequiresCachedDocument() throws Exception {
+        String etag = getAsServletResponse(CAPS).getHeader("ETag");
+        // drops the documents without touching the counters
+        cache.setEnabled(false);
+        cache.setEnabled(true);
+
+        MockHttpServletRequest request = createRequest(CAPS);
+        request.setMethod("GET");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = dispatch(request);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(etag, response.getHeader("ETag"));
+        assertTrue(response.getOutputStreamContent().length() > 0);
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        String etag = getAsServletResponse(CAPS).getHeader("ETag");
+
+        FeatureTypeInfo ft = getCatalog().getFeatureTypeByName(getLayerId(MockData.BUILDINGS));
+        ft.setTitle("A brand new title");
+        getCatalog().save(ft);
+
+        MockHttpServletResponse response = getAsServletResponse(CAPS);
+        assertFalse(etag.equals(response.getHeader("ETag")));
+        assertTrue(response.getOutputStreamContent().contains("A brand new title"));
+
+        // virtual services of other workspaces are not affected
+        String sf = getAsServletResponse("sf/" + CAPS).getHeader("ETag");
+        ft = getCatalog().getFeatureTypeByName(getLayerId(MockData.BUILDINGS));
+        ft.setTitle("Another title");
+        getCatalog().save(ft);
+        assertEquals(sf, getAsServletResponse("sf/" + CAPS).getHeader("ETag"));
+
+        // service changes drop the documents of that service
+        etag = getAsServletResponse(CAPS).getHeader("ETag");
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.setTitle("A brand new service title");
+        getGeoServer().save(wms);
+        response = getAsServletResponse(CAPS);
+        assertFalse(etag.equals(response.getHeader("ETag")));
+        assertTrue(response.getOutputStreamContent().contains("A brand new service title"));
+    }
+}
@@ -31,6 +31,7 @@ import org.geoserver.data.test.SystemTestData;
 import org.geoserver.data.test.SystemTestData.LayerProperty;
 import org.geoserver.test.RemoteOWSTestSupport;
 import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.WMSTestSupport;
 import org.geotools.factory.CommonFactoryFinder;
@@ -393,6 +394,42 @@ public class GetFeatureInfoTest extends WMSTestSupport {
         assertXpathEvaluatesTo("1", "count(//cite:Lakes)", dom);
     }
 
+    /**
+     * Tests that querying the layers in parallel preserves the layer order and the global
+     * FEATURE_COUNT
+     * 
+     * @throws Exception
+     */
+    @Test 
+    public void testTwoLayersFeatureCountParallel() throws Exception {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(WMS.FEATURE_INFO_THREADS, 4);
+        wms.getMetadata().put(WMS.FEATURE_INFO_TIMEOUT, 10000);
+        getGeoServer().save(wms);
+        try {
+            String layer = getLayerId(MockData.FORESTS) + "," + getLayerId(MockData.LAKES);
+            String request = "wms?REQUEST=GetFeatureInfo&EXCEPTIONS=application%2Fvnd.ogc.se_xml&" +
+                    "BBOX=-0.002356%2C-0.004819%2C0.005631%2C0.004781&SERVICE=WMS&VERSION=1.1.0&X=267&Y=325" +
+                    "&INFO_FORMAT=application/vnd.ogc.gml" +
+                    "&QUERY_LAYERS=" + layer + "&Layers=" + layer + " &Styles=&WIDTH=426&HEIGHT=512" +
+                    "&format=image%2Fpng&srs=EPSG%3A4326";
+            // no feature count, just the one of the first layer should be returned
+            Document dom = getAsDOM(request);
+            assertXpathEvaluatesTo("1", "count(//gml:featureMember)", dom);
+            assertXpathEvaluatesTo("1", "count(//cite:Forests)", dom);
+
+            // feature count set to 2, both features should be there, in layer order
+            dom = getAsDOM(request + "&FEATURE_COUNT=2");
+            assertXpathEvaluatesTo("2", "count(//gml:featureMember)", dom);
+            assertXpathEvaluatesTo("1", "count((//gml:featureMember)[1]/cite:Forests)", dom);
+            assertXpathEvaluatesTo("1", "count((//gml:featureMember)[2]/cite:Lakes)", dom);
+        } finally {
+            wms.getMetadata().remove(WMS.FEATURE_INFO_THREADS);
+            wms.getMetadata().remove(WMS.FEATURE_INFO_TIMEOUT);
+            getGeoServer().save(wms);
+        }
+    }
+
 
     /**
      * Check GetFeatureInfo returns an error if the format is not known, instead